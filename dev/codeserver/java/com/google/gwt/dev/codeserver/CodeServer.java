@@ -23,6 +23,8 @@ import com.google.gwt.util.tools.Utility;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * <p>This class contains the {@link #main main method} that starts the code server for
@@ -112,14 +114,30 @@ public class CodeServer {
     File workDir = ensureWorkDir(options);
     System.out.println("workDir: " + workDir);
 
+    SourceWatcher sourceWatcher = null;
+    if (options.shouldWatchSources() && !options.isCompileTest()) {
+      List<File> watched = new ArrayList<File>(options.getSourcePath());
+      watched.addAll(SourceWatcher.getClassPath());
+      sourceWatcher = new SourceWatcher(watched, logger);
+    }
+
     Modules modules = new Modules();
     for (String moduleName : options.getModuleNames()) {
       AppSpace appSpace = AppSpace.create(new File(workDir, moduleName));
 
       Recompiler recompiler = new Recompiler(appSpace, moduleName, options.getSourcePath(),
           options.getPreferredHost() + ":" + options.getPort(), options.getRecompileListener(),
-          options.isCompileTest(), options.getSourceLevel(), logger);
-      modules.addModuleState(new ModuleState(recompiler, logger, options.getNoPrecompile()));
+          options.isCompileTest(), options.getSourceLevel(), sourceWatcher,
+          new CompileCache(options.getCompileCacheBytes()), logger);
+      ModuleState moduleState = new ModuleState(recompiler, logger, options.getNoPrecompile());
+      if (sourceWatcher != null) {
+        moduleState.watch(sourceWatcher);
+      }
+      modules.addModuleState(moduleState);
+    }
+
+    if (sourceWatcher != null) {
+      sourceWatcher.start();
     }
     return modules;
   }
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.gwt.dev.codeserver;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.util.Util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers the successful compiles of one module by their binding properties, so that
+ * browsers (or developers) that need different permutations don't force each other to
+ * recompile. When the compiles take up more disk space than allowed, the least recently
+ * used ones are deleted.
+ */
+class CompileCache {
+
+  /**
+   * A successful compile.
+   */
+  static class Entry {
+    private final CompileDir compileDir;
+    private final int compileId;
+    private final long changeCount;
+
+    /**
+     * The size of the compile, including files added to it since. (Guarded by the cache.)
+     */
+    private long diskBytes;
+
+    /**
+     * True if the compile was started by the source watcher and hasn't been
+     * served yet. (Guarded by the cache.)
+     */
+    private boolean unclaimedBackgroundCompile;
+
+    private Entry(CompileDir compileDir, int compileId, long changeCount, boolean background,
+        long diskBytes) {
+      this.compileDir = compileDir;
+      this.compileId = compileId;
+      this.changeCount = changeCount;
+      this.unclaimedBackgroundCompile = background;
+      this.diskBytes = diskBytes;
+    }
+
+    /**
+     * The value of {@link SourceWatcher#getChangeCount} when the compile started.
+     */
+    long getChangeCount() {
+      return changeCount;
+    }
+
+    CompileDir getCompileDir() {
+      return compileDir;
+    }
+
+    int getCompileId() {
+      return compileId;
+    }
+  }
+
+  private final long maxDiskBytes;
+
+  /**
+   * The entries by binding properties, least recently used first. (Guarded by this.)
+   */
+  private final LinkedHashMap<Map<String, String>, Entry> entries =
+      new LinkedHashMap<Map<String, String>, Entry>(16, 0.75f, true);
+
+  /**
+   * Compiles that are no longer in the cache but couldn't be deleted because they
+   * were being served. (Guarded by this.)
+   */
+  private final List<Entry> retired = new ArrayList<Entry>();
+
+  private long diskBytes = 0;
+
+  /**
+   * The compile that the code server currently serves. (Guarded by this.)
+   */
+  private CompileDir serving;
+
+  /**
+   * @param maxDiskBytes the number of bytes that cached compiles may use. (The compile
+   *   being served is kept even if it doesn't fit.)
+   */
+  CompileCache(long maxDiskBytes) {
+    this.maxDiskBytes = maxDiskBytes;
+  }
+
+  /**
+   * Returns the last successful compile with the given binding properties, or null
+   * if there is none. (It may be out of date.)
+   */
+  synchronized Entry get(Map<String, String> bindingProperties) {
+    return entries.get(bindingProperties);
+  }
+
+  /**
+   * Returns the compile with the given binding properties if it was compiled in the
+   * background when the change count had the given value and hasn't been claimed
+   * before, otherwise null. Each background compile is only returned once, so that
+   * asking for another compile recompiles.
+   *
+   * <p>The returned compile becomes the one being served, so that it can't be deleted
+   * before the caller gets to use it.</p>
+   */
+  synchronized Entry claimBackgroundCompile(Map<String, String> bindingProperties,
+      long changeCount, TreeLogger logger) {
+    Entry entry = entries.get(bindingProperties);
+    if (entry == null || !entry.unclaimedBackgroundCompile
+        || entry.changeCount != changeCount) {
+      return null;
+    }
+    entry.unclaimedBackgroundCompile = false;
+    setServing(entry.compileDir, logger);
+    return entry;
+  }
+
+  /**
+   * Returns true if the compile with the given binding properties was compiled in the
+   * background and hasn't been claimed yet.
+   */
+  synchronized boolean hasBackgroundCompile(Map<String, String> bindingProperties) {
+    Entry entry = entries.get(bindingProperties);
+    return entry != null && entry.unclaimedBackgroundCompile;
+  }
+
+  /**
+   * Adds a successful compile, replacing any previous compile with the same binding
+   * properties, and deletes compiles that no longer fit. Unless it was compiled in the
+   * background, the new compile becomes the one being served, so that it can't be
+   * deleted before the caller gets to use it.
+   * @param changeCount the value of {@link SourceWatcher#getChangeCount} when the compile
+   *   started, or 0 if the source path isn't watched
+   * @param background true if the source watcher started the compile, rather than a
+   *   request for it
+   */
+  void put(Map<String, String> bindingProperties, CompileDir compileDir, int compileId,
+      long changeCount, boolean background, TreeLogger logger) {
+    // Walk the directory before locking.
+    Entry entry = new Entry(compileDir, compileId, changeCount, background,
+        countBytes(compileDir.getRoot()));
+
+    synchronized (this) {
+      Entry old = entries.put(new HashMap<String, String>(bindingProperties), entry);
+      diskBytes += entry.diskBytes;
+      if (old != null) {
+        diskBytes -= old.diskBytes;
+        retired.add(old);
+      }
+      if (!background) {
+        serving = compileDir;
+      }
+      evict(logger);
+    }
+  }
+
+  /**
+   * Counts a file that was written into the directory of a cached compile after the
+   * compile finished, such as a gzipped copy of an output file, and deletes compiles
+   * that no longer fit. Does nothing if no cached compile contains the file.
+   */
+  void addFile(File file, TreeLogger logger) {
+    long bytes = file.length();
+    synchronized (this) {
+      for (Entry entry : entries.values()) {
+        if (isInside(file, entry.compileDir.getRoot())) {
+          entry.diskBytes += bytes;
+          diskBytes += bytes;
+          evict(logger);
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Records which compile the code server currently serves, so that it won't be deleted.
+   */
+  synchronized void setServing(CompileDir compileDir, TreeLogger logger) {
+    serving = compileDir;
+    evict(logger);
+  }
+
+  /**
+   * Looks for a file in the output of the cached compiles, most recently used first.
+   * (A browser may still be loading code from a permutation it started with.)
+   * @return the file, or null if no cached compile has it.
+   */
+  synchronized File findOutputFile(String urlPath) {
+    List<Entry> newestFirst = new ArrayList<Entry>(entries.values());
+    for (int i = newestFirst.size() - 1; i >= 0; i--) {
+      File candidate = new File(newestFirst.get(i).compileDir.getWarDir(), urlPath);
+      if (candidate.isFile()) {
+        return candidate;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Removes least recently used entries until the rest fit, and deletes the compiles
+   * that are neither cached nor served.
+   */
+  private void evict(TreeLogger logger) {
+    assert Thread.holdsLock(this);
+    Iterator<Entry> it = entries.values().iterator();
+    while (diskBytes > maxDiskBytes && it.hasNext()) {
+      Entry entry = it.next();
+      if (entry.compileDir == serving) {
+        continue;
+      }
+      it.remove();
+      diskBytes -= entry.diskBytes;
+      retired.add(entry);
+    }
+
+    for (Iterator<Entry> retiredIt = retired.iterator(); retiredIt.hasNext();) {
+      Entry entry = retiredIt.next();
+      if (entry.compileDir != serving) {
+        logger.log(TreeLogger.Type.DEBUG, "deleting: " + entry.compileDir.getRoot());
+        Util.recursiveDelete(entry.compileDir.getRoot(), false);
+        retiredIt.remove();
+      }
+    }
+  }
+
+  private static boolean isInside(File file, File dir) {
+    for (File parent = file.getParentFile(); parent != null; parent = parent.getParentFile()) {
+      if (parent.equals(dir)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static long countBytes(File file) {
+    File[] children = file.listFiles();
+    if (children == null) {
+      return file.length();
+    }
+    long total = 0;
+    for (File child : children) {
+      total += countBytes(child);
+    }
+    return total;
+  }
+}
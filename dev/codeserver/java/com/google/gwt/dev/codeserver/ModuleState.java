@@ -31,6 +31,10 @@ import java.net.URL;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -42,6 +46,16 @@ class ModuleState {
   private final Recompiler recompiler;
   private final TreeLogger logger;
 
+  /**
+   * The binding properties of the last compile the browser asked for, or null if there
+   * hasn't been one.
+   */
+  private final AtomicReference<Map<String, String>> lastBindingProperties =
+      new AtomicReference<Map<String, String>>();
+
+  private final AtomicBoolean backgroundCompileQueued = new AtomicBoolean();
+  private ExecutorService backgroundCompiler;
+
   ModuleState(Recompiler recompiler, TreeLogger logger, boolean noPrecompile)
       throws UnableToCompleteException {
     this.recompiler = recompiler;
@@ -55,9 +69,35 @@ class ModuleState {
       defaultProps.put("user.agent", "safari");
       defaultProps.put("locale", "en");
       defaultProps.put("compiler.useSourceMaps", "true");
+      lastBindingProperties.set(defaultProps);
       compileDir = recompiler.compile(defaultProps);
     }
-    current.set(compileDir);
+    setCurrent(compileDir);
+  }
+
+  /**
+   * Recompiles the module in the background whenever the given watcher sees source files
+   * change, using the binding properties of the last recompile. The output isn't served
+   * until the browser asks for a recompile with the same binding properties, which then
+   * returns immediately if there were no further changes.
+   */
+  synchronized void watch(SourceWatcher watcher) {
+    if (backgroundCompiler == null) {
+      backgroundCompiler = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "BackgroundCompile");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    watcher.addListener(new SourceWatcher.Listener() {
+      @Override
+      public void sourcesChanged() {
+        compileInBackground();
+      }
+    });
   }
 
   /**
@@ -68,8 +108,9 @@ class ModuleState {
    * @return true if the compile finished successfully.
    */
   boolean recompile(Map<String, String> bindingProperties) {
+    lastBindingProperties.set(bindingProperties);
     try {
-      current.set(recompiler.compile(bindingProperties));
+      setCurrent(recompiler.compile(bindingProperties));
       return true;
     } catch (UnableToCompleteException e) {
       logger.log(TreeLogger.Type.WARN, "continuing to serve previous version");
@@ -77,6 +118,34 @@ class ModuleState {
     }
   }
 
+  private void setCurrent(CompileDir compileDir) {
+    current.set(compileDir);
+    recompiler.getCompileCache().setServing(compileDir, logger);
+  }
+
+  private void compileInBackground() {
+    final Map<String, String> bindingProperties = lastBindingProperties.get();
+    if (bindingProperties == null || !backgroundCompileQueued.compareAndSet(false, true)) {
+      return;
+    }
+    backgroundCompiler.execute(new Runnable() {
+      @Override
+      public void run() {
+        // Changes from now on need another compile.
+        backgroundCompileQueued.set(false);
+        logger.log(TreeLogger.Type.INFO, "Source files changed; recompiling "
+            + getModuleName() + " in the background");
+        try {
+          recompiler.compileInBackground(bindingProperties);
+        } catch (UnableToCompleteException e) {
+          logger.log(TreeLogger.Type.WARN, "background compile failed");
+        } catch (RuntimeException e) {
+          logger.log(TreeLogger.Type.WARN, "background compile failed", e);
+        }
+      }
+    });
+  }
+
   /**
    * Returns the name of this module (after renaming).
    */
@@ -144,16 +213,31 @@ class ModuleState {
     }
   }
 
+  /**
+   * Returns the successful compiles of this module.
+   */
+  CompileCache getCompileCache() {
+    return recompiler.getCompileCache();
+  }
+
   /**
    * Returns the location of a file in the compiler's output directory from the
    * last time this module was recompiled. The location will change after a successful
-   * recompile.
+   * recompile. Files that only exist in the output of an earlier cached compile (such as
+   * another permutation's code) are found there.
    * @param urlPath The path to the file. This should be a relative path beginning
    * with the module name (after renaming).
    * @return The location of the file, which might not actually exist.
    */
   File getOutputFile(String urlPath) {
-    return new File(current.get().getWarDir(), urlPath);
+    File file = new File(current.get().getWarDir(), urlPath);
+    if (!file.exists()) {
+      File cachedFile = recompiler.getCompileCache().findOutputFile(urlPath);
+      if (cachedFile != null) {
+        return cachedFile;
+      }
+    }
+    return file;
   }
 
   /**
@@ -44,10 +44,12 @@ public class Options {
   private File workDir;
   private List<String> moduleNames = new ArrayList<String>();
   private boolean allowMissingSourceDir = false;
+  private boolean watchSources = true;
   private final List<File> sourcePath = new ArrayList<File>();
   private String bindAddress = "127.0.0.1";
   private String preferredHost = "localhost";
   private int port = 9876;
+  private int compileCacheMegabytes = 500;
   private RecompileListener recompileListener = RecompileListener.NONE;
   // Use the same default as the GWT compiler.
   private SourceLevel sourceLevel = SourceLevel.DEFAULT_SOURCE_LEVEL;
@@ -109,6 +111,14 @@ public class Options {
     return allowMissingSourceDir;
   }
 
+  /**
+   * Whether the code server should watch the source path and classpath and recompile
+   * in the background when files change.
+   */
+  boolean shouldWatchSources() {
+    return watchSources;
+  }
+
   /**
    * Whether the codeServer should start without precompiling modules.
    */
@@ -151,6 +161,13 @@ public class Options {
     return port;
   }
 
+  /**
+   * The disk space that the output of earlier compiles may use, in bytes.
+   */
+  long getCompileCacheBytes() {
+    return compileCacheMegabytes * 1024L * 1024L;
+  }
+
   List<File> getSourcePath() {
     return sourcePath;
   }
@@ -163,7 +180,9 @@ public class Options {
       registerHandler(new BindAddressFlag());
       registerHandler(new PortFlag());
       registerHandler(new WorkDirFlag());
+      registerHandler(new CompileCacheFlag());
       registerHandler(new AllowMissingSourceDirFlag());
+      registerHandler(new WatchSourcesFlag());
       registerHandler(new SourceFlag());
       registerHandler(new ModuleNameArgument());
       registerHandler(new ArgHandlerSource(new OptionSource() {
@@ -295,6 +314,30 @@ public class Options {
     }
   }
 
+  private class CompileCacheFlag extends ArgHandlerInt {
+
+    @Override
+    public String getTag() {
+      return "-compileCacheMb";
+    }
+
+    @Override
+    public String[] getTagArgs() {
+      return new String[] {"megabytes"};
+    }
+
+    @Override
+    public String getPurpose() {
+      return "The disk space used to keep the output of earlier compiles, so that each "
+          + "browser's permutation can be served without recompiling. Defaults to 500.";
+    }
+
+    @Override
+    public void setInt(int newValue) {
+      compileCacheMegabytes = newValue;
+    }
+  }
+
   private class WorkDirFlag extends ArgHandlerDir {
 
     @Override
@@ -339,6 +382,31 @@ public class Options {
     }
   }
 
+  private class WatchSourcesFlag extends ArgHandlerFlag {
+
+    @Override
+    public String getLabel() {
+      return "watchSrc";
+    }
+
+    @Override
+    public String getPurposeSnippet() {
+      return "Watches the -src directories and the classpath and recompiles in the background"
+          + " when they change.";
+    }
+
+    @Override
+    public boolean setFlag(boolean value) {
+      watchSources = value;
+      return true;
+    }
+
+    @Override
+    public boolean getDefaultValue() {
+      return watchSources;
+    }
+  }
+
   private class SourceFlag extends ArgHandler {
 
     @Override
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.gwt.dev.codeserver;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.util.Util;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Remembers the ETags of files in the compiler's output and writes gzipped copies of them.
+ * A compile's output doesn't change after the compile finishes, so each file only needs
+ * to be hashed and compressed once, no matter how many times browsers reload it.
+ */
+class OutputFileCache {
+
+  /**
+   * The number of files whose ETags are remembered.
+   */
+  private static final int MAX_ENTRIES = 1000;
+
+  /**
+   * The suffix of gzipped copies, which are written next to the original files.
+   */
+  static final String GZIP_SUFFIX = ".gz";
+
+  private static class CachedETag {
+    private final long lastModified;
+    private final long length;
+    private final String etag;
+
+    CachedETag(long lastModified, long length, String etag) {
+      this.lastModified = lastModified;
+      this.length = length;
+      this.etag = etag;
+    }
+  }
+
+  /**
+   * ETags by file path, least recently used first. (Guarded by this.)
+   */
+  private final Map<String, CachedETag> entries =
+      new LinkedHashMap<String, CachedETag>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedETag> eldest) {
+          return size() > MAX_ENTRIES;
+        }
+      };
+
+  /**
+   * Returns an ETag based on the file's contents.
+   */
+  String getETag(File file) throws IOException {
+    String key = file.getPath();
+    long lastModified = file.lastModified();
+    long length = file.length();
+    synchronized (this) {
+      CachedETag entry = entries.get(key);
+      if (entry != null && entry.lastModified == lastModified && entry.length == length) {
+        return entry.etag;
+      }
+    }
+
+    // Hash without holding the lock.
+    byte[] bytes = Util.readFileAsBytes(file);
+    if (bytes == null) {
+      throw new IOException("can't read file: " + file);
+    }
+    String etag = PageUtil.computeETag(bytes);
+    synchronized (this) {
+      entries.put(key, new CachedETag(lastModified, length, etag));
+    }
+    return etag;
+  }
+
+  /**
+   * Returns a gzipped copy of the file, writing it first if it doesn't exist yet.
+   * @param compileCache the cache of the compile that the file belongs to, which
+   *   counts the copy when it is written
+   * @return the copy, or null if it couldn't be written.
+   */
+  File getGzippedCopy(File file, CompileCache compileCache, TreeLogger logger) {
+    File copy = new File(file.getPath() + GZIP_SUFFIX);
+    if (copy.isFile()) {
+      return copy;
+    }
+
+    // Write to a temporary file so that a concurrent request never sees a partial copy.
+    File temp = null;
+    try {
+      temp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+      GZIPOutputStream out = new GZIPOutputStream(new FileOutputStream(temp));
+      try {
+        PageUtil.copyStream(new BufferedInputStream(new FileInputStream(file)), out);
+      } finally {
+        out.close();
+      }
+      if (temp.renameTo(copy)) {
+        temp = null;
+        compileCache.addFile(copy, logger);
+      }
+    } catch (IOException e) {
+      logger.log(TreeLogger.Type.WARN, "unable to write gzipped copy of: " + file, e);
+    } finally {
+      if (temp != null) {
+        temp.delete();
+      }
+    }
+    // Another thread may have won the race to write it.
+    return copy.isFile() ? copy : null;
+  }
+}
@@ -18,6 +18,7 @@ package com.google.gwt.dev.codeserver;
 
 import com.google.gwt.core.ext.TreeLogger;
 import com.google.gwt.dev.json.JsonObject;
+import com.google.gwt.dev.util.Util;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
@@ -33,6 +34,7 @@ import java.io.Writer;
 import java.net.URL;
 
 import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 /**
@@ -52,6 +54,49 @@ class PageUtil {
     response.getWriter().append(page);
   }
 
+  /**
+   * Sends a page represented as bytes.
+   */
+  static void sendBytes(String mimeType, byte[] page, HttpServletResponse response)
+      throws IOException {
+    response.setStatus(HttpServletResponse.SC_OK);
+    response.setContentType(mimeType);
+    response.setContentLength(page.length);
+    response.getOutputStream().write(page);
+  }
+
+  /**
+   * Returns an ETag header value for a page with the given contents.
+   */
+  static String computeETag(byte[] page) {
+    return "\"" + Util.computeStrongName(page) + "\"";
+  }
+
+  /**
+   * Sets the ETag of a response. If the client already has the page with that ETag, also
+   * sends a 304 (Not Modified) response.
+   * @return true if the response was sent, in which case the caller should stop.
+   */
+  static boolean sendNotModifiedIfMatches(String etag, HttpServletRequest request,
+      HttpServletResponse response) {
+    response.setHeader("ETag", etag);
+    String ifNoneMatch = request.getHeader("If-None-Match");
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String candidate : ifNoneMatch.split(",")) {
+      candidate = candidate.trim();
+      if (candidate.startsWith("W/")) {
+        candidate = candidate.substring(2);
+      }
+      if (candidate.equals(etag) || candidate.equals("*")) {
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return true;
+      }
+    }
+    return false;
+  }
+
   /**
    * Sends an HTML page with some JSON code prepended to it.
    *
@@ -56,6 +56,8 @@ class Recompiler {
   private final List<File> sourcePath;
   private final RecompileListener listener;
   private final boolean failIfListenerFails;
+  private final SourceWatcher sourceWatcher;
+  private final CompileCache compileCache;
   private final TreeLogger logger;
   private String serverPrefix;
   private int compilesDone = 0;
@@ -68,21 +70,76 @@ class Recompiler {
   private final AtomicReference<ResourceLoader> resourceLoader =
       new AtomicReference<ResourceLoader>();
 
+  /**
+   * @param sourceWatcher watches the source path, or null to recompile every time
+   * @param compileCache keeps the successful compiles
+   */
   Recompiler(AppSpace appSpace, String moduleName, List<File> sourcePath,
       String serverPrefix, RecompileListener listener, boolean failIfListenerFails,
-      SourceLevel sourceLevel, TreeLogger logger) {
+      SourceLevel sourceLevel, SourceWatcher sourceWatcher, CompileCache compileCache,
+      TreeLogger logger) {
     this.appSpace = appSpace;
     this.originalModuleName = moduleName;
     this.sourcePath = sourcePath;
     this.listener = listener;
     this.failIfListenerFails = failIfListenerFails;
+    this.sourceWatcher = sourceWatcher;
+    this.compileCache = compileCache;
     this.logger = logger;
     this.serverPrefix = serverPrefix;
     this.sourceLevel = sourceLevel;
   }
 
-  synchronized CompileDir compile(Map<String, String> bindingProperties)
+  /**
+   * Compiles the module with the given binding properties. If a source watcher is in use
+   * and it started a compile with the same binding properties that finished after the
+   * last change to the watched files, returns that compile's output instead. (Each
+   * background compile is only returned once; otherwise this always recompiles.)
+   */
+  CompileDir compile(Map<String, String> bindingProperties)
+      throws UnableToCompleteException {
+    CompileDir compiled = claimBackgroundCompile(bindingProperties);
+    if (compiled != null) {
+      return compiled;
+    }
+    return compile(bindingProperties, false);
+  }
+
+  /**
+   * Compiles the module with the given binding properties after the source watcher saw
+   * a change, unless a compile with the same binding properties already started after it.
+   * The output is kept in the compile cache for the next call to {@link #compile}.
+   */
+  void compileInBackground(Map<String, String> bindingProperties)
       throws UnableToCompleteException {
+    compile(bindingProperties, true);
+  }
+
+  private synchronized CompileDir compile(Map<String, String> bindingProperties,
+      boolean background) throws UnableToCompleteException {
+
+    long changeCount = 0;
+    if (sourceWatcher != null) {
+      changeCount = sourceWatcher.getChangeCount();
+      CompileCache.Entry previous = compileCache.get(bindingProperties);
+      if (background) {
+        if (previous != null && previous.getChangeCount() == changeCount) {
+          logger.log(TreeLogger.Type.DEBUG, "Compile " + previous.getCompileId()
+              + " started after the last change; no need to compile in the background");
+          return previous.getCompileDir();
+        }
+      } else {
+        // A background compile may have finished while we waited.
+        CompileDir compiled = claimBackgroundCompile(bindingProperties);
+        if (compiled != null) {
+          return compiled;
+        }
+      }
+      if (previous != null) {
+        logChangedFiles(sourceWatcher.getChangedFiles(previous.getChangeCount()));
+      }
+    }
+
     if (compilesDone == 0) {
       System.setProperty("java.awt.headless", "true");
       if (System.getProperty("gwt.speedtracerlog") == null) {
@@ -138,6 +195,8 @@ class Recompiler {
       throw new UnableToCompleteException();
     }
 
+    compileCache.put(bindingProperties, compileDir, compileId, changeCount, background,
+        logger);
     return compileDir;
   }
 
@@ -189,6 +248,42 @@ class Recompiler {
     return resourceLoader.get();
   }
 
+  CompileCache getCompileCache() {
+    return compileCache;
+  }
+
+  /**
+   * Returns the output of an unclaimed background compile with the given binding
+   * properties if no watched file changed since it started, otherwise null.
+   */
+  private CompileDir claimBackgroundCompile(Map<String, String> bindingProperties) {
+    if (sourceWatcher == null || !compileCache.hasBackgroundCompile(bindingProperties)) {
+      return null;
+    }
+    // Only now is it worth scanning: a file saved since the last poll must be compiled.
+    long changeCount = sourceWatcher.checkNow();
+    CompileCache.Entry entry = compileCache.claimBackgroundCompile(bindingProperties,
+        changeCount, logger);
+    if (entry == null) {
+      return null;
+    }
+    logger.log(TreeLogger.Type.INFO, "No source files changed since background compile "
+        + entry.getCompileId() + "; using it");
+    lastBuild.set(entry.getCompileDir());
+    return entry.getCompileDir();
+  }
+
+  private void logChangedFiles(Set<String> changedFiles) {
+    if (changedFiles.isEmpty()) {
+      return;
+    }
+    TreeLogger branch = logger.branch(TreeLogger.Type.INFO,
+        changedFiles.size() + " source file(s) changed since the last compile");
+    for (String path : changedFiles) {
+      branch.log(TreeLogger.Type.DEBUG, path);
+    }
+  }
+
   private TreeLogger makeCompileLogger(CompileDir compileDir)
       throws UnableToCompleteException {
     try {
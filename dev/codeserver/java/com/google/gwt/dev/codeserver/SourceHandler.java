@@ -19,12 +19,15 @@ package com.google.gwt.dev.codeserver;
 import com.google.gwt.core.ext.TreeLogger;
 import com.google.gwt.dev.json.JsonArray;
 import com.google.gwt.dev.json.JsonObject;
+import com.google.gwt.dev.util.Util;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -47,8 +50,39 @@ class SourceHandler {
    */
   static final String SOURCEMAP_PATH = "/sourcemaps/";
 
+  /**
+   * The number of rewritten source maps to keep.
+   */
+  private static final int MAX_CACHED_SOURCE_MAPS = 10;
+
+  /**
+   * A source map after rewriting, with its ETag.
+   */
+  private static class CachedSourceMap {
+    private final byte[] json;
+    private final String etag;
+
+    CachedSourceMap(byte[] json) {
+      this.json = json;
+      this.etag = PageUtil.computeETag(json);
+    }
+  }
+
   private Modules modules;
 
+  /**
+   * Rewritten source maps by source map file and URL prefix, least recently used first.
+   * A compile's source map doesn't change, so it only needs rewriting once for each server
+   * name that browsers use. (Guarded by itself.)
+   */
+  private final Map<String, CachedSourceMap> sourceMaps =
+      new LinkedHashMap<String, CachedSourceMap>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedSourceMap> eldest) {
+          return size() > MAX_CACHED_SOURCE_MAPS;
+        }
+      };
+
   private final TreeLogger logger;
 
   SourceHandler(Modules modules, TreeLogger logger) {
@@ -86,7 +120,7 @@ class SourceHandler {
       sendSourceMap(moduleName, request, response);
 
     } else if (rest.endsWith(".java")) {
-      sendSourceFile(moduleName, rest, request.getQueryString(), response);
+      sendSourceFile(moduleName, rest, request, response);
 
     } else {
       response.sendError(HttpServletResponse.SC_NOT_FOUND);
@@ -109,14 +143,31 @@ class SourceHandler {
   private void sendSourceMap(String moduleName, HttpServletRequest request,
       HttpServletResponse response) throws IOException {
 
-    SourceMap map = loadSourceMap(moduleName);
+    File sourceMapFile = modules.get(moduleName).findSourceMap();
 
     // hack: rewrite the source map so that each filename is a URL
     String serverPrefix = String.format("http://%s:%d/sourcemaps/%s/", request.getServerName(),
         request.getServerPort(), moduleName);
-    map.addPrefixToEachSourceFile(serverPrefix);
 
-    PageUtil.sendString("application/json", map.serialize(), response);
+    String key = sourceMapFile.getPath() + "@" + sourceMapFile.lastModified() + " "
+        + serverPrefix;
+    CachedSourceMap cached;
+    synchronized (sourceMaps) {
+      cached = sourceMaps.get(key);
+    }
+    if (cached == null) {
+      SourceMap map = SourceMap.load(sourceMapFile);
+      map.addPrefixToEachSourceFile(serverPrefix);
+      cached = new CachedSourceMap(map.serialize().getBytes("UTF-8"));
+      synchronized (sourceMaps) {
+        sourceMaps.put(key, cached);
+      }
+    }
+
+    if (PageUtil.sendNotModifiedIfMatches(cached.etag, request, response)) {
+      return;
+    }
+    PageUtil.sendBytes("application/json", cached.json, response);
     logger.log(TreeLogger.WARN, "sent source map for module: " + moduleName);
   }
 
@@ -161,8 +212,8 @@ class SourceHandler {
    * Sends an HTTP response containing a Java source. It will be sent as plain text by default,
    * or as HTML if the query string is equal to "html".
    */
-  private void sendSourceFile(String moduleName, String sourcePath, String query,
-      HttpServletResponse response)
+  private void sendSourceFile(String moduleName, String sourcePath,
+      HttpServletRequest request, HttpServletResponse response)
       throws IOException {
     ModuleState moduleState = modules.get(moduleName);
     InputStream pageBytes = moduleState.openSourceFile(sourcePath);
@@ -173,12 +224,24 @@ class SourceHandler {
       return;
     }
 
+    String query = request.getQueryString();
     if (query != null && query.equals("html")) {
       BufferedReader reader = new BufferedReader(new InputStreamReader(pageBytes));
       sendSourceFileAsHtml(moduleName, sourcePath, reader, response);
-    } else {
-      PageUtil.sendStream("text/plain", pageBytes, response);
+      return;
+    }
+
+    // Debuggers fetch every source file again after a reload; most haven't changed.
+    byte[] bytes = Util.readStreamAsBytes(pageBytes);
+    if (bytes == null) {
+      response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      logger.log(TreeLogger.WARN, "unable to read source file: " + sourcePath);
+      return;
+    }
+    if (PageUtil.sendNotModifiedIfMatches(PageUtil.computeETag(bytes), request, response)) {
+      return;
     }
+    PageUtil.sendBytes("text/plain", bytes, response);
   }
 
   /**
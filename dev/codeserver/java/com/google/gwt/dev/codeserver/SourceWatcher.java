@@ -0,0 +1,339 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.gwt.dev.codeserver;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.util.Util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Watches the files that a module is compiled from (the directories on the code server's
+ * source path and classpath, and the jar files on its classpath) for changes, so that the
+ * module can be recompiled before the browser asks for it.
+ *
+ * <p>The files are polled by a background thread since the code server runs on
+ * Java 6, which has no file system notifications.</p>
+ */
+class SourceWatcher {
+
+  /**
+   * Receives notifications from the polling thread.
+   */
+  interface Listener {
+    /**
+     * Called after the polling thread finds changes, once the source path has stopped
+     * changing.
+     */
+    void sourcesChanged();
+  }
+
+  /**
+   * How often the source path is polled, in milliseconds.
+   */
+  static final int POLL_INTERVAL_MILLIS = 500;
+
+  /**
+   * How long after its last modification a file's contents are also compared, in
+   * milliseconds. Some file systems only record modification times to the second (or
+   * two), so a file edited twice in a row may keep the same time and size. (Only files
+   * that were seen to change are hashed, and jar files never are.)
+   */
+  static final int RECENT_MILLIS = 3000;
+
+  /**
+   * The size and last modification time of a file, and a hash of its contents if
+   * it changed recently.
+   */
+  private static class FileState {
+    private final long lastModified;
+    private final long length;
+    private String hash;
+
+    FileState(File file) {
+      lastModified = file.lastModified();
+      length = file.length();
+    }
+
+    boolean hasSameTimeAndSize(FileState other) {
+      return lastModified == other.lastModified && length == other.length;
+    }
+
+    boolean isRecent(long now) {
+      return now - lastModified < RECENT_MILLIS;
+    }
+  }
+
+  private final List<File> paths;
+  private final TreeLogger logger;
+  private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+  /**
+   * Held while scanning, so that scans happen one at a time without blocking readers
+   * of the change count.
+   */
+  private final Object scanLock = new Object();
+
+  /**
+   * The files seen by the last scan, by path. (Guarded by scanLock.)
+   */
+  private Map<String, FileState> files;
+
+  /**
+   * For each file that changed since the first scan, the value of changeCount after its
+   * last change. (Guarded by this.)
+   */
+  private final Map<String, Long> changes = new HashMap<String, Long>();
+
+  /**
+   * (Guarded by this.)
+   */
+  private long changeCount = 0;
+
+  private Thread pollThread;
+
+  /**
+   * @param paths the directories and jar files to watch. Files in a directory are found
+   *   recursively, skipping those whose names start with a dot. Jar files are only
+   *   compared by size and modification time.
+   */
+  SourceWatcher(List<File> paths, TreeLogger logger) {
+    this.paths = new ArrayList<File>(paths);
+    this.logger = logger;
+  }
+
+  /**
+   * Returns the entries on the JVM's classpath, where the code server also finds
+   * modules, source files and resources.
+   */
+  static List<File> getClassPath() {
+    List<File> result = new ArrayList<File>();
+    for (String entry : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+      if (!entry.isEmpty()) {
+        result.add(new File(entry));
+      }
+    }
+    return result;
+  }
+
+  void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Records the current state of the source path and starts polling it.
+   */
+  void start() {
+    // Scan before locking, since scans lock this briefly.
+    checkNow();
+    synchronized (this) {
+      if (pollThread != null) {
+        return;
+      }
+      pollThread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          poll();
+        }
+      }, "SourceWatcher");
+      pollThread.setDaemon(true);
+      pollThread.start();
+    }
+  }
+
+  /**
+   * Stops the polling thread.
+   */
+  synchronized void stop() {
+    if (pollThread != null) {
+      pollThread.interrupt();
+      pollThread = null;
+    }
+  }
+
+  /**
+   * Scans the watched files right away, without notifying listeners, and returns the new
+   * change count. (The polling thread calls this too.) Waits for any scan in progress.
+   */
+  long checkNow() {
+    synchronized (scanLock) {
+      long now = System.currentTimeMillis();
+      Map<String, FileState> newFiles = scan();
+      if (files == null) {
+        files = newFiles;
+        return getChangeCount();
+      }
+      List<String> changed = compare(files, newFiles, now);
+      files = newFiles;
+      return recordChanges(changed);
+    }
+  }
+
+  /**
+   * Returns a number that changes whenever any file is added, modified or deleted,
+   * as of the last scan. (It may be up to {@link #POLL_INTERVAL_MILLIS} out of date.)
+   */
+  synchronized long getChangeCount() {
+    return changeCount;
+  }
+
+  /**
+   * Returns the files that were added, modified or deleted since the change count had
+   * the given value.
+   */
+  synchronized Set<String> getChangedFiles(long sinceChangeCount) {
+    Set<String> result = new TreeSet<String>();
+    for (Map.Entry<String, Long> entry : changes.entrySet()) {
+      if (entry.getValue() > sinceChangeCount) {
+        result.add(entry.getKey());
+      }
+    }
+    return result;
+  }
+
+  private void poll() {
+    long notifiedChangeCount = getChangeCount();
+    long lastChangeCount = notifiedChangeCount;
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        Thread.sleep(POLL_INTERVAL_MILLIS);
+      } catch (InterruptedException e) {
+        return;
+      }
+
+      long currentChangeCount;
+      try {
+        currentChangeCount = checkNow();
+      } catch (RuntimeException e) {
+        logger.log(TreeLogger.Type.WARN, "Unable to scan watched files", e);
+        continue;
+      }
+
+      // Editors and version control often write several files in a row, so wait
+      // until a poll finds nothing new.
+      if (currentChangeCount != lastChangeCount) {
+        lastChangeCount = currentChangeCount;
+      } else if (currentChangeCount != notifiedChangeCount) {
+        notifiedChangeCount = currentChangeCount;
+        for (Listener listener : listeners) {
+          try {
+            listener.sourcesChanged();
+          } catch (RuntimeException e) {
+            logger.log(TreeLogger.Type.WARN, "source change listener threw exception", e);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the paths of the files that differ between two scans, hashing the files
+   * that changed recently so that the next scan can compare their contents.
+   */
+  private static List<String> compare(Map<String, FileState> oldFiles,
+      Map<String, FileState> newFiles, long now) {
+    List<String> changed = new ArrayList<String>();
+    for (Map.Entry<String, FileState> entry : newFiles.entrySet()) {
+      String path = entry.getKey();
+      FileState state = entry.getValue();
+      FileState old = oldFiles.get(path);
+      if (old == null || !old.hasSameTimeAndSize(state)) {
+        changed.add(path);
+        if (state.isRecent(now) && !isJar(path)) {
+          state.hash = hash(path);
+        }
+      } else if (old.hash != null) {
+        // It changed recently, so it may have changed again within the same tick.
+        String hash = hash(path);
+        if (!old.hash.equals(hash)) {
+          changed.add(path);
+        }
+        if (state.isRecent(now)) {
+          state.hash = hash;
+        }
+      }
+    }
+    for (String path : oldFiles.keySet()) {
+      if (!newFiles.containsKey(path)) {
+        changed.add(path);
+      }
+    }
+    return changed;
+  }
+
+  private synchronized long recordChanges(List<String> changed) {
+    if (!changed.isEmpty()) {
+      changeCount++;
+      for (String path : changed) {
+        changes.put(path, changeCount);
+      }
+    }
+    return changeCount;
+  }
+
+  /**
+   * Returns the size and modification time of each watched file.
+   */
+  private Map<String, FileState> scan() {
+    Map<String, FileState> result = new HashMap<String, FileState>();
+    for (File path : paths) {
+      if (path.isDirectory()) {
+        scanDirectory(path, result);
+      } else if (path.isFile()) {
+        result.put(path.getPath(), new FileState(path));
+      }
+    }
+    return result;
+  }
+
+  private static void scanDirectory(File dir, Map<String, FileState> result) {
+    File[] children = dir.listFiles();
+    if (children == null) {
+      return;
+    }
+    for (File child : children) {
+      // Skip version control directories and editor backup files.
+      if (child.getName().startsWith(".")) {
+        continue;
+      }
+      if (child.isDirectory()) {
+        scanDirectory(child, result);
+      } else {
+        result.put(child.getPath(), new FileState(child));
+      }
+    }
+  }
+
+  private static boolean isJar(String path) {
+    return path.endsWith(".jar") || path.endsWith(".zip");
+  }
+
+  /**
+   * Returns a hash of a file's contents, or the empty string if it can't be read.
+   */
+  private static String hash(String path) {
+    byte[] bytes = Util.readFileAsBytes(new File(path));
+    return bytes == null ? "" : Util.computeStrongName(bytes);
+  }
+}
@@ -86,10 +86,17 @@ public class WebServer {
   private static final MimeTypes MIME_TYPES = new MimeTypes();
   private static final String TIME_IN_THE_PAST = "Fri, 01 Jan 1990 00:00:00 GMT";
 
+  /**
+   * Smaller output files are sent uncompressed.
+   */
+  private static final int MIN_GZIP_BYTES = 1024;
+
   private final SourceHandler handler;
 
   private final Modules modules;
 
+  private final OutputFileCache outputFiles = new OutputFileCache();
+
   private final String bindAddress;
   private final int port;
   private final TreeLogger logger;
@@ -269,35 +276,67 @@ public class WebServer {
     ModuleState moduleState = modules.get(moduleName);
 
     File file = moduleState.getOutputFile(target);
+    boolean gzipped = false;
     if (!file.isFile()) {
       // perhaps it's compressed
-      file = moduleState.getOutputFile(target + ".gz");
+      file = moduleState.getOutputFile(target + OutputFileCache.GZIP_SUFFIX);
       if (!file.isFile()) {
         response.sendError(HttpServletResponse.SC_NOT_FOUND);
         logger.log(TreeLogger.WARN, "not found: " + file.toString());
         return;
       }
-      if (!request.getHeader("Accept-Encoding").contains("gzip")) {
+      if (!acceptsGzip(request)) {
         response.sendError(HttpServletResponse.SC_NOT_IMPLEMENTED);
         logger.log(TreeLogger.WARN, "client doesn't accept gzip; bailing");
         return;
       }
-      response.setHeader("Content-Encoding", "gzip");
+      gzipped = true;
+    }
+
+    String mimeType = guessMimeType(target);
+    if (!gzipped && acceptsGzip(request) && isCompressible(mimeType)
+        && file.length() >= MIN_GZIP_BYTES) {
+      // Compress once per compile rather than on every request.
+      File gzippedCopy = outputFiles.getGzippedCopy(file, moduleState.getCompileCache(),
+          logger);
+      if (gzippedCopy != null) {
+        file = gzippedCopy;
+        gzipped = true;
+      }
     }
 
     if (target.endsWith(".cache.js")) {
       response.setHeader("X-SourceMap", sourceMapLocationForModule(moduleName));
     } else if (target.endsWith(".nocache.js")) {
-      response.setHeader("Cache-Control", "no-cache, no-store, max-age=0, must-revalidate");
+      // Browsers may keep a copy, but must check that it's still current.
+      response.setHeader("Cache-Control", "no-cache, max-age=0, must-revalidate");
       response.setHeader("Pragma", "no-cache");
       response.setHeader("Expires", TIME_IN_THE_PAST);
       response.setDateHeader("Date", new Date().getTime());
     }
     response.setHeader("Access-Control-Allow-Origin", "*");
-    String mimeType = guessMimeType(target);
+    response.setHeader("Vary", "Accept-Encoding");
+
+    // The gzipped copy has its own ETag since its contents differ.
+    if (PageUtil.sendNotModifiedIfMatches(outputFiles.getETag(file), request, response)) {
+      return;
+    }
+    if (gzipped) {
+      response.setHeader("Content-Encoding", "gzip");
+    }
     PageUtil.sendFile(mimeType, file, response);
   }
 
+  private static boolean acceptsGzip(HttpServletRequest request) {
+    String acceptEncoding = request.getHeader("Accept-Encoding");
+    return acceptEncoding != null && acceptEncoding.contains("gzip");
+  }
+
+  private static boolean isCompressible(String mimeType) {
+    return mimeType.startsWith("text/") || mimeType.contains("javascript")
+        || mimeType.contains("json") || mimeType.contains("xml");
+  }
+
   private void sendModulePage(String moduleName, HttpServletResponse response) throws IOException {
     ModuleState module = modules.get(moduleName);
     if (module == null) {
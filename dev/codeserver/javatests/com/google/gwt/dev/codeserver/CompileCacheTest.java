@@ -0,0 +1,132 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.gwt.dev.codeserver;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.core.ext.UnableToCompleteException;
+import com.google.gwt.dev.util.Util;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Tests for {@link CompileCache}.
+ */
+public class CompileCacheTest extends TestCase {
+
+  private static final Map<String, String> SAFARI =
+      Collections.singletonMap("user.agent", "safari");
+  private static final Map<String, String> GECKO =
+      Collections.singletonMap("user.agent", "gecko1_8");
+
+  private File dir;
+
+  @Override
+  protected void setUp() throws IOException {
+    dir = File.createTempFile("CompileCacheTest", "");
+    assertTrue(dir.delete());
+    assertTrue(dir.mkdir());
+  }
+
+  @Override
+  protected void tearDown() {
+    Util.recursiveDelete(dir, false);
+  }
+
+  public void testRequestedCompileIsKeptEvenIfTooBig() throws Exception {
+    CompileCache cache = new CompileCache(10);
+    CompileDir compile = makeCompile(1, 100);
+
+    cache.put(SAFARI, compile, 1, 0, false, TreeLogger.NULL);
+    assertTrue(compile.getRoot().exists());
+    assertSame(compile, cache.get(SAFARI).getCompileDir());
+  }
+
+  public void testClaimedBackgroundCompileIsKept() throws Exception {
+    CompileCache cache = new CompileCache(150);
+    CompileDir background = makeCompile(1, 100);
+    cache.put(SAFARI, background, 1, 5, true, TreeLogger.NULL);
+
+    CompileCache.Entry claimed = cache.claimBackgroundCompile(SAFARI, 5, TreeLogger.NULL);
+    assertNotNull(claimed);
+    assertSame(background, claimed.getCompileDir());
+
+    // Another background compile doesn't fit alongside it, but mustn't delete it.
+    CompileDir other = makeCompile(2, 100);
+    cache.put(GECKO, other, 2, 5, true, TreeLogger.NULL);
+    assertTrue(background.getRoot().exists());
+    assertFalse(other.getRoot().exists());
+  }
+
+  public void testBackgroundCompileIsClaimedOnce() throws Exception {
+    CompileCache cache = new CompileCache(1000);
+    cache.put(SAFARI, makeCompile(1, 10), 1, 5, true, TreeLogger.NULL);
+
+    assertTrue(cache.hasBackgroundCompile(SAFARI));
+    assertNull(cache.claimBackgroundCompile(SAFARI, 6, TreeLogger.NULL));
+    assertNull(cache.claimBackgroundCompile(GECKO, 5, TreeLogger.NULL));
+    assertNotNull(cache.claimBackgroundCompile(SAFARI, 5, TreeLogger.NULL));
+    assertFalse(cache.hasBackgroundCompile(SAFARI));
+    assertNull(cache.claimBackgroundCompile(SAFARI, 5, TreeLogger.NULL));
+  }
+
+  public void testRequestedCompileIsNotClaimable() throws Exception {
+    CompileCache cache = new CompileCache(1000);
+    cache.put(SAFARI, makeCompile(1, 10), 1, 5, false, TreeLogger.NULL);
+
+    assertFalse(cache.hasBackgroundCompile(SAFARI));
+    assertNull(cache.claimBackgroundCompile(SAFARI, 5, TreeLogger.NULL));
+  }
+
+  public void testAddedFilesCount() throws Exception {
+    CompileCache cache = new CompileCache(250);
+    CompileDir safari = makeCompile(1, 100);
+    cache.put(SAFARI, safari, 1, 0, false, TreeLogger.NULL);
+    CompileDir gecko = makeCompile(2, 100);
+    cache.put(GECKO, gecko, 2, 0, false, TreeLogger.NULL);
+    assertTrue(safari.getRoot().exists());
+
+    // A file outside the cached compiles doesn't count.
+    File outside = write(new File(dir, "outside.js"), 100);
+    cache.addFile(outside, TreeLogger.NULL);
+    assertTrue(safari.getRoot().exists());
+
+    // A gzipped copy written into the compile being served pushes the other one out.
+    File copy = write(new File(gecko.getWarDir(), "out.js" + OutputFileCache.GZIP_SUFFIX), 100);
+    cache.addFile(copy, TreeLogger.NULL);
+    assertFalse(safari.getRoot().exists());
+    assertTrue(gecko.getRoot().exists());
+  }
+
+  private CompileDir makeCompile(int id, int bytes) throws UnableToCompleteException {
+    CompileDir compileDir = CompileDir.create(new File(dir, "compile-" + id), TreeLogger.NULL);
+    write(new File(compileDir.getWarDir(), "out.js"), bytes);
+    return compileDir;
+  }
+
+  private static File write(File file, int bytes) {
+    char[] content = new char[bytes];
+    Arrays.fill(content, 'x');
+    assertTrue(Util.writeStringAsFile(file, new String(content)));
+    return file;
+  }
+}
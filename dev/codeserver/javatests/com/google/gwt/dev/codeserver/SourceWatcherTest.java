@@ -0,0 +1,173 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.gwt.dev.codeserver;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.util.Util;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link SourceWatcher}.
+ */
+public class SourceWatcherTest extends TestCase {
+
+  private File dir;
+  private SourceWatcher watcher;
+
+  @Override
+  protected void setUp() throws IOException {
+    dir = File.createTempFile("SourceWatcherTest", "");
+    assertTrue(dir.delete());
+    assertTrue(dir.mkdir());
+  }
+
+  @Override
+  protected void tearDown() {
+    if (watcher != null) {
+      watcher.stop();
+    }
+    Util.recursiveDelete(dir, false);
+  }
+
+  public void testNoChanges() throws IOException {
+    write(new File(dir, "Foo.java"), "class Foo {}");
+    watcher = new SourceWatcher(Arrays.asList(dir), TreeLogger.NULL);
+
+    long changeCount = watcher.checkNow();
+    assertEquals(changeCount, watcher.checkNow());
+    assertEquals(changeCount, watcher.getChangeCount());
+    assertTrue(watcher.getChangedFiles(changeCount).isEmpty());
+  }
+
+  public void testAddModifyDelete() throws IOException {
+    File foo = new File(dir, "com/example/Foo.java");
+    write(foo, "class Foo {}");
+    watcher = new SourceWatcher(Arrays.asList(dir), TreeLogger.NULL);
+    long start = watcher.checkNow();
+
+    File module = new File(dir, "com/example/Example.gwt.xml");
+    write(module, "<module/>");
+    long added = watcher.checkNow();
+    assertTrue(added != start);
+    assertEquals(Collections.singleton(module.getPath()), watcher.getChangedFiles(start));
+
+    write(foo, "class Foo { int x; }");
+    long modified = watcher.checkNow();
+    assertTrue(modified != added);
+    assertEquals(Collections.singleton(foo.getPath()), watcher.getChangedFiles(added));
+
+    assertTrue(module.delete());
+    long deleted = watcher.checkNow();
+    assertTrue(deleted != modified);
+    assertEquals(Collections.singleton(module.getPath()), watcher.getChangedFiles(modified));
+
+    assertEquals(2, watcher.getChangedFiles(start).size());
+  }
+
+  public void testSameSizeEditWithinTimestampGranularity() throws IOException {
+    watcher = new SourceWatcher(Arrays.asList(dir), TreeLogger.NULL);
+    watcher.checkNow();
+
+    File foo = new File(dir, "Foo.java");
+    long lastModified = System.currentTimeMillis() / 1000 * 1000;
+    write(foo, "class Foo { int a; }");
+    assertTrue(foo.setLastModified(lastModified));
+    long added = watcher.checkNow();
+
+    write(foo, "class Foo { int b; }");
+    assertTrue(foo.setLastModified(lastModified));
+    assertTrue(watcher.checkNow() != added);
+    assertEquals(Collections.singleton(foo.getPath()), watcher.getChangedFiles(added));
+  }
+
+  public void testOldFilesAreNotHashed() throws IOException {
+    File foo = new File(dir, "Foo.java");
+    long lastModified = System.currentTimeMillis() - 10 * SourceWatcher.RECENT_MILLIS;
+    write(foo, "class Foo { int a; }");
+    assertTrue(foo.setLastModified(lastModified));
+    watcher = new SourceWatcher(Arrays.asList(dir), TreeLogger.NULL);
+    long start = watcher.checkNow();
+
+    // Indistinguishable by time and size, so the contents aren't compared.
+    write(foo, "class Foo { int b; }");
+    assertTrue(foo.setLastModified(lastModified));
+    assertEquals(start, watcher.checkNow());
+  }
+
+  public void testWatchesJarFiles() throws IOException {
+    File jar = new File(dir, "lib.jar");
+    write(jar, "v1");
+    watcher = new SourceWatcher(Arrays.asList(jar), TreeLogger.NULL);
+    long start = watcher.checkNow();
+
+    write(jar, "v2 is longer");
+    assertTrue(watcher.checkNow() != start);
+    assertEquals(Collections.singleton(jar.getPath()), watcher.getChangedFiles(start));
+  }
+
+  public void testJarFilesAreNotHashed() throws IOException {
+    File jar = new File(dir, "lib.jar");
+    watcher = new SourceWatcher(Arrays.asList(dir), TreeLogger.NULL);
+    watcher.checkNow();
+
+    long lastModified = System.currentTimeMillis() / 1000 * 1000;
+    write(jar, "v1");
+    assertTrue(jar.setLastModified(lastModified));
+    long added = watcher.checkNow();
+
+    write(jar, "v2");
+    assertTrue(jar.setLastModified(lastModified));
+    assertEquals(added, watcher.checkNow());
+  }
+
+  public void testSkipsDotFiles() throws IOException {
+    watcher = new SourceWatcher(Arrays.asList(dir), TreeLogger.NULL);
+    long start = watcher.checkNow();
+
+    write(new File(dir, ".Foo.java.swp"), "x");
+    write(new File(dir, ".git/index"), "x");
+    assertEquals(start, watcher.checkNow());
+  }
+
+  public void testListenerNotifiedAfterChange() throws Exception {
+    watcher = new SourceWatcher(Arrays.asList(dir), TreeLogger.NULL);
+    final CountDownLatch notified = new CountDownLatch(1);
+    watcher.addListener(new SourceWatcher.Listener() {
+      @Override
+      public void sourcesChanged() {
+        notified.countDown();
+      }
+    });
+    watcher.start();
+
+    write(new File(dir, "Foo.java"), "class Foo {}");
+    assertTrue(notified.await(20 * SourceWatcher.POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS));
+  }
+
+  private static void write(File file, String content) throws IOException {
+    file.getParentFile().mkdirs();
+    assertTrue(Util.writeStringAsFile(file, content));
+  }
+}
@@ -19,8 +19,9 @@ import com.google.gwt.core.ext.Linker;
 import com.google.gwt.core.ext.TreeLogger;
 import com.google.gwt.core.ext.UnableToCompleteException;
 import com.google.gwt.dev.util.Util;
+import com.google.gwt.util.tools.Utility;
 
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 
 /**
@@ -67,9 +68,7 @@ public abstract class AbstractLinker extends Linker {
    */
   protected final SyntheticArtifact emitInputStream(TreeLogger logger,
       InputStream what, String partialPath) throws UnableToCompleteException {
-    ByteArrayOutputStream out = new ByteArrayOutputStream();
-    Util.copy(logger, what, out);
-    return emitBytes(logger, out.toByteArray(), partialPath);
+    return emitInputStream(logger, what, partialPath, System.currentTimeMillis());
   }
 
   /**
@@ -85,9 +84,14 @@ public abstract class AbstractLinker extends Linker {
   protected final SyntheticArtifact emitInputStream(TreeLogger logger,
       InputStream what, String partialPath, long lastModified)
       throws UnableToCompleteException {
-    ByteArrayOutputStream out = new ByteArrayOutputStream();
-    Util.copy(logger, what, out);
-    return emitBytes(logger, out.toByteArray(), partialPath, lastModified);
+    try {
+      return new SyntheticArtifact(getClass(), partialPath, what, lastModified);
+    } catch (IOException e) {
+      logger.log(TreeLogger.ERROR, "Error during copy", e);
+      throw new UnableToCompleteException();
+    } finally {
+      Utility.close(what);
+    }
   }
 
   /**
@@ -19,7 +19,9 @@ import java.io.Serializable;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
@@ -30,6 +32,20 @@ public final class ArtifactSet implements SortedSet<Artifact<?>>, Serializable {
 
   private SortedSet<Artifact<?>> treeSet = new TreeSet<Artifact<?>>();
 
+  /**
+   * For each type passed to {@link #find}, the artifacts assignable to it. Built
+   * on the first lookup of a type and kept up to date as artifacts are added and
+   * removed, so that linkers can repeatedly find a type without scanning every
+   * artifact. Null until the first lookup.
+   */
+  private transient Map<Class<?>, SortedSet<Artifact<?>>> typeIndex;
+
+  /**
+   * Set once a modifiable subset view has been handed out; changes made through
+   * a view can't be seen, so {@link #find} falls back to scanning.
+   */
+  private transient boolean viewsEscaped;
+
   public ArtifactSet() {
   }
 
@@ -38,15 +54,27 @@ public final class ArtifactSet implements SortedSet<Artifact<?>>, Serializable {
   }
 
   public boolean add(Artifact<?> o) {
-    return treeSet.add(o);
+    if (treeSet.add(o)) {
+      addToIndex(o);
+      return true;
+    }
+    return false;
   }
 
   public boolean addAll(Collection<? extends Artifact<?>> c) {
-    return treeSet.addAll(c);
+    if (typeIndex == null) {
+      return treeSet.addAll(c);
+    }
+    boolean changed = false;
+    for (Artifact<?> artifact : c) {
+      changed |= add(artifact);
+    }
+    return changed;
   }
 
   public void clear() {
     treeSet.clear();
+    typeIndex = null;
   }
 
   public Comparator<? super Artifact<?>> comparator() {
@@ -81,16 +109,22 @@ public final class ArtifactSet implements SortedSet<Artifact<?>>, Serializable {
    * @param artifactType the desired type of Artifact
    * @return all Artifacts in the ArtifactSet assignable to the desired type
    */
+  @SuppressWarnings("unchecked")
   public <T extends Artifact<? super T>> SortedSet<T> find(
       Class<T> artifactType) {
-    // TODO make this sub-linear (but must retain order for styles/scripts!)
-    SortedSet<T> toReturn = new TreeSet<T>();
-    for (Artifact<?> artifact : this) {
-      if (artifactType.isInstance(artifact)) {
-        toReturn.add(artifactType.cast(artifact));
-      }
+    if (viewsEscaped) {
+      return (SortedSet<T>) scan(artifactType);
     }
-    return toReturn;
+    if (typeIndex == null) {
+      typeIndex = new HashMap<Class<?>, SortedSet<Artifact<?>>>();
+    }
+    SortedSet<Artifact<?>> found = typeIndex.get(artifactType);
+    if (found == null) {
+      found = scan(artifactType);
+      typeIndex.put(artifactType, found);
+    }
+    // Copying an already sorted set takes linear time.
+    return (SortedSet<T>) new TreeSet<Artifact<?>>(found);
   }
 
   public Artifact<?> first() {
@@ -114,6 +148,7 @@ public final class ArtifactSet implements SortedSet<Artifact<?>>, Serializable {
   }
 
   public SortedSet<Artifact<?>> headSet(Artifact<?> toElement) {
+    noteViewEscaped();
     return treeSet.headSet(toElement);
   }
 
@@ -122,7 +157,24 @@ public final class ArtifactSet implements SortedSet<Artifact<?>>, Serializable {
   }
 
   public Iterator<Artifact<?>> iterator() {
-    return treeSet.iterator();
+    final Iterator<Artifact<?>> it = treeSet.iterator();
+    return new Iterator<Artifact<?>>() {
+      private Artifact<?> last;
+
+      public boolean hasNext() {
+        return it.hasNext();
+      }
+
+      public Artifact<?> next() {
+        last = it.next();
+        return last;
+      }
+
+      public void remove() {
+        it.remove();
+        removeFromIndex(last);
+      }
+    };
   }
 
   public Artifact<?> last() {
@@ -130,11 +182,19 @@ public final class ArtifactSet implements SortedSet<Artifact<?>>, Serializable {
   }
 
   public boolean remove(Object o) {
-    return treeSet.remove(o);
+    if (treeSet.remove(o)) {
+      removeFromIndex(o);
+      return true;
+    }
+    return false;
   }
 
   public boolean removeAll(Collection<?> c) {
-    return treeSet.removeAll(c);
+    if (treeSet.removeAll(c)) {
+      typeIndex = null;
+      return true;
+    }
+    return false;
   }
 
   /**
@@ -144,13 +204,17 @@ public final class ArtifactSet implements SortedSet<Artifact<?>>, Serializable {
    * @return <code>true</code> if an equivalent Artifact was already present.
    */
   public boolean replace(Artifact<?> artifact) {
-    boolean toReturn = treeSet.remove(artifact);
-    treeSet.add(artifact);
+    boolean toReturn = remove(artifact);
+    add(artifact);
     return toReturn;
   }
 
   public boolean retainAll(Collection<?> c) {
-    return treeSet.retainAll(c);
+    if (treeSet.retainAll(c)) {
+      typeIndex = null;
+      return true;
+    }
+    return false;
   }
 
   public int size() {
@@ -159,10 +223,12 @@ public final class ArtifactSet implements SortedSet<Artifact<?>>, Serializable {
 
   public SortedSet<Artifact<?>> subSet(Artifact<?> fromElement,
       Artifact<?> toElement) {
+    noteViewEscaped();
     return treeSet.subSet(fromElement, toElement);
   }
 
   public SortedSet<Artifact<?>> tailSet(Artifact<?> fromElement) {
+    noteViewEscaped();
     return treeSet.tailSet(fromElement);
   }
 
@@ -178,4 +244,50 @@ public final class ArtifactSet implements SortedSet<Artifact<?>>, Serializable {
   public String toString() {
     return treeSet.toString();
   }
+
+  private void addToIndex(Artifact<?> artifact) {
+    if (typeIndex == null) {
+      return;
+    }
+    for (Map.Entry<Class<?>, SortedSet<Artifact<?>>> entry : typeIndex.entrySet()) {
+      if (entry.getKey().isInstance(artifact)) {
+        entry.getValue().add(artifact);
+      }
+    }
+  }
+
+  /**
+   * Subset views of a frozen set can't change, so only views of a modifiable
+   * set disable the index.
+   */
+  private void noteViewEscaped() {
+    if (treeSet instanceof TreeSet<?>) {
+      viewsEscaped = true;
+      typeIndex = null;
+    }
+  }
+
+  private void removeFromIndex(Object artifact) {
+    if (typeIndex == null) {
+      return;
+    }
+    for (Map.Entry<Class<?>, SortedSet<Artifact<?>>> entry : typeIndex.entrySet()) {
+      /*
+       * Remove from every type, not just those of the given artifact: an equal
+       * artifact of another type (such as an EmittedArtifact with the same
+       * partial path) may be the one that was removed.
+       */
+      entry.getValue().remove(artifact);
+    }
+  }
+
+  private SortedSet<Artifact<?>> scan(Class<?> artifactType) {
+    SortedSet<Artifact<?>> toReturn = new TreeSet<Artifact<?>>();
+    for (Artifact<?> artifact : treeSet) {
+      if (artifactType.isInstance(artifact)) {
+        toReturn.add(artifact);
+      }
+    }
+    return toReturn;
+  }
 }
@@ -17,6 +17,7 @@ package com.google.gwt.core.ext.linker;
 
 import com.google.gwt.core.ext.Linker;
 
+import java.util.Arrays;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.SortedSet;
@@ -85,6 +86,16 @@ public abstract class CompilationResult extends Artifact<CompilationResult> {
    */
   public abstract SymbolData[] getSymbolMap();
 
+  /**
+   * Returns the same symbols as {@link #getSymbolMap()}, in the same order.
+   * Implementations may produce the symbols lazily, so linkers that only need
+   * to look at each symbol once should prefer this to
+   * {@link #getSymbolMap()}, which must hold all of them at the same time.
+   */
+  public Iterable<SymbolData> getSymbolMapEntries() {
+    return Arrays.asList(getSymbolMap());
+  }
+
   @Override
   public final int hashCode() {
     return getStrongName().hashCode();
@@ -69,6 +69,11 @@ public class DelegatingCompilationResult extends CompilationResult {
     return delegate.getSymbolMap();
   }
 
+  @Override
+  public Iterable<SymbolData> getSymbolMapEntries() {
+    return delegate.getSymbolMapEntries();
+  }
+
   @Override
   public String toString() {
     return delegate.toString();
@@ -19,8 +19,8 @@ import com.google.gwt.core.ext.Linker;
 import com.google.gwt.core.ext.TreeLogger;
 import com.google.gwt.core.ext.UnableToCompleteException;
 import com.google.gwt.dev.util.DiskCache;
+import com.google.gwt.dev.util.DiskCache.RecordOutputStream;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
@@ -49,10 +49,46 @@ public class SyntheticArtifact extends EmittedArtifact {
     this.token = diskCache.writeByteArray(data);
   }
 
+  /**
+   * Creates an artifact with the rest of the contents of <code>data</code>,
+   * which are copied to disk as they are read. The stream is not closed.
+   */
+  public SyntheticArtifact(Class<? extends Linker> linkerType,
+      String partialPath, InputStream data, long lastModified) throws IOException {
+    super(linkerType, partialPath);
+    assert data != null;
+    this.lastModified = lastModified;
+    this.token = diskCache.transferFromStream(data);
+  }
+
+  /**
+   * Creates an artifact whose contents are the record written to
+   * <code>data</code>, which must have been opened on
+   * {@link DiskCache#INSTANCE} and closed. The record is used in place rather
+   * than copied.
+   */
+  public SyntheticArtifact(Class<? extends Linker> linkerType,
+      String partialPath, RecordOutputStream data, long lastModified) {
+    super(linkerType, partialPath);
+    this.lastModified = lastModified;
+    this.token = data.getToken();
+  }
+
+  /**
+   * Creates an artifact with the same contents as <code>data</code>, which
+   * are shared on disk rather than copied.
+   */
+  public SyntheticArtifact(Class<? extends Linker> linkerType,
+      String partialPath, SyntheticArtifact data, long lastModified) {
+    super(linkerType, partialPath);
+    this.lastModified = lastModified;
+    this.token = data.token;
+  }
+
   @Override
   public InputStream getContents(TreeLogger logger)
       throws UnableToCompleteException {
-    return new ByteArrayInputStream(diskCache.readByteArray(token));
+    return diskCache.openStream(token);
   }
 
   @Override
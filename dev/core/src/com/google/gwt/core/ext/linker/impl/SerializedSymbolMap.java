@@ -0,0 +1,150 @@
+/*
+ * Copyright 2013 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.core.ext.linker.impl;
+
+import com.google.gwt.core.ext.linker.SymbolData;
+import com.google.gwt.dev.util.DiskCache;
+import com.google.gwt.dev.util.DiskCache.RecordOutputStream;
+import com.google.gwt.dev.util.DiskCacheToken;
+import com.google.gwt.util.tools.Utility;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Stores the symbol map of a permutation in the {@link DiskCache} as a
+ * sequence of individually serialized {@link SymbolData} records, so that it
+ * can be written and read back one symbol at a time rather than as a single
+ * array.
+ */
+public class SerializedSymbolMap {
+
+  /**
+   * Deserializes the symbols of a map one at a time.
+   */
+  private static class SymbolIterator implements Iterator<SymbolData> {
+    private ObjectInputStream in;
+    private int remaining;
+
+    SymbolIterator(DiskCacheToken token) {
+      try {
+        in = new ObjectInputStream(new BufferedInputStream(token.openStream()));
+        remaining = in.readInt();
+      } catch (IOException e) {
+        throw new RuntimeException("Unable to read symbol map", e);
+      }
+      closeIfDone();
+    }
+
+    @Override
+    public boolean hasNext() {
+      return remaining > 0;
+    }
+
+    @Override
+    public SymbolData next() {
+      if (remaining == 0) {
+        throw new NoSuchElementException();
+      }
+      try {
+        SymbolData symbol = (SymbolData) in.readObject();
+        --remaining;
+        closeIfDone();
+        return symbol;
+      } catch (ClassNotFoundException e) {
+        throw new RuntimeException("Unexpected exception deserializing symbol map", e);
+      } catch (IOException e) {
+        throw new RuntimeException("Unable to read symbol map", e);
+      }
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    private void closeIfDone() {
+      if (remaining == 0) {
+        Utility.close(in);
+        in = null;
+      }
+    }
+  }
+
+  /**
+   * How many symbols are written between resets of the object stream. A reset
+   * clears the back-reference tables of both the writer and the reader, which
+   * would otherwise retain every symbol of the map.
+   */
+  private static final int SYMBOLS_PER_RESET = 1024;
+
+  /**
+   * Returns a view of a serialized symbol map. Each iteration deserializes the
+   * symbols afresh as it advances.
+   */
+  public static Iterable<SymbolData> read(final DiskCacheToken token) {
+    return new Iterable<SymbolData>() {
+      @Override
+      public Iterator<SymbolData> iterator() {
+        return new SymbolIterator(token);
+      }
+    };
+  }
+
+  /**
+   * Deserializes an entire symbol map.
+   */
+  public static SymbolData[] readAll(DiskCacheToken token) {
+    SymbolIterator it = new SymbolIterator(token);
+    SymbolData[] symbols = new SymbolData[it.remaining];
+    for (int i = 0; i < symbols.length; ++i) {
+      symbols[i] = it.next();
+    }
+    return symbols;
+  }
+
+  /**
+   * Serializes a symbol map into the {@link DiskCache}.
+   */
+  public static DiskCacheToken write(SymbolData[] symbols) {
+    RecordOutputStream record = DiskCache.INSTANCE.openOutputStream();
+    ObjectOutputStream out = null;
+    try {
+      out = new ObjectOutputStream(new BufferedOutputStream(record));
+      out.writeInt(symbols.length);
+      for (int i = 0; i < symbols.length; ++i) {
+        out.writeObject(symbols[i]);
+        if ((i + 1) % SYMBOLS_PER_RESET == 0) {
+          out.reset();
+        }
+      }
+      out.close();
+      return new DiskCacheToken(record.getToken());
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to write symbol map", e);
+    } finally {
+      Utility.close(out);
+    }
+  }
+
+  private SerializedSymbolMap() {
+  }
+}
@@ -22,6 +22,7 @@ import com.google.gwt.core.ext.linker.StatementRanges;
 import com.google.gwt.core.ext.linker.SymbolData;
 import com.google.gwt.dev.jjs.PermutationResult;
 import com.google.gwt.dev.util.DiskCache;
+import com.google.gwt.dev.util.DiskCacheToken;
 import com.google.gwt.dev.util.Util;
 import com.google.gwt.dev.util.collect.Lists;
 
@@ -88,7 +89,7 @@ public class StandardCompilationResult extends CompilationResult {
 
   private final String strongName;
 
-  private final long symbolToken;
+  private final DiskCacheToken symbolMap;
 
   private final int permutationId;
 
@@ -96,14 +97,13 @@ public class StandardCompilationResult extends CompilationResult {
     super(StandardLinkerContext.class);
     byte[][] js = permutationResult.getJs();
     this.strongName = Util.computeStrongName(js);
-    byte[] serializedSymbolMap = permutationResult.getSerializedSymbolMap();
     this.statementRanges = permutationResult.getStatementRanges();
     this.permutationId = permutationResult.getPermutation().getId();
     this.jsToken = new long[js.length];
     for (int i = 0; i < jsToken.length; ++i) {
       jsToken[i] = diskCache.writeByteArray(js[i]);
     }
-    this.symbolToken = diskCache.writeByteArray(serializedSymbolMap);
+    this.symbolMap = permutationResult.getSerializedSymbolMap();
   }
 
   /**
@@ -158,6 +158,11 @@ public class StandardCompilationResult extends CompilationResult {
 
   @Override
   public SymbolData[] getSymbolMap() {
-    return diskCache.readObject(symbolToken, SymbolData[].class);
+    return SerializedSymbolMap.readAll(symbolMap);
+  }
+
+  @Override
+  public Iterable<SymbolData> getSymbolMapEntries() {
+    return SerializedSymbolMap.read(symbolMap);
   }
 }
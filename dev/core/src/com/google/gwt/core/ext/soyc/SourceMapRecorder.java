@@ -19,14 +19,18 @@ import com.google.gwt.core.ext.linker.SyntheticArtifact;
 import com.google.gwt.core.linker.SymbolMapsLinker;
 import com.google.gwt.dev.jjs.InternalCompilerException;
 import com.google.gwt.dev.jjs.SourceInfo;
+import com.google.gwt.dev.util.DiskCache;
+import com.google.gwt.dev.util.DiskCache.RecordOutputStream;
 import com.google.gwt.thirdparty.debugging.sourcemap.FilePosition;
 import com.google.gwt.thirdparty.debugging.sourcemap.SourceMapFormat;
 import com.google.gwt.thirdparty.debugging.sourcemap.SourceMapGenerator;
 import com.google.gwt.thirdparty.debugging.sourcemap.SourceMapGeneratorFactory;
+import com.google.gwt.util.tools.Utility;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -48,10 +52,7 @@ public class SourceMapRecorder {
 
   public static void recordSourceMap(List<Map<Range, SourceInfo>> sourceInfoMaps,
        List<SyntheticArtifact> artifacts, int permutationId) {
-    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-
     SourceMapGenerator generator = SourceMapGeneratorFactory.getInstance(SourceMapFormat.V3);
-    OutputStreamWriter out = new OutputStreamWriter(baos);
     int fragment = 0;
     if (!sourceInfoMaps.isEmpty()) {
       for (Map<Range, SourceInfo> sourceMap : sourceInfoMaps) {
@@ -78,15 +79,19 @@ public class SourceMapRecorder {
               new FilePosition(r.getStartLine(), r.getStartColumn()),
               new FilePosition(r.getEndLine(), r.getEndColumn()));
         }
+        Writer out = null;
         try {
-          baos.reset();
+          // Write straight to disk; source maps can be far larger than the JS.
+          RecordOutputStream record = DiskCache.INSTANCE.openOutputStream();
+          out = new BufferedWriter(new OutputStreamWriter(record));
           generator.appendTo(out, "sourceMap" + fragment);
-          out.flush();
-          artifacts.add(new SymbolMapsLinker.SourceMapArtifact(permutationId, fragment,
-              baos.toByteArray()));
+          out.close();
+          artifacts.add(new SymbolMapsLinker.SourceMapArtifact(permutationId, fragment, record));
           fragment++;
         } catch (IOException e) {
           throw new InternalCompilerException(e.toString(), e);
+        } finally {
+          Utility.close(out);
         }
       }
     }
@@ -32,12 +32,19 @@ import com.google.gwt.core.ext.linker.Shardable;
 import com.google.gwt.core.ext.linker.SoftPermutation;
 import com.google.gwt.core.ext.linker.SymbolData;
 import com.google.gwt.core.ext.linker.SyntheticArtifact;
+import com.google.gwt.dev.util.DiskCache;
+import com.google.gwt.dev.util.DiskCache.RecordOutputStream;
 import com.google.gwt.dev.util.Util;
 import com.google.gwt.dev.util.collect.HashMap;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -167,13 +174,23 @@ public class SymbolMapsLinker extends AbstractLinker {
 
     private int permutationId;
     private int fragment;
-    private byte[] js;
 
     public SourceMapArtifact(int permutationId, int fragment, byte[] js) {
       super(SymbolMapsLinker.class, permutationId + '/' + sourceMapFilenameForFragment(fragment), js);
       this.permutationId = permutationId;
       this.fragment = fragment;
-      this.js = js;
+    }
+
+    /**
+     * Creates a source map artifact whose contents are the record written to
+     * <code>js</code>, which must have been opened on
+     * {@link DiskCache#INSTANCE} and closed.
+     */
+    public SourceMapArtifact(int permutationId, int fragment, RecordOutputStream js) {
+      super(SymbolMapsLinker.class, permutationId + '/' + sourceMapFilenameForFragment(fragment),
+          js, System.currentTimeMillis());
+      this.permutationId = permutationId;
+      this.fragment = fragment;
     }
 
     public int getFragment() {
@@ -195,6 +212,8 @@ public class SymbolMapsLinker extends AbstractLinker {
    */
   public static final String STRONG_NAME_SUFFIX = ".symbolMap";
 
+  private static final DiskCache diskCache = DiskCache.INSTANCE;
+
   public static String propertyMapToString(
       Map<SelectionProperty, String> propertyMap) {
     StringWriter writer = new StringWriter();
@@ -245,7 +264,17 @@ public class SymbolMapsLinker extends AbstractLinker {
       artifacts = new ArtifactSet(artifacts);
       Map<Integer, String> permMap = new HashMap<Integer, String>();
 
-      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      // Subclasses written against the buffered hooks still get whole maps.
+      boolean bufferedSymbolMaps = isOverridden("doEmitSymbolMap", TreeLogger.class,
+          ArtifactSet.class, CompilationResult.class, ByteArrayOutputStream.class);
+      boolean bufferedSourceMaps = isOverridden("emitSourceMapString", TreeLogger.class,
+          String.class, String.class);
+      // Otherwise, maps already written to the disk cache are used in place.
+      boolean streamedSymbolMaps = isOverridden("doEmitSymbolMap", TreeLogger.class,
+          ArtifactSet.class, CompilationResult.class, InputStream.class);
+      boolean streamedSourceMaps = isOverridden("emitSourceMap", TreeLogger.class,
+          InputStream.class, String.class);
+
       for (CompilationResult result : artifacts.find(CompilationResult.class)) {
         
         boolean makeSymbolMaps = true;
@@ -259,20 +288,39 @@ public class SymbolMapsLinker extends AbstractLinker {
         }
 
         if (makeSymbolMaps) {
-          PrintWriter pw = new PrintWriter(out);
           permMap.put(result.getPermutationId(), result.getStrongName());
-          doWriteSymbolMap(logger, result, pw);
-          pw.close();
-
-          doEmitSymbolMap(logger, artifacts, result, out);
-          out.reset();
+          if (bufferedSymbolMaps) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            PrintWriter pw = new PrintWriter(out);
+            doWriteSymbolMap(logger, result, pw);
+            pw.close();
+            doEmitSymbolMap(logger, artifacts, result, out);
+          } else {
+            RecordOutputStream out = diskCache.openOutputStream();
+            PrintWriter pw = new PrintWriter(out);
+            doWriteSymbolMap(logger, result, pw);
+            pw.close();
+            if (pw.checkError()) {
+              logger.log(TreeLogger.ERROR, "Unable to write the symbol map for "
+                  + result.getStrongName());
+              throw new UnableToCompleteException();
+            }
+            if (streamedSymbolMaps) {
+              doEmitSymbolMap(logger, artifacts, result, diskCache.openStream(out.getToken()));
+            } else {
+              EmittedArtifact symbolMapArtifact = new SyntheticArtifact(getClass(),
+                  result.getStrongName() + STRONG_NAME_SUFFIX, out, System.currentTimeMillis());
+              // TODO: change to Deploy when possible
+              symbolMapArtifact.setVisibility(Visibility.LegacyDeploy);
+              artifacts.add(symbolMapArtifact);
+            }
+          }
         }
       }
 
 
       for (SourceMapArtifact se : artifacts.find(SourceMapArtifact.class)) {
         // filename is permutation_id/sourceMap<fragmentNumber>.json
-        String sourceMapString = Util.readStreamAsString(se.getContents(logger));
         String strongName = permMap.get(se.getPermutationId());
         String partialPath = strongName + "_sourceMap" + se.getFragment() + ".json";
 
@@ -289,8 +337,17 @@ public class SymbolMapsLinker extends AbstractLinker {
         SyntheticArtifact emArt = null;
         // no need to adjust source map
         if (editArtifact == null) {
-          emArt = emitSourceMapString(logger, sourceMapString, partialPath);
+          if (bufferedSourceMaps) {
+            emArt = emitSourceMapString(logger, Util.readStreamAsString(se.getContents(logger)),
+                partialPath);
+          } else if (streamedSourceMaps) {
+            emArt = emitSourceMap(logger, se.getContents(logger), partialPath);
+          } else {
+            emArt = new SyntheticArtifact(getClass(), partialPath, se, System.currentTimeMillis());
+            emArt.setVisibility(Visibility.LegacyDeploy);
+          }
         } else {
+          String sourceMapString = Util.readStreamAsString(se.getContents(logger));
           SourceMapGeneratorV3 sourceMapGenerator = new SourceMapGeneratorV3();
           try {
             int totalPrefixLines = 0;
@@ -301,14 +358,30 @@ public class SymbolMapsLinker extends AbstractLinker {
             }
             // TODO(cromwellian): apply insert and remove edits
             sourceMapGenerator.mergeMapSection(totalPrefixLines, 0, sourceMapString);
-            StringWriter stringWriter = new StringWriter();
-            sourceMapGenerator.appendTo(stringWriter, "sourceMap");
-            emArt = emitSourceMapString(logger, stringWriter.toString(), partialPath);
+            if (bufferedSourceMaps) {
+              StringWriter stringWriter = new StringWriter();
+              sourceMapGenerator.appendTo(stringWriter, "sourceMap");
+              emArt = emitSourceMapString(logger, stringWriter.toString(), partialPath);
+            } else {
+              RecordOutputStream out = diskCache.openOutputStream();
+              Writer writer = new BufferedWriter(new OutputStreamWriter(out, Util.DEFAULT_ENCODING));
+              sourceMapGenerator.appendTo(writer, "sourceMap");
+              writer.close();
+              if (streamedSourceMaps) {
+                emArt = emitSourceMap(logger, diskCache.openStream(out.getToken()), partialPath);
+              } else {
+                emArt = new SyntheticArtifact(getClass(), partialPath, out,
+                    System.currentTimeMillis());
+                emArt.setVisibility(Visibility.LegacyDeploy);
+              }
+            }
           } catch (Exception e) {
             logger.log(TreeLogger.Type.WARN, "Can't write source map " + partialPath, e);
           }
         }
-        artifacts.add(emArt);
+        if (emArt != null) {
+          artifacts.add(emArt);
+        }
         artifacts.remove(se);
       }
     }
@@ -317,11 +390,32 @@ public class SymbolMapsLinker extends AbstractLinker {
 
   /**
    * Override to change the manner in which the symbol map is emitted.
+   *
+   * @deprecated override
+   *             {@link #doEmitSymbolMap(TreeLogger, ArtifactSet, CompilationResult, InputStream)}
+   *             instead, which does not need the whole symbol map in memory
    */
+  @Deprecated
   protected void doEmitSymbolMap(TreeLogger logger, ArtifactSet artifacts,
       CompilationResult result, ByteArrayOutputStream out)
       throws UnableToCompleteException {
-    EmittedArtifact symbolMapArtifact = emitBytes(logger, out.toByteArray(),
+    doEmitSymbolMap(logger, artifacts, result, new ByteArrayInputStream(out.toByteArray()));
+  }
+
+  /**
+   * Override to change the manner in which the symbol map is emitted.
+   *
+   * @param logger the logger to write to
+   * @param artifacts the artifact set to add the symbol map to
+   * @param result the compilation result
+   * @param symbolMap the contents of the symbol map, which should be consumed
+   *          and closed
+   * @throws UnableToCompleteException if an error occurs
+   */
+  protected void doEmitSymbolMap(TreeLogger logger, ArtifactSet artifacts,
+      CompilationResult result, InputStream symbolMap)
+      throws UnableToCompleteException {
+    EmittedArtifact symbolMapArtifact = emitInputStream(logger, symbolMap,
         result.getStrongName() + STRONG_NAME_SUFFIX);
     // TODO: change to Deploy when possible
     symbolMapArtifact.setVisibility(Visibility.LegacyDeploy);
@@ -349,7 +443,7 @@ public class SymbolMapsLinker extends AbstractLinker {
     pw.println("# jsName, jsniIdent, className, memberName, sourceUri, sourceLine, fragmentNumber");
     StringBuilder sb = new StringBuilder(1024);
     char[] buf = new char[1024];
-    for (SymbolData symbol : result.getSymbolMap()) {
+    for (SymbolData symbol : result.getSymbolMapEntries()) {
       sb.append(symbol.getSymbolName());
 
       sb.append(',');
@@ -389,10 +483,47 @@ public class SymbolMapsLinker extends AbstractLinker {
     }
   }
 
+  /**
+   * Override to change the manner in which a source map is emitted.
+   *
+   * @param logger the logger to write to
+   * @param contents the source map, which should be consumed and closed
+   * @param partialPath the path of the source map
+   * @return the artifact to emit
+   * @throws UnableToCompleteException if an error occurs
+   */
+  protected SyntheticArtifact emitSourceMap(TreeLogger logger, InputStream contents,
+      String partialPath) throws UnableToCompleteException {
+    SyntheticArtifact emArt = emitInputStream(logger, contents, partialPath);
+    emArt.setVisibility(Visibility.LegacyDeploy);
+    return emArt;
+  }
+
+  /**
+   * @deprecated override {@link #emitSourceMap(TreeLogger, InputStream, String)}
+   *             instead, which does not need the whole source map in memory
+   */
+  @Deprecated
   protected SyntheticArtifact emitSourceMapString(TreeLogger logger, String contents,
       String partialPath) throws UnableToCompleteException {
     SyntheticArtifact emArt = emitString(logger, contents, partialPath);
     emArt.setVisibility(Visibility.LegacyDeploy);
     return emArt;
   }
+
+  /**
+   * Returns <code>true</code> if a subclass overrides the given method of this
+   * class.
+   */
+  private boolean isOverridden(String name, Class<?>... parameterTypes) {
+    for (Class<?> c = getClass(); c != SymbolMapsLinker.class; c = c.getSuperclass()) {
+      try {
+        c.getDeclaredMethod(name, parameterTypes);
+        return true;
+      } catch (NoSuchMethodException e) {
+        // Keep looking in the superclass.
+      }
+    }
+    return false;
+  }
 }
@@ -28,9 +28,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
 
 /**
  * Represents a factory for implementations of an endpoint that will invoke
@@ -42,7 +47,9 @@ public abstract class PermutationWorkerFactory {
 
   /**
    * Coordinates the actions of a set of {@link PermutationWorker}s, running
-   * each in its own thread.
+   * each in its own thread. All workers take from one queue that hands out the
+   * most expensive remaining permutation first, so that a large permutation is
+   * not left to run alone after every other worker has gone idle.
    */
   private static class Manager {
 
@@ -54,6 +61,8 @@ public abstract class PermutationWorkerFactory {
      * Runs a {@link PermutationWorker} on its own thread.
      */
     private class WorkerThread implements Runnable {
+      private volatile long busyNanos;
+      private volatile int compiled;
       private final PermutationWorker worker;
 
       public WorkerThread(PermutationWorker worker) {
@@ -70,7 +79,12 @@ public abstract class PermutationWorkerFactory {
             }
             TreeLogger logger = work.getLogger();
             try {
+              long start = System.nanoTime();
               worker.compile(logger, work.getPerm(), work.getResultFile());
+              long elapsed = System.nanoTime() - start;
+              busyNanos += elapsed;
+              ++compiled;
+              recordCost(work.getPerm(), elapsed / 1000000L);
               logger.log(TreeLogger.DEBUG, "Successfully compiled permutation");
               resultsQueue.put(Result.SUCCESS);
             } catch (TransientWorkerException e) {
@@ -97,7 +111,20 @@ public abstract class PermutationWorkerFactory {
       }
     }
 
-    private static final Work POISON_PILL = new Work(null, null, null);
+    /**
+     * Sorts before all real work, so that workers stop as soon as possible.
+     */
+    private static final Work POISON_PILL = new Work(null, null, null, Long.MAX_VALUE, 0);
+
+    private static final Comparator<Work> MOST_EXPENSIVE_FIRST = new Comparator<Work>() {
+      public int compare(Work a, Work b) {
+        if (a.getCost() != b.getCost()) {
+          return a.getCost() > b.getCost() ? -1 : 1;
+        }
+        // Keep the original order among permutations of equal cost.
+        return a.getSequence() - b.getSequence();
+      }
+    };
 
     public static void run(TreeLogger logger, List<Work> work,
         List<PermutationWorker> workers) throws UnableToCompleteException {
@@ -121,14 +148,19 @@ public abstract class PermutationWorkerFactory {
         List<PermutationWorker> workers) throws UnableToCompleteException {
 
       // Initialize state.
-      workQueue = new LinkedBlockingQueue<Work>(work);
+      workQueue = new PriorityBlockingQueue<Work>(Math.max(1, work.size()), MOST_EXPENSIVE_FIRST);
+      workQueue.addAll(work);
       resultsQueue = new LinkedBlockingQueue<Result>();
 
+      long startNanos = System.nanoTime();
       List<Thread> threads = new ArrayList<Thread>(workers.size());
+      List<WorkerThread> workerThreads = new ArrayList<WorkerThread>(workers.size());
       try {
         for (PermutationWorker worker : workers) {
-          Thread thread = new Thread(new WorkerThread(worker), worker.getName());
+          WorkerThread workerThread = new WorkerThread(worker);
+          Thread thread = new Thread(workerThread, worker.getName());
           threads.add(thread);
+          workerThreads.add(workerThread);
           thread.start();
         }
 
@@ -156,6 +188,7 @@ public abstract class PermutationWorkerFactory {
         for (int i = 0; i < aliveWorkers; ++i) {
           workQueue.add(POISON_PILL);
         }
+        logUtilization(logger, workerThreads, System.nanoTime() - startNanos);
 
         if (workToDo > 0) {
           logger.log(TreeLogger.ERROR,
@@ -174,21 +207,44 @@ public abstract class PermutationWorkerFactory {
         }
       }
     }
+
+    private void logUtilization(TreeLogger logger, List<WorkerThread> workerThreads,
+        long wallNanos) {
+      if (!logger.isLoggable(TreeLogger.DEBUG) || wallNanos <= 0) {
+        return;
+      }
+      TreeLogger branch = logger.branch(TreeLogger.DEBUG, "Permutation worker utilization over "
+          + (wallNanos / 1000000L) + "ms");
+      for (WorkerThread workerThread : workerThreads) {
+        long busyNanos = workerThread.busyNanos;
+        branch.log(TreeLogger.DEBUG, workerThread.worker.getName() + ": "
+            + workerThread.compiled + " permutation(s), busy " + (busyNanos / 1000000L) + "ms ("
+            + (100 * busyNanos / wallNanos) + "%)");
+      }
+    }
   }
 
   /**
    * Represents work to do.
    */
   private static class Work {
+    private final long cost;
     private final TreeLogger logger;
     private final Permutation perm;
     private final FileBackedObject<PermutationResult> resultFile;
+    private final int sequence;
 
     public Work(TreeLogger logger, Permutation perm,
-        FileBackedObject<PermutationResult> resultFile) {
+        FileBackedObject<PermutationResult> resultFile, long cost, int sequence) {
       this.logger = logger;
       this.perm = perm;
       this.resultFile = resultFile;
+      this.cost = cost;
+      this.sequence = sequence;
+    }
+
+    public long getCost() {
+      return cost;
     }
 
     public TreeLogger getLogger() {
@@ -202,6 +258,10 @@ public abstract class PermutationWorkerFactory {
     public FileBackedObject<PermutationResult> getResultFile() {
       return resultFile;
     }
+
+    public int getSequence() {
+      return sequence;
+    }
   }
 
   /**
@@ -216,6 +276,38 @@ public abstract class PermutationWorkerFactory {
    */
   public static final int WORKERS_AUTO = 0;
 
+  /**
+   * A Java system property giving the heap, in megabytes, that one local
+   * permutation worker is expected to need. With {@link #WORKERS_AUTO}, the
+   * number of local workers (in-process threads and external processes alike)
+   * is the number of processors, limited by how many such budgets fit in the
+   * maximum heap.
+   */
+  public static final String WORKER_HEAP_PROPERTY = "gwt.jjs.permutationWorkerHeapMb";
+
+  private static final int DEFAULT_WORKER_HEAP_MB = 256;
+
+  /**
+   * How many permutation times {@link #recordCost} keeps. A long-running
+   * process may compile many modules, so the least recently used times are
+   * dropped once there are more than this.
+   */
+  // @VisibleForTesting
+  static final int MAX_RECORDED_COSTS = 1000;
+
+  /**
+   * How long, in milliseconds, each permutation took when it was last compiled
+   * in this process, keyed by its property values. Synchronized since workers
+   * record times concurrently.
+   */
+  private static final Map<String, Long> permutationTimes = Collections
+      .synchronizedMap(new LinkedHashMap<String, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Entry<String, Long> eldest) {
+          return size() > MAX_RECORDED_COSTS;
+        }
+      });
+
   /**
    * Compiles all Permutations in a Precompilation and returns an array of Files
    * that can be consumed by Link using the system-default
@@ -252,13 +344,14 @@ public abstract class PermutationWorkerFactory {
 
     // Create the work.
     List<Work> work = new ArrayList<Work>(permutations.length);
+    long[] costs = estimateCosts(permutations);
     for (int i = 0; i < permutations.length; ++i) {
       Permutation perm = permutations[i];
       if (logger.isLoggable(TreeLogger.DEBUG)) {
         logger.log(TreeLogger.DEBUG,
             "Creating worker permutation " + perm.getId() + " of " + permutations.length);
       }
-      work.add(new Work(logger, perm, resultFiles.get(i)));
+      work.add(new Work(logger, perm, resultFiles.get(i), costs[i], i));
     }
 
     // Create the workers.
@@ -341,6 +434,44 @@ public abstract class PermutationWorkerFactory {
     return Collections.unmodifiableList(mutableFactories);
   }
 
+  /**
+   * Estimates the relative cost of compiling each permutation. A permutation
+   * compiled earlier in this process is expected to take as long as it did
+   * then; any other permutation is expected to take as long as the average
+   * soft permutation seen so far, times its number of soft permutations.
+   */
+  static long[] estimateCosts(Permutation[] permutations) {
+    long knownTime = 0;
+    int knownSoftPermutations = 0;
+    Long[] previousTimes = new Long[permutations.length];
+    for (int i = 0; i < permutations.length; ++i) {
+      previousTimes[i] = permutationTimes.get(permutations[i].prettyPrint());
+      if (previousTimes[i] != null) {
+        knownTime += previousTimes[i];
+        knownSoftPermutations += permutations[i].getPropertyOracles().length;
+      }
+    }
+    long timePerSoftPermutation = knownSoftPermutations == 0 ? 1
+        : Math.max(1, knownTime / knownSoftPermutations);
+
+    long[] costs = new long[permutations.length];
+    for (int i = 0; i < permutations.length; ++i) {
+      if (previousTimes[i] != null) {
+        costs[i] = previousTimes[i];
+      } else {
+        costs[i] = permutations[i].getPropertyOracles().length * timePerSoftPermutation;
+      }
+    }
+    return costs;
+  }
+
+  /**
+   * Records how long a permutation took, for {@link #estimateCosts}.
+   */
+  static void recordCost(Permutation perm, long millis) {
+    permutationTimes.put(perm.prettyPrint(), millis);
+  }
+
   /**
    * Create as many workers as possible to service the Permutations.
    */
@@ -348,8 +479,8 @@ public abstract class PermutationWorkerFactory {
       int workersNeeded, int localWorkers, List<PermutationWorker> workers)
       throws UnableToCompleteException {
     if (localWorkers <= WORKERS_AUTO) {
-      // TODO: something smarter?
-      localWorkers = 1;
+      localWorkers = getAutoLocalWorkers();
+      logger.log(TreeLogger.TRACE, "Using " + localWorkers + " local workers");
     }
 
     for (PermutationWorkerFactory factory : PermutationWorkerFactory.createAll(logger)) {
@@ -379,6 +510,14 @@ public abstract class PermutationWorkerFactory {
     }
   }
 
+  private static int getAutoLocalWorkers() {
+    long workerHeap = Math.max(1, Integer.getInteger(WORKER_HEAP_PROPERTY,
+        DEFAULT_WORKER_HEAP_MB)) * 1024L * 1024L;
+    long heapBudget = Runtime.getRuntime().maxMemory() / workerHeap;
+    int processors = Runtime.getRuntime().availableProcessors();
+    return (int) Math.max(1, Math.min(processors, heapBudget));
+  }
+
   /**
    * Return some number of PermutationWorkers.
    *
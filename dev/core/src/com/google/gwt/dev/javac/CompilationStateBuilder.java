@@ -52,8 +52,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Manages a centralized cache for compiled units.
@@ -134,7 +137,7 @@ public class CompilationStateBuilder {
           builder.setClasses(compiledClasses).setTypes(types).setDependencies(dependencies)
               .setJsniMethods(jsniMethods.values()).setMethodArgs(methodArgs).setProblems(
                   cud.compilationResult().getProblems());
-          buildQueue.add(builder);
+          buildQueue.add(new BuildJob(nextBuildSequence++, builder));
         } finally {
           event.end();
         }
@@ -150,7 +153,13 @@ public class CompilationStateBuilder {
 
     private final GwtAstBuilder astBuilder = new GwtAstBuilder();
 
-    private transient LinkedBlockingQueue<CompilationUnitBuilder> buildQueue;
+    private transient LinkedBlockingQueue<BuildJob> buildQueue;
+
+    /**
+     * The order in which JDT handed builders to the {@link UnitProcessor}; used
+     * to keep the output of the parallel build stage deterministic.
+     */
+    private transient int nextBuildSequence;
 
     /**
      * The JDT compiler.
@@ -237,59 +246,77 @@ public class CompilationStateBuilder {
       do {
         final TreeLogger branch = logger.branch(TreeLogger.TRACE, "Compiling...");
         // Compile anything that needs to be compiled.
-        buildQueue = new LinkedBlockingQueue<CompilationUnitBuilder>();
-        final ArrayList<CompilationUnit> newlyBuiltUnits = new ArrayList<CompilationUnit>();
-        final CompilationUnitBuilder sentinel = CompilationUnitBuilder.create((GeneratedUnit) null);
-        final Throwable[] workerException = new Throwable[1];
+        buildQueue = new LinkedBlockingQueue<BuildJob>();
+        nextBuildSequence = 0;
+        final ConcurrentSkipListMap<Integer, CompilationUnit> builtUnitsBySequence =
+            new ConcurrentSkipListMap<Integer, CompilationUnit>();
+        final AtomicReference<Throwable> workerException = new AtomicReference<Throwable>();
+        final AtomicInteger processedCompilationUnitBuilders = new AtomicInteger();
         final ProgressLogger progressLogger =
             new ProgressLogger(branch, TreeLogger.TRACE, builders.size(), 10);
-        Thread buildThread = new Thread() {
-          @Override
-          public void run() {
-            int processedCompilationUnitBuilders = 0;
-            try {
-              do {
-                CompilationUnitBuilder builder = buildQueue.take();
-                if (!progressLogger.isTimerStarted()) {
-                  // Set start time here, after first job has arrived, since it can take a little
-                  // while for the first job to arrive, and this helps with the accuracy of the
-                  // estimated times.
-                  progressLogger.startTimer();
-                }
-                if (builder == sentinel) {
-                  return;
-                }
-                // Expensive, must serialize GWT AST types to bytes.
-                CompilationUnit unit = builder.build();
-                newlyBuiltUnits.add(unit);
-
-                processedCompilationUnitBuilders++;
-                progressLogger.updateProgress(processedCompilationUnitBuilders);
-              } while (true);
-            } catch (Throwable e) {
-              workerException[0] = e;
+        int numBuildThreads = getBuildThreadCount(builders.size());
+        List<Thread> buildThreads = new ArrayList<Thread>(numBuildThreads);
+        for (int i = 0; i < numBuildThreads; ++i) {
+          Thread buildThread = new Thread() {
+            @Override
+            public void run() {
+              Event buildEvent = SpeedTracerLogger.start(DevModeEventType.CSB_BUILD_UNITS,
+                  "thread", getName());
+              try {
+                do {
+                  BuildJob job = buildQueue.take();
+                  synchronized (progressLogger) {
+                    if (!progressLogger.isTimerStarted()) {
+                      // Set start time here, after first job has arrived, since it can take a
+                      // little while for the first job to arrive, and this helps with the
+                      // accuracy of the estimated times.
+                      progressLogger.startTimer();
+                    }
+                  }
+                  if (job == BuildJob.SENTINEL) {
+                    // Leave the sentinel in place for the remaining workers.
+                    buildQueue.add(job);
+                    return;
+                  }
+                  // Expensive, must serialize GWT AST types to bytes.
+                  CompilationUnit unit = job.builder.build();
+                  builtUnitsBySequence.put(job.sequence, unit);
+
+                  int processed = processedCompilationUnitBuilders.incrementAndGet();
+                  synchronized (progressLogger) {
+                    progressLogger.updateProgress(processed);
+                  }
+                } while (true);
+              } catch (Throwable e) {
+                workerException.compareAndSet(null, e);
+              } finally {
+                buildEvent.end();
+              }
             }
-          }
-        };
-        buildThread.setName("CompilationUnitBuilder");
-        buildThread.start();
+          };
+          buildThread.setName("CompilationUnitBuilder-" + i);
+          buildThread.start();
+          buildThreads.add(buildThread);
+        }
         Event jdtCompilerEvent = SpeedTracerLogger.start(eventType);
         long compilationStartNanos = System.nanoTime();
         try {
           compiler.doCompile(branch, builders);
         } finally {
           jdtCompilerEvent.end();
+          buildQueue.add(BuildJob.SENTINEL);
         }
-        buildQueue.add(sentinel);
         try {
-          buildThread.join();
+          for (Thread buildThread : buildThreads) {
+            buildThread.join();
+          }
           long compilationNanos = System.nanoTime() - compilationStartNanos;
           // Convert nanos to seconds.
           double compilationSeconds = compilationNanos / (double) TimeUnit.SECONDS.toNanos(1);
           branch.log(TreeLogger.TRACE,
               String.format("Compilation completed in %.02f seconds", compilationSeconds));
-          if (workerException[0] != null) {
-            throw workerException[0];
+          if (workerException.get() != null) {
+            throw workerException.get();
           }
         } catch (RuntimeException e) {
           throw e;
@@ -298,6 +325,9 @@ public class CompilationStateBuilder {
         } finally {
           buildQueue = null;
         }
+        // Units come back from the workers in any order; restore JDT's order.
+        final List<CompilationUnit> newlyBuiltUnits =
+            new ArrayList<CompilationUnit>(builtUnitsBySequence.values());
         resultUnits.addAll(newlyBuiltUnits);
         builders.clear();
 
@@ -381,6 +411,32 @@ public class CompilationStateBuilder {
     }
   }
 
+  /**
+   * A Java system property that can be used to change the number of threads
+   * that turn processed {@link CompilationUnitBuilder}s into
+   * {@link CompilationUnit}s. Defaults to the number of available processors.
+   */
+  public static final String BUILD_THREADS_PROPERTY = "gwt.csb.buildThreads";
+
+  /**
+   * A unit of work for the build threads, tagged with the order in which JDT
+   * finished processing it.
+   */
+  private static final class BuildJob {
+    /**
+     * Tells a build thread there is no more work.
+     */
+    static final BuildJob SENTINEL = new BuildJob(-1, null);
+
+    final CompilationUnitBuilder builder;
+    final int sequence;
+
+    BuildJob(int sequence, CompilationUnitBuilder builder) {
+      this.sequence = sequence;
+      this.builder = builder;
+    }
+  }
+
   private static final CompilationStateBuilder instance = new CompilationStateBuilder();
 
   /**
@@ -435,6 +491,16 @@ public class CompilationStateBuilder {
     return instance;
   }
 
+  /**
+   * Returns the number of build threads to use for a batch of the given size.
+   * There is no point starting more threads than there are units to build.
+   */
+  static int getBuildThreadCount(int numBuilders) {
+    int numThreads = Integer.getInteger(BUILD_THREADS_PROPERTY,
+        Runtime.getRuntime().availableProcessors());
+    return Math.max(1, Math.min(numThreads, numBuilders));
+  }
+
   /**
    * Called to setup the directory where the persistent {@link CompilationUnit}
    * cache should be stored. Only the first call to init() will have an effect.
@@ -39,6 +39,22 @@ class MemoryUnitCache implements UnitCache {
       this.origin = source;
     }
 
+    /**
+     * Returns the content id of the unit. Subclasses that load units lazily
+     * must answer without loading the unit.
+     */
+    public ContentId getContentId() {
+      return unit.getContentId();
+    }
+
+    /**
+     * Returns the last modified time of the unit. Subclasses that load units
+     * lazily must answer without loading the unit.
+     */
+    public long getLastModified() {
+      return unit.getLastModified();
+    }
+
     public UnitOrigin getOrigin() {
       return origin;
     }
@@ -138,7 +154,9 @@ class MemoryUnitCache implements UnitCache {
     String resourcePath = newUnit.getResourcePath();
     UnitCacheEntry oldEntry = unitMap.get(resourcePath);
     if (oldEntry != null) {
-      remove(oldEntry.getUnit());
+      // Don't use remove(CompilationUnit); the old unit may not be loaded yet.
+      unitMap.remove(resourcePath);
+      unitMapByContentId.remove(oldEntry.getContentId());
     }
     unitMap.put(resourcePath, newEntry);
     unitMapByContentId.put(newUnit.getContentId(), newEntry);
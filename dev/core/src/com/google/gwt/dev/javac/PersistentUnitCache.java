@@ -26,13 +26,22 @@ import com.google.gwt.util.tools.Utility;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -56,14 +65,19 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * intended to support only a single PersistentUnitCache instance in the
  * compiler at a time.
  * <p>
- * As new units are compiled, the cache data is appended to a log. This allows
- * Java serialization to efficiently store references. The next time the cache
- * is started, all logs are replayed and loaded into the cache in chronological
- * order, with newer units taking precedence. A new cache file is created for
- * any newly compiled units in this session. After a threshold of a certain
- * number of files in the directory is reached
+ * As new units are compiled, they are appended to a log as individually
+ * serialized records. Each record starts with a small header holding the
+ * unit's resource path, {@link ContentId}, last modified time and AST
+ * serialization version, followed by the serialized unit. The next time the
+ * cache is started, only the record headers are read, in chronological order,
+ * with newer units taking precedence. A unit is read from its record and
+ * deserialized the first time it is asked for, so units that belong to other
+ * modules never reach the heap. A new cache file is created for any newly
+ * compiled units in this session. After a threshold of a
+ * certain number of files in the directory is reached
  * {@link PersistentUnitCache#CACHE_FILE_THRESHOLD} , the cache files are
- * consolidated back into a single file.
+ * consolidated back into a single file in the background by copying the raw
+ * records of live units, without deserializing them.
  * 
  * <p>
  * System Properties (see {@link UnitCacheFactory}).
@@ -78,10 +92,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * Known Issues:
  * 
  * <ul>
- * <li>This design uses an eager cache to load every unit in the cache on the
- * first reference to find() or add(). When the cache is large (10000 units), it
- * uses lots of heap and takes 5-10 seconds. Once the PersistentUnitCache is
- * created, it starts eagerly loading the cache in a background thread).</li>
+ * <li>The record headers of every cache file are read on the first reference
+ * to find() or add(). Once the PersistentUnitCache is created, it starts
+ * reading them in a background thread.</li>
  * 
  * <li>Although units logged to disk with the same resource path are eventually
  * cleaned up, the most recently compiled unit stays in the cache forever. This
@@ -107,6 +120,176 @@ class PersistentUnitCache extends MemoryUnitCache {
   static final String UNIT_CACHE_PREFIX = "gwt-unitCache";
   static final String CACHE_FILE_PREFIX = UNIT_CACHE_PREFIX + "-";
 
+  /**
+   * Written at the start of every cache file; files without it are stale logs
+   * from an older format and are deleted.
+   */
+  static final int CACHE_FILE_MAGIC = 0x47554331;
+
+  /**
+   * A unit read from a cache file. The header is read eagerly; the unit itself
+   * is read from the file and deserialized on first use. The file is only open
+   * while a record is read, so old cache files can always be deleted.
+   */
+  private static class LazyUnitCacheEntry extends UnitCacheEntry {
+    private final ContentId contentId;
+    private final long lastModified;
+    private final String resourcePath;
+    private final int length;
+    private File file;
+    private long offset;
+    private CachedCompilationUnit unit;
+    private boolean unreadable;
+
+    LazyUnitCacheEntry(String resourcePath, ContentId contentId, long lastModified, File file,
+        long offset, int length) {
+      super(null, UnitOrigin.PERSISTENT);
+      this.resourcePath = resourcePath;
+      this.contentId = contentId;
+      this.lastModified = lastModified;
+      this.file = file;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    @Override
+    public ContentId getContentId() {
+      return contentId;
+    }
+
+    @Override
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    public String getResourcePath() {
+      return resourcePath;
+    }
+
+    /**
+     * Returns the serialized unit, read from the cache file.
+     */
+    public synchronized byte[] getSerializedUnit() throws IOException {
+      RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+      try {
+        FileChannel channel = randomAccessFile.getChannel();
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+          if (channel.read(buffer, offset + buffer.position()) < 0) {
+            throw new EOFException("Truncated record for " + resourcePath + " in " + file);
+          }
+        }
+        return buffer.array();
+      } finally {
+        Utility.close(randomAccessFile);
+      }
+    }
+
+    @Override
+    public synchronized CompilationUnit getUnit() {
+      if (unit == null && !unreadable) {
+        ObjectInputStream inputStream = null;
+        try {
+          inputStream = new ObjectInputStream(new ByteArrayInputStream(getSerializedUnit()));
+          unit = (CachedCompilationUnit) inputStream.readObject();
+        } catch (IOException e) {
+          unreadable = true;
+        } catch (ClassNotFoundException e) {
+          unreadable = true;
+        } catch (ClassCastException e) {
+          unreadable = true;
+        } finally {
+          Utility.close(inputStream);
+        }
+      }
+      return unit;
+    }
+
+    /**
+     * Points this entry at a copy of its record, so the file it was loaded
+     * from can be deleted.
+     */
+    synchronized void relocate(File newFile, long newOffset) {
+      file = newFile;
+      offset = newOffset;
+    }
+  }
+
+  /**
+   * A record copied to the current cache file that its entry should be moved
+   * to once the file is flushed.
+   */
+  private static class Relocation {
+    final LazyUnitCacheEntry entry;
+    final File file;
+    final long offset;
+
+    Relocation(LazyUnitCacheEntry entry, File file, long offset) {
+      this.entry = entry;
+      this.file = file;
+      this.offset = offset;
+    }
+  }
+
+  /**
+   * Tracks how far a stream has been read, so record offsets can be noted
+   * while the headers are parsed.
+   */
+  private static class PositionInputStream extends FilterInputStream {
+    private long position;
+
+    PositionInputStream(InputStream in) {
+      super(in);
+    }
+
+    public long getPosition() {
+      return position;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        position++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int read = super.read(b, off, len);
+      if (read > 0) {
+        position += read;
+      }
+      return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      position += skipped;
+      return skipped;
+    }
+
+    /**
+     * Skips exactly {@code n} bytes.
+     */
+    void skipFully(long n) throws IOException {
+      while (n > 0) {
+        long skipped = skip(n);
+        if (skipped <= 0) {
+          throw new EOFException();
+        }
+        n -= skipped;
+      }
+    }
+  }
+
   /**
    * Creates a new file with a name based on the current system time.
    */
@@ -155,6 +338,14 @@ class PersistentUnitCache extends MemoryUnitCache {
     return new File[0];
   }
 
+  /**
+   * Creates the {@link ContentId} stored in a record header.
+   */
+  private static ContentId toContentId(String value) {
+    int colon = value.lastIndexOf(':');
+    return new ContentId(value.substring(0, colon), value.substring(colon + 1));
+  }
+
   /**
    * There is no significance in the return value, we just want to be able
    * to tell if the purgeOldCacheFilesTask has completed.
@@ -169,6 +360,20 @@ class PersistentUnitCache extends MemoryUnitCache {
         // Delete all cache files in the directory except for the currently open
         // file.
         SpeedTracerLogger.Event deleteEvent = SpeedTracerLogger.start(DevModeEventType.DELETE_CACHE);
+        try {
+          // Units not yet read must be read from their copies from now on.
+          currentCacheFileStream.flush();
+          for (Relocation relocation : pendingRelocations) {
+            relocation.entry.relocate(relocation.file, relocation.offset);
+          }
+        } catch (IOException e) {
+          logger.log(TreeLogger.WARN, "Unable to flush " + currentCacheFile
+              + "; keeping old cache files.", e);
+          deleteEvent.end();
+          return;
+        } finally {
+          pendingRelocations.clear();
+        }
         File[] filesToDelete = getCacheFiles(cacheDirectory);
         logger.log(TreeLogger.TRACE, "Purging cache files from " + cacheDirectory);
         for (File toDelete : filesToDelete) {
@@ -230,6 +435,12 @@ class PersistentUnitCache extends MemoryUnitCache {
   
   private int unitsWritten = 0;
 
+  /**
+   * Records copied by {@link #cleanup(TreeLogger)} whose entries still point
+   * at old cache files. Only accessed from the background thread.
+   */
+  private final List<Relocation> pendingRelocations = new ArrayList<Relocation>();
+
   private int addedSinceLastCleanup = 0;
 
   /**
@@ -242,7 +453,7 @@ class PersistentUnitCache extends MemoryUnitCache {
    * Current file and stream being written to.
    */
   private File currentCacheFile;
-  private ObjectOutputStream currentCacheFileStream;
+  private DataOutputStream currentCacheFileStream;
 
   private final TreeLogger logger;
 
@@ -316,8 +527,10 @@ class PersistentUnitCache extends MemoryUnitCache {
     try {
       fstream = new FileOutputStream(currentCacheFile);
       bstream = new BufferedOutputStream(fstream);
-      currentCacheFileStream = new ObjectOutputStream(bstream);
+      currentCacheFileStream = openCacheFileStream(bstream);
     } catch (IOException ex) {
+      Utility.close(bstream);
+      Utility.close(fstream);
       closeCurrentCacheFile(currentCacheFile, currentCacheFileStream);
       logger.log(TreeLogger.ERROR, "Error creating cache " + currentCacheFile
           + ". Disabling cache.", ex);
@@ -379,7 +592,8 @@ class PersistentUnitCache extends MemoryUnitCache {
       
       /*
        * Resend all units read in from the in-memory cache to the background
-       * thread. They will be re-written out and the old cache files removed.
+       * thread. Their records will be copied to the current file and the old
+       * cache files removed.
        */
       synchronized (unitMap) {
         for (UnitCacheEntry unitCacheEntry : unitMap.values()) {
@@ -401,13 +615,13 @@ class PersistentUnitCache extends MemoryUnitCache {
   @Override
   public CompilationUnit find(ContentId contentId) {
     awaitUnitCacheMapLoad();
-    return super.find(contentId);
+    return getUnitOrEvict(unitMapByContentId.get(contentId));
   }
 
   @Override
   public CompilationUnit find(String resourcePath) {
     awaitUnitCacheMapLoad();
-    return super.find(resourcePath);
+    return getUnitOrEvict(unitMap.get(resourcePath));
   }
 
   public void rotateCurrentCacheFile() throws UnableToCompleteException {
@@ -425,7 +639,7 @@ class PersistentUnitCache extends MemoryUnitCache {
     try {
       fstream = new FileOutputStream(currentCacheFile);
       bstream = new BufferedOutputStream(fstream);
-      currentCacheFileStream = new ObjectOutputStream(bstream);
+      currentCacheFileStream = openCacheFileStream(bstream);
     } catch (IOException ex) {
       // Close all 3 streams, not sure where the exception occurred.
       Utility.close(bstream);
@@ -459,9 +673,30 @@ class PersistentUnitCache extends MemoryUnitCache {
         public void run() {
           try {
             assert entry.getOrigin() != UnitOrigin.ARCHIVE;
-            CompilationUnit unit = entry.getUnit();
-            assert unit != null;
-            currentCacheFileStream.writeObject(unit);
+            if (entry instanceof LazyUnitCacheEntry) {
+              // Copy the record without deserializing the unit.
+              LazyUnitCacheEntry lazyEntry = (LazyUnitCacheEntry) entry;
+              byte[] serializedUnit;
+              try {
+                serializedUnit = lazyEntry.getSerializedUnit();
+              } catch (IOException e) {
+                evict(lazyEntry);
+                return;
+              }
+              long offset = writeRecord(lazyEntry.getResourcePath(), lazyEntry.getContentId(),
+                  lazyEntry.getLastModified(), GwtAstBuilder.getSerializationVersion(),
+                  serializedUnit);
+              pendingRelocations.add(new Relocation(lazyEntry, currentCacheFile, offset));
+            } else {
+              CompilationUnit unit = entry.getUnit();
+              assert unit != null;
+              ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+              ObjectOutputStream unitStream = new ObjectOutputStream(bytes);
+              unitStream.writeObject(unit);
+              unitStream.close();
+              writeRecord(unit.getResourcePath(), unit.getContentId(), unit.getLastModified(),
+                  GwtAstBuilder.getSerializationVersion(), bytes.toByteArray());
+            }
             unitsWritten++;
           } catch (IOException ex) {
             backgroundService.shutdownNow();
@@ -494,7 +729,61 @@ class PersistentUnitCache extends MemoryUnitCache {
     }
   }
 
-  private void closeCurrentCacheFile(File openFile, ObjectOutputStream stream) {
+  /**
+   * Starts a new cache file by writing the file header.
+   */
+  private DataOutputStream openCacheFileStream(BufferedOutputStream bstream) throws IOException {
+    DataOutputStream stream = new DataOutputStream(bstream);
+    stream.writeInt(CACHE_FILE_MAGIC);
+    return stream;
+  }
+
+  /**
+   * Removes an entry whose unit can't be read, so that it is recompiled rather
+   * than looked up again.
+   */
+  private void evict(UnitCacheEntry entry) {
+    String resourcePath = ((LazyUnitCacheEntry) entry).getResourcePath();
+    synchronized (unitMap) {
+      if (unitMap.get(resourcePath) == entry) {
+        unitMap.remove(resourcePath);
+      }
+      if (unitMapByContentId.get(entry.getContentId()) == entry) {
+        unitMapByContentId.remove(entry.getContentId());
+      }
+    }
+  }
+
+  private CompilationUnit getUnitOrEvict(UnitCacheEntry entry) {
+    if (entry == null) {
+      return null;
+    }
+    CompilationUnit unit = entry.getUnit();
+    if (unit == null && entry instanceof LazyUnitCacheEntry) {
+      evict(entry);
+    }
+    return unit;
+  }
+
+  /**
+   * Appends a record to the current cache file. Must only be called from the
+   * background thread.
+   *
+   * @return the offset of the serialized unit within the file
+   */
+  private long writeRecord(String resourcePath, ContentId contentId, long lastModified,
+      long serializationVersion, byte[] serializedUnit) throws IOException {
+    currentCacheFileStream.writeUTF(resourcePath);
+    currentCacheFileStream.writeUTF(contentId.get());
+    currentCacheFileStream.writeLong(lastModified);
+    currentCacheFileStream.writeLong(serializationVersion);
+    currentCacheFileStream.writeInt(serializedUnit.length);
+    long offset = currentCacheFileStream.size();
+    currentCacheFileStream.write(serializedUnit);
+    return offset;
+  }
+
+  private void closeCurrentCacheFile(File openFile, DataOutputStream stream) {
     Utility.close(stream);
     if (unitsWritten == 0) {
       // Remove useless empty file.
@@ -503,7 +792,8 @@ class PersistentUnitCache extends MemoryUnitCache {
   }
 
   /**
-   * Load everything cached on disk into memory.
+   * Index everything cached on disk. Only record headers are read; units are
+   * deserialized when they are first found.
    */
   private void loadUnitMap(TreeLogger logger, File currentCacheFile) {
     Event loadPersistentUnitEvent =
@@ -516,31 +806,38 @@ class PersistentUnitCache extends MemoryUnitCache {
       if (cacheDirectory.isDirectory() && cacheDirectory.canRead()) {
         File[] files = getCacheFiles(cacheDirectory);
         for (File cacheFile : files) {
-          FileInputStream fis = null;
-          BufferedInputStream bis = null;
-          ObjectInputStream inputStream = null;
           if (cacheFile.equals(currentCacheFile)) {
             continue;
           }
           boolean deleteCacheFile = false;
+          FileInputStream fileStream = null;
           try {
-            fis = new FileInputStream(cacheFile);
-            bis = new BufferedInputStream(fis);
-            /*
-             * It is possible for the next call to throw an exception, leaving
-             * inputStream null and fis still live.
-             */
-            inputStream = new ObjectInputStream(bis);
-            while (true) {
-              CachedCompilationUnit unit = (CachedCompilationUnit) inputStream.readObject();
-              if (unit == null) {
+            long fileLength = cacheFile.length();
+            fileStream = new FileInputStream(cacheFile);
+            PositionInputStream input =
+                new PositionInputStream(new BufferedInputStream(fileStream));
+            DataInputStream header = new DataInputStream(input);
+            if (fileLength < 4 || header.readInt() != CACHE_FILE_MAGIC) {
+              throw new IOException("Not a unit cache file");
+            }
+            while (input.getPosition() < fileLength) {
+              String resourcePath = header.readUTF();
+              ContentId contentId = toContentId(header.readUTF());
+              long lastModified = header.readLong();
+              long serializationVersion = header.readLong();
+              int length = header.readInt();
+              long offset = input.getPosition();
+              if (length < 0 || length > fileLength - offset) {
+                // Truncated record, the writer didn't finish.
                 break;
               }
-              if (unit.getTypesSerializedVersion() != GwtAstBuilder.getSerializationVersion()) {
+              input.skipFully(length);
+              if (serializationVersion != GwtAstBuilder.getSerializationVersion()) {
                 continue;
               }
-              UnitCacheEntry entry = new UnitCacheEntry(unit, UnitOrigin.PERSISTENT);
-              UnitCacheEntry existingEntry = unitMap.get(unit.getResourcePath());
+              UnitCacheEntry entry = new LazyUnitCacheEntry(resourcePath, contentId, lastModified,
+                  cacheFile, offset, length);
+              UnitCacheEntry existingEntry = unitMap.get(resourcePath);
               /*
                * Don't assume that an existing entry is stale - an entry might
                * have been loaded already from another source like a
@@ -549,34 +846,26 @@ class PersistentUnitCache extends MemoryUnitCache {
                * out to be stale, it will be recompiled and the updated unit
                * will win this test the next time the session starts.
                */
-              if (existingEntry != null
-                  && unit.getLastModified() >= existingEntry.getUnit().getLastModified()) {
-                super.remove(existingEntry.getUnit());
-                unitMap.put(unit.getResourcePath(), entry);
-                unitMapByContentId.put(unit.getContentId(), entry);
+              if (existingEntry != null && lastModified >= existingEntry.getLastModified()) {
+                unitMap.remove(resourcePath);
+                unitMapByContentId.remove(existingEntry.getContentId());
+                unitMap.put(resourcePath, entry);
+                unitMapByContentId.put(contentId, entry);
               } else if (existingEntry == null) {
-                unitMap.put(unit.getResourcePath(), entry);
-                unitMapByContentId.put(unit.getContentId(), entry);
+                unitMap.put(resourcePath, entry);
+                unitMapByContentId.put(contentId, entry);
               }
             }
           } catch (EOFException ex) {
-            // Go on to the next file.
+            // Truncated header; keep what was read and go on to the next file.
           } catch (IOException ex) {
             deleteCacheFile = true;
             if (logger.isLoggable(TreeLogger.TRACE)) {
               logger.log(TreeLogger.TRACE, "Ignoring and deleting cache log "
                   + cacheFile.getAbsolutePath() + " due to read error.", ex);
             }
-          } catch (ClassNotFoundException ex) {
-            deleteCacheFile = true;
-            if (logger.isLoggable(TreeLogger.TRACE)) {
-              logger.log(TreeLogger.TRACE, "Ignoring and deleting cache log "
-                  + cacheFile.getAbsolutePath() + " due to deserialization error.", ex);
-            }
           } finally {
-            Utility.close(inputStream);
-            Utility.close(bis);
-            Utility.close(fis);
+            Utility.close(fileStream);
           }
           if (deleteCacheFile) {
             cacheFile.delete();
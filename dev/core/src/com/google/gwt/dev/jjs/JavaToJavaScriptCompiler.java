@@ -30,6 +30,7 @@ import com.google.gwt.core.ext.linker.PrecompilationMetricsArtifact;
 import com.google.gwt.core.ext.linker.StatementRanges;
 import com.google.gwt.core.ext.linker.SymbolData;
 import com.google.gwt.core.ext.linker.SyntheticArtifact;
+import com.google.gwt.core.ext.linker.impl.SerializedSymbolMap;
 import com.google.gwt.core.ext.linker.impl.StandardSymbolData;
 import com.google.gwt.core.ext.soyc.Range;
 import com.google.gwt.core.ext.soyc.SourceMapRecorder;
@@ -89,7 +90,11 @@ import com.google.gwt.dev.jjs.impl.LongEmulationNormalizer;
 import com.google.gwt.dev.jjs.impl.MakeCallsStatic;
 import com.google.gwt.dev.jjs.impl.MethodCallTightener;
 import com.google.gwt.dev.jjs.impl.MethodInliner;
+import com.google.gwt.dev.jjs.impl.ModifiedMethods;
 import com.google.gwt.dev.jjs.impl.OptimizerStats;
+import com.google.gwt.dev.jjs.impl.OptimizerStatsReport;
+import com.google.gwt.dev.jjs.impl.OptimizerTimer;
+import com.google.gwt.dev.jjs.impl.ParallelMethodOptimizer;
 import com.google.gwt.dev.jjs.impl.PostOptimizationCompoundAssignmentNormalizer;
 import com.google.gwt.dev.jjs.impl.Pruner;
 import com.google.gwt.dev.jjs.impl.RecordRebinds;
@@ -126,6 +131,7 @@ import com.google.gwt.dev.js.JsSymbolResolver;
 import com.google.gwt.dev.js.JsUnusedFunctionRemover;
 import com.google.gwt.dev.js.JsVerboseNamer;
 import com.google.gwt.dev.js.SizeBreakdown;
+import com.google.gwt.dev.js.ast.JsBlock;
 import com.google.gwt.dev.js.ast.JsContext;
 import com.google.gwt.dev.js.ast.JsForIn;
 import com.google.gwt.dev.js.ast.JsFunction;
@@ -139,6 +145,7 @@ import com.google.gwt.dev.js.ast.JsProgram;
 import com.google.gwt.dev.js.ast.JsVars;
 import com.google.gwt.dev.js.ast.JsVisitor;
 import com.google.gwt.dev.util.DefaultTextOutput;
+import com.google.gwt.dev.util.DiskCacheToken;
 import com.google.gwt.dev.util.Empty;
 import com.google.gwt.dev.util.Memory;
 import com.google.gwt.dev.util.Pair;
@@ -164,11 +171,17 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.GZIPInputStream;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -179,11 +192,29 @@ import javax.xml.parsers.ParserConfigurationException;
  */
 public class JavaToJavaScriptCompiler {
 
+  /**
+   * The JavaScript and related output of one code-split fragment.
+   */
+  private static class GeneratedFragment {
+    final String js;
+    final StatementRanges ranges;
+    final SizeBreakdown sizeBreakdown;
+    final Map<Range, SourceInfo> sourceInfoMap;
+
+    GeneratedFragment(String js, StatementRanges ranges, SizeBreakdown sizeBreakdown,
+        Map<Range, SourceInfo> sourceInfoMap) {
+      this.js = js;
+      this.ranges = ranges;
+      this.sizeBreakdown = sizeBreakdown;
+      this.sourceInfoMap = sourceInfoMap;
+    }
+  }
+
   private static class PermutationResultImpl implements PermutationResult {
     private final ArtifactSet artifacts = new ArtifactSet();
     private final byte[][] js;
     private final Permutation permutation;
-    private final byte[] serializedSymbolMap;
+    private final DiskCacheToken serializedSymbolMap;
     private final StatementRanges[] statementRanges;
 
     public PermutationResultImpl(String[] js, Permutation permutation, SymbolData[] symbolMap,
@@ -194,13 +225,7 @@ public class JavaToJavaScriptCompiler {
       }
       this.js = bytes;
       this.permutation = permutation;
-      try {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        Util.writeObjectToStream(baos, (Object) symbolMap);
-        this.serializedSymbolMap = baos.toByteArray();
-      } catch (IOException e) {
-        throw new RuntimeException("Should never happen with in-memory stream", e);
-      }
+      this.serializedSymbolMap = SerializedSymbolMap.write(symbolMap);
       this.statementRanges = statementRanges;
     }
 
@@ -225,7 +250,7 @@ public class JavaToJavaScriptCompiler {
     }
 
     @Override
-    public byte[] getSerializedSymbolMap() {
+    public DiskCacheToken getSerializedSymbolMap() {
       return serializedSymbolMap;
     }
 
@@ -251,6 +276,19 @@ public class JavaToJavaScriptCompiler {
 
   private static final String ENUM_NAME_OBFUSCATION_PROPERTY = "compiler.enum.obfuscate.names";
 
+  /**
+   * A Java system property that sets the number of threads that generate the
+   * JavaScript of code-split fragments. Defaults to 1, which generates them one
+   * after another; the output is the same either way.
+   */
+  public static final String CODEGEN_THREADS_PROPERTY = "gwt.jjs.codeGenThreads";
+
+  /**
+   * A rough guess at the size of the code for one top-level statement, used to
+   * size fragment buffers up front.
+   */
+  private static final int ESTIMATED_CHARS_PER_STATEMENT = 128;
+
   /**
    * Continuing to apply optimizations till the rate of change reaches this value causes the AST to
    * reach a fixed point.
@@ -269,6 +307,13 @@ public class JavaToJavaScriptCompiler {
    */
   private static final int MAX_PASSES = 100;
 
+  /**
+   * When set, method-local optimizations after the first pass only revisit
+   * methods that changed in the previous pass, and their callers.
+   */
+  private static final boolean INCREMENTAL_OPTIMIZATION =
+      Boolean.getBoolean("gwt.jjs.incrementalOptimizer");
+
   /**
    * Compiles a particular permutation, based on a precompiled unified AST.
    *
@@ -322,12 +367,19 @@ public class JavaToJavaScriptCompiler {
         instrumentableLines = BaselineCoverageGatherer.exec(jprogram);
       }
 
+      OptimizerStatsReport optimizerReport =
+          OptimizerStatsReport.isEnabled(options.isSoycEnabled())
+              ? new OptimizerStatsReport(permutationId) : null;
+
       // (4) Optimize the normalized Java AST for each permutation.
       int optimizationLevel = options.getOptimizationLevel();
       if (optimizationLevel == OptionOptimize.OPTIMIZE_LEVEL_DRAFT) {
         draftOptimize(jprogram);
       } else {
-        optimize(options, jprogram);
+        List<OptimizerStats> javaStats = optimize(options, jprogram);
+        if (optimizerReport != null) {
+          optimizerReport.add("java", javaStats);
+        }
       }
 
       RemoveEmptySuperCalls.exec(jprogram);
@@ -376,7 +428,10 @@ public class JavaToJavaScriptCompiler {
 
       // (9) Optimize the JS AST.
       if (optimizationLevel > OptionOptimize.OPTIMIZE_LEVEL_DRAFT) {
-        optimizeJs(options, jsProgram, genAstResult.getRight());
+        List<OptimizerStats> jsStats = optimizeJs(options, jsProgram, genAstResult.getRight());
+        if (optimizerReport != null) {
+          optimizerReport.add("js", jsStats);
+        }
 
         /*
          * Coalesce redundant labels in switch statements.
@@ -531,6 +586,11 @@ public class JavaToJavaScriptCompiler {
             options.isSoycHtmlDisabled()));
       }
 
+      if (optimizerReport != null) {
+        toReturn.addArtifacts(Lists.create(optimizerReport.toArtifact()));
+        optimizerReport.checkBaseline(logger);
+      }
+
       // TODO: enable this when ClosureCompiler is enabled
       if (isSourceMapsEnabled) {
         if (options.isClosureCompilerEnabled()) {
@@ -792,7 +852,12 @@ public class JavaToJavaScriptCompiler {
     draftOptimizeEvent.end();
   }
 
-  protected static void optimize(JJSOptions options, JProgram jprogram)
+  /**
+   * Runs the Java optimizers until they stop making progress.
+   *
+   * @return the stats of every pass that ran
+   */
+  protected static List<OptimizerStats> optimize(JJSOptions options, JProgram jprogram)
       throws InterruptedException {
     Event optimizeEvent = SpeedTracerLogger.start(CompilerEventType.OPTIMIZE);
 
@@ -804,6 +869,10 @@ public class JavaToJavaScriptCompiler {
     boolean atMaxLevel = options.getOptimizationLevel() == OptionOptimize.OPTIMIZE_LEVEL_MAX;
     int passLimit = atMaxLevel ? MAX_PASSES : options.getOptimizationLevel();
     float minChangeRate = atMaxLevel ? FIXED_POINT_CHANGE_RATE : EFFICIENT_CHANGE_RATE;
+    // The methods to revisit with method-local passes; null means all of them.
+    Set<JMethod> dirtyMethods = null;
+    ModifiedMethods modifiedMethods =
+        INCREMENTAL_OPTIMIZATION ? new ModifiedMethods(jprogram) : null;
     while (true) {
       passCount++;
       if (passCount > passLimit) {
@@ -814,8 +883,13 @@ public class JavaToJavaScriptCompiler {
         throw new InterruptedException();
       }
       AstDumper.maybeDumpAST(jprogram);
-      OptimizerStats stats = optimizeLoop("Pass " + passCount, jprogram, options, nodeCount);
+      OptimizerStats stats =
+          optimizeLoop("Pass " + passCount, jprogram, options, nodeCount, dirtyMethods,
+              modifiedMethods);
       allOptimizerStats.add(stats);
+      if (modifiedMethods != null) {
+        dirtyMethods = modifiedMethods.collectDirty();
+      }
       lastNodeCount = nodeCount;
       nodeCount = getNodeCount(jprogram);
 
@@ -828,7 +902,8 @@ public class JavaToJavaScriptCompiler {
 
     if (options.shouldOptimizeDataflow()) {
       // Just run it once, because it is very time consuming
-      allOptimizerStats.add(DataflowOptimizer.exec(jprogram));
+      OptimizerTimer timer = OptimizerTimer.start();
+      allOptimizerStats.add(timer.lap(DataflowOptimizer.exec(jprogram)));
     }
 
     if (JProgram.isTracingEnabled()) {
@@ -841,9 +916,15 @@ public class JavaToJavaScriptCompiler {
     }
 
     optimizeEvent.end();
+    return allOptimizerStats;
   }
 
-  protected static void optimizeJs(JJSOptions options, JsProgram jsProgram,
+  /**
+   * Runs the JavaScript optimizers until they stop making progress.
+   *
+   * @return the stats of every pass that ran
+   */
+  protected static List<OptimizerStats> optimizeJs(JJSOptions options, JsProgram jsProgram,
       Collection<JsNode> toInline)
       throws InterruptedException {
     List<OptimizerStats> allOptimizerStats = new ArrayList<OptimizerStats>();
@@ -856,13 +937,14 @@ public class JavaToJavaScriptCompiler {
       Event optimizeJsEvent = SpeedTracerLogger.start(CompilerEventType.OPTIMIZE_JS);
 
       OptimizerStats stats = new OptimizerStats("Pass " + counter);
+      OptimizerTimer timer = OptimizerTimer.start();
 
       // Remove unused functions, possible
-      stats.add(JsStaticEval.exec(jsProgram));
+      stats.add(timer.lap(JsStaticEval.exec(jsProgram)));
       // Inline JavaScript function invocations
-      stats.add(JsInliner.exec(jsProgram, toInline));
+      stats.add(timer.lap(JsInliner.exec(jsProgram, toInline)));
       // Remove unused functions, possible
-      stats.add(JsUnusedFunctionRemover.exec(jsProgram));
+      stats.add(timer.lap(JsUnusedFunctionRemover.exec(jsProgram)));
 
       // Save the stats to print out after optimizers finish.
       allOptimizerStats.add(stats);
@@ -883,6 +965,7 @@ public class JavaToJavaScriptCompiler {
         System.out.println(stats.prettyPrint());
       }
     }
+    return allOptimizerStats;
   }
 
   protected static OptimizerStats optimizeLoop(String passName, JProgram jprogram,
@@ -895,6 +978,18 @@ public class JavaToJavaScriptCompiler {
 
   protected static OptimizerStats optimizeLoop(String passName, JProgram jprogram,
       JJSOptions options, int numNodes) {
+    return optimizeLoop(passName, jprogram, options, numNodes, null, null);
+  }
+
+  /**
+   * Runs one pass of the Java optimizers. If <code>dirtyMethods</code> is not
+   * null, the method-local passes only visit those methods and the ones that
+   * <code>modifiedMethods</code> reports as dirtied by the earlier passes of
+   * this iteration.
+   */
+  protected static OptimizerStats optimizeLoop(String passName, JProgram jprogram,
+      JJSOptions options, int numNodes, Set<JMethod> dirtyMethods,
+      ModifiedMethods modifiedMethods) {
     Event optimizeEvent = SpeedTracerLogger.start(CompilerEventType.OPTIMIZE, "phase", "loop");
 
     // Recompute clinits each time, they can become empty.
@@ -902,15 +997,16 @@ public class JavaToJavaScriptCompiler {
     // jprogram.methodOracle =
     // MethodOracleBuilder.buildMethodOracle(jprogram);
     OptimizerStats stats = new OptimizerStats(passName);
+    OptimizerTimer timer = OptimizerTimer.start();
 
     // Remove unreferenced types, fields, methods, [params, locals]
-    stats.add(Pruner.exec(jprogram, true).recordVisits(numNodes));
+    stats.add(timer.lap(Pruner.exec(jprogram, true).recordVisits(numNodes)));
 
     // finalize locals, params, fields, methods, classes
-    stats.add(Finalizer.exec(jprogram).recordVisits(numNodes));
+    stats.add(timer.lap(Finalizer.exec(jprogram).recordVisits(numNodes)));
 
     // rewrite non-polymorphic calls as static calls; update all call sites
-    stats.add(MakeCallsStatic.exec(jprogram).recordVisits(numNodes));
+    stats.add(timer.lap(MakeCallsStatic.exec(jprogram).recordVisits(numNodes)));
 
     // type flow tightening
     // - fields, locals based on assignment
@@ -918,25 +1014,40 @@ public class JavaToJavaScriptCompiler {
     // - method bodies based on return statements
     // - polymorphic methods based on return types of all implementors
     // - optimize casts and instance of
-    stats.add(TypeTightener.exec(jprogram).recordVisits(numNodes));
-
-    // tighten method call bindings
-    stats.add(MethodCallTightener.exec(jprogram).recordVisits(numNodes));
-
-    // dead code removal??
-    stats.add(DeadCodeElimination.exec(jprogram).recordVisits(numNodes));
+    stats.add(timer.lap(TypeTightener.exec(jprogram).recordVisits(numNodes)));
+
+    if (dirtyMethods == null) {
+      // tighten method call bindings
+      stats.add(timer.lap(MethodCallTightener.exec(jprogram).recordVisits(numNodes)));
+
+      // dead code removal??
+      stats.add(timer.lap(DeadCodeElimination.exec(jprogram).recordVisits(numNodes)));
+    } else {
+      List<JMethod> allMethods = ParallelMethodOptimizer.allMethods(jprogram);
+      Set<JMethod> localMethods = new LinkedHashSet<JMethod>(dirtyMethods);
+      localMethods.addAll(modifiedMethods.collectDirty());
+      // Drop anything the Pruner removed.
+      localMethods.retainAll(new HashSet<JMethod>(allMethods));
+      int numLocalNodes =
+          (int) ((long) numNodes * localMethods.size() / Math.max(1, allMethods.size()));
+
+      stats.add(timer.lap(
+          MethodCallTightener.exec(jprogram, localMethods).recordVisits(numLocalNodes)));
+      stats.add(timer.lap(
+          DeadCodeElimination.exec(jprogram, localMethods).recordVisits(numLocalNodes)));
+    }
 
     // inlining
-    stats.add(MethodInliner.exec(jprogram).recordVisits(numNodes));
+    stats.add(timer.lap(MethodInliner.exec(jprogram).recordVisits(numNodes)));
 
     if (options.shouldInlineLiteralParameters()) {
       // remove same parameters value
-      stats.add(SameParameterValueOptimizer.exec(jprogram).recordVisits(numNodes));
+      stats.add(timer.lap(SameParameterValueOptimizer.exec(jprogram).recordVisits(numNodes)));
     }
 
     if (options.shouldOrdinalizeEnums()) {
       // ordinalize enums.
-      stats.add(EnumOrdinalizer.exec(jprogram).recordVisits(numNodes));
+      stats.add(timer.lap(EnumOrdinalizer.exec(jprogram).recordVisits(numNodes)));
     }
 
     // prove that any types that have been culled from the main tree are
@@ -1119,61 +1230,128 @@ public class JavaToJavaScriptCompiler {
       return;
     }
 
-    for (int i = 0; i < js.length; i++) {
-      DefaultTextOutput out = new DefaultTextOutput(options.getOutput().shouldMinimize());
-      JsSourceGenerationVisitorWithSizeBreakdown v;
+    int numThreads = Math.min(js.length, Integer.getInteger(CODEGEN_THREADS_PROPERTY, 1));
+    GeneratedFragment[] fragments = new GeneratedFragment[js.length];
+    if (numThreads <= 1) {
+      for (int i = 0; i < js.length; i++) {
+        fragments[i] = generateFragment(options, jsProgram, jjsMap, i, sourceInfoMaps != null,
+            splitBlocks, sourceMapsEnabled);
+      }
+    } else {
+      generateFragmentsInParallel(options, jsProgram, jjsMap, fragments, numThreads,
+          sourceInfoMaps != null, splitBlocks, sourceMapsEnabled);
+    }
 
+    // Merge in fragment order, exactly as if generated serially.
+    for (int i = 0; i < js.length; i++) {
+      js[i] = fragments[i].js;
+      ranges[i] = fragments[i].ranges;
+      if (sizeBreakdowns != null) {
+        sizeBreakdowns[i] = fragments[i].sizeBreakdown;
+      }
       if (sourceInfoMaps != null) {
-        v = new JsReportGenerationVisitor(out, jjsMap);
-      } else {
-        v = new JsSourceGenerationVisitorWithSizeBreakdown(out, jjsMap);
+        sourceInfoMaps.add(fragments[i].sourceInfoMap);
       }
-      v.accept(jsProgram.getFragmentBlock(i));
+    }
+  }
 
-      StatementRanges statementRanges = v.getStatementRanges();
-      String code = out.toString();
-      Map<Range, SourceInfo> infoMap = (sourceInfoMaps != null) ? v.getSourceInfoMap() : null;
+  /**
+   * Generates the JavaScript for one fragment. Only reads the JavaScript AST,
+   * so several fragments can be generated at once.
+   */
+  private static GeneratedFragment generateFragment(JJSOptions options, JsProgram jsProgram,
+      JavaToJavaScriptMap jjsMap, int fragment, boolean recordSourceInfo, boolean splitBlocks,
+      boolean sourceMapsEnabled) {
+    JsBlock fragmentBlock = jsProgram.getFragmentBlock(fragment);
+    DefaultTextOutput out = new DefaultTextOutput(options.getOutput().shouldMinimize(),
+        Math.max(16, fragmentBlock.getStatements().size() * ESTIMATED_CHARS_PER_STATEMENT));
+    JsSourceGenerationVisitorWithSizeBreakdown v;
+
+    if (recordSourceInfo) {
+      v = new JsReportGenerationVisitor(out, jjsMap);
+    } else {
+      v = new JsSourceGenerationVisitorWithSizeBreakdown(out, jjsMap);
+    }
+    v.accept(fragmentBlock);
 
-      JsAbstractTextTransformer transformer =
-          new JsAbstractTextTransformer(code, statementRanges, infoMap) {
-            @Override
-            public void exec() {
-            }
+    StatementRanges statementRanges = v.getStatementRanges();
+    String code = out.toString();
+    Map<Range, SourceInfo> infoMap = recordSourceInfo ? v.getSourceInfoMap() : null;
 
-            @Override
-            protected void updateSourceInfoMap() {
-            }
-          };
+    JsAbstractTextTransformer transformer =
+        new JsAbstractTextTransformer(code, statementRanges, infoMap) {
+          @Override
+          public void exec() {
+          }
 
-      /**
-       * Reorder function decls to improve compression ratios. Also restructures
-       * the top level blocks into sub-blocks if they exceed 32767 statements.
-       */
-      Event functionClusterEvent = SpeedTracerLogger.start(CompilerEventType.FUNCTION_CLUSTER);
-      // TODO(cromwellian) move to the Js AST, re-enable sourcemaps + clustering
-      if (!sourceMapsEnabled
-          && options.shouldClusterSimilarFunctions()
-          // only cluster for obfuscated mode
-          && options.getOutput() == JsOutputOption.OBFUSCATED) {
-        transformer = new JsFunctionClusterer(transformer);
-        transformer.exec();
-      }
-      functionClusterEvent.end();
+          @Override
+          protected void updateSourceInfoMap() {
+          }
+        };
 
-      // rewrite top-level blocks to limit the number of statements
-      if (!sourceMapsEnabled && splitBlocks) {
-        transformer = new JsIEBlockTextTransformer(transformer);
-        transformer.exec();
-      }
+    /**
+     * Reorder function decls to improve compression ratios. Also restructures
+     * the top level blocks into sub-blocks if they exceed 32767 statements.
+     */
+    Event functionClusterEvent = SpeedTracerLogger.start(CompilerEventType.FUNCTION_CLUSTER);
+    // TODO(cromwellian) move to the Js AST, re-enable sourcemaps + clustering
+    if (!sourceMapsEnabled
+        && options.shouldClusterSimilarFunctions()
+        // only cluster for obfuscated mode
+        && options.getOutput() == JsOutputOption.OBFUSCATED) {
+      transformer = new JsFunctionClusterer(transformer);
+      transformer.exec();
+    }
+    functionClusterEvent.end();
 
-      js[i] = transformer.getJs();
-      ranges[i] = transformer.getStatementRanges();
-      if (sizeBreakdowns != null) {
-        sizeBreakdowns[i] = v.getSizeBreakdown();
+    // rewrite top-level blocks to limit the number of statements
+    if (!sourceMapsEnabled && splitBlocks) {
+      transformer = new JsIEBlockTextTransformer(transformer);
+      transformer.exec();
+    }
+
+    return new GeneratedFragment(transformer.getJs(), transformer.getStatementRanges(),
+        v.getSizeBreakdown(), recordSourceInfo ? transformer.getSourceInfoMap() : null);
+  }
+
+  /**
+   * Generates every fragment on a pool of <code>numThreads</code> threads.
+   */
+  private static void generateFragmentsInParallel(final JJSOptions options,
+      final JsProgram jsProgram, final JavaToJavaScriptMap jjsMap, GeneratedFragment[] fragments,
+      int numThreads, final boolean recordSourceInfo, final boolean splitBlocks,
+      final boolean sourceMapsEnabled) {
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<GeneratedFragment>> results =
+          new ArrayList<Future<GeneratedFragment>>(fragments.length);
+      for (int i = 0; i < fragments.length; i++) {
+        final int fragment = i;
+        results.add(executor.submit(new Callable<GeneratedFragment>() {
+          @Override
+          public GeneratedFragment call() {
+            return generateFragment(options, jsProgram, jjsMap, fragment, recordSourceInfo,
+                splitBlocks, sourceMapsEnabled);
+          }
+        }));
       }
-      if (sourceInfoMaps != null) {
-        sourceInfoMaps.add(transformer.getSourceInfoMap());
+      for (int i = 0; i < fragments.length; i++) {
+        fragments[i] = results.get(i).get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InternalCompilerException("Interrupted while generating JavaScript", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
       }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new InternalCompilerException("Unexpected failure generating JavaScript", cause);
+    } finally {
+      executor.shutdownNow();
     }
   }
 
@@ -19,6 +19,7 @@ import com.google.gwt.core.ext.linker.Artifact;
 import com.google.gwt.core.ext.linker.ArtifactSet;
 import com.google.gwt.core.ext.linker.StatementRanges;
 import com.google.gwt.dev.Permutation;
+import com.google.gwt.dev.util.DiskCacheToken;
 
 import java.io.Serializable;
 import java.util.Collection;
@@ -50,9 +51,10 @@ public interface PermutationResult extends Serializable {
   Permutation getPermutation();
 
   /**
-   * The symbol map for the permutation.
+   * The symbol map for the permutation, as written by
+   * {@link com.google.gwt.core.ext.linker.impl.SerializedSymbolMap}.
    */
-  byte[] getSerializedSymbolMap();
+  DiskCacheToken getSerializedSymbolMap();
 
   /**
    * The statement ranges for the code returned by {@link #getJs()}.
@@ -40,7 +40,9 @@ public class SourceInfoCorrelation implements SourceInfo {
   /**
    * Records the first Correlation on any given Axis applied to the SourceInfo.
    * Each index of this array corresponds to the Correlation.Axis with the same
-   * ordinal().
+   * ordinal(). Guarded by this, since the same SourceInfo may be shared by
+   * methods that {@link com.google.gwt.dev.jjs.impl.ParallelMethodOptimizer}
+   * visits on different threads.
    */
   private Correlation[] primaryCorrelations = null;
 
@@ -57,7 +59,7 @@ public class SourceInfoCorrelation implements SourceInfo {
   /**
    * Add a Correlation to the SourceInfo.
    */
-  public void addCorrelation(Correlation c) {
+  public synchronized void addCorrelation(Correlation c) {
     if (primaryCorrelations == null) {
       primaryCorrelations = new Correlation[NUM_AXES];
     }
@@ -66,10 +68,12 @@ public class SourceInfoCorrelation implements SourceInfo {
   }
 
   public Correlation getCorrelation(Axis axis) {
-    if (primaryCorrelations != null) {
-      Correlation c = primaryCorrelations[axis.ordinal()];
-      if (c != null) {
-        return c;
+    synchronized (this) {
+      if (primaryCorrelations != null) {
+        Correlation c = primaryCorrelations[axis.ordinal()];
+        if (c != null) {
+          return c;
+        }
       }
     }
     if (parent != null) {
@@ -80,18 +84,22 @@ public class SourceInfoCorrelation implements SourceInfo {
 
   public Correlation[] getCorrelations() {
     if (parent == null) {
-      if (primaryCorrelations == null) {
-        return new Correlation[NUM_AXES];
-      } else {
-        return primaryCorrelations.clone();
+      synchronized (this) {
+        if (primaryCorrelations == null) {
+          return new Correlation[NUM_AXES];
+        } else {
+          return primaryCorrelations.clone();
+        }
       }
     } else {
       Correlation[] result = parent.getCorrelations();
-      if (primaryCorrelations != null) {
-        for (int i = 0; i < NUM_AXES; ++i) {
-          Correlation c = primaryCorrelations[i];
-          if (c != null) {
-            result[i] = c;
+      synchronized (this) {
+        if (primaryCorrelations != null) {
+          for (int i = 0; i < NUM_AXES; ++i) {
+            Correlation c = primaryCorrelations[i];
+            if (c != null) {
+              result[i] = c;
+            }
           }
         }
       }
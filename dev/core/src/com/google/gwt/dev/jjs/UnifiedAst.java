@@ -23,9 +23,13 @@ import com.google.gwt.dev.Permutation;
 import com.google.gwt.dev.jjs.ast.JProgram;
 import com.google.gwt.dev.js.ast.JsProgram;
 import com.google.gwt.dev.util.DiskCache;
+import com.google.gwt.dev.util.StringInterner;
 import com.google.gwt.dev.util.Util;
+import com.google.gwt.util.tools.Utility;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
@@ -33,6 +37,8 @@ import java.util.Collections;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Represents a unified, non-permutation specific AST. This AST is used to drive
@@ -61,6 +67,42 @@ public class UnifiedAst implements Serializable {
     }
   }
 
+  /**
+   * Reads a copy of the AST whose immutable leaves, strings and source
+   * origins, are shared with every other copy read from the same UnifiedAst.
+   * Permutations compiled on several threads at once then hold one instance
+   * of each rather than one per thread.
+   */
+  private static class SharingObjectInputStream extends ObjectInputStream {
+    private final ConcurrentMap<SourceOrigin, SourceOrigin> sharedOrigins;
+
+    public SharingObjectInputStream(InputStream in,
+        ConcurrentMap<SourceOrigin, SourceOrigin> sharedOrigins) throws IOException {
+      super(in);
+      this.sharedOrigins = sharedOrigins;
+      enableResolveObject(true);
+    }
+
+    @Override
+    protected Object resolveObject(Object obj) {
+      if (obj instanceof String) {
+        return StringInterner.get().intern((String) obj);
+      }
+      // UNKNOWN is compared by identity, so it must never be swapped.
+      if (obj instanceof SourceOrigin && obj != SourceOrigin.UNKNOWN) {
+        SourceOrigin origin = (SourceOrigin) obj;
+        SourceOrigin shared = sharedOrigins.putIfAbsent(origin, origin);
+        return shared == null ? origin : shared;
+      }
+      return obj;
+    }
+  }
+
+  /**
+   * Size of the read buffer when deserializing straight from disk.
+   */
+  private static final int READ_BUFFER_SIZE = 64 * 1024;
+
   private static final DiskCache diskCache = DiskCache.INSTANCE;
 
   /**
@@ -80,6 +122,12 @@ public class UnifiedAst implements Serializable {
    */
   private transient Object myLockObject = new Object();
 
+  /**
+   * Source origins shared between all copies of the AST read so far.
+   */
+  private transient ConcurrentMap<SourceOrigin, SourceOrigin> sharedOrigins =
+      new ConcurrentHashMap<SourceOrigin, SourceOrigin>();
+
   /**
    * The compilation options.
    */
@@ -118,6 +166,7 @@ public class UnifiedAst implements Serializable {
     other.initialAst = null; // steal its copy
     this.rebindRequests = other.rebindRequests;
     this.serializedAstToken = other.serializedAstToken;
+    this.sharedOrigins = other.sharedOrigins;
   }
 
   /**
@@ -146,14 +195,13 @@ public class UnifiedAst implements Serializable {
         AST result = initialAst;
         initialAst = null;
         return result;
-      } else {
-        if (serializedAstToken < 0) {
-          throw new IllegalStateException(
-              "No serialized AST was cached and AST was already consumed.");
-        }
-        return diskCache.readObject(serializedAstToken, AST.class);
+      } else if (serializedAstToken < 0) {
+        throw new IllegalStateException(
+            "No serialized AST was cached and AST was already consumed.");
       }
     }
+    // Other threads may read their own copies at the same time.
+    return readSerializedAst();
   }
 
   /**
@@ -191,7 +239,7 @@ public class UnifiedAst implements Serializable {
   public void prepare() {
     synchronized (myLockObject) {
       if (initialAst == null) {
-        initialAst = diskCache.readObject(serializedAstToken, AST.class);
+        initialAst = readSerializedAst();
       }
     }
   }
@@ -210,12 +258,32 @@ public class UnifiedAst implements Serializable {
     this.precompilationMetrics = metrics;
   }
 
+  /**
+   * Deserializes a new copy of the AST directly from the disk cache, without
+   * first reading all of its bytes into memory.
+   */
+  private AST readSerializedAst() {
+    ObjectInputStream in = null;
+    try {
+      in = new SharingObjectInputStream(new BufferedInputStream(
+          diskCache.openStream(serializedAstToken), READ_BUFFER_SIZE), sharedOrigins);
+      return (AST) in.readObject();
+    } catch (ClassNotFoundException e) {
+      throw new RuntimeException("Unexpected exception deserializing AST from disk cache", e);
+    } catch (IOException e) {
+      throw new RuntimeException("Unexpected exception deserializing AST from disk cache", e);
+    } finally {
+      Utility.close(in);
+    }
+  }
+
   /**
    * Re-initialize lock object; copy serialized AST straight to cache.
    */
   private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException {
     stream.defaultReadObject();
     myLockObject = new Object();
+    sharedOrigins = new ConcurrentHashMap<SourceOrigin, SourceOrigin>();
     serializedAstToken = diskCache.transferFromStream(stream);
   }
 
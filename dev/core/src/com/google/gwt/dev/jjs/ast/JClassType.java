@@ -83,6 +83,7 @@ public class JClassType extends JDeclaredType implements CanBeSetFinal {
 
   public void setFinal() {
     isFinal = true;
+    markModified();
   }
 
   /**
@@ -90,6 +91,7 @@ public class JClassType extends JDeclaredType implements CanBeSetFinal {
    */
   public final void setSuperClass(JClassType superClass) {
     this.superClass = superClass;
+    markModified();
   }
 
   public void traverse(JVisitor visitor, Context ctx) {
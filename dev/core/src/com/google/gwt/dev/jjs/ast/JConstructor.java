@@ -125,10 +125,12 @@ public class JConstructor extends JMethod {
   @Override
   public void traverse(JVisitor visitor, Context ctx) {
     String before = traceBefore(visitor);
+    int modsBefore = getNumMods(visitor);
     if (visitor.visit(this, ctx)) {
       visitChildren(visitor);
     }
     visitor.endVisit(this, ctx);
+    recordModified(visitor, modsBefore);
     traceAfter(visitor, before);
   }
 
@@ -84,6 +84,13 @@ public abstract class JDeclaredType extends JReferenceType {
    */
   private boolean isExternal;
 
+  /**
+   * Set when this type is created and whenever it loses a member, becomes final,
+   * or changes its super class or clinit target; cleared by whoever consumes the
+   * information (the optimizer loop).
+   */
+  private transient boolean isModified = true;
+
   /**
    * This type's implemented interfaces.
    */
@@ -283,12 +290,29 @@ public abstract class JDeclaredType extends JReferenceType {
     return isExternal;
   }
 
+  /**
+   * Returns <code>true</code> if this type has been created or changed since the
+   * last call to {@link #clearModified()}.
+   */
+  public boolean isModified() {
+    return isModified;
+  }
+
+  public void clearModified() {
+    isModified = false;
+  }
+
+  protected void markModified() {
+    isModified = true;
+  }
+
   /**
    * Removes the field at the specified index.
    */
   public void removeField(int i) {
     assert !isExternal() : "External types can not be modified.";
     fields = Lists.remove(fields, i);
+    isModified = true;
   }
 
   /**
@@ -297,6 +321,7 @@ public abstract class JDeclaredType extends JReferenceType {
   public void removeMethod(int i) {
     assert !isExternal() : "External types can not be modified.";
     methods = Lists.remove(methods, i);
+    isModified = true;
   }
 
   /**
@@ -309,6 +334,7 @@ public abstract class JDeclaredType extends JReferenceType {
     assert !((JMethodBody) getClinitMethod().getBody()).getStatements().isEmpty() : "Attempted to "
         + "reset the clinitTarget to an empty $clinit";
     this.clinitTarget = this;
+    isModified = true;
   }
 
   /**
@@ -404,6 +430,7 @@ public abstract class JDeclaredType extends JReferenceType {
       }
     }
     clinitTarget = newClinitTarget;
+    isModified = true;
   }
 
   /**
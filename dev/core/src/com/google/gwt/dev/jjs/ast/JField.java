@@ -85,6 +85,13 @@ public class JField extends JVariable implements CanBeStatic, HasEnclosingType {
   private boolean isVolatile;
   private transient String signature;
 
+  /**
+   * Set when this field is created and whenever its type, finality or
+   * initializer changes; cleared by whoever consumes the information (the
+   * optimizer loop).
+   */
+  private transient boolean isModified = true;
+
   public JField(SourceInfo info, String name, JDeclaredType enclosingType, JType type,
       boolean isStatic, Disposition disposition) {
     super(info, name, type, disposition.isFinal());
@@ -127,6 +134,14 @@ public class JField extends JVariable implements CanBeStatic, HasEnclosingType {
     return getEnclosingType() != null && getEnclosingType().isExternal();
   }
 
+  /**
+   * Returns <code>true</code> if this field has been created or changed since
+   * the last call to {@link #clearModified()}.
+   */
+  public boolean isModified() {
+    return isModified;
+  }
+
   public boolean isStatic() {
     return isStatic;
   }
@@ -139,16 +154,28 @@ public class JField extends JVariable implements CanBeStatic, HasEnclosingType {
     return isVolatile;
   }
 
+  public void clearModified() {
+    isModified = false;
+  }
+
   @Override
   public void setFinal() {
     if (isVolatile()) {
       throw new IllegalStateException("Volatile fields cannot be set final");
     }
     super.setFinal();
+    isModified = true;
   }
 
   public void setInitializer(JDeclarationStatement declStmt) {
     this.declStmt = declStmt;
+    isModified = true;
+  }
+
+  @Override
+  public void setType(JType newType) {
+    super.setType(newType);
+    isModified = true;
   }
 
   public void setVolatile() {
@@ -156,6 +183,7 @@ public class JField extends JVariable implements CanBeStatic, HasEnclosingType {
       throw new IllegalStateException("Final fields cannot be set volatile");
     }
     isVolatile = true;
+    isModified = true;
   }
 
   public void traverse(JVisitor visitor, Context ctx) {
@@ -125,6 +125,13 @@ public class JMethod extends JNode implements HasEnclosingType, HasName, HasType
 
   private boolean traceFirst = true;
 
+  /**
+   * Set when this method is created, whenever a {@link JModVisitor} changes it
+   * and whenever its signature or modifiers change; cleared by whoever consumes
+   * the information (the optimizer loop).
+   */
+  private transient boolean isModified = true;
+
   /**
    * These are only supposed to be constructed by JProgram.
    */
@@ -189,6 +196,7 @@ public class JMethod extends JNode implements HasEnclosingType, HasName, HasType
    */
   public void addParam(JParameter x) {
     params = Lists.add(params, x);
+    isModified = true;
   }
 
   public void addThrownException(JClassType exceptionType) {
@@ -302,6 +310,14 @@ public class JMethod extends JNode implements HasEnclosingType, HasName, HasType
     return isFinal;
   }
 
+  /**
+   * Returns <code>true</code> if this method has been created or changed since
+   * the last call to {@link #clearModified()}.
+   */
+  public boolean isModified() {
+    return isModified;
+  }
+
   public boolean isNative() {
     if (body == null) {
       return false;
@@ -339,6 +355,7 @@ public class JMethod extends JNode implements HasEnclosingType, HasName, HasType
    */
   public void removeParam(int index) {
     params = Lists.remove(params, index);
+    isModified = true;
   }
 
   /**
@@ -360,6 +377,7 @@ public class JMethod extends JNode implements HasEnclosingType, HasName, HasType
 
   public void setAbstract(boolean isAbstract) {
     this.isAbstract = isAbstract;
+    isModified = true;
   }
 
   public void setBody(JAbstractMethodBody body) {
@@ -367,10 +385,12 @@ public class JMethod extends JNode implements HasEnclosingType, HasName, HasType
     if (body != null) {
       body.setMethod(this);
     }
+    isModified = true;
   }
 
   public void setFinal() {
     isFinal = true;
+    isModified = true;
   }
 
   public void setOriginalTypes(JType returnType, List<JType> paramTypes) {
@@ -403,24 +423,45 @@ public class JMethod extends JNode implements HasEnclosingType, HasName, HasType
     isSynthetic = true;
   }
 
+  public void clearModified() {
+    isModified = false;
+  }
+
   public void setTrace() {
     this.trace = true;
   }
 
   public void setType(JType newType) {
     returnType = newType;
+    isModified = true;
   }
 
   public void traverse(JVisitor visitor, Context ctx) {
     String before = null;
     before = traceBefore(visitor);
+    int modsBefore = getNumMods(visitor);
     if (visitor.visit(this, ctx)) {
       visitChildren(visitor);
     }
     visitor.endVisit(this, ctx);
+    recordModified(visitor, modsBefore);
     traceAfter(visitor, before);
   }
 
+  protected static int getNumMods(JVisitor visitor) {
+    return (visitor instanceof JModVisitor) ? ((JModVisitor) visitor).getNumMods() : 0;
+  }
+
+  /**
+   * Marks this method modified if <code>visitor</code> changed anything since it
+   * reported <code>modsBefore</code> changes.
+   */
+  protected void recordModified(JVisitor visitor, int modsBefore) {
+    if (getNumMods(visitor) != modsBefore) {
+      isModified = true;
+    }
+  }
+
   protected void traceAfter(JVisitor visitor, String before) {
     if (trace && visitor instanceof JModVisitor) {
       String after = this.toSource();
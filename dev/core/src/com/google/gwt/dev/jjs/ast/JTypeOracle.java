@@ -570,7 +570,10 @@ public class JTypeOracle implements Serializable {
   }
 
   public JMethod getPolyMethod(JClassType type, String signature) {
-    return getOrCreatePolyMap(type).get(signature);
+    // Poly maps are built lazily; method-local optimizers may ask concurrently.
+    synchronized (polyClassMethodMap) {
+      return getOrCreatePolyMap(type).get(signature);
+    }
   }
 
   public JClassType getSingleJsoImpl(JReferenceType maybeSingleJsoIntf) {
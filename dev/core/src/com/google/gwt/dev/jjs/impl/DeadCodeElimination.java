@@ -70,6 +70,7 @@ import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger.Event;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
@@ -1790,6 +1791,9 @@ public class DeadCodeElimination {
   public static final String NAME = DeadCodeElimination.class.getSimpleName();
 
   public static OptimizerStats exec(JProgram program) {
+    if (ParallelMethodOptimizer.isEnabled()) {
+      return exec(program, ParallelMethodOptimizer.allMethods(program));
+    }
     return new DeadCodeElimination(program).execImpl(program);
   }
 
@@ -1797,6 +1801,14 @@ public class DeadCodeElimination {
     return new DeadCodeElimination(program).execImpl(node);
   }
 
+  /**
+   * Eliminates dead code in the given methods, visiting them in parallel when
+   * {@link ParallelMethodOptimizer} is enabled.
+   */
+  public static OptimizerStats exec(JProgram program, Collection<JMethod> methods) {
+    return new DeadCodeElimination(program).execImpl(methods);
+  }
+
   private final JProgram program;
 
   private final Map<JType, Class<?>> typeClassMap = new IdentityHashMap<JType, Class<?>>();
@@ -1825,4 +1837,20 @@ public class DeadCodeElimination {
     optimizeEvent.end("didChange", "" + stats.didChange());
     return stats;
   }
+
+  private OptimizerStats execImpl(Collection<JMethod> methods) {
+    OptimizerStats stats = new OptimizerStats(NAME);
+    Event optimizeEvent = SpeedTracerLogger.start(CompilerEventType.OPTIMIZE, "optimizer", NAME);
+
+    int numMods = ParallelMethodOptimizer.exec(methods,
+        new ParallelMethodOptimizer.VisitorFactory() {
+          @Override
+          public JModVisitor create() {
+            return new DeadCodeVisitor();
+          }
+        });
+    stats.recordModified(numMods);
+    optimizeEvent.end("didChange", "" + stats.didChange());
+    return stats;
+  }
 }
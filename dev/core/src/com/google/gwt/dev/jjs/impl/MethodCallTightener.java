@@ -28,6 +28,8 @@ import com.google.gwt.dev.util.log.speedtracer.CompilerEventType;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger;
 import com.google.gwt.dev.util.log.speedtracer.SpeedTracerLogger.Event;
 
+import java.util.Collection;
+
 /**
  * Update polymorphic method calls to tighter bindings based on the type of the
  * qualifier. For a given polymorphic method call to a non-final target, see if
@@ -116,6 +118,16 @@ public class MethodCallTightener {
     return stats;
   }
 
+  /**
+   * Tightens the calls within the given methods only.
+   */
+  public static OptimizerStats exec(JProgram program, Collection<JMethod> methods) {
+    Event optimizeEvent = SpeedTracerLogger.start(CompilerEventType.OPTIMIZE, "optimizer", NAME);
+    OptimizerStats stats = new MethodCallTightener(program).execImpl(methods);
+    optimizeEvent.end("didChange", "" + stats.didChange());
+    return stats;
+  }
+
   private final JProgram program;
 
   private MethodCallTightener(JProgram program) {
@@ -123,8 +135,23 @@ public class MethodCallTightener {
   }
 
   private OptimizerStats execImpl() {
+    if (ParallelMethodOptimizer.isEnabled()) {
+      return execImpl(ParallelMethodOptimizer.allMethods(program));
+    }
     MethodCallTighteningVisitor tightener = new MethodCallTighteningVisitor();
     tightener.accept(program);
     return new OptimizerStats(NAME).recordModified(tightener.getNumMods());
   }
-}
\ No newline at end of file
+
+  private OptimizerStats execImpl(Collection<JMethod> methods) {
+    // Each call site is tightened on its own, so methods can be visited independently.
+    int numMods = ParallelMethodOptimizer.exec(methods,
+        new ParallelMethodOptimizer.VisitorFactory() {
+          @Override
+          public JModVisitor create() {
+            return new MethodCallTighteningVisitor();
+          }
+        });
+    return new OptimizerStats(NAME).recordModified(numMods);
+  }
+}
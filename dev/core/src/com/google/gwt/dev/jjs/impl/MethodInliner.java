@@ -526,10 +526,8 @@ public class MethodInliner {
       }
 
       // Run a cleanup on the methods we just modified
-      for (JMethod method : inliner.modifiedMethods) {
-        OptimizerStats innerStats = DeadCodeElimination.exec(program, method);
-        stats.recordModified(innerStats.getNumMods());
-      }
+      OptimizerStats innerStats = DeadCodeElimination.exec(program, inliner.modifiedMethods);
+      stats.recordModified(innerStats.getNumMods());
     }
     return stats;
   }
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs.impl;
+
+import com.google.gwt.dev.jjs.ast.Context;
+import com.google.gwt.dev.jjs.ast.JArrayType;
+import com.google.gwt.dev.jjs.ast.JCastOperation;
+import com.google.gwt.dev.jjs.ast.JClassLiteral;
+import com.google.gwt.dev.jjs.ast.JDeclaredType;
+import com.google.gwt.dev.jjs.ast.JField;
+import com.google.gwt.dev.jjs.ast.JFieldRef;
+import com.google.gwt.dev.jjs.ast.JInstanceOf;
+import com.google.gwt.dev.jjs.ast.JMethod;
+import com.google.gwt.dev.jjs.ast.JMethodCall;
+import com.google.gwt.dev.jjs.ast.JNode;
+import com.google.gwt.dev.jjs.ast.JProgram;
+import com.google.gwt.dev.jjs.ast.JReferenceType;
+import com.google.gwt.dev.jjs.ast.JType;
+import com.google.gwt.dev.jjs.ast.JVisitor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tracks which methods the optimizers changed, so that method-local passes in
+ * the next optimization iteration can skip methods that cannot have new
+ * opportunities.
+ *
+ * A method is dirty if it was created or changed (see
+ * {@link JMethod#isModified()}), or if it refers to a method, field or type
+ * that was created or changed, since a changed callee (tighter return type,
+ * empty body, now static), a field that became final or a type that lost
+ * members can enable further optimizations where they are used.
+ *
+ * The methods, fields and types that each method refers to are indexed once,
+ * and afterwards only changed methods are indexed again.
+ */
+public class ModifiedMethods {
+
+  /**
+   * Collects the methods, fields and types that a method refers to.
+   */
+  private static class ReferenceCollector extends JVisitor {
+    private final Set<JNode> references = new HashSet<JNode>();
+
+    @Override
+    public void endVisit(JCastOperation x, Context ctx) {
+      addType(x.getCastType());
+    }
+
+    @Override
+    public void endVisit(JClassLiteral x, Context ctx) {
+      addType(x.getRefType());
+    }
+
+    @Override
+    public void endVisit(JFieldRef x, Context ctx) {
+      references.add(x.getField());
+      addType(x.getField().getEnclosingType());
+    }
+
+    @Override
+    public void endVisit(JInstanceOf x, Context ctx) {
+      addType(x.getTestType());
+    }
+
+    @Override
+    public void endVisit(JMethodCall x, Context ctx) {
+      references.add(x.getTarget());
+      addType(x.getTarget().getEnclosingType());
+    }
+
+    private void addType(JType type) {
+      if (type instanceof JReferenceType) {
+        type = ((JReferenceType) type).getUnderlyingType();
+      }
+      if (type instanceof JArrayType) {
+        addType(((JArrayType) type).getLeafType());
+      } else if (type instanceof JDeclaredType) {
+        references.add(type);
+      }
+    }
+  }
+
+  /**
+   * The methods, fields and types that each indexed method refers to.
+   */
+  private final Map<JMethod, Set<JNode>> referencesByMethod = new HashMap<JMethod, Set<JNode>>();
+
+  /**
+   * The indexed methods that refer to each method, field and type.
+   */
+  private final Map<JNode, Set<JMethod>> referrers = new HashMap<JNode, Set<JMethod>>();
+
+  private final JProgram program;
+
+  /**
+   * Indexes the methods of every non-external type in the program and clears
+   * all modification flags.
+   */
+  public ModifiedMethods(JProgram program) {
+    this.program = program;
+    for (JDeclaredType type : program.getDeclaredTypes()) {
+      type.clearModified();
+      for (JField field : type.getFields()) {
+        field.clearModified();
+      }
+      for (JMethod method : type.getMethods()) {
+        method.clearModified();
+        if (!type.isExternal()) {
+          index(method);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the methods of non-external types that were created or changed
+   * since the last call, plus the methods that refer to anything that was
+   * created or changed, and clears the modification flags.
+   */
+  public Set<JMethod> collectDirty() {
+    Set<JMethod> live = new HashSet<JMethod>();
+    Set<JMethod> modified = new LinkedHashSet<JMethod>();
+    Set<JNode> changed = new LinkedHashSet<JNode>();
+    for (JDeclaredType type : program.getDeclaredTypes()) {
+      if (type.isExternal()) {
+        continue;
+      }
+      if (type.isModified()) {
+        changed.add(type);
+        type.clearModified();
+      }
+      for (JField field : type.getFields()) {
+        if (field.isModified()) {
+          changed.add(field);
+          field.clearModified();
+        }
+      }
+      for (JMethod method : type.getMethods()) {
+        live.add(method);
+        if (method.isModified()) {
+          modified.add(method);
+          changed.add(method);
+          method.clearModified();
+        }
+      }
+    }
+
+    // Forget the methods that were pruned; only the changed methods can refer
+    // to anything new.
+    for (JMethod method : new ArrayList<JMethod>(referencesByMethod.keySet())) {
+      if (!live.contains(method)) {
+        unindex(method);
+      }
+    }
+    for (JMethod method : modified) {
+      index(method);
+    }
+
+    Set<JMethod> dirty = new LinkedHashSet<JMethod>(modified);
+    for (JNode node : changed) {
+      Set<JMethod> nodeReferrers = referrers.get(node);
+      if (nodeReferrers != null) {
+        dirty.addAll(nodeReferrers);
+      }
+    }
+    return dirty;
+  }
+
+  private void index(JMethod method) {
+    unindex(method);
+    ReferenceCollector collector = new ReferenceCollector();
+    collector.accept(method);
+    referencesByMethod.put(method, collector.references);
+    for (JNode node : collector.references) {
+      Set<JMethod> nodeReferrers = referrers.get(node);
+      if (nodeReferrers == null) {
+        nodeReferrers = new LinkedHashSet<JMethod>();
+        referrers.put(node, nodeReferrers);
+      }
+      nodeReferrers.add(method);
+    }
+  }
+
+  private void unindex(JMethod method) {
+    Set<JNode> oldReferences = referencesByMethod.remove(method);
+    if (oldReferences != null) {
+      for (JNode node : oldReferences) {
+        Set<JMethod> nodeReferrers = referrers.get(node);
+        nodeReferrers.remove(method);
+        if (nodeReferrers.isEmpty()) {
+          referrers.remove(node);
+        }
+      }
+    }
+  }
+}
@@ -23,11 +23,21 @@ import java.util.List;
  * Stores statistics on the results of running an optimizer pass.
  */
 public class OptimizerStats {
+  private long allocatedBytes = 0;
   private final List<OptimizerStats> children = new ArrayList<OptimizerStats>();
+  private long cpuNanos = 0;
+  private long elapsedNanos = 0;
   private final String name;
   private int numMods = 0;
   private int numVisits = 0;
 
+  /**
+   * Adds two measurements where a negative value means "unknown".
+   */
+  private static long addMeasurements(long a, long b) {
+    return (a < 0 || b < 0) ? -1 : a + b;
+  }
+
   public OptimizerStats(String name) {
     this.name = name;
   }
@@ -54,6 +64,18 @@ public class OptimizerStats {
     return false;
   }
 
+  /**
+   * @return the bytes allocated by the optimizer's thread, or a negative value
+   *         if the JVM cannot measure allocation
+   */
+  public long getAllocatedBytes() {
+    long childBytes = 0;
+    for (OptimizerStats child : children) {
+      childBytes = addMeasurements(childBytes, child.getAllocatedBytes());
+    }
+    return addMeasurements(allocatedBytes, childBytes);
+  }
+
   /**
    * Retrieves an immutable list of child stats objects. Don't modify this list.
    */
@@ -61,6 +83,29 @@ public class OptimizerStats {
     return children;
   }
 
+  /**
+   * @return the CPU time used by the optimizer's thread, in nanoseconds, or a
+   *         negative value if the JVM cannot measure thread CPU time
+   */
+  public long getCpuNanos() {
+    long childNanos = 0;
+    for (OptimizerStats child : children) {
+      childNanos = addMeasurements(childNanos, child.getCpuNanos());
+    }
+    return addMeasurements(cpuNanos, childNanos);
+  }
+
+  /**
+   * @return the wall time taken by the optimizer, in nanoseconds
+   */
+  public long getElapsedNanos() {
+    long childNanos = 0;
+    for (OptimizerStats child : children) {
+      childNanos += child.getElapsedNanos();
+    }
+    return elapsedNanos + childNanos;
+  }
+
   public String getName() {
     return name;
   }
@@ -114,6 +159,18 @@ public class OptimizerStats {
     return this;
   }
 
+  /**
+   * Add to the time and memory used by this pass. A negative
+   * <code>cpuNanos</code> or <code>allocatedBytes</code> means the value could
+   * not be measured.
+   */
+  public OptimizerStats recordTime(long elapsedNanos, long cpuNanos, long allocatedBytes) {
+    this.elapsedNanos += elapsedNanos;
+    this.cpuNanos = addMeasurements(this.cpuNanos, cpuNanos);
+    this.allocatedBytes = addMeasurements(this.allocatedBytes, allocatedBytes);
+    return this;
+  }
+
   /**
    * Increment the number of times tree nodes were visited.
    */
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs.impl;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.core.ext.UnableToCompleteException;
+import com.google.gwt.core.ext.linker.EmittedArtifact.Visibility;
+import com.google.gwt.core.ext.linker.SyntheticArtifact;
+import com.google.gwt.core.linker.SoycReportLinker;
+import com.google.gwt.dev.util.Util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A machine-readable report of the time and memory used by each optimizer pass
+ * of one permutation, emitted next to the compile report.
+ *
+ * The report is tab-separated text with one line per pass: the phase
+ * (<code>java</code> or <code>js</code>), the pass path (such as
+ * <code>Pass 1/Pruner</code>), wall nanoseconds, CPU nanoseconds, bytes
+ * allocated, nodes visited and modifications. Unmeasurable values are -1.
+ *
+ * If {@link #BASELINE_DIR_PROPERTY} names a directory holding the reports of
+ * an earlier build, the compile fails when any optimizer took more than
+ * {@link #THRESHOLD_PROPERTY} percent longer than it did in that build.
+ */
+public class OptimizerStatsReport {
+
+  /**
+   * A Java system property naming a directory of earlier optimizer reports to
+   * check this build against.
+   */
+  public static final String BASELINE_DIR_PROPERTY = "gwt.jjs.optimizerBaselineDir";
+
+  /**
+   * A Java system property that emits the report even when no compile report
+   * was requested.
+   */
+  public static final String REPORT_PROPERTY = "gwt.jjs.optimizerReport";
+
+  /**
+   * A Java system property giving the slowdown, in percent, that counts as a
+   * regression. Defaults to 25.
+   */
+  public static final String THRESHOLD_PROPERTY = "gwt.jjs.optimizerRegressionThreshold";
+
+  private static final int DEFAULT_THRESHOLD_PERCENT = 25;
+
+  private static final String HEADER =
+      "# phase\tpass\twallNanos\tcpuNanos\tallocatedBytes\tvisits\tmods";
+
+  /**
+   * Optimizers that took less than this in the baseline are too noisy to
+   * compare.
+   */
+  private static final long MIN_COMPARED_NANOS = 50 * 1000 * 1000L;
+
+  public static String getFileName(int permutationId) {
+    return "optimizerStats" + permutationId + ".tsv";
+  }
+
+  /**
+   * Returns <code>true</code> if a report should be made for this compile.
+   */
+  public static boolean isEnabled(boolean compileReportEnabled) {
+    return compileReportEnabled || Boolean.getBoolean(REPORT_PROPERTY)
+        || System.getProperty(BASELINE_DIR_PROPERTY) != null;
+  }
+
+  /**
+   * Sums the cost of each optimizer over all the passes in a report. The cost
+   * is CPU time where it was measured and wall time otherwise.
+   *
+   * @return a map from phase and optimizer name to nanoseconds
+   */
+  static Map<String, Long> getTotals(String report) {
+    Map<String, Long> totals = new LinkedHashMap<String, Long>();
+    for (String line : report.split("\n")) {
+      if (line.length() == 0 || line.startsWith("#")) {
+        continue;
+      }
+      String[] columns = line.split("\t");
+      if (columns.length < 4) {
+        continue;
+      }
+      String pass = columns[1];
+      String optimizer = pass.substring(pass.lastIndexOf('/') + 1);
+      long cpuNanos = Long.parseLong(columns[3]);
+      long cost = cpuNanos >= 0 ? cpuNanos : Long.parseLong(columns[2]);
+      String key = columns[0] + ": " + optimizer;
+      Long total = totals.get(key);
+      totals.put(key, total == null ? cost : total + cost);
+    }
+    return totals;
+  }
+
+  /**
+   * Compares optimizer totals with those of a baseline.
+   *
+   * @return a description of each optimizer that slowed down by more than
+   *         <code>thresholdPercent</code>
+   */
+  static List<String> findRegressions(Map<String, Long> totals, Map<String, Long> baseline,
+      int thresholdPercent) {
+    List<String> regressions = new ArrayList<String>();
+    for (Map.Entry<String, Long> entry : totals.entrySet()) {
+      Long before = baseline.get(entry.getKey());
+      if (before == null || before < MIN_COMPARED_NANOS) {
+        continue;
+      }
+      long now = entry.getValue();
+      if (now * 100 > before * (100L + thresholdPercent)) {
+        regressions.add(entry.getKey() + " took " + (now / 1000000L) + "ms, "
+            + (before / 1000000L) + "ms in the baseline (+" + ((now - before) * 100 / before)
+            + "%)");
+      }
+    }
+    return regressions;
+  }
+
+  private final int permutationId;
+  private final StringBuilder report = new StringBuilder(HEADER).append('\n');
+
+  public OptimizerStatsReport(int permutationId) {
+    this.permutationId = permutationId;
+  }
+
+  /**
+   * Adds a line for every pass that ran in a phase.
+   */
+  public void add(String phase, List<OptimizerStats> allStats) {
+    for (OptimizerStats stats : allStats) {
+      add(phase, "", stats);
+    }
+  }
+
+  /**
+   * Fails if an optimizer was slower than in the baseline report for this
+   * permutation, if a baseline directory was given.
+   */
+  public void checkBaseline(TreeLogger logger) throws UnableToCompleteException {
+    String baselineDir = System.getProperty(BASELINE_DIR_PROPERTY);
+    if (baselineDir == null) {
+      return;
+    }
+    File baselineFile = new File(baselineDir, getFileName(permutationId));
+    String baseline = Util.readFileAsString(baselineFile);
+    if (baseline == null) {
+      logger.log(TreeLogger.WARN, "No optimizer baseline found at " + baselineFile);
+      return;
+    }
+    int threshold = Integer.getInteger(THRESHOLD_PROPERTY, DEFAULT_THRESHOLD_PERCENT);
+    List<String> regressions = findRegressions(getTotals(report.toString()),
+        getTotals(baseline), threshold);
+    if (!regressions.isEmpty()) {
+      TreeLogger branch = logger.branch(TreeLogger.ERROR, "Optimizers slowed down by more than "
+          + threshold + "% compared to " + baselineFile);
+      for (String regression : regressions) {
+        branch.log(TreeLogger.ERROR, regression);
+      }
+      throw new UnableToCompleteException();
+    }
+  }
+
+  /**
+   * Returns the report as a private artifact, so that it is written with the
+   * other compile report files.
+   */
+  public SyntheticArtifact toArtifact() {
+    SyntheticArtifact artifact = new SyntheticArtifact(SoycReportLinker.class,
+        getFileName(permutationId), Util.getBytes(report.toString()));
+    artifact.setVisibility(Visibility.Private);
+    return artifact;
+  }
+
+  @Override
+  public String toString() {
+    return report.toString();
+  }
+
+  private void add(String phase, String prefix, OptimizerStats stats) {
+    String path = prefix + stats.getName();
+    if (!stats.getChildren().isEmpty()) {
+      for (OptimizerStats child : stats.getChildren()) {
+        add(phase, path + "/", child);
+      }
+      return;
+    }
+    report.append(phase).append('\t').append(path).append('\t').append(stats.getElapsedNanos())
+        .append('\t').append(stats.getCpuNanos()).append('\t').append(stats.getAllocatedBytes())
+        .append('\t').append(stats.getNumVisits()).append('\t').append(stats.getNumMods())
+        .append('\n');
+  }
+}
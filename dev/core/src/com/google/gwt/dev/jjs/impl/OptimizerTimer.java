@@ -0,0 +1,139 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs.impl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+/**
+ * Measures the wall time, CPU time and allocation of consecutive optimizer
+ * passes on the current thread, and records them in each pass's
+ * {@link OptimizerStats}.
+ *
+ * CPU time and allocation are those of the calling thread only; work that a
+ * pass hands off to other threads (see {@link ParallelMethodOptimizer}) shows
+ * up in its wall time alone.
+ */
+public class OptimizerTimer {
+
+  private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+  /**
+   * <code>com.sun.management.ThreadMXBean.getThreadAllocatedBytes(long)</code>,
+   * found by reflection since not every JVM provides it; null if unavailable.
+   */
+  private static final Method getThreadAllocatedBytesMethod = findGetThreadAllocatedBytes();
+
+  /**
+   * Starts timing the first pass.
+   */
+  public static OptimizerTimer start() {
+    return new OptimizerTimer();
+  }
+
+  /**
+   * Returns true if this JVM can measure the allocation of a thread.
+   */
+  // @VisibleForTesting
+  static boolean isAllocationMeasured() {
+    return getThreadAllocatedBytesMethod != null;
+  }
+
+  /**
+   * Looks up the allocation counter on the public
+   * <code>com.sun.management.ThreadMXBean</code> interface and turns it on.
+   */
+  private static Method findGetThreadAllocatedBytes() {
+    Class<?> sunThreadMXBean;
+    try {
+      sunThreadMXBean = Class.forName("com.sun.management.ThreadMXBean");
+    } catch (ClassNotFoundException e) {
+      return null;
+    }
+    if (!sunThreadMXBean.isInstance(threadMXBean)) {
+      return null;
+    }
+    try {
+      if (!(Boolean) sunThreadMXBean.getMethod("isThreadAllocatedMemorySupported").invoke(
+          threadMXBean)) {
+        return null;
+      }
+      sunThreadMXBean.getMethod("setThreadAllocatedMemoryEnabled", boolean.class).invoke(
+          threadMXBean, true);
+      return sunThreadMXBean.getMethod("getThreadAllocatedBytes", long.class);
+    } catch (Exception e) {
+      // Unexpected, since the interface declares these methods; measure time only.
+      return null;
+    }
+  }
+
+  private static long getAllocatedBytes() {
+    if (getThreadAllocatedBytesMethod == null) {
+      return -1;
+    }
+    try {
+      return (Long) getThreadAllocatedBytesMethod.invoke(threadMXBean,
+          Thread.currentThread().getId());
+    } catch (Exception e) {
+      return -1;
+    }
+  }
+
+  private static long getCpuNanos() {
+    if (!threadMXBean.isCurrentThreadCpuTimeSupported()) {
+      return -1;
+    }
+    return threadMXBean.getCurrentThreadCpuTime();
+  }
+
+  private long allocatedBytes;
+  private long cpuNanos;
+  private long elapsedNanos;
+
+  private OptimizerTimer() {
+    restart();
+  }
+
+  /**
+   * Records everything measured since the last lap (or the start) in
+   * <code>stats</code>, and starts timing the next pass.
+   *
+   * @return <code>stats</code>
+   */
+  public OptimizerStats lap(OptimizerStats stats) {
+    long lastElapsed = elapsedNanos;
+    long lastCpu = cpuNanos;
+    long lastAllocated = allocatedBytes;
+    restart();
+    stats.recordTime(elapsedNanos - lastElapsed, difference(cpuNanos, lastCpu),
+        difference(allocatedBytes, lastAllocated));
+    return stats;
+  }
+
+  /**
+   * Starts timing from now, discarding anything measured since the last lap.
+   */
+  public void restart() {
+    elapsedNanos = System.nanoTime();
+    cpuNanos = getCpuNanos();
+    allocatedBytes = getAllocatedBytes();
+  }
+
+  private long difference(long now, long before) {
+    return (now < 0 || before < 0) ? -1 : now - before;
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs.impl;
+
+import com.google.gwt.dev.jjs.InternalCompilerException;
+import com.google.gwt.dev.jjs.ast.JDeclaredType;
+import com.google.gwt.dev.jjs.ast.JMethod;
+import com.google.gwt.dev.jjs.ast.JModVisitor;
+import com.google.gwt.dev.jjs.ast.JProgram;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a method-local optimization over many methods at once on a shared pool
+ * of threads.
+ *
+ * Only visitors that read and write nothing but the method they are visiting
+ * (plus immutable program-wide state) may be run this way. Source info is the
+ * one exception: it can be shared between methods, so adding correlations to
+ * it is synchronized. Whole-program
+ * analyses such as {@link Pruner} or {@link TypeTightener} must stay serial.
+ *
+ * Parallel mode is off unless {@link #THREADS_PROPERTY} is set to a value
+ * greater than one.
+ */
+public class ParallelMethodOptimizer {
+
+  /**
+   * Creates the visitor that a single task runs over its share of the methods.
+   * Each task gets its own visitor, so visitors need not be thread-safe.
+   */
+  public interface VisitorFactory {
+    JModVisitor create();
+  }
+
+  /**
+   * Runs one visitor over a contiguous slice of the methods.
+   */
+  private static class VisitTask implements Callable<Integer> {
+    private final VisitorFactory factory;
+    private final List<JMethod> methods;
+
+    VisitTask(List<JMethod> methods, VisitorFactory factory) {
+      this.methods = methods;
+      this.factory = factory;
+    }
+
+    @Override
+    public Integer call() {
+      JModVisitor visitor = factory.create();
+      for (JMethod method : methods) {
+        visitor.accept(method);
+      }
+      return visitor.getNumMods();
+    }
+  }
+
+  /**
+   * A Java system property that sets the number of threads used by method-local
+   * optimizations. Defaults to 1, which runs every pass serially.
+   */
+  public static final String THREADS_PROPERTY = "gwt.jjs.optimizerThreads";
+
+  /**
+   * How many tasks to create per thread; several small tasks per thread even
+   * out the cost of very large methods.
+   */
+  private static final int TASKS_PER_THREAD = 4;
+
+  private static volatile int numThreads = Math.max(1, Integer.getInteger(THREADS_PROPERTY, 1));
+
+  /**
+   * The pool of <code>numThreads</code> threads, created on first use. (Guarded
+   * by ParallelMethodOptimizer.class.)
+   */
+  private static ExecutorService executor;
+
+  /**
+   * Returns every method of every non-external type in the program, in
+   * declaration order.
+   */
+  public static List<JMethod> allMethods(JProgram program) {
+    List<JMethod> methods = new ArrayList<JMethod>();
+    for (JDeclaredType type : program.getDeclaredTypes()) {
+      if (!type.isExternal()) {
+        methods.addAll(type.getMethods());
+      }
+    }
+    return methods;
+  }
+
+  /**
+   * Visits each of the given methods with a visitor created by
+   * <code>factory</code>, in parallel if enabled.
+   *
+   * @return the total number of modifications made by all visitors
+   */
+  public static int exec(Collection<JMethod> methods, VisitorFactory factory) {
+    if (!isEnabled() || methods.size() < 2) {
+      JModVisitor visitor = factory.create();
+      for (JMethod method : methods) {
+        visitor.accept(method);
+      }
+      return visitor.getNumMods();
+    }
+
+    List<JMethod> methodList = new ArrayList<JMethod>(methods);
+    ExecutorService pool = getExecutor();
+    int numTasks = getNumTasks(methodList.size());
+    List<Future<Integer>> results = new ArrayList<Future<Integer>>(numTasks);
+    for (int i = 0; i < numTasks; ++i) {
+      int from = (int) ((long) methodList.size() * i / numTasks);
+      int to = (int) ((long) methodList.size() * (i + 1) / numTasks);
+      results.add(pool.submit(new VisitTask(methodList.subList(from, to), factory)));
+    }
+
+    int numMods = 0;
+    for (Future<Integer> result : results) {
+      numMods += getResult(result);
+    }
+    return numMods;
+  }
+
+  /**
+   * Returns <code>true</code> if method-local passes should run in parallel.
+   */
+  public static boolean isEnabled() {
+    return numThreads > 1;
+  }
+
+  /**
+   * Returns how many tasks the given number of methods is split into.
+   */
+  // @VisibleForTesting
+  static int getNumTasks(int numMethods) {
+    return Math.min(numMethods, numThreads * TASKS_PER_THREAD);
+  }
+
+  /**
+   * Overrides {@link #THREADS_PROPERTY}, replacing the pool of threads.
+   */
+  // @VisibleForTesting
+  static synchronized void setNumThreads(int threads) {
+    if (executor != null) {
+      executor.shutdown();
+      executor = null;
+    }
+    numThreads = Math.max(1, threads);
+  }
+
+  private static synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+        private final AtomicInteger nextId = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "ParallelMethodOptimizer-" + nextId.getAndIncrement());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return executor;
+  }
+
+  private static int getResult(Future<Integer> result) {
+    try {
+      return result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InternalCompilerException("Interrupted during parallel optimization", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new InternalCompilerException("Unexpected failure in parallel optimization", cause);
+    }
+  }
+
+  private ParallelMethodOptimizer() {
+  }
+}
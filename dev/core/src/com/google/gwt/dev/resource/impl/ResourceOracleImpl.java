@@ -44,6 +44,13 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The normal implementation of {@link ResourceOracle}.
@@ -151,6 +158,18 @@ public class ResourceOracleImpl implements ResourceOracle {
     }
   }
 
+  /**
+   * A Java system property that sets the number of threads used to scan classpath
+   * entries during {@link #preload} and {@link #refresh}. Defaults to the number of
+   * available processors; 1 scans every entry on the calling thread.
+   */
+  public static final String THREADS_PROPERTY = "gwt.resourceOracle.threads";
+
+  private static final int NUM_THREADS = Math.max(1,
+      Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()));
+
+  private static ExecutorService executor;
+
   private static final Map<ResourceLoader, List<ClassPathEntry>> classPathCache =
       new MapMaker().weakKeys().makeMap();
   
@@ -205,17 +224,25 @@ public class ResourceOracleImpl implements ResourceOracle {
   /**
    * Preinitializes the classpath for a given {@link ResourceLoader}.
    */
-  public static void preload(TreeLogger logger, ResourceLoader resources) {
+  public static void preload(final TreeLogger logger, ResourceLoader resources) {
     Event resourceOracle =
         SpeedTracerLogger.start(CompilerEventType.RESOURCE_ORACLE, "phase", "preload");
     List<ClassPathEntry> entries = getAllClassPathEntries(logger, resources);
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
     for (ClassPathEntry entry : entries) {
       // We only handle pre-indexing jars, the file system could change.
       if (entry instanceof ZipFileClassPathEntry) {
-        ZipFileClassPathEntry zpe = (ZipFileClassPathEntry) entry;
-        zpe.index(logger);
+        final ZipFileClassPathEntry zpe = (ZipFileClassPathEntry) entry;
+        tasks.add(new Callable<Void>() {
+          @Override
+          public Void call() {
+            zpe.index(logger);
+            return null;
+          }
+        });
       }
     }
+    invokeAll(tasks);
     resourceOracle.end();
   }
 
@@ -247,7 +274,7 @@ public class ResourceOracleImpl implements ResourceOracle {
      */
     List<Map<String, ResourceData>> resourceDataMaps = new ArrayList<Map<String, ResourceData>>();
 
-    List<PathPrefixSet> pathPrefixSets = new ArrayList<PathPrefixSet>();
+    final List<PathPrefixSet> pathPrefixSets = new ArrayList<PathPrefixSet>();
     for (ResourceOracleImpl oracle : oracles) {
       if (!oracle.classPath.equals(oracles[0].classPath)) {
         throw new IllegalArgumentException("Refreshing multiple oracles with different classpaths");
@@ -267,12 +294,29 @@ public class ResourceOracleImpl implements ResourceOracle {
      * resources with the same path, the one with the higher-priority path
      * prefix wins.
      */
-    for (ClassPathEntry pathRoot : oracles[0].classPath) {
-      TreeLogger branchForClassPathEntry =
+    List<ClassPathEntry> classPath = oracles[0].classPath;
+    List<TreeLogger> branches = new ArrayList<TreeLogger>(classPath.size());
+    List<Callable<List<Map<AbstractResource, PathPrefix>>>> tasks =
+        new ArrayList<Callable<List<Map<AbstractResource, PathPrefix>>>>(classPath.size());
+    for (final ClassPathEntry pathRoot : classPath) {
+      // Branch on this thread so that the log keeps the classpath order.
+      final TreeLogger branchForClassPathEntry =
           Messages.EXAMINING_PATH_ROOT.branch(refreshBranch, pathRoot.getLocation(), null);
+      branches.add(branchForClassPathEntry);
+      tasks.add(new Callable<List<Map<AbstractResource, PathPrefix>>>() {
+        @Override
+        public List<Map<AbstractResource, PathPrefix>> call() {
+          return pathRoot.findApplicableResources(branchForClassPathEntry, pathPrefixSets);
+        }
+      });
+    }
 
+    // Scan the classpath entries in parallel, then merge them in priority order.
+    List<List<Map<AbstractResource, PathPrefix>>> resultsByEntry = invokeAll(tasks);
+    for (int entryIndex = 0; entryIndex < classPath.size(); ++entryIndex) {
+      TreeLogger branchForClassPathEntry = branches.get(entryIndex);
       List<Map<AbstractResource, PathPrefix>> resourceToPrefixMaps =
-          pathRoot.findApplicableResources(branchForClassPathEntry, pathPrefixSets);
+          resultsByEntry.get(entryIndex);
       for (int i = 0; i < len; ++i) {
         Map<String, ResourceData> resourceDataMap = resourceDataMaps.get(i);
         Map<AbstractResource, PathPrefix> resourceToPrefixMap = resourceToPrefixMaps.get(i);
@@ -350,6 +394,70 @@ public class ResourceOracleImpl implements ResourceOracle {
     }
   }
 
+  private static synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(NUM_THREADS, new ThreadFactory() {
+        private final AtomicInteger nextId = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "ResourceOracle-" + nextId.getAndIncrement());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return executor;
+  }
+
+  /**
+   * Runs the tasks, in parallel if more than one thread is allowed, and returns their
+   * results in the same order.
+   */
+  private static <T> List<T> invokeAll(List<Callable<T>> tasks) {
+    List<T> results = new ArrayList<T>(tasks.size());
+    if (NUM_THREADS == 1 || tasks.size() < 2) {
+      for (Callable<T> task : tasks) {
+        try {
+          results.add(task.call());
+        } catch (RuntimeException e) {
+          throw e;
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+      return results;
+    }
+
+    List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+    ExecutorService pool = getExecutor();
+    for (Callable<T> task : tasks) {
+      futures.add(pool.submit(task));
+    }
+    for (Future<T> future : futures) {
+      results.add(getResult(future));
+    }
+    return results;
+  }
+
+  private static <T> T getResult(Future<T> result) {
+    try {
+      return result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while scanning the classpath", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException("Unexpected failure while scanning the classpath", cause);
+    }
+  }
+
   private static synchronized List<ClassPathEntry> getAllClassPathEntries(TreeLogger logger,
       ResourceLoader resources) {
     List<ClassPathEntry> classPath = classPathCache.get(resources);
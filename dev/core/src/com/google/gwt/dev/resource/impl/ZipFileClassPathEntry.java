@@ -16,18 +16,26 @@
 package com.google.gwt.dev.resource.impl;
 
 import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.util.Util;
 import com.google.gwt.dev.util.collect.IdentityHashMap;
-import com.google.gwt.dev.util.collect.IdentityHashSet;
 import com.google.gwt.dev.util.collect.IdentityMaps;
-import com.google.gwt.dev.util.collect.Sets;
 import com.google.gwt.dev.util.msg.Message1String;
 import com.google.gwt.thirdparty.guava.common.collect.MapMaker;
+import com.google.gwt.util.tools.Utility;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -52,6 +60,9 @@ public class ZipFileClassPathEntry extends ClassPathEntry {
     static final Message1String INCLUDING_RESOURCE = new Message1String(
         TreeLogger.DEBUG, "Including $0");
 
+    static final Message1String LOADED_INDEX = new Message1String(
+        TreeLogger.TRACE, "Loaded saved index of zip file: $0");
+
     static final Message1String READ_ZIP_ENTRY = new Message1String(
         TreeLogger.DEBUG, "$0");
   }
@@ -67,6 +78,19 @@ public class ZipFileClassPathEntry extends ClassPathEntry {
     }
   }
 
+  /**
+   * A Java system property naming the directory where the names of the entries in each
+   * jar or zip file are saved, so that later runs don't have to enumerate them again.
+   * Defaults to <code>.gwt/jarindex</code> in the user's home directory, where other
+   * users can't plant indexes that hide entries; an empty value disables saving.
+   */
+  public static final String INDEX_DIR_PROPERTY = "gwt.jarIndexDir";
+
+  /**
+   * Changes whenever the format of saved indexes changes.
+   */
+  private static final int INDEX_VERSION = 1;
+
   /**
    * Memory-sensitive cache of indexed {@link ZipFileClassPathEntry}s. URI of file is most probably
    * not referenced anywhere else, so we use hard reference, and soft reference on
@@ -92,7 +116,11 @@ public class ZipFileClassPathEntry extends ClassPathEntry {
     return entry;
   }
 
-  private Set<ZipFileResource> allZipFileResources;
+  /**
+   * The resources in the zip file, grouped by directory (for example,
+   * "com/example/client/", or "" for the top level) in the order first seen.
+   */
+  private Map<String, List<ZipFileResource>> resourcesByDirectory;
 
   /**
    * The lifetime of the {@link PathPrefixSet} pins the life time of the associated
@@ -102,12 +130,14 @@ public class ZipFileClassPathEntry extends ClassPathEntry {
    */
   private final Map<PathPrefixSet, ZipFileSnapshot> cachedSnapshots = new MapMaker().weakKeys().makeMap();
 
+  private final File file;
   private final long lastModified;
   private final String location;
   private final ZipFile zipFile;
 
   private ZipFileClassPathEntry(File zipFile) throws IOException {
     assert zipFile.isAbsolute();
+    this.file = zipFile;
     this.lastModified = zipFile.lastModified();
     this.zipFile = new ZipFile(zipFile);
     this.location = zipFile.toURI().toString();
@@ -144,15 +174,37 @@ public class ZipFileClassPathEntry extends ClassPathEntry {
 
   synchronized void index(TreeLogger logger) {
     // Never re-index.
-    if (allZipFileResources == null) {
-      allZipFileResources = buildIndex(logger);
+    if (resourcesByDirectory == null) {
+      List<String> paths = loadIndex();
+      if (paths != null) {
+        Messages.LOADED_INDEX.log(logger, zipFile.getName(), null);
+      } else {
+        paths = readEntryNames(logger);
+        saveIndex(paths);
+      }
+      resourcesByDirectory = groupByDirectory(paths);
     }
   }
 
-  private Set<ZipFileResource> buildIndex(TreeLogger logger) {
+  private Map<String, List<ZipFileResource>> groupByDirectory(List<String> paths) {
+    Map<String, List<ZipFileResource>> results =
+        new LinkedHashMap<String, List<ZipFileResource>>();
+    for (String path : paths) {
+      String directory = path.substring(0, path.lastIndexOf('/') + 1);
+      List<ZipFileResource> resources = results.get(directory);
+      if (resources == null) {
+        resources = new ArrayList<ZipFileResource>();
+        results.put(directory, resources);
+      }
+      resources.add(new ZipFileResource(this, path));
+    }
+    return results;
+  }
+
+  private List<String> readEntryNames(TreeLogger logger) {
     logger = Messages.BUILDING_INDEX.branch(logger, zipFile.getName(), null);
 
-    Set<ZipFileResource> results = new IdentityHashSet<ZipFileResource>();
+    List<String> results = new ArrayList<String>();
     Enumeration<? extends ZipEntry> e = zipFile.entries();
     while (e.hasMoreElements()) {
       ZipEntry zipEntry = e.nextElement();
@@ -164,12 +216,10 @@ public class ZipFileClassPathEntry extends ClassPathEntry {
         // Skip META-INF since classloaders normally make this invisible.
         continue;
       }
-      ZipFileResource zipResource = new ZipFileResource(this,
-          zipEntry.getName());
-      results.add(zipResource);
+      results.add(zipEntry.getName());
       Messages.READ_ZIP_ENTRY.log(logger, zipEntry.getName(), null);
     }
-    return Sets.normalize(results);
+    return results;
   }
 
   private Map<AbstractResource, PathPrefix> computeApplicableResources(
@@ -178,17 +228,119 @@ public class ZipFileClassPathEntry extends ClassPathEntry {
         zipFile.getName(), null);
 
     Map<AbstractResource, PathPrefix> results = new IdentityHashMap<AbstractResource, PathPrefix>();
-    for (ZipFileResource r : allZipFileResources) {
-      String path = r.getPath();
-      String[] pathParts = r.getPathParts();
-      PathPrefix prefix = null;
-      if ((prefix = pathPrefixSet.includesResource(path, pathParts)) != null) {
-        Messages.INCLUDING_RESOURCE.log(logger, path, null);
-        results.put(r, prefix);
-      } else {
-        Messages.EXCLUDING_RESOURCE.log(logger, path, null);
+    for (Map.Entry<String, List<ZipFileResource>> entry : resourcesByDirectory.entrySet()) {
+      // Skip whole directories that no path prefix could include.
+      String directory = entry.getKey();
+      if (directory.length() > 0 && !pathPrefixSet.includesDirectory(directory)) {
+        continue;
+      }
+      for (ZipFileResource r : entry.getValue()) {
+        String path = r.getPath();
+        String[] pathParts = r.getPathParts();
+        PathPrefix prefix = null;
+        if ((prefix = pathPrefixSet.includesResource(path, pathParts)) != null) {
+          Messages.INCLUDING_RESOURCE.log(logger, path, null);
+          results.put(r, prefix);
+        } else {
+          Messages.EXCLUDING_RESOURCE.log(logger, path, null);
+        }
       }
     }
     return IdentityMaps.normalize(results);
   }
+
+  /**
+   * Returns the file where the index of this zip file would be saved, or null if
+   * indexes aren't saved.
+   */
+  // @VisibleForTesting
+  File getIndexFile() {
+    File indexDir = getIndexDir();
+    if (indexDir == null) {
+      return null;
+    }
+    return new File(indexDir, Util.computeStrongName(Util.getBytes(file.getPath())) + ".idx");
+  }
+
+  /**
+   * Returns the entry names saved by an earlier run, or null if there are none or the
+   * zip file has changed since.
+   */
+  private List<String> loadIndex() {
+    File indexFile = getIndexFile();
+    if (indexFile == null || !indexFile.isFile()) {
+      return null;
+    }
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+      if (in.readInt() != INDEX_VERSION || !in.readUTF().equals(file.getPath())
+          || in.readLong() != file.length() || in.readLong() != lastModified) {
+        return null;
+      }
+      int count = in.readInt();
+      List<String> paths = new ArrayList<String>(count);
+      for (int i = 0; i < count; i++) {
+        paths.add(in.readUTF());
+      }
+      return paths;
+    } catch (IOException e) {
+      // Corrupt or truncated; index the zip file again.
+      return null;
+    } finally {
+      Utility.close(in);
+    }
+  }
+
+  /**
+   * Saves the entry names for later runs. Failures are ignored since the index can
+   * always be rebuilt.
+   */
+  private void saveIndex(List<String> paths) {
+    File indexFile = getIndexFile();
+    if (indexFile == null) {
+      return;
+    }
+    File indexDir = indexFile.getParentFile();
+    if (!indexDir.isDirectory() && !indexDir.mkdirs()) {
+      return;
+    }
+    File tempFile = null;
+    DataOutputStream out = null;
+    try {
+      // Write to a temporary file so that other processes never see a partial index.
+      tempFile = File.createTempFile("index", ".tmp", indexDir);
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+      out.writeInt(INDEX_VERSION);
+      out.writeUTF(file.getPath());
+      out.writeLong(file.length());
+      out.writeLong(lastModified);
+      out.writeInt(paths.size());
+      for (String path : paths) {
+        out.writeUTF(path);
+      }
+      out.close();
+      out = null;
+      indexFile.delete();
+      if (tempFile.renameTo(indexFile)) {
+        tempFile = null;
+      }
+    } catch (IOException e) {
+      // Ignored.
+    } finally {
+      Utility.close(out);
+      if (tempFile != null) {
+        tempFile.delete();
+      }
+    }
+  }
+
+  private static File getIndexDir() {
+    String dir = System.getProperty(INDEX_DIR_PROPERTY);
+    if (dir == null) {
+      String home = System.getProperty("user.home");
+      return home == null ? null : new File(home, ".gwt/jarindex");
+    }
+    return dir.length() == 0 ? null : new File(dir);
+  }
 }
@@ -23,11 +23,20 @@ import java.io.StringWriter;
  */
 public class DefaultTextOutput extends AbstractTextOutput {
 
-  private final StringWriter sw = new StringWriter();
+  private final StringWriter sw;
   private final PrintWriter out;
 
   public DefaultTextOutput(boolean compact) {
+    this(compact, 16);
+  }
+
+  /**
+   * Creates an output whose buffer starts out able to hold
+   * <code>initialSize</code> characters.
+   */
+  public DefaultTextOutput(boolean compact, int initialSize) {
     super(compact);
+    sw = new StringWriter(initialSize);
     setPrintWriter(out = new PrintWriter(sw));
   }
 
@@ -23,16 +23,23 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A nifty class that lets you squirrel away data on the file system. Write
- * once, read many times. Instance of this are thread-safe by way of internal
- * synchronization.
+ * once, read many times. Instances of this are thread-safe.
  * 
- * Note that in the current implementation, the backing temp file will get
- * arbitrarily large as you continue adding things to it. There is no internal
+ * The data is striped across several backing temp files, called segments. Each
+ * thread appends to its own segment by atomically reserving space at the end of
+ * it, and reads use positional I/O, so neither reads nor writes take a lock.
+ * 
+ * Note that in the current implementation, the backing temp files will get
+ * arbitrarily large as you continue adding things to them. There is no internal
  * GC or compaction.
  */
 public class DiskCache {
@@ -44,7 +51,245 @@ public class DiskCache {
    * the map larger after the fact, which kind of defeats the infinite-append
    * design. At any rate, I measured the current performance of this design to
    * be so fast relative to what I'm using it for, I didn't pursue this further.
+   * 
+   * Each record is a chunk header (an int length and a long token of the next
+   * chunk, or -1) followed by the data. Byte arrays are always written as one
+   * chunk; streams of unknown length are written as a chain of chunks, so that
+   * a writer never needs to hold a segment while it drains its input.
+   */
+
+  /**
+   * One backing file, appended to by reserving space with an atomic add.
+   */
+  private static class Segment {
+    private volatile FileChannel channel;
+    private final AtomicLong end = new AtomicLong();
+    private final File file;
+    private final int index;
+    private RandomAccessFile raf;
+
+    Segment(int index) throws IOException {
+      this.index = index;
+      file = File.createTempFile("gwt", "byte-cache");
+      file.deleteOnExit();
+      raf = new RandomAccessFile(file, "rw");
+      raf.setLength(0);
+      channel = raf.getChannel();
+    }
+
+    synchronized void close() throws IOException {
+      if (raf != null) {
+        raf.setLength(0);
+        raf.close();
+        raf = null;
+        channel = null;
+      }
+    }
+
+    /**
+     * Reads exactly <code>buffer.remaining()</code> bytes at the given offset.
+     */
+    void read(ByteBuffer buffer, long position) throws IOException {
+      int start = buffer.position();
+      while (true) {
+        FileChannel current = channel;
+        try {
+          while (buffer.hasRemaining()) {
+            int read = current.read(buffer, position + buffer.position() - start);
+            if (read < 0) {
+              throw new IOException("Unexpected end of byte cache file " + file);
+            }
+          }
+          return;
+        } catch (ClosedChannelException e) {
+          reopen(current, e);
+        }
+      }
+    }
+
+    /**
+     * Allocates <code>length</code> bytes at the end of the segment.
+     * 
+     * @return the offset of the allocated space
+     */
+    long reserve(int length) {
+      return end.getAndAdd(length);
+    }
+
+    /**
+     * Writes all of <code>buffer</code> at the given offset.
+     */
+    void write(ByteBuffer buffer, long position) throws IOException {
+      int start = buffer.position();
+      while (true) {
+        FileChannel current = channel;
+        try {
+          while (buffer.hasRemaining()) {
+            current.write(buffer, position + buffer.position() - start);
+          }
+          return;
+        } catch (ClosedChannelException e) {
+          reopen(current, e);
+        }
+      }
+    }
+
+    /**
+     * A FileChannel is closed for every thread when any thread using it is
+     * interrupted. Opens a fresh channel (unless another thread already did)
+     * so that the failed operation can be retried; the interrupted thread's
+     * interrupt status is cleared first so the retry can proceed, and then
+     * restored.
+     */
+    private void reopen(FileChannel broken, ClosedChannelException e) throws IOException {
+      boolean interrupted = Thread.interrupted();
+      try {
+        synchronized (this) {
+          if (raf == null) {
+            throw e;
+          }
+          if (channel == broken) {
+            raf = new RandomAccessFile(file, "rw");
+            channel = raf.getChannel();
+          }
+        }
+      } finally {
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads a chain of chunks straight from the segment files.
    */
+  private class RecordInputStream extends InputStream {
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    private long next;
+    private long position;
+    private int remaining;
+    private Segment segment;
+
+    RecordInputStream(long token) {
+      next = token;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] one = new byte[1];
+      return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      while (remaining == 0) {
+        if (next < 0) {
+          return -1;
+        }
+        segment = segmentFor(next);
+        position = offsetOf(next);
+        header.clear();
+        segment.read(header, position);
+        remaining = header.getInt(0);
+        next = header.getLong(4);
+        position += HEADER_SIZE;
+      }
+      int toRead = Math.min(len, remaining);
+      segment.read(ByteBuffer.wrap(b, off, toRead), position);
+      position += toRead;
+      remaining -= toRead;
+      return toRead;
+    }
+  }
+
+  /**
+   * Writes a record of unknown length as a chain of chunks, each at most
+   * {@link #STREAM_CHUNK_SIZE} bytes, so that neither the writer nor the cache
+   * ever holds the whole record in memory. The record's token is available
+   * once the stream is closed.
+   */
+  public final class RecordOutputStream extends OutputStream {
+    private final byte[] buf = new byte[STREAM_CHUNK_SIZE];
+    private int count;
+    private long firstToken = -1;
+    private long previousPosition = -1;
+    private final Segment segment = currentSegment();
+    private boolean closed;
+
+    private RecordOutputStream() {
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!closed) {
+        if (count > 0 || firstToken < 0) {
+          writeChunk();
+        }
+        closed = true;
+      }
+    }
+
+    /**
+     * Returns the token of the record written to this stream.
+     * 
+     * @throws IllegalStateException if the stream has not been closed
+     */
+    public long getToken() {
+      if (!closed) {
+        throw new IllegalStateException("The record has not been closed");
+      }
+      return firstToken;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      ensureOpen();
+      while (len > 0) {
+        int toCopy = Math.min(len, buf.length - count);
+        System.arraycopy(b, off, buf, count, toCopy);
+        count += toCopy;
+        off += toCopy;
+        len -= toCopy;
+        if (count == buf.length) {
+          writeChunk();
+        }
+      }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      ensureOpen();
+      buf[count++] = (byte) b;
+      if (count == buf.length) {
+        writeChunk();
+      }
+    }
+
+    private void ensureOpen() throws IOException {
+      if (closed) {
+        throw new IOException("Stream closed");
+      }
+    }
+
+    private void writeChunk() throws IOException {
+      long position = append(segment, buf, count);
+      long token = toToken(segment, position);
+      if (previousPosition < 0) {
+        firstToken = token;
+      } else {
+        // Link the previous chunk, which only this stream can see so far.
+        ByteBuffer next = ByteBuffer.allocate(8);
+        next.putLong(0, token);
+        segment.write(next, previousPosition + 4);
+      }
+      previousPosition = position;
+      count = 0;
+    }
+  }
 
   private static class Shutdown implements Runnable {
     @Override
@@ -61,6 +306,29 @@ public class DiskCache {
     }
   }
 
+  /**
+   * A Java system property that sets the number of backing files. Defaults to
+   * the number of available processors.
+   */
+  public static final String SEGMENTS_PROPERTY = "gwt.diskcache.segments";
+
+  /**
+   * Size of a chunk header: the data length and the token of the next chunk.
+   */
+  private static final int HEADER_SIZE = 4 + 8;
+
+  /**
+   * The low bits of a token hold the segment index, the rest the offset.
+   */
+  private static final int SEGMENT_BITS = 6;
+
+  private static final int MAX_SEGMENTS = 1 << SEGMENT_BITS;
+
+  /**
+   * The largest chunk written by a {@link RecordOutputStream}.
+   */
+  private static final int STREAM_CHUNK_SIZE = 64 * 1024;
+
   /**
    * A global shared Disk cache.
    */
@@ -68,38 +336,97 @@ public class DiskCache {
 
   private static List<WeakReference<DiskCache>> shutdownList;
 
-  private boolean atEnd = true;
-  private RandomAccessFile file;
+  private static int getDefaultSegmentCount() {
+    int count = Integer.getInteger(SEGMENTS_PROPERTY, Runtime.getRuntime().availableProcessors());
+    return Math.max(1, Math.min(MAX_SEGMENTS, count));
+  }
+
+  private static synchronized void registerForShutdown(DiskCache diskCache) {
+    if (shutdownList == null) {
+      shutdownList = new ArrayList<WeakReference<DiskCache>>();
+      Runtime.getRuntime().addShutdownHook(new Thread(new Shutdown()));
+    }
+    shutdownList.add(new WeakReference<DiskCache>(diskCache));
+  }
+
+  private final Segment[] segments;
 
   DiskCache() {
+    this(getDefaultSegmentCount());
+  }
+
+  DiskCache(int numSegments) {
+    assert numSegments > 0 && numSegments <= MAX_SEGMENTS;
+    segments = new Segment[numSegments];
     try {
-      File temp = File.createTempFile("gwt", "byte-cache");
-      temp.deleteOnExit();
-      file = new RandomAccessFile(temp, "rw");
-      file.setLength(0);
-      if (shutdownList == null) {
-        shutdownList = new ArrayList<WeakReference<DiskCache>>();
-        Runtime.getRuntime().addShutdownHook(new Thread(new Shutdown()));
+      for (int i = 0; i < numSegments; ++i) {
+        segments[i] = new Segment(i);
       }
-      shutdownList.add(new WeakReference<DiskCache>(this));
+      registerForShutdown(this);
     } catch (IOException e) {
       throw new RuntimeException("Unable to initialize byte cache", e);
     }
   }
 
+  /**
+   * Opens a stream over the underlying bytes, which are read from disk as the
+   * stream is consumed rather than all at once.
+   * 
+   * @param token a previously returned token
+   * @return a stream of the bytes that were written
+   */
+  public InputStream openStream(long token) {
+    return new RecordInputStream(token);
+  }
+
+  /**
+   * Opens a stream that writes a new record chunk by chunk. Closing the stream
+   * completes the record; {@link RecordOutputStream#getToken()} then returns
+   * its token.
+   */
+  public RecordOutputStream openOutputStream() {
+    return new RecordOutputStream();
+  }
+
   /**
    * Retrieve the underlying bytes.
    * 
    * @param token a previously returned token
    * @return the bytes that were written
    */
-  public synchronized byte[] readByteArray(long token) {
+  public byte[] readByteArray(long token) {
     try {
-      atEnd = false;
-      file.seek(token);
-      int length = file.readInt();
-      byte[] result = new byte[length];
-      file.readFully(result);
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      List<byte[]> chunks = null;
+      int totalLength = 0;
+      while (true) {
+        Segment segment = segmentFor(token);
+        long position = offsetOf(token);
+        header.clear();
+        segment.read(header, position);
+        int length = header.getInt(0);
+        long next = header.getLong(4);
+        byte[] chunk = new byte[length];
+        segment.read(ByteBuffer.wrap(chunk), position + HEADER_SIZE);
+        if (next < 0 && chunks == null) {
+          return chunk;
+        }
+        if (chunks == null) {
+          chunks = new ArrayList<byte[]>();
+        }
+        chunks.add(chunk);
+        totalLength += length;
+        if (next < 0) {
+          break;
+        }
+        token = next;
+      }
+      byte[] result = new byte[totalLength];
+      int pos = 0;
+      for (byte[] chunk : chunks) {
+        System.arraycopy(chunk, 0, result, pos, chunk.length);
+        pos += chunk.length;
+      }
       return result;
     } catch (IOException e) {
       throw new RuntimeException("Unable to read from byte cache", e);
@@ -144,32 +471,12 @@ public class DiskCache {
    * 
    * @return a token to retrieve the data later
    */
-  public synchronized long transferFromStream(InputStream in) throws IOException {
+  public long transferFromStream(InputStream in) throws IOException {
     assert in != null;
-    byte[] buf = Util.takeThreadLocalBuf();
-    try {
-      long position = moveToEndPosition();
-
-      // Placeholder, we don't know the length yet.
-      file.writeInt(-1);
-
-      // Transfer all the bytes.
-      int length = 0;
-      int bytesRead;
-      while ((bytesRead = in.read(buf)) != -1) {
-        file.write(buf, 0, bytesRead);
-        length += bytesRead;
-      }
-
-      // Now go back and fill in the length.
-      file.seek(position);
-      file.writeInt(length);
-      // Don't eagerly seek the end, the next operation might be a read.
-      atEnd = false;
-      return position;
-    } finally {
-      Util.releaseThreadLocalBuf(buf);
-    }
+    RecordOutputStream out = openOutputStream();
+    Util.copyNoClose(in, out);
+    out.close();
+    return out.getToken();
   }
 
   /**
@@ -178,22 +485,25 @@ public class DiskCache {
    * @param token a previously returned token
    * @param out the stream to write into
    */
-  public synchronized void transferToStream(long token, OutputStream out) throws IOException {
+  public void transferToStream(long token, OutputStream out) throws IOException {
     byte[] buf = Util.takeThreadLocalBuf();
     try {
-      atEnd = false;
-      file.seek(token);
-      int length = file.readInt();
-      int bufLen = buf.length;
-      while (length > bufLen) {
-        int read = file.read(buf, 0, bufLen);
-        length -= read;
-        out.write(buf, 0, read);
-      }
-      while (length > 0) {
-        int read = file.read(buf, 0, length);
-        length -= read;
-        out.write(buf, 0, read);
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      while (token >= 0) {
+        Segment segment = segmentFor(token);
+        long position = offsetOf(token);
+        header.clear();
+        segment.read(header, position);
+        int length = header.getInt(0);
+        token = header.getLong(4);
+        position += HEADER_SIZE;
+        while (length > 0) {
+          int toRead = Math.min(length, buf.length);
+          segment.read(ByteBuffer.wrap(buf, 0, toRead), position);
+          out.write(buf, 0, toRead);
+          position += toRead;
+          length -= toRead;
+        }
       }
     } finally {
       Util.releaseThreadLocalBuf(buf);
@@ -205,12 +515,10 @@ public class DiskCache {
    * 
    * @return a token to retrieve the data later
    */
-  public synchronized long writeByteArray(byte[] bytes) {
+  public long writeByteArray(byte[] bytes) {
     try {
-      long position = moveToEndPosition();
-      file.writeInt(bytes.length);
-      file.write(bytes);
-      return position;
+      Segment segment = currentSegment();
+      return toToken(segment, append(segment, bytes, bytes.length));
     } catch (IOException e) {
       throw new RuntimeException("Unable to write to byte cache", e);
     }
@@ -241,34 +549,53 @@ public class DiskCache {
   }
 
   @Override
-  protected synchronized void finalize() throws Throwable {
+  protected void finalize() throws Throwable {
     close();
   }
 
-  private void close() throws Throwable {
-    if (file != null) {
-      file.setLength(0);
-      file.close();
-      file = null;
-    }
+  /**
+   * Appends a single chunk with no successor to a segment.
+   * 
+   * @return the offset of the chunk within the segment
+   */
+  private long append(Segment segment, byte[] bytes, int length) throws IOException {
+    long position = segment.reserve(HEADER_SIZE + length);
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.putInt(0, length);
+    header.putLong(4, -1L);
+    segment.write(header, position);
+    segment.write(ByteBuffer.wrap(bytes, 0, length), position + HEADER_SIZE);
+    return position;
   }
 
   /**
-   * Moves to the end of the file if necessary and returns the offset position.
-   * Caller must synchronize.
-   * 
-   * @return the offset position of the end of the file
-   * @throws IOException
+   * Truncates and closes the backing files. The cache can't be used afterwards.
    */
-  private long moveToEndPosition() throws IOException {
-    // Get an end pointer.
-    if (atEnd) {
-      return file.getFilePointer();
-    } else {
-      long position = file.length();
-      file.seek(position);
-      atEnd = true;
-      return position;
+  // @VisibleForTesting
+  void close() throws IOException {
+    for (Segment segment : segments) {
+      segment.close();
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Returns the segment the current thread appends to. Permutation workers and
+   * other long-lived threads thus each tend to get a segment of their own.
+   */
+  private Segment currentSegment() {
+    return segments[(int) (Thread.currentThread().getId() % segments.length)];
+  }
+
+  private long offsetOf(long token) {
+    return token >>> SEGMENT_BITS;
+  }
+
+  private Segment segmentFor(long token) {
+    assert token >= 0;
+    return segments[(int) (token & (MAX_SEGMENTS - 1))];
+  }
+
+  private long toToken(Segment segment, long position) {
+    return (position << SEGMENT_BITS) | segment.index;
+  }
+}
@@ -16,6 +16,7 @@
 package com.google.gwt.dev.util;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
@@ -44,6 +45,14 @@ public class DiskCacheToken implements Serializable {
     this.token = token;
   }
 
+  /**
+   * Opens a stream over the underlying bytes, which are read as the stream is
+   * consumed.
+   */
+  public InputStream openStream() {
+    return diskCache.openStream(token);
+  }
+
   /**
    * Retrieve the underlying bytes.
    * 
@@ -26,6 +26,7 @@ public enum DevModeEventType implements EventType {
   CREATE_UI("Create UI", "BlueViolet"), //
   CSB_ADD_GENERATED_TYPES("CSB Add Generated Types", "SteelBlue"), //
   CSB_BUILD_FROM_ORACLE("CSB Build From Oracle", "SlateGray"), //
+  CSB_BUILD_UNITS("CSB Build Units", "CadetBlue"), //
   CSB_PROCESS("CSB Process", "Teal"), //
   COMP_STATE_ADD_GENERATED_UNITS("Comp State Add Generated Units", "Brown"), //
   DELETE_CACHE("Delete Persistent Cache", "summersky"), //
@@ -15,11 +15,18 @@
  */
 package com.google.gwt.core.ext.linker;
 
+import com.google.gwt.core.ext.Linker;
+import com.google.gwt.core.ext.TreeLogger;
 import com.google.gwt.core.ext.linker.impl.StandardScriptReference;
 import com.google.gwt.core.ext.linker.impl.StandardStylesheetReference;
 
 import junit.framework.TestCase;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.SortedSet;
 
 /**
@@ -27,6 +34,107 @@ import java.util.SortedSet;
  */
 public class ArtifactSetTest extends TestCase {
 
+  private static class OtherEmittedArtifact extends EmittedArtifact {
+    OtherEmittedArtifact(String partialPath) {
+      super(Linker.class, partialPath);
+    }
+
+    @Override
+    public InputStream getContents(TreeLogger logger) {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+  }
+
+  public void testFindTracksChanges() {
+    ArtifactSet set = new ArtifactSet();
+    StandardScriptReference fooScript = new StandardScriptReference("foo", 0);
+    StandardStylesheetReference fooStyle = new StandardStylesheetReference("foo", 0);
+    SyntheticArtifact emitted = new SyntheticArtifact(Linker.class, "foo.txt", new byte[0]);
+    set.add(fooScript);
+    set.add(fooStyle);
+
+    assertEquals(1, set.find(StandardScriptReference.class).size());
+    assertEquals(0, set.find(EmittedArtifact.class).size());
+
+    // Artifacts added after a lookup are found, including by supertype.
+    set.add(emitted);
+    SortedSet<EmittedArtifact> found = set.find(EmittedArtifact.class);
+    assertEquals(1, found.size());
+    assertSame(emitted, found.first());
+    assertSame(emitted, set.find(SyntheticArtifact.class).first());
+
+    // Results are modifiable snapshots.
+    found.clear();
+    assertEquals(1, set.find(EmittedArtifact.class).size());
+    SortedSet<StandardScriptReference> before = set.find(StandardScriptReference.class);
+    set.add(new StandardScriptReference("qux", 3));
+    assertEquals(1, before.size());
+    assertEquals(2, set.find(StandardScriptReference.class).size());
+    set.remove(new StandardScriptReference("qux", 3));
+
+    StandardScriptReference barScript = new StandardScriptReference("bar", 1);
+    set.addAll(Arrays.asList(barScript, new StandardScriptReference("baz", 2)));
+    assertEquals(3, set.find(StandardScriptReference.class).size());
+
+    set.remove(new StandardScriptReference("baz", 2));
+    SortedSet<StandardScriptReference> scripts = set.find(StandardScriptReference.class);
+    assertEquals(2, scripts.size());
+    assertSame(fooScript, scripts.first());
+    assertSame(barScript, scripts.last());
+
+    // Replacing an equal artifact updates the index.
+    StandardScriptReference newBarScript = new StandardScriptReference("bar", 1);
+    assertTrue(set.replace(newBarScript));
+    assertSame(newBarScript, set.find(StandardScriptReference.class).last());
+
+    for (Iterator<Artifact<?>> it = set.iterator(); it.hasNext();) {
+      if (it.next() instanceof EmittedArtifact) {
+        it.remove();
+      }
+    }
+    assertTrue(set.find(EmittedArtifact.class).isEmpty());
+
+    set.retainAll(Collections.singleton(fooStyle));
+    assertTrue(set.find(StandardScriptReference.class).isEmpty());
+    assertEquals(1, set.find(StandardStylesheetReference.class).size());
+
+    set.clear();
+    assertTrue(set.find(StandardStylesheetReference.class).isEmpty());
+  }
+
+  public void testReplaceWithOtherArtifactType() {
+    ArtifactSet set = new ArtifactSet();
+    set.add(new SyntheticArtifact(Linker.class, "x.js", new byte[0]));
+    assertEquals(1, set.find(SyntheticArtifact.class).size());
+
+    // Emitted artifacts with the same partial path are equal whatever their type.
+    OtherEmittedArtifact other = new OtherEmittedArtifact("x.js");
+    assertTrue(set.replace(other));
+    assertTrue(set.find(SyntheticArtifact.class).isEmpty());
+    assertSame(other, set.find(EmittedArtifact.class).first());
+
+    assertTrue(set.remove(new SyntheticArtifact(Linker.class, "x.js", new byte[0])));
+    assertTrue(set.find(OtherEmittedArtifact.class).isEmpty());
+    assertTrue(set.find(EmittedArtifact.class).isEmpty());
+  }
+
+  public void testFindWithSubSetView() {
+    ArtifactSet set = new ArtifactSet();
+    StandardScriptReference fooScript = new StandardScriptReference("foo", 0);
+    StandardScriptReference barScript = new StandardScriptReference("bar", 1);
+    set.add(fooScript);
+    set.add(barScript);
+    assertEquals(2, set.find(StandardScriptReference.class).size());
+
+    // Changes made through a view are seen by later lookups.
+    set.tailSet(barScript).clear();
+    SortedSet<StandardScriptReference> found = set.find(StandardScriptReference.class);
+    assertEquals(1, found.size());
+    assertSame(fooScript, found.first());
+    set.headSet(barScript).clear();
+    assertTrue(set.find(StandardScriptReference.class).isEmpty());
+  }
+
   public void testScriptOrder() {
     StandardScriptReference fooScript = new StandardScriptReference("foo", 0);
     StandardScriptReference barScript = new StandardScriptReference("bar", 1);
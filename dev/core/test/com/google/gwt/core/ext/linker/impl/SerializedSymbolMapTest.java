@@ -0,0 +1,73 @@
+/*
+ * Copyright 2013 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.core.ext.linker.impl;
+
+import com.google.gwt.core.ext.linker.SymbolData;
+import com.google.gwt.dev.util.DiskCacheToken;
+
+import junit.framework.TestCase;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Tests {@link SerializedSymbolMap}.
+ */
+public class SerializedSymbolMapTest extends TestCase {
+
+  public void testEmpty() {
+    DiskCacheToken token = SerializedSymbolMap.write(new SymbolData[0]);
+    assertEquals(0, SerializedSymbolMap.readAll(token).length);
+    Iterator<SymbolData> it = SerializedSymbolMap.read(token).iterator();
+    assertFalse(it.hasNext());
+    try {
+      it.next();
+      fail("Expected NoSuchElementException");
+    } catch (NoSuchElementException expected) {
+    }
+  }
+
+  public void testRoundTrip() {
+    // Enough symbols to span several resets of the object stream.
+    SymbolData[] symbols = new SymbolData[2500];
+    for (int i = 0; i < symbols.length; ++i) {
+      StandardSymbolData symbol = StandardSymbolData.forMember("com.example.C" + (i % 7),
+          "m" + i, "m" + i + "()V", "file:/C.java", i);
+      symbol.setSymbolName("s" + i);
+      symbols[i] = symbol;
+    }
+    DiskCacheToken token = SerializedSymbolMap.write(symbols);
+
+    SymbolData[] all = SerializedSymbolMap.readAll(token);
+    assertEquals(symbols.length, all.length);
+    for (int i = 0; i < symbols.length; ++i) {
+      assertEquals(symbols[i].getClassName(), all[i].getClassName());
+      assertEquals(symbols[i].getMemberName(), all[i].getMemberName());
+      assertEquals(symbols[i].getSymbolName(), all[i].getSymbolName());
+      assertEquals(i, all[i].getSourceLine());
+    }
+
+    // Each iteration reads the map afresh.
+    for (int pass = 0; pass < 2; ++pass) {
+      int i = 0;
+      for (SymbolData symbol : SerializedSymbolMap.read(token)) {
+        assertEquals(symbols[i].getMemberName(), symbol.getMemberName());
+        ++i;
+      }
+      assertEquals(symbols.length, i);
+    }
+  }
+}
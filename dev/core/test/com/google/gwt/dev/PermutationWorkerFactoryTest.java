@@ -0,0 +1,79 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev;
+
+import com.google.gwt.dev.cfg.BindingProperty;
+import com.google.gwt.dev.cfg.ConfigurationProperty;
+import com.google.gwt.dev.cfg.StaticPropertyOracle;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the cost estimates used to order permutations in
+ * {@link PermutationWorkerFactory}.
+ */
+public class PermutationWorkerFactoryTest extends TestCase {
+
+  private static final BindingProperty PROPERTY = new BindingProperty("costTest.property");
+
+  private static Permutation createPermutation(int id, String... softValues) {
+    Permutation perm = null;
+    for (String value : softValues) {
+      PROPERTY.addDefinedValue(PROPERTY.getRootCondition(), value);
+      Permutation soft = new Permutation(id, new StaticPropertyOracle(
+          new BindingProperty[] {PROPERTY}, new String[] {value}, new ConfigurationProperty[0]));
+      if (perm == null) {
+        perm = soft;
+      } else {
+        perm.mergeRebindsFromCollapsed(soft);
+      }
+    }
+    return perm;
+  }
+
+  public void testHistoryOverridesSoftPermutationCount() {
+    Permutation big = createPermutation(0, "h1", "h2", "h3");
+    Permutation slow = createPermutation(1, "h4");
+    Permutation unknown = createPermutation(2, "h5", "h6");
+    PermutationWorkerFactory.recordCost(big, 300);
+    PermutationWorkerFactory.recordCost(slow, 900);
+
+    long[] costs = PermutationWorkerFactory.estimateCosts(
+        new Permutation[] {big, slow, unknown});
+    assertEquals(300, costs[0]);
+    assertEquals(900, costs[1]);
+    // 1200ms over 4 known soft permutations.
+    assertEquals(600, costs[2]);
+  }
+
+  public void testLeastRecentlyUsedCostsAreDropped() {
+    Permutation first = createPermutation(0, "e0");
+    PermutationWorkerFactory.recordCost(first, 5000);
+    for (int i = 1; i <= PermutationWorkerFactory.MAX_RECORDED_COSTS; ++i) {
+      PermutationWorkerFactory.recordCost(createPermutation(i, "e" + i), 1);
+    }
+
+    long[] costs = PermutationWorkerFactory.estimateCosts(new Permutation[] {first});
+    assertEquals(1, costs[0]);
+  }
+
+  public void testSoftPermutationCount() {
+    Permutation one = createPermutation(0, "s1");
+    Permutation three = createPermutation(1, "s2", "s3", "s4");
+    long[] costs = PermutationWorkerFactory.estimateCosts(new Permutation[] {one, three});
+    assertTrue(costs[1] > costs[0]);
+  }
+}
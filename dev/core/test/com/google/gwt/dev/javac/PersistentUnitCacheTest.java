@@ -27,6 +27,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
 import java.io.Serializable;
 import java.util.concurrent.ExecutionException;
 
@@ -234,6 +235,104 @@ public class PersistentUnitCacheTest extends TestCase {
     assertNumCacheFiles(unitCacheDir, 1);
   }
 
+  /**
+   * A cache file whose last record was only partly written (for example,
+   * because the JVM was killed) should keep the records before it.
+   */
+  public void testTruncatedCacheFile() throws IOException, InterruptedException,
+      UnableToCompleteException, ExecutionException {
+    TreeLogger logger = TreeLogger.NULL;
+
+    File cacheDir = lastCacheDir = File.createTempFile("persistentCacheTest", "");
+    File unitCacheDir = mkCacheDir(cacheDir);
+
+    PersistentUnitCache cache = new PersistentUnitCache(logger, cacheDir);
+    MockCompilationUnit foo = new MockCompilationUnit("com.example.Foo", "Foo: source");
+    cache.add(foo);
+    MockCompilationUnit bar = new MockCompilationUnit("com.example.Bar", "Bar: source");
+    cache.add(bar);
+    cache.shutdown();
+    assertNumCacheFiles(unitCacheDir, 1);
+
+    File cacheFile = unitCacheDir.listFiles()[0];
+    RandomAccessFile file = new RandomAccessFile(cacheFile, "rw");
+    file.setLength(file.length() - 10);
+    file.close();
+
+    cache = new PersistentUnitCache(logger, cacheDir);
+    CompilationUnit result = cache.find(foo.getContentId());
+    assertNotNull(result);
+    assertEquals("com.example.Foo", result.getTypeName());
+    assertNull(cache.find(bar.getContentId()));
+    cache.shutdown();
+  }
+
+  /**
+   * Units that haven't been read yet when old cache files are purged should
+   * still be found afterwards.
+   */
+  public void testPurgeKeepsUnreadUnits() throws IOException, InterruptedException,
+      UnableToCompleteException, ExecutionException {
+    TreeLogger logger = TreeLogger.NULL;
+
+    File cacheDir = lastCacheDir = File.createTempFile("persistentCacheTest", "");
+    File unitCacheDir = mkCacheDir(cacheDir);
+
+    MockCompilationUnit bar = new MockCompilationUnit("com.example.Bar", "Bar: source");
+    for (int i = 1; i <= PersistentUnitCache.CACHE_FILE_THRESHOLD - 1; i++) {
+      PersistentUnitCache cache = new PersistentUnitCache(logger, cacheDir);
+      cache.add(i == 1 ? bar : new MockCompilationUnit("com.example.Foo", "Foo Source" + i));
+      cache.cleanup(logger);
+      cache.shutdown();
+    }
+    assertNumCacheFiles(unitCacheDir, PersistentUnitCache.CACHE_FILE_THRESHOLD - 1);
+
+    // Opening the cache adds one more file, so this cleanup purges the rest.
+    PersistentUnitCache cache = new PersistentUnitCache(logger, cacheDir);
+    cache.cleanup(logger);
+    cache.shutdown();
+    assertNumCacheFiles(unitCacheDir, 1);
+
+    CompilationUnit result = cache.find(bar.getContentId());
+    assertNotNull(result);
+    assertEquals("com.example.Bar", result.getTypeName());
+  }
+
+  /**
+   * A unit that can't be read should be dropped from the cache rather than
+   * looked up again.
+   */
+  public void testUnreadableUnitIsEvicted() throws IOException, InterruptedException,
+      UnableToCompleteException, ExecutionException {
+    TreeLogger logger = TreeLogger.NULL;
+
+    File cacheDir = lastCacheDir = File.createTempFile("persistentCacheTest", "");
+    File unitCacheDir = mkCacheDir(cacheDir);
+
+    PersistentUnitCache cache = new PersistentUnitCache(logger, cacheDir);
+    MockCompilationUnit bar = new MockCompilationUnit("com.example.Bar", "Bar: source");
+    cache.add(bar);
+    MockCompilationUnit foo = new MockCompilationUnit("com.example.Foo", "Foo: source");
+    cache.add(foo);
+    cache.shutdown();
+    assertNumCacheFiles(unitCacheDir, 1);
+
+    cache = new PersistentUnitCache(logger, cacheDir);
+    assertNotNull(cache.find(bar.getContentId()));
+    assertNotNull(cache.unitMap.get("com/example/Foo.java"));
+
+    // Corrupt the serialized unit after its header has been indexed.
+    File cacheFile = unitCacheDir.listFiles()[0];
+    RandomAccessFile file = new RandomAccessFile(cacheFile, "rw");
+    file.setLength(file.length() - 10);
+    file.close();
+
+    assertNull(cache.find(foo.getContentId()));
+    assertNull(cache.unitMap.get("com/example/Foo.java"));
+    assertNull(cache.unitMapByContentId.get(foo.getContentId()));
+    cache.shutdown();
+  }
+
   private void assertNumCacheFiles(File unitCacheDir, int expected) {
     assertEquals(expected, unitCacheDir.list().length);
   }
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs;
+
+import com.google.gwt.dev.jjs.UnifiedAst.AST;
+import com.google.gwt.dev.jjs.ast.JClassType;
+import com.google.gwt.dev.jjs.ast.JDeclaredType;
+import com.google.gwt.dev.jjs.ast.JProgram;
+import com.google.gwt.dev.js.ast.JsProgram;
+
+import junit.framework.TestCase;
+
+import java.util.Collections;
+
+/**
+ * Tests {@link UnifiedAst}.
+ */
+public class UnifiedAstTest extends TestCase {
+
+  public void testCopiesShareImmutableLeaves() {
+    JProgram program = new JProgram();
+    program.addType(new JClassType(SourceOrigin.create(10, 20, 3, "test/Foo.java"), "test.Foo",
+        false, false));
+    UnifiedAst unifiedAst = new UnifiedAst(new JJSOptionsImpl(), new AST(program,
+        new JsProgram()), false, Collections.<String> emptySet());
+
+    // The first call hands back the original.
+    assertSame(program, unifiedAst.getFreshAst().getJProgram());
+
+    JDeclaredType first = findFoo(unifiedAst.getFreshAst().getJProgram());
+    JDeclaredType second = findFoo(unifiedAst.getFreshAst().getJProgram());
+    assertNotSame(first, second);
+    assertSame(first.getSourceInfo(), second.getSourceInfo());
+    assertSame(first.getName(), second.getName());
+  }
+
+  private JDeclaredType findFoo(JProgram program) {
+    for (JDeclaredType type : program.getDeclaredTypes()) {
+      if (type.getName().equals("test.Foo")) {
+        return type;
+      }
+    }
+    fail("test.Foo not found");
+    return null;
+  }
+}
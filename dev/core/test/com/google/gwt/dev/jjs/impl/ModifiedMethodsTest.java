@@ -0,0 +1,105 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs.impl;
+
+import com.google.gwt.dev.jjs.ast.JField;
+import com.google.gwt.dev.jjs.ast.JMethod;
+import com.google.gwt.dev.jjs.ast.JProgram;
+
+import java.util.Set;
+
+/**
+ * Tests {@link ModifiedMethods}.
+ */
+public class ModifiedMethodsTest extends JJSTestBase {
+
+  public void testCollectDirty() throws Exception {
+    addSnippetClassDecl("static int deadCode() { if (false) { return 1; } return 2; }");
+    addSnippetClassDecl("static int caller() { return deadCode(); }");
+    addSnippetClassDecl("static int unrelated() { return 3; }");
+    JProgram program = compileSnippet("void", "caller(); unrelated();");
+    ModifiedMethods modifiedMethods = new ModifiedMethods(program);
+
+    JMethod deadCode = findMethod(program, "deadCode");
+    assertTrue(DeadCodeElimination.exec(program, deadCode).didChange());
+    assertTrue(deadCode.isModified());
+
+    Set<JMethod> dirty = modifiedMethods.collectDirty();
+    assertTrue(dirty.contains(deadCode));
+    assertTrue(dirty.contains(findMethod(program, "caller")));
+    assertFalse(dirty.contains(findMethod(program, "unrelated")));
+    assertFalse(deadCode.isModified());
+
+    // Nothing changed since the last collection.
+    assertTrue(modifiedMethods.collectDirty().isEmpty());
+  }
+
+  public void testChangedField() throws Exception {
+    addSnippetClassDecl("static int field = 1;");
+    addSnippetClassDecl("static int reader() { return field; }");
+    addSnippetClassDecl("static int unrelated() { return 3; }");
+    JProgram program = compileSnippet("void", "reader(); unrelated();");
+    ModifiedMethods modifiedMethods = new ModifiedMethods(program);
+
+    JField field = findField(findMainMethod(program).getEnclosingType(), "field");
+    field.setFinal();
+    Set<JMethod> dirty = modifiedMethods.collectDirty();
+    assertTrue(dirty.contains(findMethod(program, "reader")));
+    assertFalse(dirty.contains(findMethod(program, "unrelated")));
+  }
+
+  public void testReindexChangedMethod() throws Exception {
+    addSnippetClassDecl("static int callee() { return 1; }");
+    addSnippetClassDecl("static int caller() { if (false) { return callee(); } return 3; }");
+    addSnippetClassDecl("static int unrelated() { return 3; }");
+    JProgram program = compileSnippet("void", "caller(); unrelated();");
+    ModifiedMethods modifiedMethods = new ModifiedMethods(program);
+
+    // The changed caller is indexed again, so it no longer depends on callee().
+    JMethod caller = findMethod(program, "caller");
+    assertTrue(DeadCodeElimination.exec(program, caller).didChange());
+    assertTrue(modifiedMethods.collectDirty().contains(caller));
+
+    JMethod callee = findMethod(program, "callee");
+    callee.setFinal();
+    Set<JMethod> dirty = modifiedMethods.collectDirty();
+    assertTrue(dirty.contains(callee));
+    assertFalse(dirty.contains(caller));
+    assertFalse(dirty.contains(findMethod(program, "unrelated")));
+  }
+
+  public void testNewMethodsAreDirty() throws Exception {
+    addSnippetClassDecl("static class Foo { final int value() { return 1; } }");
+    JProgram program = compileSnippet("int", "return new Foo().value();");
+    ModifiedMethods modifiedMethods = new ModifiedMethods(program);
+
+    // MakeCallsStatic creates a static implementation of value().
+    assertTrue(MakeCallsStatic.exec(program).didChange());
+    JMethod staticImpl = findQualifiedMethod(program, "test.EntryPoint$Foo.$value");
+    assertTrue(modifiedMethods.collectDirty().contains(staticImpl));
+  }
+
+  public void testConstructorClearsFlags() throws Exception {
+    addSnippetClassDecl("static int deadCode() { if (false) { return 1; } return 2; }");
+    JProgram program = compileSnippet("void", "deadCode();");
+    JMethod deadCode = findMethod(program, "deadCode");
+    DeadCodeElimination.exec(program, deadCode);
+    assertTrue(deadCode.isModified());
+
+    new ModifiedMethods(program);
+    assertFalse(deadCode.isModified());
+  }
+}
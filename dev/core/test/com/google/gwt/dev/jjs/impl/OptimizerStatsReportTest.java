@@ -0,0 +1,87 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs.impl;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests {@link OptimizerStatsReport}.
+ */
+public class OptimizerStatsReportTest extends TestCase {
+
+  private static final long MS = 1000 * 1000L;
+
+  public void testFindRegressions() {
+    OptimizerStatsReport before = createReport(100 * MS, 200 * MS, MS);
+    OptimizerStatsReport after = createReport(120 * MS, 300 * MS, 10 * MS);
+    Map<String, Long> baseline = OptimizerStatsReport.getTotals(before.toString());
+    Map<String, Long> totals = OptimizerStatsReport.getTotals(after.toString());
+
+    // Pruner: +20%, Finalizer: +50%, JsInliner: too fast in the baseline to count.
+    List<String> regressions = OptimizerStatsReport.findRegressions(totals, baseline, 25);
+    assertEquals(1, regressions.size());
+    assertTrue(regressions.get(0), regressions.get(0).startsWith("java: Finalizer took 300ms"));
+
+    assertEquals(2, OptimizerStatsReport.findRegressions(totals, baseline, 10).size());
+  }
+
+  public void testReport() {
+    OptimizerStatsReport report = createReport(10, 20, 30);
+    String[] lines = report.toString().split("\n");
+    assertEquals(5, lines.length);
+    assertTrue(lines[0].startsWith("#"));
+    assertEquals("java\tPass 1/Pruner\t0\t10\t-1\t5\t1", lines[1]);
+    assertEquals("js\tPass 1/JsInliner\t0\t30\t-1\t0\t0", lines[4]);
+
+    Map<String, Long> totals = OptimizerStatsReport.getTotals(report.toString());
+    assertEquals(Long.valueOf(20), totals.get("java: Pruner"));
+    assertEquals(Long.valueOf(20), totals.get("java: Finalizer"));
+  }
+
+  public void testTimerRecordsTime() {
+    OptimizerStats stats = OptimizerTimer.start().lap(new OptimizerStats("test"));
+    assertTrue(stats.getElapsedNanos() >= 0);
+    OptimizerStats parent = new OptimizerStats("parent");
+    parent.add(stats);
+    parent.add(new OptimizerStats("unmeasured").recordTime(5, -1, -1));
+    assertEquals(stats.getElapsedNanos() + 5, parent.getElapsedNanos());
+    assertEquals(-1, parent.getCpuNanos());
+  }
+
+  /**
+   * Creates a report with two Java passes and one JavaScript pass; the Pruner
+   * runs in both Java passes.
+   */
+  private OptimizerStatsReport createReport(long prunerCpu, long finalizerCpu, long inlinerCpu) {
+    OptimizerStats pass1 = new OptimizerStats("Pass 1");
+    pass1.add(new OptimizerStats("Pruner").recordTime(0, prunerCpu, -1).recordVisits(5)
+        .recordModified());
+    pass1.add(new OptimizerStats("Finalizer").recordTime(0, finalizerCpu, -1));
+    OptimizerStats pass2 = new OptimizerStats("Pass 2");
+    pass2.add(new OptimizerStats("Pruner").recordTime(0, prunerCpu, -1));
+    OptimizerStats jsPass = new OptimizerStats("Pass 1");
+    jsPass.add(new OptimizerStats("JsInliner").recordTime(0, inlinerCpu, -1));
+
+    OptimizerStatsReport report = new OptimizerStatsReport(0);
+    report.add("java", Arrays.asList(pass1, pass2));
+    report.add("js", Arrays.asList(jsPass));
+    return report;
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs.impl;
+
+import junit.framework.TestCase;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Tests the {@link OptimizerTimer} class.
+ */
+public class OptimizerTimerTest extends TestCase {
+
+  /**
+   * Keeps allocations in the tests from being optimized away.
+   */
+  private long[] garbage;
+
+  public void testLap() {
+    OptimizerTimer timer = OptimizerTimer.start();
+    garbage = new long[1000];
+    OptimizerStats stats = timer.lap(new OptimizerStats("foo"));
+
+    assertTrue(stats.getElapsedNanos() >= 0);
+    if (ManagementFactory.getThreadMXBean().isCurrentThreadCpuTimeSupported()) {
+      assertTrue(stats.getCpuNanos() >= 0);
+    }
+    if (OptimizerTimer.isAllocationMeasured()) {
+      assertTrue(stats.getAllocatedBytes() >= garbage.length * 8);
+    } else {
+      assertEquals(-1, stats.getAllocatedBytes());
+    }
+  }
+
+  public void testAllocationMeasuredWhenSupported() throws Exception {
+    Object threadMXBean = ManagementFactory.getThreadMXBean();
+    Class<?> sunThreadMXBean;
+    try {
+      sunThreadMXBean = Class.forName("com.sun.management.ThreadMXBean");
+    } catch (ClassNotFoundException e) {
+      return;
+    }
+    if (!sunThreadMXBean.isInstance(threadMXBean) || !(Boolean) sunThreadMXBean.getMethod(
+        "isThreadAllocatedMemorySupported").invoke(threadMXBean)) {
+      return;
+    }
+    assertTrue(OptimizerTimer.isAllocationMeasured());
+
+    OptimizerTimer timer = OptimizerTimer.start();
+    garbage = new long[1000];
+    assertTrue(timer.lap(new OptimizerStats("foo")).getAllocatedBytes() >= 0);
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.dev.jjs.impl;
+
+import com.google.gwt.core.ext.UnableToCompleteException;
+import com.google.gwt.dev.jjs.InternalCompilerException;
+import com.google.gwt.dev.jjs.ast.Context;
+import com.google.gwt.dev.jjs.ast.JDeclaredType;
+import com.google.gwt.dev.jjs.ast.JMethod;
+import com.google.gwt.dev.jjs.ast.JModVisitor;
+import com.google.gwt.dev.jjs.ast.JProgram;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests {@link ParallelMethodOptimizer}.
+ */
+public class ParallelMethodOptimizerTest extends JJSTestBase {
+
+  private static final int NUM_METHODS = 40;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    addSnippetClassDecl("static class A { int f() { return 1; } }");
+    addSnippetClassDecl("static final class B extends A { int f() { return 2; } }");
+    for (int i = 0; i < NUM_METHODS; ++i) {
+      addSnippetClassDecl("static int m" + i + "(B b, int x) {\n"
+          + "  if (true) { x = x + " + i + "; } else { x = 0; }\n"
+          + "  int y = 2 * 3 + x;\n"
+          + "  if (false) { y++; }\n"
+          + "  return b.f() + (false ? y : x) + (\"a\" + \"b\").length();\n"
+          + "}");
+    }
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    ParallelMethodOptimizer.setNumThreads(
+        Integer.getInteger(ParallelMethodOptimizer.THREADS_PROPERTY, 1));
+    super.tearDown();
+  }
+
+  public void testParallelPassesMatchSerialPasses() throws UnableToCompleteException {
+    ParallelMethodOptimizer.setNumThreads(1);
+    assertFalse(ParallelMethodOptimizer.isEnabled());
+    JProgram serial = compileSnippet("void", "");
+    int serialMods = runPasses(serial);
+    assertTrue(serialMods > 0);
+
+    ParallelMethodOptimizer.setNumThreads(4);
+    assertTrue(ParallelMethodOptimizer.isEnabled());
+    JProgram parallel = compileSnippet("void", "");
+    assertEquals(serialMods, runPasses(parallel));
+
+    List<JDeclaredType> serialTypes = serial.getDeclaredTypes();
+    List<JDeclaredType> parallelTypes = parallel.getDeclaredTypes();
+    assertEquals(serialTypes.size(), parallelTypes.size());
+    for (int i = 0; i < serialTypes.size(); ++i) {
+      assertEquals(serialTypes.get(i).toSource(), parallelTypes.get(i).toSource());
+    }
+  }
+
+  public void testPoolSizing() throws Exception {
+    ParallelMethodOptimizer.setNumThreads(0);
+    assertFalse(ParallelMethodOptimizer.isEnabled());
+
+    ParallelMethodOptimizer.setNumThreads(3);
+    assertEquals(1, ParallelMethodOptimizer.getNumTasks(1));
+    assertEquals(5, ParallelMethodOptimizer.getNumTasks(5));
+    assertEquals(12, ParallelMethodOptimizer.getNumTasks(100));
+
+    List<JMethod> methods = ParallelMethodOptimizer.allMethods(compileSnippet("void", ""));
+    assertTrue(methods.size() > ParallelMethodOptimizer.getNumTasks(methods.size()));
+
+    // The first three tasks only finish once all of them are running at once.
+    final CyclicBarrier firstTasks = new CyclicBarrier(3);
+    final AtomicInteger numVisitors = new AtomicInteger();
+    final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+    ParallelMethodOptimizer.exec(methods, new ParallelMethodOptimizer.VisitorFactory() {
+      @Override
+      public JModVisitor create() {
+        threads.add(Thread.currentThread());
+        if (numVisitors.getAndIncrement() < 3) {
+          try {
+            firstTasks.await(10, TimeUnit.SECONDS);
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        }
+        return new JModVisitor();
+      }
+    });
+    assertEquals(ParallelMethodOptimizer.getNumTasks(methods.size()), numVisitors.get());
+    assertEquals(3, threads.size());
+    assertFalse(threads.contains(Thread.currentThread()));
+  }
+
+  public void testWorkerExceptionsPropagate() throws UnableToCompleteException {
+    ParallelMethodOptimizer.setNumThreads(2);
+    List<JMethod> methods = ParallelMethodOptimizer.allMethods(compileSnippet("void", ""));
+    final JMethod lastMethod = methods.get(methods.size() - 1);
+
+    // Visitors pass these two kinds of failure through without wrapping them.
+    RuntimeException exception = new InternalCompilerException("failed in worker");
+    try {
+      ParallelMethodOptimizer.exec(methods, failingOn(lastMethod, exception));
+      fail("Expected an exception");
+    } catch (InternalCompilerException e) {
+      assertSame(exception, e);
+    }
+
+    Error error = new StackOverflowError("failed in worker");
+    try {
+      ParallelMethodOptimizer.exec(methods, failingOn(lastMethod, error));
+      fail("Expected an error");
+    } catch (StackOverflowError e) {
+      assertSame(error, e);
+    }
+  }
+
+  /**
+   * Returns a factory of visitors that throw <code>failure</code> when they
+   * visit <code>method</code>.
+   */
+  private static ParallelMethodOptimizer.VisitorFactory failingOn(final JMethod method,
+      final Throwable failure) {
+    return new ParallelMethodOptimizer.VisitorFactory() {
+      @Override
+      public JModVisitor create() {
+        return new JModVisitor() {
+          @Override
+          public boolean visit(JMethod x, Context ctx) {
+            if (x == method) {
+              if (failure instanceof Error) {
+                throw (Error) failure;
+              }
+              throw (RuntimeException) failure;
+            }
+            return false;
+          }
+        };
+      }
+    };
+  }
+
+  private static int runPasses(JProgram program) {
+    List<JMethod> methods = ParallelMethodOptimizer.allMethods(program);
+    return DeadCodeElimination.exec(program, methods).getNumMods()
+        + MethodCallTightener.exec(program, methods).getNumMods();
+  }
+}
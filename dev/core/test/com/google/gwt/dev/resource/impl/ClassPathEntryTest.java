@@ -16,7 +16,9 @@
 package com.google.gwt.dev.resource.impl;
 
 import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.util.Util;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.Set;
@@ -56,6 +58,29 @@ public class ClassPathEntryTest extends AbstractResourceOrientedTestBase {
     testPathPrefixSetChanges(cpe1zip, cpe2zip);
   }
 
+  public void testSavedZipIndex() throws IOException, URISyntaxException {
+    File indexDir = File.createTempFile("ClassPathEntryTest", "");
+    assertTrue(indexDir.delete());
+    System.setProperty(ZipFileClassPathEntry.INDEX_DIR_PROPERTY, indexDir.getPath());
+    try {
+      File file = findFile("com/google/gwt/dev/resource/impl/testdata/cpe1.jar");
+      ZipFileClassPathEntry.clearCache();
+      ZipFileClassPathEntry entry = ZipFileClassPathEntry.get(file);
+      entry.index(createTestTreeLogger());
+      File indexFile = entry.getIndexFile();
+      assertEquals(indexDir, indexFile.getParentFile());
+      assertTrue(indexFile.isFile());
+
+      // A new entry for the same jar reads the saved index.
+      ZipFileClassPathEntry.clearCache();
+      testAllCpe1FilesFound(ZipFileClassPathEntry.get(file));
+    } finally {
+      System.clearProperty(ZipFileClassPathEntry.INDEX_DIR_PROPERTY);
+      ZipFileClassPathEntry.clearCache();
+      Util.recursiveDelete(indexDir, false);
+    }
+  }
+
   public void testUseOfPrefixesWithFiltering() throws IOException,
       URISyntaxException {
     ClassPathEntry cpe1jar = getClassPathEntry1AsJar();
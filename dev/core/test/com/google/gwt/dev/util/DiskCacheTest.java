@@ -15,9 +15,15 @@
  */
 package com.google.gwt.dev.util;
 
+import com.google.gwt.dev.util.DiskCache.RecordOutputStream;
+
 import junit.framework.TestCase;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Tests {@link DiskCache}.
@@ -76,4 +82,88 @@ public class DiskCacheTest extends TestCase {
           expected, actual);
     }
   }
+
+  public void testConcurrentWriters() throws InterruptedException, IOException {
+    final DiskCache stripedCache = new DiskCache(3);
+    try {
+      final int numThreads = 8;
+      final int perThread = 200;
+      final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+      Thread[] threads = new Thread[numThreads];
+      for (int t = 0; t < numThreads; ++t) {
+        final int threadIndex = t;
+        threads[t] = new Thread() {
+          @Override
+          public void run() {
+            try {
+              long[] tokens = new long[perThread];
+              for (int i = 0; i < perThread; ++i) {
+                tokens[i] = stripedCache.writeString(threadIndex + ":" + i);
+              }
+              for (int i = 0; i < perThread; ++i) {
+                assertEquals(threadIndex + ":" + i, stripedCache.readString(tokens[i]));
+              }
+            } catch (Throwable e) {
+              failure.compareAndSet(null, e);
+            }
+          }
+        };
+        threads[t].start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      if (failure.get() != null) {
+        fail(failure.get().toString());
+      }
+    } finally {
+      stripedCache.close();
+    }
+  }
+
+  public void testStreams() throws IOException {
+    // Larger than one transfer buffer, so it is stored as several chunks.
+    byte[] big = new byte[100 * 1024 + 17];
+    for (int i = 1; i < big.length; ++i) {
+      big[i] = (byte) (i * 31 + big[i - 1]);
+    }
+    byte[][] inputs = new byte[][] {new byte[0], new byte[] {4, 2}, big};
+    for (byte[] input : inputs) {
+      long token = diskCache.transferFromStream(new ByteArrayInputStream(input));
+      assertTrue(Arrays.equals(input, diskCache.readByteArray(token)));
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      diskCache.transferToStream(token, out);
+      assertTrue(Arrays.equals(input, out.toByteArray()));
+      out.reset();
+      Util.copyNoClose(diskCache.openStream(token), out);
+      assertTrue(Arrays.equals(input, out.toByteArray()));
+    }
+  }
+
+  public void testOutputStream() throws IOException {
+    byte[] big = new byte[200 * 1024 + 5];
+    for (int i = 0; i < big.length; ++i) {
+      big[i] = (byte) (i % 251);
+    }
+    RecordOutputStream out = diskCache.openOutputStream();
+    out.write(big, 0, 10);
+    out.write(big[10]);
+    out.write(big, 11, big.length - 11);
+    try {
+      out.getToken();
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException expected) {
+    }
+    out.close();
+    assertTrue(Arrays.equals(big, diskCache.readByteArray(out.getToken())));
+
+    out = diskCache.openOutputStream();
+    out.close();
+    assertEquals(0, diskCache.readByteArray(out.getToken()).length);
+    try {
+      out.write(1);
+      fail("Expected IOException");
+    } catch (IOException expected) {
+    }
+  }
 }
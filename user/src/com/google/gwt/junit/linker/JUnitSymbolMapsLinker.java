@@ -24,7 +24,7 @@ import com.google.gwt.core.ext.linker.Shardable;
 import com.google.gwt.core.ext.linker.SyntheticArtifact;
 import com.google.gwt.core.linker.SymbolMapsLinker;
 
-import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
 
 /**
  * Emits the symbol maps into the application output directory so that the
@@ -37,21 +37,21 @@ public class JUnitSymbolMapsLinker extends SymbolMapsLinker {
 
   @Override
   protected void doEmitSymbolMap(TreeLogger logger, ArtifactSet artifacts,
-      CompilationResult result, ByteArrayOutputStream out)
+      CompilationResult result, InputStream symbolMap)
       throws UnableToCompleteException {
     // Collaborate with JUnitHostImpl.loadSymbolMap
     String partialPath = SYMBOL_MAP_DIR + result.getStrongName()
         + STRONG_NAME_SUFFIX;
 
-    EmittedArtifact symbolMapArtifact = emitBytes(logger, out.toByteArray(),
+    EmittedArtifact symbolMapArtifact = emitInputStream(logger, symbolMap,
         partialPath);
 
     artifacts.add(symbolMapArtifact);
   }
 
   @Override
-  protected SyntheticArtifact emitSourceMapString(TreeLogger logger, String contents,
+  protected SyntheticArtifact emitSourceMap(TreeLogger logger, InputStream contents,
       String partialPath) throws UnableToCompleteException {
-    return emitString(logger, contents, SYMBOL_MAP_DIR + partialPath);
+    return emitInputStream(logger, contents, SYMBOL_MAP_DIR + partialPath);
   }
 }
@@ -49,6 +49,18 @@ public class RpcServiceProxy extends RemoteServiceProxy {
     return new CommandToStringWriter(typeOverrides);
   }
 
+  /**
+   * Throws {@link UnsupportedOperationException} when enabling batching, which
+   * the servlets for these proxies do not understand.
+   */
+  @Override
+  public void setRpcBatchingEnabled(boolean enabled) {
+    if (enabled) {
+      throw new UnsupportedOperationException("deRPC calls cannot be batched");
+    }
+    super.setRpcBatchingEnabled(enabled);
+  }
+
   @Override
   protected <T> RequestCallback doCreateRequestCallback(
       ResponseReader responseReader, String methodName, RpcStatsContext statsContext,
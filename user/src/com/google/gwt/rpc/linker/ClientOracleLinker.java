@@ -68,7 +68,7 @@ public class ClientOracleLinker extends AbstractLinker {
           builder.setSerializableFields(entry.getKey(), entry.getValue());
         }
 
-        for (SymbolData symbolData : result.getSymbolMap()) {
+        for (SymbolData symbolData : result.getSymbolMapEntries()) {
           
           String castableTypeMapString =
               (symbolData.getCastableTypeMap() == null) ? null :
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.client.rpc;
+
+/**
+ * An interface implemented by client-side RPC proxy objects. Cast the object
+ * returned from {@link com.google.gwt.core.client.GWT#create(Class)} on a
+ * {@link RemoteService} to this interface to send the calls it makes during
+ * one turn of the event loop in a single HTTP request.
+ */
+public interface HasRpcBatching {
+
+  /**
+   * Returns whether calls are batched.
+   */
+  boolean isRpcBatchingEnabled();
+
+  /**
+   * Sets whether calls are batched. While batching is enabled, calls are sent
+   * once the code that made them returns to the event loop, and the
+   * {@link com.google.gwt.http.client.Request Request} returned for a call
+   * can only be used to cancel it. Calls that return a
+   * {@link com.google.gwt.http.client.RequestBuilder RequestBuilder} are never
+   * batched. The servlet must be a <code>RemoteServiceServlet</code> that
+   * does not override its <code>processCall(String)</code> method.
+   */
+  void setRpcBatchingEnabled(boolean enabled);
+}
@@ -21,6 +21,7 @@ import com.google.gwt.http.client.RequestBuilder;
 import com.google.gwt.http.client.RequestCallback;
 import com.google.gwt.http.client.RequestException;
 import com.google.gwt.user.client.rpc.AsyncCallback;
+import com.google.gwt.user.client.rpc.HasRpcBatching;
 import com.google.gwt.user.client.rpc.HasRpcToken;
 import com.google.gwt.user.client.rpc.InvocationException;
 import com.google.gwt.user.client.rpc.RpcRequestBuilder;
@@ -40,7 +41,7 @@ import com.google.gwt.user.client.rpc.impl.RequestCallbackAdapter.ResponseReader
  * For internal use only.
  */
 public abstract class RemoteServiceProxy implements SerializationStreamFactory,
-    ServiceDefTarget, HasRpcToken {
+    ServiceDefTarget, HasRpcToken, HasRpcBatching {
 
   /**
    * The content type to be used in HTTP requests.
@@ -209,6 +210,12 @@ public abstract class RemoteServiceProxy implements SerializationStreamFactory,
    */
   private String remoteServiceURL;
 
+  /**
+   * The calls waiting to be sent together, or <code>null</code> if batching is
+   * disabled.
+   */
+  private RpcBatch rpcBatch;
+
   private RpcRequestBuilder rpcRequestBuilder;
 
   private RpcToken rpcToken;
@@ -294,6 +301,13 @@ public abstract class RemoteServiceProxy implements SerializationStreamFactory,
     return rpcTokenExceptionHandler;
   }
 
+  /**
+   * @see HasRpcBatching#isRpcBatchingEnabled()
+   */
+  public boolean isRpcBatchingEnabled() {
+    return rpcBatch != null;
+  }
+
   public String getSerializationPolicyName() {
     return serializationPolicyName;
   }
@@ -305,6 +319,18 @@ public abstract class RemoteServiceProxy implements SerializationStreamFactory,
     return remoteServiceURL;
   }
 
+  /**
+   * @see HasRpcBatching#setRpcBatchingEnabled(boolean)
+   */
+  public void setRpcBatchingEnabled(boolean enabled) {
+    if (!enabled) {
+      // Calls already batched are still sent as scheduled
+      rpcBatch = null;
+    } else if (rpcBatch == null) {
+      rpcBatch = new RpcBatch(this);
+    }
+  }
+
   public void setRpcRequestBuilder(RpcRequestBuilder builder) {
     this.rpcRequestBuilder = builder;
   }
@@ -365,6 +391,14 @@ public abstract class RemoteServiceProxy implements SerializationStreamFactory,
       String methodName, RpcStatsContext statsContext, String requestData,
       AsyncCallback<T> callback) {
 
+    if (rpcBatch != null) {
+      if (getServiceEntryPoint() == null) {
+        throw new NoServiceEntryPointSpecifiedException();
+      }
+      return rpcBatch.add(doCreateRequestCallback(responseReader, methodName, statsContext,
+          callback), methodName, statsContext, requestData);
+    }
+
     RequestBuilder rb = doPrepareRequestBuilderImpl(responseReader, methodName,
         statsContext, requestData, callback);
 
@@ -433,13 +467,22 @@ public abstract class RemoteServiceProxy implements SerializationStreamFactory,
     RequestCallback responseHandler = doCreateRequestCallback(responseReader,
         methodName, statsContext, callback);
 
+    return prepareRequestBuilder(requestData, responseHandler, statsContext.getRequestId());
+  }
+
+  /**
+   * Configures a RequestBuilder to send the given payload to the service entry
+   * point. (Also used by {@link RpcBatch}.)
+   */
+  RequestBuilder prepareRequestBuilder(String requestData, RequestCallback responseHandler,
+      int requestId) {
     ensureRpcRequestBuilder();
 
     rpcRequestBuilder.create(getServiceEntryPoint());
     rpcRequestBuilder.setCallback(responseHandler);
     rpcRequestBuilder.setContentType(RPC_CONTENT_TYPE);
     rpcRequestBuilder.setRequestData(requestData);
-    rpcRequestBuilder.setRequestId(statsContext.getRequestId());
+    rpcRequestBuilder.setRequestId(requestId);
     return rpcRequestBuilder.finish();
   }
 
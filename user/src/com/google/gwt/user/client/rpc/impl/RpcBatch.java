@@ -0,0 +1,282 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.client.rpc.impl;
+
+import com.google.gwt.core.client.GWT;
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+import com.google.gwt.http.client.Header;
+import com.google.gwt.http.client.Request;
+import com.google.gwt.http.client.RequestBuilder;
+import com.google.gwt.http.client.RequestCallback;
+import com.google.gwt.http.client.RequestException;
+import com.google.gwt.http.client.Response;
+import com.google.gwt.user.client.rpc.InvocationException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the calls a {@link RemoteServiceProxy} makes during one turn of the
+ * event loop and sends them to the server in a single HTTP request, framed as
+ * described by {@link RpcBatchFormat}.
+ *
+ * For internal use only.
+ */
+public class RpcBatch {
+
+  /**
+   * A call waiting for its response. It is handed to the caller in place of
+   * the {@link Request} that will eventually carry it.
+   */
+  private static class Call extends Request {
+    private final RequestCallback callback;
+    private boolean canceled;
+    private boolean completed;
+    private final String methodName;
+    private final String requestData;
+    private Request sent;
+    private final RpcStatsContext statsContext;
+
+    Call(RequestCallback callback, String methodName, RpcStatsContext statsContext,
+        String requestData) {
+      this.callback = callback;
+      this.methodName = methodName;
+      this.statsContext = statsContext;
+      this.requestData = requestData;
+    }
+
+    /**
+     * Cancels this call. A call that was sent with others is not aborted, but
+     * its callback will not be called.
+     */
+    @Override
+    public void cancel() {
+      canceled = true;
+      if (sent != null) {
+        sent.cancel();
+      }
+    }
+
+    @Override
+    public boolean isPending() {
+      return !canceled && !completed;
+    }
+
+    void fail(Throwable exception) {
+      if (isPending()) {
+        completed = true;
+        callback.onError(this, exception);
+      }
+    }
+
+    void receive(Response response) {
+      if (isPending()) {
+        completed = true;
+        callback.onResponseReceived(this, response);
+      }
+    }
+  }
+
+  /**
+   * The part of a batch response that belongs to one call.
+   */
+  private static class CallResponse extends Response {
+    private final Response batchResponse;
+    private final int statusCode;
+    private final String text;
+
+    CallResponse(Response batchResponse, int statusCode, String text) {
+      this.batchResponse = batchResponse;
+      this.statusCode = statusCode;
+      this.text = text;
+    }
+
+    @Override
+    public String getHeader(String header) {
+      return batchResponse.getHeader(header);
+    }
+
+    @Override
+    public Header[] getHeaders() {
+      return batchResponse.getHeaders();
+    }
+
+    @Override
+    public String getHeadersAsString() {
+      return batchResponse.getHeadersAsString();
+    }
+
+    @Override
+    public int getStatusCode() {
+      return statusCode;
+    }
+
+    @Override
+    public String getStatusText() {
+      return statusCode == batchResponse.getStatusCode() ? batchResponse.getStatusText() : "";
+    }
+
+    @Override
+    public String getText() {
+      return text;
+    }
+  }
+
+  private List<Call> pending;
+  private final RemoteServiceProxy proxy;
+
+  RpcBatch(RemoteServiceProxy proxy) {
+    this.proxy = proxy;
+  }
+
+  /**
+   * Adds a call to the batch, which is sent once the current event loop turn
+   * ends.
+   *
+   * @return a {@link Request} that can be used to cancel the call
+   */
+  Request add(RequestCallback callback, String methodName, RpcStatsContext statsContext,
+      String requestData) {
+    if (pending == null) {
+      pending = new ArrayList<Call>();
+      Scheduler.get().scheduleFinally(new ScheduledCommand() {
+        public void execute() {
+          flush();
+        }
+      });
+    }
+    Call call = new Call(callback, methodName, statsContext, requestData);
+    pending.add(call);
+    return call;
+  }
+
+  /**
+   * Sends the pending calls.
+   */
+  void flush() {
+    final List<Call> calls = new ArrayList<Call>();
+    if (pending != null) {
+      for (Call call : pending) {
+        if (!call.canceled) {
+          calls.add(call);
+        }
+      }
+      pending = null;
+    }
+
+    if (calls.isEmpty()) {
+      return;
+    }
+
+    // A lone call is not worth the framing
+    final boolean batched = calls.size() > 1;
+    String requestData;
+    if (batched) {
+      StringBuilder sb = new StringBuilder();
+      for (Call call : calls) {
+        RpcBatchFormat.appendEntry(sb, call.requestData);
+      }
+      requestData = sb.toString();
+    } else {
+      requestData = calls.get(0).requestData;
+    }
+
+    RequestBuilder rb = proxy.prepareRequestBuilder(requestData, new RequestCallback() {
+      public void onError(Request request, Throwable exception) {
+        for (Call call : calls) {
+          call.fail(exception);
+        }
+      }
+
+      public void onResponseReceived(Request request, Response response) {
+        if (batched) {
+          deliver(calls, response);
+        } else {
+          calls.get(0).receive(response);
+        }
+      }
+    }, calls.get(0).statsContext.getRequestId());
+    if (batched) {
+      rb.setHeader(RpcBatchFormat.BATCH_HEADER, String.valueOf(calls.size()));
+    }
+    send(rb, calls);
+  }
+
+  /**
+   * Hands each call its part of a batch response. If the response is not a
+   * batch response, as when the server fails outright, every call gets all of
+   * it, just as it would have without batching.
+   */
+  private void deliver(List<Call> calls, Response response) {
+    List<String> entries = null;
+    if (response.getStatusCode() == Response.SC_OK && response.getText() != null) {
+      entries = RpcBatchFormat.splitEntries(response.getText());
+    }
+    if (entries != null && entries.size() != calls.size() * 2) {
+      entries = null;
+    }
+
+    // Keep going if a callback throws, so that every call completes.
+    RuntimeException thrown = null;
+    for (int i = 0, j = calls.size(); i < j; i++) {
+      try {
+        if (entries == null) {
+          calls.get(i).receive(response);
+        } else {
+          int statusCode;
+          try {
+            statusCode = Integer.parseInt(entries.get(i * 2));
+          } catch (NumberFormatException e) {
+            statusCode = Response.SC_INTERNAL_SERVER_ERROR;
+          }
+          calls.get(i).receive(new CallResponse(response, statusCode, entries.get(i * 2 + 1)));
+        }
+      } catch (RuntimeException e) {
+        if (thrown == null) {
+          thrown = e;
+        } else {
+          GWT.maybeReportUncaughtException(e);
+        }
+      }
+    }
+    if (thrown != null) {
+      throw thrown;
+    }
+  }
+
+  private void send(RequestBuilder rb, List<Call> calls) {
+    try {
+      Request sent = rb.send();
+      if (calls.size() == 1) {
+        calls.get(0).sent = sent;
+      }
+    } catch (RequestException ex) {
+      for (Call call : calls) {
+        call.fail(new InvocationException(
+            "Unable to initiate the asynchronous service invocation (" + call.methodName
+                + ") -- check the network connection", ex));
+      }
+    } finally {
+      for (Call call : calls) {
+        if (call.statsContext.isStatsAvailable()) {
+          call.statsContext.stats(call.statsContext.bytesStat(call.methodName,
+              call.requestData.length(), "requestSent"));
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.client.rpc.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The framing of batched RPC calls, shared by {@link RpcBatch} on the client
+ * and <code>RemoteServiceServlet</code> on the server.
+ *
+ * <p>
+ * A batch request carries the {@value #BATCH_HEADER} header, and its body is
+ * the payload of each call, in order, each preceded by its length and a colon.
+ * The response body holds, for each call, its HTTP status code and the
+ * response it would have had on its own, encoded the same way.
+ * </p>
+ *
+ * For internal use only.
+ */
+public final class RpcBatchFormat {
+
+  /**
+   * The HTTP header that marks a batch request. Its value is the number of
+   * calls in the batch.
+   */
+  public static final String BATCH_HEADER = "X-GWT-RPC-Batch";
+
+  /**
+   * Appends an entry to a batch request or response.
+   */
+  public static void appendEntry(StringBuilder sb, String entry) {
+    sb.append(entry.length()).append(':').append(entry);
+  }
+
+  /**
+   * Splits a batch request or response into its entries.
+   *
+   * @return the entries, or <code>null</code> if <code>batch</code> is
+   *         malformed
+   */
+  public static List<String> splitEntries(String batch) {
+    List<String> entries = new ArrayList<String>();
+    int pos = 0;
+    while (pos < batch.length()) {
+      int colon = batch.indexOf(':', pos);
+      if (colon <= pos || colon - pos > 9) {
+        return null;
+      }
+      int length = 0;
+      for (int i = pos; i < colon; i++) {
+        char c = batch.charAt(i);
+        if (c < '0' || c > '9') {
+          return null;
+        }
+        length = length * 10 + (c - '0');
+      }
+      pos = colon + 1;
+      if (length > batch.length() - pos) {
+        return null;
+      }
+      entries.add(batch.substring(pos, pos + length));
+      pos += length;
+    }
+    return entries;
+  }
+
+  private RpcBatchFormat() {
+  }
+}
@@ -110,10 +110,20 @@ public class Base64Utils {
    * Decode a base64 string into a long value.
    */
   public static long longFromBase64(String value) {
-    int pos = 0;
+    return longFromBase64(value, 0, value.length());
+  }
+
+  /**
+   * Decode the base64 characters of <code>value</code> from <code>start</code>
+   * (inclusive) to <code>end</code> (exclusive) into a long value.
+   */
+  public static long longFromBase64(CharSequence value, int start, int end) {
+    if (start >= end) {
+      throw new StringIndexOutOfBoundsException(start);
+    }
+    int pos = start;
     long longVal = base64Values[value.charAt(pos++)];
-    int len = value.length();
-    while (pos < len) {
+    while (pos < end) {
       longVal <<= 6;
       longVal |= base64Values[value.charAt(pos++)];
     }
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server;
+
+import com.google.gwt.dev.asm.MethodVisitor;
+import com.google.gwt.dev.asm.Opcodes;
+import com.google.gwt.dev.asm.Type;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.security.ProtectionDomain;
+
+/**
+ * For internal use only. Helps define classes generated at runtime, in place
+ * of reflection, in the package and class loader of an existing class.
+ */
+public final class GeneratedClassUtil {
+
+  /**
+   * Holds <code>ClassLoader.defineClass()</code>, which is only made
+   * accessible once a class is actually generated.
+   */
+  private static class DefineClassHolder {
+    static final Method DEFINE_CLASS = findDefineClass();
+
+    private static Method findDefineClass() {
+      try {
+        Method defineClass = ClassLoader.class.getDeclaredMethod("defineClass", String.class,
+            byte[].class, int.class, int.class, ProtectionDomain.class);
+        defineClass.setAccessible(true);
+        return defineClass;
+      } catch (NoSuchMethodException e) {
+        return null;
+      } catch (RuntimeException e) {
+        // A SecurityException, or java.lang not being open to us on Java 9+
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Boxes the primitive value on the stack. Does nothing to references.
+   */
+  public static void box(MethodVisitor mv, Class<?> type) {
+    if (type.isPrimitive() && type != void.class) {
+      Class<?> boxed = getBoxedType(type);
+      mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(boxed), "valueOf",
+          Type.getMethodDescriptor(Type.getType(boxed), Type.getType(type)));
+    }
+  }
+
+  /**
+   * Defines a class in the class loader and protection domain of
+   * <code>host</code>, which must not be a bootstrap class.
+   *
+   * @return the class, or <code>null</code> if the JVM does not let it be
+   *         defined
+   */
+  public static Class<?> defineClass(Class<?> host, String name, byte[] bytes) {
+    if (DefineClassHolder.DEFINE_CLASS == null) {
+      return null;
+    }
+    try {
+      return (Class<?>) DefineClassHolder.DEFINE_CLASS.invoke(host.getClassLoader(), name,
+          bytes, 0, bytes.length, host.getProtectionDomain());
+    } catch (IllegalAccessException e) {
+      return null;
+    } catch (InvocationTargetException e) {
+      // Unusual class loaders and security managers, or a LinkageError
+      return null;
+    }
+  }
+
+  /**
+   * Returns the wrapper class of a primitive type other than void.
+   */
+  public static Class<?> getBoxedType(Class<?> type) {
+    if (type == boolean.class) {
+      return Boolean.class;
+    } else if (type == byte.class) {
+      return Byte.class;
+    } else if (type == char.class) {
+      return Character.class;
+    } else if (type == double.class) {
+      return Double.class;
+    } else if (type == float.class) {
+      return Float.class;
+    } else if (type == int.class) {
+      return Integer.class;
+    } else if (type == long.class) {
+      return Long.class;
+    } else {
+      assert type == short.class;
+      return Short.class;
+    }
+  }
+
+  /**
+   * Returns <code>true</code> if a class generated in the package and class
+   * loader of <code>host</code> can refer to <code>type</code>.
+   */
+  public static boolean isAccessible(Class<?> host, Class<?> type) {
+    while (type.isArray()) {
+      type = type.getComponentType();
+    }
+    if (type.isPrimitive()) {
+      return true;
+    }
+    if (type.getClassLoader() == host.getClassLoader()
+        && getPackageName(type).equals(getPackageName(host))) {
+      return true;
+    }
+    for (Class<?> c = type; c != null; c = c.getDeclaringClass()) {
+      if (!Modifier.isPublic(c.getModifiers())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String getPackageName(Class<?> type) {
+    String name = type.getName();
+    int lastDot = name.lastIndexOf('.');
+    return lastDot < 0 ? "" : name.substring(0, lastDot);
+  }
+
+  private GeneratedClassUtil() {
+  }
+}
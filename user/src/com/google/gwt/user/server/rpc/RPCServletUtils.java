@@ -18,6 +18,9 @@ package com.google.gwt.user.server.rpc;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.reflect.Method;
 import java.nio.charset.Charset;
 import java.util.concurrent.ConcurrentHashMap;
@@ -33,6 +36,111 @@ import javax.servlet.http.HttpServletResponse;
  * the RPC system.
  */
 public class RPCServletUtils {
+
+  /**
+   * A byte buffer that decodes its contents without first copying them.
+   */
+  private static class ContentBuffer extends ByteArrayOutputStream {
+    ContentBuffer(int size) {
+      super(size);
+    }
+
+    String decode(Charset charset) {
+      return new String(buf, 0, count, charset);
+    }
+  }
+
+  /**
+   * Streams a response into an {@link HttpServletResponse}. The first few
+   * characters are held back, so that a response small enough not to be worth
+   * compressing is sent exactly as {@link #writeResponse} would send it.
+   */
+  private static class ResponseWriter extends Writer {
+    private boolean closed;
+    private final boolean gzipAllowed;
+    private Writer out;
+    private StringBuilder pending = new StringBuilder();
+    private final HttpServletResponse response;
+    private final ServletContext servletContext;
+
+    ResponseWriter(ServletContext servletContext, HttpServletResponse response,
+        boolean gzipAllowed) {
+      this.servletContext = servletContext;
+      this.response = response;
+      this.gzipAllowed = gzipAllowed;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      if (out == null) {
+        writeResponse(servletContext, response, pending.toString(), false);
+      } else {
+        out.close();
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      // Flushing the held-back characters would commit the response too early.
+      if (out != null) {
+        out.flush();
+      }
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+      if (prepareToWrite(len)) {
+        out.write(cbuf, off, len);
+      } else {
+        pending.append(cbuf, off, len);
+      }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+      if (prepareToWrite(len)) {
+        out.write(str, off, len);
+      } else {
+        pending.append(str, off, off + len);
+      }
+    }
+
+    /**
+     * Returns <code>true</code> if the next <code>len</code> characters should
+     * go straight to the response, committing its headers first if necessary.
+     */
+    private boolean prepareToWrite(int len) throws IOException {
+      if (closed) {
+        throw new IOException("Writer is closed");
+      }
+      if (out != null) {
+        return true;
+      }
+      if ((pending.length() + len) * 2 <= UNCOMPRESSED_BYTE_SIZE_LIMIT) {
+        return false;
+      }
+
+      // Too big to hold back: commit to a streamed, possibly gzipped, reply.
+      // The length is not known up front, so no Content-Length is sent.
+      //
+      response.setContentType(CONTENT_TYPE_APPLICATION_JSON_UTF8);
+      response.setStatus(HttpServletResponse.SC_OK);
+      response.setHeader(CONTENT_DISPOSITION, ATTACHMENT);
+      OutputStream stream = response.getOutputStream();
+      if (gzipAllowed) {
+        setGzipEncodingHeader(response);
+        stream = new GZIPOutputStream(stream, BUFFER_SIZE);
+      }
+      out = new OutputStreamWriter(stream, CHARSET_UTF8);
+      out.append(pending);
+      pending = null;
+      return true;
+    }
+  }
   
   public static final String CHARSET_UTF8_NAME = "UTF-8";
   
@@ -48,6 +156,12 @@ public class RPCServletUtils {
    */
   static final int BUFFER_SIZE = 4096;
 
+  /**
+   * The largest request body for which the read buffer is allocated up front
+   * from the Content-Length header.
+   */
+  private static final int MAX_PRESIZED_CONTENT_LENGTH = 1024 * 1024;
+
   private static final String ACCEPT_ENCODING = "Accept-Encoding";
 
   private static final String ATTACHMENT = "attachment";
@@ -60,7 +174,7 @@ public class RPCServletUtils {
 
   private static final String CONTENT_TYPE_APPLICATION_JSON_UTF8 = "application/json; charset=utf-8";
 
-  private static final String GENERIC_FAILURE_MSG = "The call failed on the server; see server log for details";
+  static final String GENERIC_FAILURE_MSG = "The call failed on the server; see server log for details";
 
   private static final String GWT_RPC_CONTENT_TYPE = "text/x-gwt-rpc";
 
@@ -178,6 +292,30 @@ public class RPCServletUtils {
     return false;
   }
 
+  /**
+   * Returns a {@link Writer} that writes response content into an
+   * {@link HttpServletResponse}, as {@link #writeResponse} would, but without
+   * holding the whole response in memory. The response is gzipped if
+   * <code>gzipAllowed</code> is <code>true</code> and the content is large
+   * enough that {@link #exceedsUncompressedContentLengthLimit(String)} would
+   * be <code>true</code> for it.
+   *
+   * <p>
+   * Nothing is sent until the content outgrows the compression threshold or the
+   * writer is closed. The writer must be closed to complete the response.
+   * Content larger than the threshold is sent without a Content-Length header.
+   * </p>
+   *
+   * @param servletContext servlet context for this response
+   * @param response response instance
+   * @param gzipAllowed if <code>true</code> the client accepts gzip encoding,
+   *          see {@link #acceptsGzipEncoding(HttpServletRequest)}
+   */
+  public static Writer openResponseWriter(ServletContext servletContext,
+      HttpServletResponse response, boolean gzipAllowed) {
+    return new ResponseWriter(servletContext, response, gzipAllowed);
+  }
+
   /**
    * Returns the content of an {@link HttpServletRequest} by decoding it using
    * <code>expectedCharSet</code>, or <code>UTF-8</code> if
@@ -216,7 +354,10 @@ public class RPCServletUtils {
      */
     InputStream in = request.getInputStream();
     byte[] buffer = new byte[BUFFER_SIZE];
-    ByteArrayOutputStream out = new  ByteArrayOutputStream(BUFFER_SIZE);
+    int contentLength = request.getContentLength();
+    // Trust the declared length only so far, since the client controls it.
+    ContentBuffer out = new ContentBuffer(
+        contentLength > 0 ? Math.min(contentLength, MAX_PRESIZED_CONTENT_LENGTH) : BUFFER_SIZE);
     try {
       while (true) {
         int byteCount = in.read(buffer);
@@ -225,7 +366,7 @@ public class RPCServletUtils {
         }
         out.write(buffer, 0, byteCount);
       }
-      return new String(out.toByteArray(), getCharset(expectedCharSet));
+      return out.decode(getCharset(expectedCharSet));
     } finally {
       if (in != null) {
         in.close();
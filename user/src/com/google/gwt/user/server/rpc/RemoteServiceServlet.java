@@ -15,18 +15,36 @@
  */
 package com.google.gwt.user.server.rpc;
 
+import com.google.gwt.user.client.rpc.AsyncCallback;
 import com.google.gwt.user.client.rpc.IncompatibleRemoteServiceException;
 import com.google.gwt.user.client.rpc.RpcTokenException;
 import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.client.rpc.impl.RpcBatchFormat;
+import com.google.gwt.user.server.rpc.impl.SerializationPolicyCache;
+import com.google.gwt.user.server.rpc.impl.ServletAsyncSupport;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.text.ParseException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.management.JMException;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -37,10 +55,253 @@ import javax.servlet.http.HttpServletResponse;
  * The servlet base class for your RPC service implementations that
  * automatically deserializes incoming requests from the client and serializes
  * outgoing responses for client/server RPCs.
+ *
+ * <p>
+ * A service implementation that waits on other systems can avoid holding a
+ * request thread while it does so by also implementing the service's
+ * asynchronous interface, where each method takes an extra
+ * {@link AsyncCallback} as its last parameter. Calls to such a method are
+ * dispatched to the callback-style variant instead, and the response is
+ * written when the callback is called, from whatever thread calls it. In a
+ * Servlet 3.0 container, with async support enabled for this servlet, the
+ * request thread is released in the meantime; otherwise it waits for the
+ * callback. If the callback is not called within
+ * {@value #ASYNC_TIMEOUT_PROPERTY} milliseconds, the call fails through
+ * {@link #doUnexpectedFailure(Throwable)} and a later callback is ignored. The callback-style variant cannot use
+ * {@link #getThreadLocalRequest()}, since it is not necessarily called on the
+ * request thread; nor can {@link #onAfterResponseSerialized(String)} and
+ * {@link #shouldCompressResponse(HttpServletRequest, HttpServletResponse, String)}
+ * when they run for such a call.
+ * </p>
  */
 public class RemoteServiceServlet extends AbstractRemoteServiceServlet
     implements SerializationPolicyProvider {
 
+  /**
+   * The callback handed to the callback-style variant of a service method. It
+   * writes the response for its call and then ends the request, or, for a call
+   * in a batch, keeps the response for the batch to write. Once the request has
+   * ended, by a response, a timeout or an error, later callbacks are dropped.
+   */
+  private class AsyncCall implements AsyncCallback<Object>, ServletAsyncSupport.Listener {
+    private final Object asyncContext;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final AtomicBoolean ended = new AtomicBoolean();
+    private final HttpServletRequest request;
+    private final HttpServletResponse response;
+    private String responsePayload;
+    private final RPCRequest rpcRequest;
+    private Throwable unexpectedFailure;
+
+    /**
+     * Creates a callback for a call in a batch.
+     */
+    AsyncCall(RPCRequest rpcRequest) {
+      this(null, null, rpcRequest, null);
+    }
+
+    AsyncCall(HttpServletRequest request, HttpServletResponse response,
+        RPCRequest rpcRequest, Object asyncContext) {
+      this.request = request;
+      this.response = response;
+      this.rpcRequest = rpcRequest;
+      this.asyncContext = asyncContext;
+    }
+
+    public void onEnd() {
+      // The container is done with the request; there is nothing to write to
+      if (markEnded()) {
+        done.countDown();
+      }
+    }
+
+    public void onFailure(Throwable caught) {
+      if (!markCalledBack()) {
+        return;
+      }
+      try {
+        send(RPC.encodeResponseForFailure(rpcRequest.getMethod(), caught,
+            rpcRequest.getSerializationPolicy(), rpcRequest.getFlags()));
+      } catch (Throwable e) {
+        sendUnexpectedFailure(e);
+      } finally {
+        complete();
+      }
+    }
+
+    public void onSuccess(Object result) {
+      if (!markCalledBack()) {
+        return;
+      }
+      try {
+        send(RPC.encodeResponseForSuccess(rpcRequest.getMethod(), result,
+            rpcRequest.getSerializationPolicy(), rpcRequest.getFlags()));
+      } catch (Throwable e) {
+        sendUnexpectedFailure(e);
+      } finally {
+        complete();
+      }
+    }
+
+    /**
+     * Fails the call because the service did not call back in time, unless it
+     * already did.
+     */
+    public void onTimeout() {
+      if (!markEnded()) {
+        return;
+      }
+      try {
+        sendUnexpectedFailure(new RuntimeException("Timed out waiting for "
+            + rpcRequest.getMethod() + " to call back"));
+      } finally {
+        complete();
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "call to " + rpcRequest.getMethod();
+    }
+
+    /**
+     * Waits, without giving up on interruption, until the response has been
+     * written. If the service does not call back in time, fails the call.
+     */
+    void await() {
+      long deadline = System.nanoTime()
+          + TimeUnit.MILLISECONDS.toNanos(asyncTimeoutMillis);
+      boolean interrupted = false;
+      boolean timedOut = false;
+      while (true) {
+        try {
+          if (timedOut) {
+            // A callback may be writing its response right now
+            done.await();
+            break;
+          }
+          if (done.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+            break;
+          }
+          onTimeout();
+          timedOut = true;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    /**
+     * Fails the call because the service method could not be invoked, unless
+     * it already called back.
+     */
+    void fail(Throwable e) {
+      if (!markCalledBack()) {
+        return;
+      }
+      try {
+        sendUnexpectedFailure(e);
+      } finally {
+        complete();
+      }
+    }
+
+    private void complete() {
+      try {
+        if (asyncContext != null) {
+          ServletAsyncSupport.complete(asyncContext);
+        }
+      } catch (ServletException e) {
+        log("Unable to complete the request", e);
+      } finally {
+        done.countDown();
+      }
+    }
+
+    /**
+     * Registers this call to hear about the asynchronous request timing out or
+     * failing.
+     */
+    void listen() {
+      if (asyncContext == null) {
+        return;
+      }
+      try {
+        ServletAsyncSupport.addListener(asyncContext, this);
+      } catch (ServletException e) {
+        log("Unable to listen for the end of the request", e);
+      }
+    }
+
+    private boolean markCalledBack() {
+      if (markEnded()) {
+        return true;
+      }
+      log("Ignoring a response to a call to " + rpcRequest.getMethod()
+          + " that has already ended");
+      return false;
+    }
+
+    private boolean markEnded() {
+      return ended.compareAndSet(false, true);
+    }
+
+    private void send(String payload) throws IOException {
+      if (response == null) {
+        responsePayload = payload;
+      } else {
+        sendResponse(request, response, payload);
+      }
+    }
+
+    /**
+     * Hands the failure to {@link #doUnexpectedFailure(Throwable)}, which sees
+     * this call's request and response as thread-local, whatever thread this
+     * runs on.
+     */
+    private void sendUnexpectedFailure(Throwable e) {
+      if (response == null) {
+        unexpectedFailure = e;
+        return;
+      }
+      HttpServletRequest previousRequest = getThreadLocalRequest();
+      HttpServletResponse previousResponse = getThreadLocalResponse();
+      perThreadRequest.set(request);
+      perThreadResponse.set(response);
+      try {
+        doUnexpectedFailure(e);
+      } catch (RuntimeException ex) {
+        // There is no caller left to rethrow to
+        log("Unable to report failure", e);
+      } finally {
+        perThreadRequest.set(previousRequest);
+        perThreadResponse.set(previousResponse);
+      }
+    }
+  }
+
+  /**
+   * A Java system property that sets how many threads each servlet uses to
+   * process the calls in a batch concurrently. Defaults to 0, which processes
+   * them one after another on the request thread.
+   */
+  public static final String BATCH_THREADS_PROPERTY = "gwt.rpc.batchThreads";
+
+  /**
+   * A Java system property that sets how many milliseconds a callback-style
+   * service method has to call back before the call fails. Defaults to 30000,
+   * the default timeout of a Servlet 3.0 asynchronous request.
+   */
+  public static final String ASYNC_TIMEOUT_PROPERTY = "gwt.rpc.asyncTimeoutMillis";
+
+  /**
+   * Stands for a missing callback-style variant in {@link #asyncMethods}.
+   */
+  private static final Object NO_ASYNC_METHOD = new Object();
+
   /**
    * Loads a serialization policy stored as a servlet resource in the same
    * ServletContext as this servlet. Returns null if not found.
@@ -126,13 +387,46 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
    * A cache of moduleBaseURL and serialization policy strong name to
    * {@link SerializationPolicy}.
    */
-  private final Map<String, SerializationPolicy> serializationPolicyCache = new HashMap<String, SerializationPolicy>();
+  private final SerializationPolicyCache serializationPolicyCache =
+      new SerializationPolicyCache();
+
+  /**
+   * A permanent cache of the delegate's callback-style variants of service
+   * methods, or {@link #NO_ASYNC_METHOD} where there is none. This is safe to
+   * do because a Class is guaranteed not to change within the lifetime of a
+   * ClassLoader (and thus, this Map).
+   */
+  private final Map<Method, Object> asyncMethods = new ConcurrentHashMap<Method, Object>();
+
+  /**
+   * Runs the calls in a batch concurrently, or <code>null</code> to run them
+   * on the request thread.
+   */
+  private ExecutorService batchExecutor;
+
+  /**
+   * How long a callback-style service method has to call back, in
+   * milliseconds; see {@value #ASYNC_TIMEOUT_PROPERTY}.
+   */
+  private long asyncTimeoutMillis = 30000;
 
   /**
    * The implementation of the service.
    */
   private final Object delegate;
 
+  /**
+   * Whether calls are decoded and dispatched by this class, which is only
+   * possible when no subclass overrides {@link #processCall(String)}.
+   */
+  private final boolean dispatchCalls;
+
+  /**
+   * Whether responses can be written straight to the HTTP response, which is
+   * only possible when no subclass needs to see them as a String.
+   */
+  private final boolean streamResponses;
+
   /**
    * The HTTP port of a Super Dev Mode code server running on localhost where this servlet will
    * download serialization policies. (If set to zero, this feature is disabled and no download
@@ -147,6 +441,8 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
    */
   public RemoteServiceServlet() {
     this.delegate = this;
+    this.dispatchCalls = !isOverridden("processCall", String.class);
+    this.streamResponses = canStreamResponses();
   }
 
   /**
@@ -156,15 +452,60 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
    */
   public RemoteServiceServlet(Object delegate) {
     this.delegate = delegate;
+    this.dispatchCalls = !isOverridden("processCall", String.class);
+    this.streamResponses = canStreamResponses();
   }
 
   /**
-   * Overridden to load the gwt.codeserver.port system property.
+   * Overridden to unregister the serialization policy cache from JMX, and to
+   * stop the threads that process batched calls.
+   */
+  @Override
+  public void destroy() {
+    if (batchExecutor != null) {
+      batchExecutor.shutdown();
+    }
+    try {
+      serializationPolicyCache.unregisterMBean();
+    } catch (JMException e) {
+      log("Unable to unregister the serialization policy cache from JMX", e);
+    }
+    super.destroy();
+  }
+
+  /**
+   * Overridden to load the gwt.codeserver.port,
+   * {@value #BATCH_THREADS_PROPERTY} and {@value #ASYNC_TIMEOUT_PROPERTY}
+   * system properties, and to register the
+   * serialization policy cache with JMX if
+   * {@value SerializationPolicyCache#JMX_PROPERTY} is set.
    */
   @Override
   public void init(ServletConfig config) throws ServletException {
     super.init(config);
     codeServerPort = getCodeServerPort();
+    asyncTimeoutMillis = Long.getLong(ASYNC_TIMEOUT_PROPERTY, asyncTimeoutMillis);
+    int batchThreads = Integer.getInteger(BATCH_THREADS_PROPERTY, 0);
+    if (batchThreads > 0 && batchExecutor == null) {
+      final String threadName = "RPC batch " + getServletName();
+      batchExecutor = Executors.newFixedThreadPool(batchThreads, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, threadName);
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    if (Boolean.getBoolean(SerializationPolicyCache.JMX_PROPERTY)) {
+      try {
+        serializationPolicyCache.registerMBean(getServletContext().getContextPath(),
+            getServletName());
+      } catch (JMException e) {
+        log("Unable to register the serialization policy cache with JMX", e);
+      } catch (SecurityException e) {
+        log("Unable to register the serialization policy cache with JMX", e);
+      }
+    }
   }
 
   /**
@@ -197,12 +538,13 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
   public final SerializationPolicy getSerializationPolicy(String moduleBaseURL,
       String strongName) {
 
-    SerializationPolicy serializationPolicy = getCachedSerializationPolicy(
+    SerializationPolicy serializationPolicy = serializationPolicyCache.get(
         moduleBaseURL, strongName);
     if (serializationPolicy != null) {
       return serializationPolicy;
     }
 
+    long start = System.nanoTime();
     serializationPolicy = doGetSerializationPolicy(getThreadLocalRequest(),
         moduleBaseURL, strongName);
 
@@ -214,7 +556,8 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
       }
     }
 
-    if (serializationPolicy == null) {
+    boolean missing = serializationPolicy == null;
+    if (missing) {
       // Failed to get the requested serialization policy; use the default
       log(
           "WARNING: Failed to get the SerializationPolicy '"
@@ -225,9 +568,10 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
       serializationPolicy = RPC.getDefaultSerializationPolicy();
     }
 
-    // This could cache null or an actual instance. Either way we will not
-    // attempt to lookup the policy again.
-    putCachedSerializationPolicy(moduleBaseURL, strongName, serializationPolicy);
+    // A missing policy is only remembered for a short while, in case it is
+    // deployed later.
+    serializationPolicyCache.put(moduleBaseURL, strongName, serializationPolicy, missing,
+        System.nanoTime() - start);
 
     return serializationPolicy;
   }
@@ -295,10 +639,25 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
     //
     String requestPayload = readContent(request);
 
+    if (dispatchCalls && request.getHeader(RpcBatchFormat.BATCH_HEADER) != null) {
+      // Several calls that are each seen by the hooks as if sent on their own
+      //
+      processBatch(request, response, requestPayload);
+      return;
+    }
+
     // Let subclasses see the serialized request.
     //
     onBeforeRequestDeserialized(requestPayload);
 
+    if (dispatchCalls) {
+      // Nothing overrides processCall(String), so dispatch the call here,
+      // where its response can be streamed or completed asynchronously.
+      //
+      processCall(request, response, requestPayload);
+      return;
+    }
+
     // Invoke the core dispatching logic, which returns the serialized
     // result.
     //
@@ -437,18 +796,277 @@ public class RemoteServiceServlet extends AbstractRemoteServiceServlet
     return RPCServletUtils.exceedsUncompressedContentLengthLimit(responsePayload);
   }
 
-  private SerializationPolicy getCachedSerializationPolicy(
-      String moduleBaseURL, String strongName) {
-    synchronized (serializationPolicyCache) {
-      return serializationPolicyCache.get(moduleBaseURL + strongName);
+  /**
+   * Returns <code>true</code> if this servlet does not override any of the
+   * methods that see the response as a String.
+   */
+  private boolean canStreamResponses() {
+    return !isOverridden("processCall", String.class)
+        && !isOverridden("onAfterResponseSerialized", String.class)
+        && !isOverridden("shouldCompressResponse", HttpServletRequest.class,
+            HttpServletResponse.class, String.class);
+  }
+
+  /**
+   * Returns the delegate's public method with the same name and parameters as
+   * <code>serviceMethod</code> plus a trailing {@link AsyncCallback}, or
+   * <code>null</code> if there is none.
+   */
+  private Method getAsyncMethod(Method serviceMethod) {
+    Object asyncMethod = asyncMethods.get(serviceMethod);
+    if (asyncMethod == null) {
+      Class<?>[] parameterTypes = serviceMethod.getParameterTypes();
+      Class<?>[] asyncParameterTypes = new Class<?>[parameterTypes.length + 1];
+      System.arraycopy(parameterTypes, 0, asyncParameterTypes, 0, parameterTypes.length);
+      asyncParameterTypes[parameterTypes.length] = AsyncCallback.class;
+      try {
+        Method method = delegate.getClass().getMethod(serviceMethod.getName(),
+            asyncParameterTypes);
+        if (!Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+          // Unlike service methods, this is not looked up on a public interface
+          method.setAccessible(true);
+        }
+        asyncMethod = method.getReturnType() == void.class ? method : NO_ASYNC_METHOD;
+      } catch (NoSuchMethodException e) {
+        asyncMethod = NO_ASYNC_METHOD;
+      } catch (SecurityException e) {
+        log("Unable to use " + serviceMethod.getName() + "(..., AsyncCallback)", e);
+        asyncMethod = NO_ASYNC_METHOD;
+      }
+      asyncMethods.put(serviceMethod, asyncMethod);
+    }
+    return asyncMethod == NO_ASYNC_METHOD ? null : (Method) asyncMethod;
+  }
+
+  /**
+   * Invokes the callback-style variant of a service method.
+   */
+  private void invokeAsync(AsyncCall call, Method asyncMethod) {
+    Object[] parameters = call.rpcRequest.getParameters();
+    Object[] asyncParameters = new Object[parameters.length + 1];
+    System.arraycopy(parameters, 0, asyncParameters, 0, parameters.length);
+    asyncParameters[parameters.length] = call;
+    try {
+      asyncMethod.invoke(delegate, asyncParameters);
+    } catch (IllegalAccessException e) {
+      call.fail(new SecurityException("Blocked attempt to access inaccessible method '"
+          + asyncMethod + "'", e));
+    } catch (IllegalArgumentException e) {
+      call.fail(new SecurityException("Blocked attempt to invoke method '" + asyncMethod
+          + "'", e));
+    } catch (InvocationTargetException e) {
+      // Report the exception as the result of the call, as if the service had
+      // passed it to the callback.
+      call.onFailure(e.getCause());
     }
   }
 
-  private void putCachedSerializationPolicy(String moduleBaseURL,
-      String strongName, SerializationPolicy serializationPolicy) {
-    synchronized (serializationPolicyCache) {
-      serializationPolicyCache.put(moduleBaseURL + strongName,
-          serializationPolicy);
+  /**
+   * Returns <code>true</code> if a subclass of RemoteServiceServlet declares
+   * the given method.
+   */
+  private boolean isOverridden(String name, Class<?>... parameterTypes) {
+    for (Class<?> c = getClass(); c != RemoteServiceServlet.class; c = c.getSuperclass()) {
+      try {
+        c.getDeclaredMethod(name, parameterTypes);
+        return true;
+      } catch (NoSuchMethodException e) {
+        // Keep looking
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Same as {@link #processCall(String)}, but writes the response itself. If
+   * the delegate has a callback-style variant of the requested method, that is
+   * invoked instead, and the response is written once the callback is called.
+   */
+  private void processCall(HttpServletRequest request, HttpServletResponse response,
+      String payload) throws SerializationException, IOException {
+    // First, check for possible XSRF situation
+    checkPermutationStrongName();
+
+    RPCRequest rpcRequest;
+    try {
+      rpcRequest = RPC.decodeRequest(payload, delegate.getClass(), this);
+      onAfterRequestDeserialized(rpcRequest);
+    } catch (IncompatibleRemoteServiceException ex) {
+      log(
+          "An IncompatibleRemoteServiceException was thrown while processing this call.",
+          ex);
+      sendResponse(request, response, RPC.encodeResponseForFailure(null, ex));
+      return;
+    } catch (RpcTokenException tokenException) {
+      log("An RpcTokenException was thrown while processing this call.",
+          tokenException);
+      sendResponse(request, response, RPC.encodeResponseForFailure(null, tokenException));
+      return;
+    }
+
+    Method asyncMethod = getAsyncMethod(rpcRequest.getMethod());
+    if (asyncMethod != null) {
+      // If the container supports it, let the request thread return while
+      // the service works; otherwise wait for it here.
+      AsyncCall call = new AsyncCall(request, response, rpcRequest, startAsync(request));
+      call.listen();
+      invokeAsync(call, asyncMethod);
+      if (call.asyncContext == null) {
+        call.await();
+      }
+    } else if (streamResponses) {
+      // Nothing overrides the String-based hooks, so serialize the result
+      // straight into the response.
+      Writer out = RPCServletUtils.openResponseWriter(getServletContext(), response,
+          RPCServletUtils.acceptsGzipEncoding(request));
+      RPC.invokeAndEncodeResponse(delegate, rpcRequest.getMethod(),
+          rpcRequest.getParameters(), rpcRequest.getSerializationPolicy(),
+          rpcRequest.getFlags(), out);
+      out.close();
+    } else {
+      sendResponse(request, response, RPC.invokeAndEncodeResponse(delegate,
+          rpcRequest.getMethod(), rpcRequest.getParameters(),
+          rpcRequest.getSerializationPolicy(), rpcRequest.getFlags()));
+    }
+  }
+
+  /**
+   * Processes the calls in a batch request, in parallel if
+   * {@value #BATCH_THREADS_PROPERTY} allows, and writes their responses as a
+   * batch.
+   */
+  private void processBatch(final HttpServletRequest request,
+      final HttpServletResponse response, String payload) throws IOException,
+      ServletException, SerializationException {
+    final List<String> calls = RpcBatchFormat.splitEntries(payload);
+    if (calls == null) {
+      throw new SerializationException("Malformed RPC batch");
+    }
+
+    // First, check for possible XSRF situation
+    checkPermutationStrongName();
+
+    final String[] responses = new String[calls.size()];
+    if (batchExecutor == null || calls.size() == 1) {
+      for (int i = 0, j = calls.size(); i < j; i++) {
+        responses[i] = processBatchedCall(calls.get(i));
+      }
+    } else {
+      List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+      for (int i = 0, j = calls.size(); i < j; i++) {
+        final int index = i;
+        tasks.add(new Callable<Void>() {
+          public Void call() {
+            // Let the service see the request as it would on the request thread
+            boolean hasThreadLocals = perThreadRequest != null && perThreadResponse != null;
+            if (hasThreadLocals) {
+              perThreadRequest.set(request);
+              perThreadResponse.set(response);
+            }
+            try {
+              responses[index] = processBatchedCall(calls.get(index));
+            } finally {
+              if (hasThreadLocals) {
+                perThreadRequest.set(null);
+                perThreadResponse.set(null);
+              }
+            }
+            return null;
+          }
+        });
+      }
+      try {
+        batchExecutor.invokeAll(tasks);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new ServletException("Interrupted while processing an RPC batch", e);
+      }
+    }
+
+    StringBuilder sb = new StringBuilder();
+    for (String callResponse : responses) {
+      if (callResponse == null) {
+        RpcBatchFormat.appendEntry(sb,
+            String.valueOf(HttpServletResponse.SC_INTERNAL_SERVER_ERROR));
+        RpcBatchFormat.appendEntry(sb, RPCServletUtils.GENERIC_FAILURE_MSG);
+      } else {
+        RpcBatchFormat.appendEntry(sb, String.valueOf(HttpServletResponse.SC_OK));
+        RpcBatchFormat.appendEntry(sb, callResponse);
+      }
+    }
+    writeResponse(request, response, sb.toString());
+  }
+
+  /**
+   * Processes one call in a batch.
+   *
+   * @return the response to the call, or <code>null</code> if it failed
+   *         unexpectedly
+   */
+  private String processBatchedCall(String payload) {
+    try {
+      onBeforeRequestDeserialized(payload);
+      String responsePayload = invokeBatchedCall(payload);
+      onAfterResponseSerialized(responsePayload);
+      return responsePayload;
+    } catch (Throwable e) {
+      log("Exception while dispatching incoming RPC call", e);
+      return null;
+    }
+  }
+
+  /**
+   * Decodes and invokes one call in a batch, returning its response.
+   */
+  private String invokeBatchedCall(String payload) throws Throwable {
+    RPCRequest rpcRequest;
+    try {
+      rpcRequest = RPC.decodeRequest(payload, delegate.getClass(), this);
+      onAfterRequestDeserialized(rpcRequest);
+    } catch (IncompatibleRemoteServiceException ex) {
+      log(
+          "An IncompatibleRemoteServiceException was thrown while processing this call.",
+          ex);
+      return RPC.encodeResponseForFailure(null, ex);
+    } catch (RpcTokenException tokenException) {
+      log("An RpcTokenException was thrown while processing this call.",
+          tokenException);
+      return RPC.encodeResponseForFailure(null, tokenException);
+    }
+
+    Method asyncMethod = getAsyncMethod(rpcRequest.getMethod());
+    if (asyncMethod == null) {
+      return RPC.invokeAndEncodeResponse(delegate, rpcRequest.getMethod(),
+          rpcRequest.getParameters(), rpcRequest.getSerializationPolicy(),
+          rpcRequest.getFlags());
+    }
+
+    AsyncCall call = new AsyncCall(rpcRequest);
+    invokeAsync(call, asyncMethod);
+    call.await();
+    if (call.unexpectedFailure != null) {
+      throw call.unexpectedFailure;
+    }
+    return call.responsePayload;
+  }
+
+  private void sendResponse(HttpServletRequest request, HttpServletResponse response,
+      String responsePayload) throws IOException {
+    onAfterResponseSerialized(responsePayload);
+    writeResponse(request, response, responsePayload);
+  }
+
+  /**
+   * Puts the request into asynchronous mode, returning its
+   * <code>AsyncContext</code>, or <code>null</code> if the container or the
+   * servlet's configuration does not support that.
+   */
+  private Object startAsync(HttpServletRequest request) {
+    try {
+      return ServletAsyncSupport.startAsync(request, asyncTimeoutMillis);
+    } catch (ServletException e) {
+      log("Unable to start asynchronous processing", e);
+      return null;
     }
   }
 
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc.impl;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * For internal use only. Reads and writes the serializable fields of one class,
+ * identified by their index in
+ * {@link SerializabilityUtil#applyFieldSerializationPolicy(Class)}.
+ *
+ * <p>
+ * This implementation uses reflection. {@link FieldAccessorGenerator} creates
+ * subclasses that access fields directly where the JVM allows it, and defer to
+ * this class for the rest.
+ * </p>
+ */
+public class FieldAccessor {
+
+  private final Field[] fields;
+
+  /**
+   * Creates an accessor for the given fields, which must all be declared by the
+   * same class.
+   */
+  public FieldAccessor(Field[] fields) {
+    this.fields = fields;
+    for (Field field : fields) {
+      if (!field.isAccessible() && !Modifier.isPublic(field.getModifiers())) {
+        // Override the access restrictions
+        field.setAccessible(true);
+      }
+    }
+  }
+
+  /**
+   * Returns the value of a field, boxed if it is primitive, as
+   * {@link Field#get(Object)} would.
+   */
+  public Object get(Object instance, int index) throws IllegalAccessException {
+    return fields[index].get(instance);
+  }
+
+  /**
+   * Sets the value of a field, unboxing it if it is primitive, as
+   * {@link Field#set(Object, Object)} would.
+   */
+  public void set(Object instance, int index, Object value) throws IllegalAccessException {
+    fields[index].set(instance, value);
+  }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc.impl;
+
+import com.google.gwt.dev.asm.ClassWriter;
+import com.google.gwt.dev.asm.Label;
+import com.google.gwt.dev.asm.MethodVisitor;
+import com.google.gwt.dev.asm.Opcodes;
+import com.google.gwt.dev.asm.Type;
+import com.google.gwt.user.server.GeneratedClassUtil;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * For internal use only. Generates a {@link FieldAccessor} subclass per
+ * serializable class that reads and writes fields with plain field
+ * instructions instead of reflection.
+ *
+ * <p>
+ * The generated class is defined in the package and class loader of the class
+ * whose fields it accesses, so it can only access fields that are not private
+ * or final and whose types it can see; all other fields, and any value that
+ * reflection would reject, are left to the reflective superclass. If a class
+ * cannot be generated at all, for instance because its class loader does not
+ * see this {@link FieldAccessor}, {@link #generate} returns <code>null</code>
+ * and the caller falls back to reflection.
+ * </p>
+ *
+ * <p>
+ * Generation is off unless the {@value #GENERATE_PROPERTY} system property is
+ * set to <code>true</code>.
+ * </p>
+ */
+public final class FieldAccessorGenerator {
+
+  /**
+   * A Java system property that can be set to <code>true</code> to generate
+   * accessors instead of accessing all fields by reflection.
+   */
+  public static final String GENERATE_PROPERTY = "gwt.rpc.generateFieldAccessors";
+
+  private static final String ACCESSOR_SUFFIX = "$$GwtFieldAccessor";
+
+  private static final String ACCESSOR_TYPE = Type.getInternalName(FieldAccessor.class);
+
+  private static final boolean ENABLED = Boolean.getBoolean(GENERATE_PROPERTY);
+
+  /**
+   * Returns a generated accessor for the given serializable fields of
+   * <code>clazz</code>, or <code>null</code> if none can or needs to be
+   * generated. Always returns <code>null</code> unless
+   * {@value #GENERATE_PROPERTY} is set.
+   */
+  static FieldAccessor generate(Class<?> clazz, Field[] fields) {
+    return ENABLED ? create(clazz, fields) : null;
+  }
+
+  /**
+   * Like {@link #generate}, but ignores {@value #GENERATE_PROPERTY}. Each class
+   * can only be generated once per class loader.
+   */
+  // @VisibleForTesting
+  static FieldAccessor create(Class<?> clazz, Field[] fields) {
+    ClassLoader loader = clazz.getClassLoader();
+    if (loader == null || !hasDirectlyAccessibleField(clazz, fields)) {
+      return null;
+    }
+
+    try {
+      // The generated class must extend this very FieldAccessor class.
+      if (Class.forName(FieldAccessor.class.getName(), false, loader) != FieldAccessor.class) {
+        return null;
+      }
+
+      String name = clazz.getName() + ACCESSOR_SUFFIX;
+      byte[] bytes = createClass(name.replace('.', '/'), clazz, fields);
+      Class<?> accessorClass = GeneratedClassUtil.defineClass(clazz, name, bytes);
+      if (accessorClass == null) {
+        return null;
+      }
+      return (FieldAccessor) accessorClass.getConstructor(Field[].class).newInstance(
+          (Object) fields);
+    } catch (Exception e) {
+      // Unusual class loaders and security managers; use reflection instead.
+      return null;
+    } catch (LinkageError e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns <code>true</code> if the generated class can access
+   * <code>field</code> of <code>clazz</code> directly.
+   */
+  static boolean isDirectlyAccessible(Class<?> clazz, Field field) {
+    int modifiers = field.getModifiers();
+    if (Modifier.isPrivate(modifiers) || Modifier.isFinal(modifiers)
+        || Modifier.isStatic(modifiers) || field.getDeclaringClass() != clazz) {
+      return false;
+    }
+    return GeneratedClassUtil.isAccessible(clazz, field.getType());
+  }
+
+  private static byte[] createClass(String internalName, Class<?> clazz, Field[] fields) {
+    ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    cw.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER,
+        internalName, null, ACCESSOR_TYPE, null);
+
+    String constructorDesc =
+        Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(Field[].class));
+    MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", constructorDesc, null, null);
+    mv.visitCode();
+    mv.visitVarInsn(Opcodes.ALOAD, 0);
+    mv.visitVarInsn(Opcodes.ALOAD, 1);
+    mv.visitMethodInsn(Opcodes.INVOKESPECIAL, ACCESSOR_TYPE, "<init>", constructorDesc);
+    mv.visitInsn(Opcodes.RETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+
+    createGetMethod(cw, clazz, fields);
+    createSetMethod(cw, clazz, fields);
+    cw.visitEnd();
+    return cw.toByteArray();
+  }
+
+  /**
+   * Creates <code>get(Object instance, int index)</code>.
+   */
+  private static void createGetMethod(ClassWriter cw, Class<?> clazz, Field[] fields) {
+    String desc = "(Ljava/lang/Object;I)Ljava/lang/Object;";
+    MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "get", desc, null,
+        new String[] {"java/lang/IllegalAccessException"});
+    mv.visitCode();
+
+    Label dflt = new Label();
+    Label[] labels = createSwitch(mv, clazz, fields, dflt);
+    String owner = Type.getInternalName(clazz);
+    for (int i = 0; i < fields.length; i++) {
+      if (labels[i] == dflt) {
+        continue;
+      }
+      Field field = fields[i];
+      mv.visitLabel(labels[i]);
+      mv.visitVarInsn(Opcodes.ALOAD, 1);
+      mv.visitTypeInsn(Opcodes.CHECKCAST, owner);
+      mv.visitFieldInsn(Opcodes.GETFIELD, owner, field.getName(),
+          Type.getDescriptor(field.getType()));
+      GeneratedClassUtil.box(mv, field.getType());
+      mv.visitInsn(Opcodes.ARETURN);
+    }
+
+    mv.visitLabel(dflt);
+    mv.visitVarInsn(Opcodes.ALOAD, 0);
+    mv.visitVarInsn(Opcodes.ALOAD, 1);
+    mv.visitVarInsn(Opcodes.ILOAD, 2);
+    mv.visitMethodInsn(Opcodes.INVOKESPECIAL, ACCESSOR_TYPE, "get", desc);
+    mv.visitInsn(Opcodes.ARETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+  }
+
+  /**
+   * Creates <code>set(Object instance, int index, Object value)</code>. A value
+   * of the wrong type, or a <code>null</code> value for a primitive field, goes
+   * to the superclass so that it fails exactly as reflection would.
+   */
+  private static void createSetMethod(ClassWriter cw, Class<?> clazz, Field[] fields) {
+    String desc = "(Ljava/lang/Object;ILjava/lang/Object;)V";
+    MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "set", desc, null,
+        new String[] {"java/lang/IllegalAccessException"});
+    mv.visitCode();
+
+    Label dflt = new Label();
+    Label[] labels = createSwitch(mv, clazz, fields, dflt);
+    String owner = Type.getInternalName(clazz);
+    for (int i = 0; i < fields.length; i++) {
+      if (labels[i] == dflt) {
+        continue;
+      }
+      Field field = fields[i];
+      Class<?> type = field.getType();
+      String valueType = Type.getInternalName(
+          type.isPrimitive() ? GeneratedClassUtil.getBoxedType(type) : type);
+      Label store = new Label();
+      mv.visitLabel(labels[i]);
+      if (!type.isPrimitive()) {
+        mv.visitVarInsn(Opcodes.ALOAD, 3);
+        mv.visitJumpInsn(Opcodes.IFNULL, store);
+      }
+      mv.visitVarInsn(Opcodes.ALOAD, 3);
+      mv.visitTypeInsn(Opcodes.INSTANCEOF, valueType);
+      mv.visitJumpInsn(Opcodes.IFEQ, dflt);
+
+      mv.visitLabel(store);
+      mv.visitVarInsn(Opcodes.ALOAD, 1);
+      mv.visitTypeInsn(Opcodes.CHECKCAST, owner);
+      mv.visitVarInsn(Opcodes.ALOAD, 3);
+      mv.visitTypeInsn(Opcodes.CHECKCAST, valueType);
+      if (type.isPrimitive()) {
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, valueType, type.getName() + "Value",
+            Type.getMethodDescriptor(Type.getType(type)));
+      }
+      mv.visitFieldInsn(Opcodes.PUTFIELD, owner, field.getName(), Type.getDescriptor(type));
+      mv.visitInsn(Opcodes.RETURN);
+    }
+
+    mv.visitLabel(dflt);
+    mv.visitVarInsn(Opcodes.ALOAD, 0);
+    mv.visitVarInsn(Opcodes.ALOAD, 1);
+    mv.visitVarInsn(Opcodes.ILOAD, 2);
+    mv.visitVarInsn(Opcodes.ALOAD, 3);
+    mv.visitMethodInsn(Opcodes.INVOKESPECIAL, ACCESSOR_TYPE, "set", desc);
+    mv.visitInsn(Opcodes.RETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+  }
+
+  /**
+   * Emits a switch on the index argument and returns one label per field;
+   * fields that cannot be accessed directly get <code>dflt</code>.
+   */
+  private static Label[] createSwitch(MethodVisitor mv, Class<?> clazz, Field[] fields,
+      Label dflt) {
+    Label[] labels = new Label[fields.length];
+    for (int i = 0; i < fields.length; i++) {
+      labels[i] = isDirectlyAccessible(clazz, fields[i]) ? new Label() : dflt;
+    }
+    mv.visitVarInsn(Opcodes.ILOAD, 2);
+    mv.visitTableSwitchInsn(0, fields.length - 1, dflt, labels);
+    return labels;
+  }
+
+  private static boolean hasDirectlyAccessibleField(Class<?> clazz, Field[] fields) {
+    for (Field field : fields) {
+      if (isDirectlyAccessible(clazz, field)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private FieldAccessorGenerator() {
+  }
+}
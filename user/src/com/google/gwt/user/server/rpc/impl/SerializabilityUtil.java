@@ -66,6 +66,14 @@ public class SerializabilityUtil {
   private static final Map<Class<?>, String> classCRC32Cache =
       new ConcurrentHashMap<Class<?>, String>();
 
+  /**
+   * A permanent cache of the {@link FieldAccessor} for the serializable fields
+   * of each class. This is safe to do because a Class is guaranteed not to
+   * change within the lifetime of a ClassLoader (and thus, this Map).
+   */
+  private static final Map<Class<?>, FieldAccessor> classFieldAccessorCache =
+      new ConcurrentHashMap<Class<?>, FieldAccessor>();
+
   /**
    * A permanent cache of all serializable fields on classes. This is safe to do
    * because a Class is guaranteed not to change within the lifetime of a
@@ -330,6 +338,31 @@ public class SerializabilityUtil {
     return expectedParameterTypes;
   }
 
+  /**
+   * Returns a {@link FieldAccessor} for the fields returned by
+   * {@link #applyFieldSerializationPolicy(Class)}. If
+   * {@link FieldAccessorGenerator#GENERATE_PROPERTY} is set, generates one that
+   * avoids reflection where possible.
+   */
+  public static FieldAccessor getFieldAccessor(Class<?> clazz) {
+    FieldAccessor accessor = classFieldAccessorCache.get(clazz);
+    if (accessor == null) {
+      // Serialize generation so a class is never defined twice.
+      synchronized (classFieldAccessorCache) {
+        accessor = classFieldAccessorCache.get(clazz);
+        if (accessor == null) {
+          Field[] fields = applyFieldSerializationPolicy(clazz);
+          accessor = FieldAccessorGenerator.generate(clazz, fields);
+          if (accessor == null) {
+            accessor = new FieldAccessor(fields);
+          }
+          classFieldAccessorCache.put(clazz, accessor);
+        }
+      }
+    }
+    return accessor;
+  }
+
   /**
    * Find the Class that a given type refers to.
    *
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc.impl;
+
+import com.google.gwt.user.server.rpc.SerializationPolicy;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * For internal use only. A thread-safe cache of {@link SerializationPolicy}
+ * instances keyed by module base URL and strong name. Lookups never block.
+ *
+ * <p>
+ * The cache holds at most a fixed number of entries, evicting the least
+ * recently used one when full, so that forged strong names cannot make it grow
+ * without bound. Policies that could not be found are cached too, but only for
+ * a short time, so that a policy deployed later is eventually picked up.
+ * </p>
+ */
+public class SerializationPolicyCache implements SerializationPolicyCacheMBean {
+
+  /**
+   * A cached policy and when it was loaded.
+   */
+  private static class Entry {
+    final long loadedAt;
+    volatile long lastUsed;
+    final SerializationPolicy policy;
+    final long timeToLive;
+
+    Entry(SerializationPolicy policy, long now, long timeToLive) {
+      this.policy = policy;
+      this.loadedAt = now;
+      this.lastUsed = now;
+      this.timeToLive = timeToLive;
+    }
+
+    boolean isExpired(long now) {
+      return timeToLive > 0 && now - loadedAt >= timeToLive;
+    }
+  }
+
+  /**
+   * A Java system property that, if set to <code>true</code>, makes each
+   * {@link com.google.gwt.user.server.rpc.RemoteServiceServlet} register its
+   * cache with the platform MBean server.
+   */
+  public static final String JMX_PROPERTY = "gwt.rpc.policyCache.jmx";
+
+  /**
+   * A Java system property that sets the maximum number of policies each
+   * servlet caches. Defaults to 1000.
+   */
+  public static final String MAX_SIZE_PROPERTY = "gwt.rpc.policyCache.maxSize";
+
+  /**
+   * A Java system property that sets how many seconds a policy stays cached.
+   * Defaults to 0, which keeps policies until they are evicted.
+   */
+  public static final String MAX_AGE_PROPERTY = "gwt.rpc.policyCache.maxAgeSeconds";
+
+  /**
+   * A Java system property that sets how many seconds a policy that could not
+   * be found is remembered as missing. Defaults to 60; 0 disables caching of
+   * missing policies.
+   */
+  public static final String MISSING_POLICY_TTL_PROPERTY =
+      "gwt.rpc.policyCache.missingPolicyTtlSeconds";
+
+  private static final String JMX_DOMAIN = "com.google.gwt.user.server.rpc";
+
+  private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+  private final AtomicLong evictionCount = new AtomicLong();
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong loadCount = new AtomicLong();
+  private final long maxAge;
+  private final int maxSize;
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong missingPolicyCount = new AtomicLong();
+  private final long missingPolicyTtl;
+  private ObjectName objectName;
+  private final AtomicLong totalLoadTime = new AtomicLong();
+
+  /**
+   * Creates a cache configured by {@link #MAX_SIZE_PROPERTY},
+   * {@link #MAX_AGE_PROPERTY} and {@link #MISSING_POLICY_TTL_PROPERTY}.
+   */
+  public SerializationPolicyCache() {
+    this(Integer.getInteger(MAX_SIZE_PROPERTY, 1000),
+        TimeUnit.SECONDS.toMillis(Long.getLong(MAX_AGE_PROPERTY, 0)),
+        TimeUnit.SECONDS.toMillis(Long.getLong(MISSING_POLICY_TTL_PROPERTY, 60)));
+  }
+
+  /**
+   * Creates a cache with the given limits.
+   *
+   * @param maxSize the maximum number of entries
+   * @param maxAgeMillis how long a policy stays cached, or 0 for no limit
+   * @param missingPolicyTtlMillis how long a missing policy stays cached, or 0
+   *          to not cache missing policies
+   */
+  public SerializationPolicyCache(int maxSize, long maxAgeMillis, long missingPolicyTtlMillis) {
+    this.maxSize = Math.max(1, maxSize);
+    this.maxAge = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxAgeMillis));
+    this.missingPolicyTtl = TimeUnit.MILLISECONDS.toNanos(Math.max(0, missingPolicyTtlMillis));
+  }
+
+  @Override
+  public void clear() {
+    entries.clear();
+  }
+
+  /**
+   * Returns the cached policy, or <code>null</code> if there is none or it has
+   * expired.
+   */
+  public SerializationPolicy get(String moduleBaseURL, String strongName) {
+    String key = moduleBaseURL + strongName;
+    Entry entry = entries.get(key);
+    if (entry != null) {
+      long now = nanoTime();
+      if (!entry.isExpired(now)) {
+        entry.lastUsed = now;
+        hitCount.incrementAndGet();
+        return entry.policy;
+      }
+      entries.remove(key, entry);
+    }
+    missCount.incrementAndGet();
+    return null;
+  }
+
+  @Override
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  @Override
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  @Override
+  public long getLoadCount() {
+    return loadCount.get();
+  }
+
+  @Override
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  @Override
+  public long getMissingPolicyCount() {
+    return missingPolicyCount.get();
+  }
+
+  @Override
+  public int getSize() {
+    return entries.size();
+  }
+
+  @Override
+  public long getTotalLoadTimeMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(totalLoadTime.get());
+  }
+
+  /**
+   * Caches a policy that was just loaded.
+   *
+   * @param policy the policy to return from later lookups
+   * @param missing <code>true</code> if the requested policy was not found and
+   *          <code>policy</code> is a substitute for it
+   * @param loadTimeNanos how long it took to load the policy
+   */
+  public void put(String moduleBaseURL, String strongName, SerializationPolicy policy,
+      boolean missing, long loadTimeNanos) {
+    loadCount.incrementAndGet();
+    totalLoadTime.addAndGet(loadTimeNanos);
+    if (missing) {
+      missingPolicyCount.incrementAndGet();
+      if (missingPolicyTtl == 0) {
+        return;
+      }
+    }
+
+    entries.put(moduleBaseURL + strongName,
+        new Entry(policy, nanoTime(), missing ? missingPolicyTtl : maxAge));
+    if (entries.size() > maxSize) {
+      evict();
+    }
+  }
+
+  /**
+   * Registers this cache with the platform MBean server, named after the
+   * servlet that uses it.
+   */
+  public synchronized void registerMBean(String contextPath, String servletName)
+      throws JMException {
+    ObjectName name = new ObjectName(JMX_DOMAIN + ":type=SerializationPolicyCache,context="
+        + ObjectName.quote(String.valueOf(contextPath)) + ",servlet="
+        + ObjectName.quote(String.valueOf(servletName)));
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+    objectName = name;
+  }
+
+  /**
+   * Undoes {@link #registerMBean(String, String)}, if it succeeded.
+   */
+  public synchronized void unregisterMBean() throws JMException {
+    if (objectName != null) {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+      objectName = null;
+    }
+  }
+
+  /**
+   * Returns the current time in nanoseconds; visible for testing.
+   */
+  long nanoTime() {
+    return System.nanoTime();
+  }
+
+  /**
+   * Removes expired entries, then least recently used ones, until the cache
+   * is within its size limit. Only cache misses get here, so a linear scan is
+   * cheap compared to the policy load that preceded it.
+   */
+  private void evict() {
+    long now = nanoTime();
+    while (entries.size() > maxSize) {
+      String oldestKey = null;
+      Entry oldest = null;
+      for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+        Entry entry = mapEntry.getValue();
+        if (entry.isExpired(now)) {
+          entries.remove(mapEntry.getKey(), entry);
+        } else if (oldest == null || entry.lastUsed - oldest.lastUsed < 0) {
+          oldestKey = mapEntry.getKey();
+          oldest = entry;
+        }
+      }
+      if (entries.size() <= maxSize || oldest == null) {
+        return;
+      }
+      if (entries.remove(oldestKey, oldest)) {
+        evictionCount.incrementAndGet();
+      }
+    }
+  }
+}
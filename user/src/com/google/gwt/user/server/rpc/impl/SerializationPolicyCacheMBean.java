@@ -0,0 +1,65 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc.impl;
+
+/**
+ * For internal use only. The JMX management interface of a
+ * {@link SerializationPolicyCache}.
+ */
+public interface SerializationPolicyCacheMBean {
+
+  /**
+   * Discards all cached policies.
+   */
+  void clear();
+
+  /**
+   * Returns the number of entries removed to keep the cache within its size
+   * limit.
+   */
+  long getEvictionCount();
+
+  /**
+   * Returns the number of lookups that found a live entry, including entries
+   * for missing policies.
+   */
+  long getHitCount();
+
+  /**
+   * Returns the number of policies loaded, whether or not they were found.
+   */
+  long getLoadCount();
+
+  /**
+   * Returns the number of loads that did not find a policy.
+   */
+  long getMissingPolicyCount();
+
+  /**
+   * Returns the number of lookups that had to load a policy.
+   */
+  long getMissCount();
+
+  /**
+   * Returns the number of policies currently cached.
+   */
+  int getSize();
+
+  /**
+   * Returns the total time spent loading policies, in milliseconds.
+   */
+  long getTotalLoadTimeMillis();
+}
@@ -35,10 +35,8 @@ import java.lang.reflect.Field;
 import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.LinkedList;
@@ -60,6 +58,22 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
    */
   private static final Pattern ALLOWED_STRONG_NAME = Pattern.compile("[a-zA-Z0-9_]+");
 
+  /**
+   * The most digits {@link #parseDecimal(int, int)} accepts; any such number
+   * fits in a long.
+   */
+  private static final int MAX_DECIMAL_DIGITS = 18;
+
+  /**
+   * The largest magnitude up to which every integer is exactly a double.
+   */
+  private static final long MAX_EXACT_DOUBLE = 1L << 53;
+
+  /**
+   * Returned by {@link #parseDecimal(int, int)} for tokens it does not handle.
+   */
+  private static final long NOT_DECIMAL = Long.MIN_VALUE;
+
   /**
    * Used to accumulate elements while deserializing array types. The generic
    * type of the BoundedList will vary from the component type of the array it
@@ -380,9 +394,21 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
 
   private String[] stringTable;
 
-  private final ArrayList<String> tokenList = new ArrayList<String>();
+  /**
+   * The request being read. Tokens are parsed straight out of it rather than
+   * first being split into a String each.
+   */
+  private String encodedTokens;
 
-  private int tokenListIndex;
+  /**
+   * The number of tokens in {@link #encodedTokens}, or -1 if not yet counted.
+   */
+  private int tokenCount;
+
+  /**
+   * The offset of the next token in {@link #encodedTokens}.
+   */
+  private int tokenStart;
 
   {
     CLASS_TO_VECTOR_READER.put(boolean[].class, VectorReader.BOOLEAN_VECTOR);
@@ -436,7 +462,16 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
   }
 
   public int getNumberOfTokens() {
-    return tokenList.size();
+    if (tokenCount < 0) {
+      int count = 0;
+      int idx = 0;
+      while (-1 != (idx = encodedTokens.indexOf(RPC_SEPARATOR_CHAR, idx))) {
+        ++count;
+        ++idx;
+      }
+      tokenCount = count;
+    }
+    return tokenCount;
   }
 
   public SerializationPolicy getSerializationPolicy() {
@@ -445,20 +480,16 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
 
   @Override
   public void prepareToRead(String encodedTokens) throws SerializationException {
-    tokenList.clear();
-    tokenListIndex = 0;
+    this.encodedTokens = encodedTokens;
+    tokenCount = -1;
+    tokenStart = 0;
     stringTable = null;
 
-    int idx = 0, nextIdx;
-    while (-1 != (nextIdx = encodedTokens.indexOf(RPC_SEPARATOR_CHAR, idx))) {
-      String current = encodedTokens.substring(idx, nextIdx);
-      tokenList.add(current);
-      idx = nextIdx + 1;
-    }
-    if (idx == 0) {
+    if (encodedTokens.indexOf(RPC_SEPARATOR_CHAR) == -1) {
       // Didn't find any separator, assume an older version with different
       // separators and get the version as the sequence of digits at the
       // beginning of the encoded string.
+      int idx = 0;
       while (idx < encodedTokens.length() && Character.isDigit(encodedTokens.charAt(idx))) {
         ++idx;
       }
@@ -513,12 +544,20 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
 
   @Override
   public boolean readBoolean() throws SerializationException {
-    return !extract().equals("0");
+    int start = tokenStart;
+    int end = nextToken();
+    return end - start != 1 || encodedTokens.charAt(start) != '0';
   }
 
   @Override
   public byte readByte() throws SerializationException {
-    String value = extract();
+    int start = tokenStart;
+    int end = nextToken();
+    long decimal = parseDecimal(start, end);
+    if (decimal >= Byte.MIN_VALUE && decimal <= Byte.MAX_VALUE) {
+      return (byte) decimal;
+    }
+    String value = encodedTokens.substring(start, end);
     try {
       return Byte.parseByte(value);
     } catch (NumberFormatException e) {
@@ -534,17 +573,32 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
 
   @Override
   public double readDouble() throws SerializationException {
-    return Double.parseDouble(extract());
+    int start = tokenStart;
+    int end = nextToken();
+    long decimal = parseDecimal(start, end);
+    if (decimal != NOT_DECIMAL && Math.abs(decimal) <= MAX_EXACT_DOUBLE) {
+      if (decimal == 0 && encodedTokens.charAt(start) == '-') {
+        return -0.0;
+      }
+      return decimal;
+    }
+    return Double.parseDouble(encodedTokens.substring(start, end));
   }
 
   @Override
   public float readFloat() throws SerializationException {
-    return (float) Double.parseDouble(extract());
+    return (float) readDouble();
   }
 
   @Override
   public int readInt() throws SerializationException {
-    String value = extract();
+    int start = tokenStart;
+    int end = nextToken();
+    long decimal = parseDecimal(start, end);
+    if (decimal >= Integer.MIN_VALUE && decimal <= Integer.MAX_VALUE) {
+      return (int) decimal;
+    }
+    String value = encodedTokens.substring(start, end);
     try {
       return Integer.parseInt(value);
     } catch (NumberFormatException e) {
@@ -557,7 +611,9 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
     if (getVersion() == SERIALIZATION_STREAM_MIN_VERSION) {
       return (long) readDouble() + (long) readDouble();
     } else {
-      return Base64Utils.longFromBase64(extract());
+      int start = tokenStart;
+      int end = nextToken();
+      return Base64Utils.longFromBase64(encodedTokens, start, end);
     }
   }
 
@@ -583,7 +639,13 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
 
   @Override
   public short readShort() throws SerializationException {
-    String value = extract();
+    int start = tokenStart;
+    int end = nextToken();
+    long decimal = parseDecimal(start, end);
+    if (decimal >= Short.MIN_VALUE && decimal <= Short.MAX_VALUE) {
+      return (short) decimal;
+    }
+    String value = encodedTokens.substring(start, end);
     try {
       return Short.parseShort(value);
     } catch (NumberFormatException e) {
@@ -811,7 +873,9 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
     }
 
     Field[] serializableFields = SerializabilityUtil.applyFieldSerializationPolicy(instanceClass);
-    for (Field declField : serializableFields) {
+    FieldAccessor accessor = SerializabilityUtil.getFieldAccessor(instanceClass);
+    for (int i = 0; i < serializableFields.length; i++) {
+      Field declField = serializableFields[i];
       assert (declField != null);
       if ((clientFieldNames != null) && !clientFieldNames.contains(declField.getName())) {
         continue;
@@ -832,14 +896,7 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
       if ((setters != null) && ((setter = setters.get(fieldName)) != null)) {
         setter.invoke(instance, value);
       } else {
-        boolean isAccessible = declField.isAccessible();
-        boolean needsAccessOverride = !isAccessible && !Modifier.isPublic(declField.getModifiers());
-        if (needsAccessOverride) {
-          // Override access restrictions
-          declField.setAccessible(true);
-        }
-
-        declField.set(instance, value);
+        accessor.set(instance, i, value);
       }
     }
 
@@ -977,11 +1034,53 @@ public final class ServerSerializationStreamReader extends AbstractSerialization
   }
 
   private String extract() throws SerializationException {
-    try {
-      return tokenList.get(tokenListIndex++);
-    } catch (IndexOutOfBoundsException e) {
-      throw new SerializationException("Too few tokens in RPC request", e);
+    int start = tokenStart;
+    int end = nextToken();
+    return encodedTokens.substring(start, end);
+  }
+
+  /**
+   * Consumes the next token.
+   * 
+   * @return the offset just past the end of the token, whose first character
+   *         is at the value {@link #tokenStart} had before the call
+   */
+  private int nextToken() throws SerializationException {
+    int end = encodedTokens.indexOf(RPC_SEPARATOR_CHAR, tokenStart);
+    if (end == -1) {
+      throw new SerializationException("Too few tokens in RPC request");
+    }
+    tokenStart = end + 1;
+    return end;
+  }
+
+  /**
+   * Parses a token that is an optional minus sign followed by at most
+   * {@link #MAX_DECIMAL_DIGITS} digits, which covers nearly every number the
+   * client sends, without creating a String for it.
+   * 
+   * @return the value, or {@link #NOT_DECIMAL} if the token has any other form,
+   *         in which case callers fall back to the JDK parsers so that their
+   *         results and errors are unchanged
+   */
+  private long parseDecimal(int start, int end) {
+    int pos = start;
+    boolean negative = pos < end && encodedTokens.charAt(pos) == '-';
+    if (negative) {
+      ++pos;
+    }
+    if (pos == end || end - pos > MAX_DECIMAL_DIGITS) {
+      return NOT_DECIMAL;
+    }
+    long value = 0;
+    for (; pos < end; ++pos) {
+      int digit = encodedTokens.charAt(pos) - '0';
+      if (digit < 0 || digit > 9) {
+        return NOT_DECIMAL;
+      }
+      value = value * 10 + digit;
     }
+    return negative ? -value : value;
   }
 
   /**
@@ -24,10 +24,11 @@ import com.google.gwt.user.server.rpc.SerializationPolicy;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.IdentityHashMap;
 import java.util.List;
@@ -100,6 +101,58 @@ public final class ServerSerializationStreamWriter extends
     }
   }
 
+  /**
+   * Writes the same text as {@link LengthConstrainedArray} straight to a
+   * {@link Writer}.
+   */
+  private static class StreamingArray {
+    private int count = 0;
+    private boolean needsComma = false;
+    private final Writer out;
+    private int total = 0;
+
+    StreamingArray(Writer out) throws IOException {
+      this.out = out;
+      out.write('[');
+    }
+
+    void addToken(String token) throws IOException {
+      beginToken();
+      out.write(String.valueOf(token));
+    }
+
+    /**
+     * Writes whatever must come before the next token, which the caller then
+     * writes itself.
+     */
+    void beginToken() throws IOException {
+      total++;
+      if (count++ == LengthConstrainedArray.MAXIMUM_ARRAY_LENGTH) {
+        if (total == LengthConstrainedArray.MAXIMUM_ARRAY_LENGTH + 1) {
+          out.write(LengthConstrainedArray.PRELUDE);
+        } else {
+          out.write("],[");
+        }
+        count = 0;
+        needsComma = false;
+      }
+
+      if (needsComma) {
+        out.write(',');
+      } else {
+        needsComma = true;
+      }
+    }
+
+    void close() throws IOException {
+      if (total > LengthConstrainedArray.MAXIMUM_ARRAY_LENGTH) {
+        out.write(LengthConstrainedArray.POSTLUDE);
+      } else {
+        out.write(']');
+      }
+    }
+  }
+
   /**
    * Enumeration used to provided typed instance writers.
    */
@@ -600,13 +653,32 @@ public final class ServerSerializationStreamWriter extends
     // Build a JavaScript string (with escaping, of course).
     // We take a guess at how big to make to buffer to avoid numerous resizes.
     //
-    int capacityGuess = 2 * tokenListCharCount + 2 * tokenList.size();
-    LengthConstrainedArray stream = new LengthConstrainedArray(capacityGuess);
+    StringWriter out = new StringWriter(getCapacityGuess());
+    try {
+      writeTo(out);
+    } catch (IOException e) {
+      throw new RuntimeException("Unexpected IOException on in-memory stream", e);
+    }
+    return out.toString();
+  }
+
+  /**
+   * Returns a guess at the length of the text produced by {@link #toString()}.
+   */
+  public int getCapacityGuess() {
+    return 2 * tokenListCharCount + 2 * tokenList.size();
+  }
+
+  /**
+   * Writes the same text as {@link #toString()} to <code>out</code>, without
+   * first building it in memory.
+   */
+  public void writeTo(Writer out) throws IOException {
+    StreamingArray stream = new StreamingArray(out);
     writePayload(stream);
-    writeStringTable(stream);
+    writeStringTable(stream, out);
     writeHeader(stream);
-
-    return stream.toString();
+    stream.close();
   }
   
   @Override
@@ -737,23 +809,17 @@ public final class ServerSerializationStreamWriter extends
     }
     
     // Write the client-visible field data
-    for (Field declField : serializableFields) {
+    FieldAccessor accessor = SerializabilityUtil.getFieldAccessor(instanceClass);
+    for (int i = 0; i < serializableFields.length; i++) {
+      Field declField = serializableFields[i];
       if ((clientFieldNames != null) && !clientFieldNames.contains(declField.getName())) {
         // Skip server-only fields
         continue;
       }
 
-      boolean isAccessible = declField.isAccessible();
-      boolean needsAccessOverride = !isAccessible
-          && !Modifier.isPublic(declField.getModifiers());
-      if (needsAccessOverride) {
-        // Override the access restrictions
-        declField.setAccessible(true);
-      }
-
       Object value;
       try {
-        value = declField.get(instance);
+        value = accessor.get(instance, i);
         serializeValue(value, declField.getType());
 
       } catch (IllegalArgumentException e) {
@@ -831,23 +897,25 @@ public final class ServerSerializationStreamWriter extends
    * Notice that the field are written in reverse order that the client can just
    * pop items out of the stream.
    */
-  private void writeHeader(LengthConstrainedArray stream) {
-    stream.addToken(getFlags());
-    stream.addToken(getVersion());
+  private void writeHeader(StreamingArray stream) throws IOException {
+    stream.addToken(String.valueOf(getFlags()));
+    stream.addToken(String.valueOf(getVersion()));
   }
 
-  private void writePayload(LengthConstrainedArray stream) {
+  private void writePayload(StreamingArray stream) throws IOException {
     ListIterator<String> tokenIterator = tokenList.listIterator(tokenList.size());
     while (tokenIterator.hasPrevious()) {
       stream.addToken(tokenIterator.previous());
     }
   }
 
-  private void writeStringTable(LengthConstrainedArray stream) {
-    LengthConstrainedArray tableStream = new LengthConstrainedArray();
+  private void writeStringTable(StreamingArray stream, Writer out) throws IOException {
+    // The table is a single token of the outer array.
+    stream.beginToken();
+    StreamingArray tableStream = new StreamingArray(out);
     for (String s : getStringTable()) {
       tableStream.addToken(escapeStringSplitNodes(s));
     }
-    stream.addToken(tableStream.toString());
+    tableStream.close();
   }
 }
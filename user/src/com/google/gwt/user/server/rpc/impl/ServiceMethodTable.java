@@ -0,0 +1,167 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc.impl;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * For internal use only. The methods of a RemoteService interface, indexed by
+ * the method name and parameter type names that an RPC request uses to name
+ * them, with everything needed to decode their parameters resolved up front.
+ */
+public final class ServiceMethodTable {
+
+  /**
+   * A service method and its parameter types.
+   */
+  public static final class ServiceMethod {
+    private final Type[] genericParameterTypes;
+    private final Method method;
+    private final Class<?>[] parameterTypes;
+    private final TypeVariable<Method>[] typeParameters;
+
+    public ServiceMethod(Method method) {
+      this.method = method;
+      this.parameterTypes = method.getParameterTypes();
+      this.genericParameterTypes = method.getGenericParameterTypes();
+      this.typeParameters = method.getTypeParameters();
+    }
+
+    /**
+     * Returns the parameterized parameter types; callers must not modify the
+     * array.
+     */
+    public Type[] getGenericParameterTypes() {
+      return genericParameterTypes;
+    }
+
+    public Method getMethod() {
+      return method;
+    }
+
+    /**
+     * Returns the raw parameter types; callers must not modify the array.
+     */
+    public Class<?>[] getParameterTypes() {
+      return parameterTypes;
+    }
+
+    /**
+     * Returns the method's own type parameters; callers must not modify the
+     * array.
+     */
+    public TypeVariable<Method>[] getTypeParameters() {
+      return typeParameters;
+    }
+  }
+
+  /**
+   * A permanent cache of tables. This is safe to do because a Class is
+   * guaranteed not to change within the lifetime of a ClassLoader (and thus,
+   * this Map).
+   */
+  private static final Map<Class<?>, ServiceMethodTable> TABLES =
+      new ConcurrentHashMap<Class<?>, ServiceMethodTable>();
+
+  /**
+   * The names that RPC requests use for primitive types.
+   */
+  private static final Map<Class<?>, String> PRIMITIVE_NAMES = new HashMap<Class<?>, String>();
+
+  static {
+    PRIMITIVE_NAMES.put(boolean.class, "Z");
+    PRIMITIVE_NAMES.put(byte.class, "B");
+    PRIMITIVE_NAMES.put(char.class, "C");
+    PRIMITIVE_NAMES.put(double.class, "D");
+    PRIMITIVE_NAMES.put(float.class, "F");
+    PRIMITIVE_NAMES.put(int.class, "I");
+    PRIMITIVE_NAMES.put(long.class, "J");
+    PRIMITIVE_NAMES.put(short.class, "S");
+  }
+
+  /**
+   * Returns the table for a service interface, building it on first use.
+   */
+  public static ServiceMethodTable get(Class<?> serviceIntf) {
+    ServiceMethodTable table = TABLES.get(serviceIntf);
+    if (table == null) {
+      // Racing threads build equivalent tables; either one may be kept.
+      table = new ServiceMethodTable(serviceIntf);
+      TABLES.put(serviceIntf, table);
+    }
+    return table;
+  }
+
+  private static void appendSignature(StringBuilder sb, String methodName,
+      String[] parameterTypeNames) {
+    sb.append(methodName).append('(');
+    for (int i = 0; i < parameterTypeNames.length; i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      sb.append(parameterTypeNames[i]);
+    }
+    sb.append(')');
+  }
+
+  private final Map<String, ServiceMethod> methods = new HashMap<String, ServiceMethod>();
+
+  private ServiceMethodTable(Class<?> serviceIntf) {
+    for (Method declared : serviceIntf.getMethods()) {
+      Class<?>[] parameterTypes = declared.getParameterTypes();
+      String[] parameterTypeNames = new String[parameterTypes.length];
+      for (int i = 0; i < parameterTypes.length; i++) {
+        String primitiveName = PRIMITIVE_NAMES.get(parameterTypes[i]);
+        parameterTypeNames[i] =
+            primitiveName != null ? primitiveName : parameterTypes[i].getName();
+      }
+
+      StringBuilder sb = new StringBuilder();
+      appendSignature(sb, declared.getName(), parameterTypeNames);
+      try {
+        // Resolve inherited duplicates exactly as Class.getMethod would.
+        Method method = serviceIntf.getMethod(declared.getName(), parameterTypes);
+        methods.put(sb.toString(), new ServiceMethod(method));
+      } catch (NoSuchMethodException e) {
+        throw new IllegalStateException("getMethods() returned a method getMethod() can't find",
+            e);
+      }
+    }
+  }
+
+  /**
+   * Returns the method with the given name and parameter types, named as in an
+   * RPC request, or <code>null</code> if there is none.
+   */
+  public ServiceMethod find(String methodName, String[] parameterTypeNames) {
+    StringBuilder sb = new StringBuilder(64);
+    appendSignature(sb, methodName, parameterTypeNames);
+    ServiceMethod serviceMethod = methods.get(sb.toString());
+
+    // Forged names containing separators could otherwise match a method with a
+    // different number of parameters.
+    if (serviceMethod == null
+        || serviceMethod.parameterTypes.length != parameterTypeNames.length) {
+      return null;
+    }
+    return serviceMethod;
+  }
+}
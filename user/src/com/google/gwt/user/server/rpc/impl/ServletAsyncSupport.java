@@ -0,0 +1,169 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc.impl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+
+/**
+ * For internal use only. Puts requests into Servlet 3.0 asynchronous mode.
+ * GWT builds against Servlet 2.5, so the Servlet 3.0 API is used
+ * reflectively; in older containers, requests are never asynchronous.
+ */
+public final class ServletAsyncSupport {
+
+  /**
+   * Hears about an asynchronous request ending. Either method may be called
+   * on any thread.
+   */
+  public interface Listener {
+    /**
+     * Called when the container ends the request, after it completed or
+     * failed.
+     */
+    void onEnd();
+
+    /**
+     * Called when the request times out. The listener should write an error
+     * response and complete the request.
+     */
+    void onTimeout();
+  }
+
+  /**
+   * <code>AsyncContext.addListener(AsyncListener)</code>,
+   * <code>AsyncContext.complete()</code>,
+   * <code>AsyncContext.setTimeout(long)</code>,
+   * <code>ServletRequest.isAsyncSupported()</code> and
+   * <code>ServletRequest.startAsync()</code>, plus the
+   * <code>AsyncListener</code> interface; <code>null</code> in containers
+   * older than Servlet 3.0.
+   */
+  private static final Method ADD_ASYNC_LISTENER;
+  private static final Class<?> ASYNC_LISTENER;
+  private static final Method COMPLETE_ASYNC;
+  private static final Method IS_ASYNC_SUPPORTED;
+  private static final Method SET_ASYNC_TIMEOUT;
+  private static final Method START_ASYNC;
+
+  static {
+    Method addListener = null;
+    Class<?> asyncListener = null;
+    Method complete = null;
+    Method isAsyncSupported = null;
+    Method setTimeout = null;
+    Method startAsync = null;
+    try {
+      isAsyncSupported = ServletRequest.class.getMethod("isAsyncSupported");
+      startAsync = ServletRequest.class.getMethod("startAsync");
+      Class<?> asyncContext = startAsync.getReturnType();
+      complete = asyncContext.getMethod("complete");
+      setTimeout = asyncContext.getMethod("setTimeout", long.class);
+      asyncListener = Class.forName("javax.servlet.AsyncListener", false,
+          asyncContext.getClassLoader());
+      addListener = asyncContext.getMethod("addListener", asyncListener);
+    } catch (ClassNotFoundException e) {
+      startAsync = null;
+    } catch (NoSuchMethodException e) {
+      startAsync = null;
+    }
+    ADD_ASYNC_LISTENER = addListener;
+    ASYNC_LISTENER = asyncListener;
+    COMPLETE_ASYNC = complete;
+    IS_ASYNC_SUPPORTED = isAsyncSupported;
+    SET_ASYNC_TIMEOUT = setTimeout;
+    START_ASYNC = startAsync;
+  }
+
+  /**
+   * Registers a listener for the end of an asynchronous request.
+   *
+   * @param asyncContext a value returned by
+   *          {@link #startAsync(ServletRequest, long)}
+   * @throws ServletException if the container fails
+   */
+  public static void addListener(Object asyncContext, final Listener listener)
+      throws ServletException {
+    Object asyncListener = Proxy.newProxyInstance(ASYNC_LISTENER.getClassLoader(),
+        new Class<?>[] {ASYNC_LISTENER}, new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if (name.equals("onTimeout")) {
+              listener.onTimeout();
+            } else if (name.equals("onError") || name.equals("onComplete")) {
+              listener.onEnd();
+            } else if (name.equals("equals")) {
+              return proxy == args[0];
+            } else if (name.equals("hashCode")) {
+              return System.identityHashCode(proxy);
+            } else if (name.equals("toString")) {
+              return "AsyncListener for " + listener;
+            }
+            return null;
+          }
+        });
+    invoke(ADD_ASYNC_LISTENER, asyncContext, asyncListener);
+  }
+
+  /**
+   * Completes an asynchronous request.
+   *
+   * @param asyncContext a value returned by
+   *          {@link #startAsync(ServletRequest, long)}
+   * @throws ServletException if the container fails
+   */
+  public static void complete(Object asyncContext) throws ServletException {
+    invoke(COMPLETE_ASYNC, asyncContext);
+  }
+
+  /**
+   * Puts a request into asynchronous mode, returning its
+   * <code>AsyncContext</code>, or <code>null</code> if the container or the
+   * servlet's configuration does not support that.
+   *
+   * @param timeoutMillis how long the request may take before the container
+   *          times it out
+   * @throws ServletException if the container fails
+   */
+  public static Object startAsync(ServletRequest request, long timeoutMillis)
+      throws ServletException {
+    if (START_ASYNC == null || !Boolean.TRUE.equals(invoke(IS_ASYNC_SUPPORTED, request))) {
+      return null;
+    }
+    Object asyncContext = invoke(START_ASYNC, request);
+    invoke(SET_ASYNC_TIMEOUT, asyncContext, timeoutMillis);
+    return asyncContext;
+  }
+
+  private static Object invoke(Method method, Object target, Object... args)
+      throws ServletException {
+    try {
+      return method.invoke(target, args);
+    } catch (IllegalAccessException e) {
+      throw new ServletException("Unable to call " + method.getName(), e);
+    } catch (InvocationTargetException e) {
+      throw new ServletException("Unable to call " + method.getName(), e.getCause());
+    }
+  }
+
+  private ServletAsyncSupport() {
+  }
+}
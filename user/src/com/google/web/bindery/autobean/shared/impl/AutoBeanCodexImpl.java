@@ -466,7 +466,7 @@ public class AutoBeanCodexImpl {
         state.sb.append("null");
         return;
       }
-      state.sb.append(((Splittable) value).getPayload());
+      StringQuoter.appendPayload(state.sb, (Splittable) value);
     }
 
     public Splittable extractSplittable(EncodeState state, Object value) {
@@ -493,7 +493,7 @@ public class AutoBeanCodexImpl {
     }
 
     public void encode(EncodeState state, Object value) {
-      state.sb.append(ValueCodex.encode(type, value).getPayload());
+      StringQuoter.appendPayload(state.sb, ValueCodex.encode(type, value));
     }
 
     public Splittable extractSplittable(EncodeState state, Object value) {
@@ -17,6 +17,7 @@ package com.google.web.bindery.autobean.shared.impl;
 
 import com.google.web.bindery.autobean.shared.Splittable;
 import com.google.web.bindery.autobean.vm.impl.JsonSplittable;
+import com.google.web.bindery.autobean.vm.impl.LazyJsonSplittable;
 
 import org.json.JSONObject;
 
@@ -34,32 +35,49 @@ public class StringQuoter {
   private static final DateFormat ISO8601 = new SimpleDateFormat(ISO8601_PATTERN, Locale
       .getDefault());
 
+  /**
+   * Chooses the JVM Splittable implementation.
+   */
+  private static final boolean LAZY_JSON = Boolean.getBoolean(LazyJsonSplittable.ENABLED_PROPERTY);
+
   private static final String RFC2822_PATTERN = "EEE, d MMM yyyy HH:mm:ss Z";
   private static final DateFormat RFC2822 = new SimpleDateFormat(RFC2822_PATTERN, Locale
       .getDefault());
 
+  /**
+   * Appends the payload of a Splittable to a buffer. This avoids building an
+   * intermediate String for Splittables that can write themselves out.
+   */
+  public static void appendPayload(StringBuilder sb, Splittable value) {
+    if (value instanceof LazyJsonSplittable) {
+      ((LazyJsonSplittable) value).appendPayload(sb);
+    } else {
+      sb.append(value.getPayload());
+    }
+  }
+
   public static Splittable create(boolean value) {
-    return JsonSplittable.create(String.valueOf(value));
+    return split(String.valueOf(value));
   }
 
   public static Splittable create(double value) {
-    return JsonSplittable.create(String.valueOf(value));
+    return split(String.valueOf(value));
   }
 
   public static Splittable create(String value) {
-    return JsonSplittable.create(quote(value));
+    return split(quote(value));
   }
 
   public static Splittable createIndexed() {
-    return JsonSplittable.createIndexed();
+    return LAZY_JSON ? LazyJsonSplittable.createIndexed() : JsonSplittable.createIndexed();
   }
 
   public static Splittable createSplittable() {
-    return JsonSplittable.create();
+    return LAZY_JSON ? LazyJsonSplittable.create() : JsonSplittable.create();
   }
 
   public static Splittable nullValue() {
-    return JsonSplittable.createNull();
+    return LAZY_JSON ? LazyJsonSplittable.createNull() : JsonSplittable.createNull();
   }
 
   /**
@@ -70,7 +88,7 @@ public class StringQuoter {
   }
 
   public static Splittable split(String payload) {
-    return JsonSplittable.create(payload);
+    return LAZY_JSON ? LazyJsonSplittable.create(payload) : JsonSplittable.create(payload);
   }
 
   /**
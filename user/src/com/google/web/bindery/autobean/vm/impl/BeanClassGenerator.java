@@ -0,0 +1,529 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.autobean.vm.impl;
+
+import com.google.gwt.dev.asm.ClassWriter;
+import com.google.gwt.dev.asm.Label;
+import com.google.gwt.dev.asm.MethodVisitor;
+import com.google.gwt.dev.asm.Opcodes;
+import com.google.gwt.dev.asm.Type;
+import com.google.gwt.user.server.GeneratedClassUtil;
+import com.google.web.bindery.autobean.vm.Configuration;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * For internal use only. Generates the shims and simple peers of
+ * {@link ProxyAutoBean} as classes that call the AutoBean and the wrapped
+ * object directly, instead of as {@link java.lang.reflect.Proxy} instances
+ * that dispatch every call by reflection.
+ *
+ * <p>
+ * The generated classes are defined in the package and class loader of the
+ * AutoBean interface. If a class cannot be generated, for instance because the
+ * interface has a method that no category implements or its class loader does
+ * not see the classes that generated code refers to, the generate methods
+ * return <code>null</code> and the caller uses a Proxy instead.
+ * </p>
+ *
+ * <p>
+ * Generation is off unless the {@value #GENERATE_PROPERTY} system property is
+ * set to <code>true</code>. The property is read whenever an AutoBean is
+ * created, and a class is only generated the first time it is needed.
+ * </p>
+ */
+public final class BeanClassGenerator {
+
+  /**
+   * A Java system property that can be set to <code>true</code> to generate
+   * classes instead of implementing all AutoBeans with
+   * {@link java.lang.reflect.Proxy}.
+   */
+  public static final String GENERATE_PROPERTY = "gwt.autobean.generateClasses";
+
+  private static final String BEAN_TYPE = Type.getInternalName(ProxyAutoBean.class);
+
+  /**
+   * Keeps apart the classes generated for one interface in different
+   * configurations.
+   */
+  private static final AtomicInteger nextId = new AtomicInteger();
+
+  private static final List<Method> OBJECT_METHODS = findObjectMethods();
+
+  private static final String SHIM_TYPE = Type.getInternalName(GeneratedShim.class);
+
+  private static final String SIMPLE_BEAN_TYPE = Type.getInternalName(GeneratedSimpleBean.class);
+
+  /**
+   * Returns <code>true</code> if {@value #GENERATE_PROPERTY} is set, so that
+   * callers can skip looking for prototypes when it is not.
+   */
+  static boolean isEnabled() {
+    return Boolean.getBoolean(GENERATE_PROPERTY);
+  }
+
+  /**
+   * Returns a prototype of a generated shim for AutoBeans of the given type, or
+   * <code>null</code> if none can be generated.
+   *
+   * @param getters the getters, in the order that
+   *          {@link GeneratedShim#__getProperty(int)} should index them
+   */
+  static GeneratedShim generateShim(Class<?> beanType, List<Method> getters,
+      Configuration configuration) {
+    Collection<Method> methods = getMethods(beanType);
+    if (methods == null) {
+      return null;
+    }
+    for (Method getter : getters) {
+      if (Modifier.isStatic(getter.getModifiers())) {
+        return null;
+      }
+    }
+
+    List<Class<?>> referenced = new ArrayList<Class<?>>();
+    referenced.add(GeneratedShim.class);
+    Method interceptor = ShimHandler.findInterceptor(configuration);
+    if (interceptor != null) {
+      if (!isCallable(beanType, interceptor, Object.class)) {
+        return null;
+      }
+      referenced.add(interceptor.getDeclaringClass());
+    }
+
+    String name = beanType.getName() + "$$GwtShim" + nextId.getAndIncrement();
+    String internalName = name.replace('.', '/');
+    ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    cw.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER,
+        internalName, null, SHIM_TYPE, new String[] {Type.getInternalName(beanType)});
+    createConstructor(cw, SHIM_TYPE);
+    createCreateMethod(cw, internalName, SHIM_TYPE);
+    for (Method method : methods) {
+      createShimMethod(cw, beanType, method, interceptor);
+    }
+    createGetPropertyMethod(cw, beanType, getters);
+    cw.visitEnd();
+    return (GeneratedShim) define(beanType, name, cw.toByteArray(), referenced);
+  }
+
+  /**
+   * Returns a prototype of a generated simple peer for AutoBeans of the given
+   * type, or <code>null</code> if none can be generated.
+   */
+  static GeneratedSimpleBean generateSimpleBean(Class<?> beanType, Configuration configuration) {
+    Collection<Method> methods = getMethods(beanType);
+    if (methods == null) {
+      return null;
+    }
+
+    List<Class<?>> referenced = new ArrayList<Class<?>>();
+    referenced.add(GeneratedSimpleBean.class);
+    String name = beanType.getName() + "$$GwtSimpleBean" + nextId.getAndIncrement();
+    String internalName = name.replace('.', '/');
+    ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    cw.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER,
+        internalName, null, SIMPLE_BEAN_TYPE, new String[] {Type.getInternalName(beanType)});
+    createConstructor(cw, SIMPLE_BEAN_TYPE);
+    createCreateMethod(cw, internalName, SIMPLE_BEAN_TYPE);
+
+    // Dispatch in the same order as SimpleBeanHandler
+    Set<String> created = new HashSet<String>();
+    for (Method method : methods) {
+      if (BeanMethod.GET.matches(method)) {
+        createGetter(cw, method);
+      } else if (BeanMethod.SET.matches(method) || BeanMethod.SET_BUILDER.matches(method)) {
+        createSetter(cw, method);
+      } else {
+        Method found = BeanMethod.findMethod(beanType, configuration, method);
+        if (found == null || !isCallable(beanType, found, method.getReturnType())) {
+          return null;
+        }
+        referenced.add(found.getDeclaringClass());
+        createCategoryCall(cw, method, found);
+      }
+      created.add(method.getName() + Type.getMethodDescriptor(method));
+    }
+    for (Method method : OBJECT_METHODS) {
+      if (created.contains(method.getName() + Type.getMethodDescriptor(method))) {
+        continue;
+      }
+      Method found = BeanMethod.findMethod(beanType, configuration, method);
+      if (found != null) {
+        if (!isCallable(beanType, found, method.getReturnType())) {
+          return null;
+        }
+        referenced.add(found.getDeclaringClass());
+        createCategoryCall(cw, method, found);
+      }
+    }
+    cw.visitEnd();
+    return (GeneratedSimpleBean) define(beanType, name, cw.toByteArray(), referenced);
+  }
+
+  /**
+   * Converts the value on the stack, of type <code>from</code>, to the type
+   * <code>to</code>, as reflection does when a method returns it.
+   */
+  private static void convert(MethodVisitor mv, Class<?> from, Class<?> to) {
+    if (from.equals(to)) {
+      return;
+    }
+    if (Void.TYPE.equals(to)) {
+      if (!Void.TYPE.equals(from)) {
+        mv.visitInsn(Type.getType(from).getSize() == 2 ? Opcodes.POP2 : Opcodes.POP);
+      }
+      return;
+    }
+    GeneratedClassUtil.box(mv, from);
+    Class<?> boxed = TypeUtils.maybeAutobox(to);
+    if (!boxed.isAssignableFrom(TypeUtils.maybeAutobox(from))) {
+      mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(boxed));
+    }
+    if (to.isPrimitive()) {
+      mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(boxed), to.getName()
+          + "Value", Type.getMethodDescriptor(Type.getType(to), new Type[0]));
+    }
+  }
+
+  /**
+   * Creates a call to a static category method that takes the AutoBean and the
+   * arguments of <code>method</code>.
+   */
+  private static void createCategoryCall(ClassWriter cw, Method method, Method found) {
+    MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, method.getName(),
+        Type.getMethodDescriptor(method), null, null);
+    mv.visitCode();
+    mv.visitVarInsn(Opcodes.ALOAD, 0);
+    mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, SIMPLE_BEAN_TYPE, "__getBean", "()L" + BEAN_TYPE
+        + ";");
+    loadArguments(mv, method.getParameterTypes());
+    mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(found.getDeclaringClass()),
+        found.getName(), Type.getMethodDescriptor(found));
+    convert(mv, found.getReturnType(), method.getReturnType());
+    returnValue(mv, method.getReturnType());
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+  }
+
+  private static void createConstructor(ClassWriter cw, String superType) {
+    String desc = "(L" + BEAN_TYPE + ";)V";
+    MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", desc, null, null);
+    mv.visitCode();
+    mv.visitVarInsn(Opcodes.ALOAD, 0);
+    mv.visitVarInsn(Opcodes.ALOAD, 1);
+    mv.visitMethodInsn(Opcodes.INVOKESPECIAL, superType, "<init>", desc);
+    mv.visitInsn(Opcodes.RETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+  }
+
+  /**
+   * Creates <code>__create(ProxyAutoBean bean)</code>, which calls the
+   * constructor.
+   */
+  private static void createCreateMethod(ClassWriter cw, String internalName, String superType) {
+    MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PROTECTED, "__create", "(L" + BEAN_TYPE
+        + ";)L" + superType + ";", null, null);
+    mv.visitCode();
+    mv.visitTypeInsn(Opcodes.NEW, internalName);
+    mv.visitInsn(Opcodes.DUP);
+    mv.visitVarInsn(Opcodes.ALOAD, 1);
+    mv.visitMethodInsn(Opcodes.INVOKESPECIAL, internalName, "<init>", "(L" + BEAN_TYPE + ";)V");
+    mv.visitInsn(Opcodes.ARETURN);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+  }
+
+  /**
+   * Creates <code>__getProperty(int index)</code>, which calls the getter at
+   * <code>index</code> on the shim itself.
+   */
+  private static void createGetPropertyMethod(ClassWriter cw, Class<?> beanType,
+      List<Method> getters) {
+    MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "__getProperty",
+        "(I)Ljava/lang/Object;", null, null);
+    mv.visitCode();
+
+    Label dflt = new Label();
+    if (!getters.isEmpty()) {
+      Label[] labels = new Label[getters.size()];
+      for (int i = 0; i < labels.length; i++) {
+        labels[i] = new Label();
+      }
+      mv.visitVarInsn(Opcodes.ILOAD, 1);
+      mv.visitTableSwitchInsn(0, labels.length - 1, dflt, labels);
+      String owner = Type.getInternalName(beanType);
+      for (int i = 0; i < labels.length; i++) {
+        Method getter = getters.get(i);
+        mv.visitLabel(labels[i]);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, owner, getter.getName(),
+            Type.getMethodDescriptor(getter));
+        GeneratedClassUtil.box(mv, getter.getReturnType());
+        mv.visitInsn(Opcodes.ARETURN);
+      }
+    }
+
+    mv.visitLabel(dflt);
+    mv.visitTypeInsn(Opcodes.NEW, "java/lang/IndexOutOfBoundsException");
+    mv.visitInsn(Opcodes.DUP);
+    mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/IndexOutOfBoundsException", "<init>",
+        "()V");
+    mv.visitInsn(Opcodes.ATHROW);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+  }
+
+  /**
+   * Creates a getter of a simple peer, which behaves as
+   * {@link BeanMethod#GET}.
+   */
+  private static void createGetter(ClassWriter cw, Method method) {
+    Class<?> returnType = method.getReturnType();
+    MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, method.getName(),
+        Type.getMethodDescriptor(method), null, null);
+    mv.visitCode();
+    mv.visitVarInsn(Opcodes.ALOAD, 0);
+    mv.visitLdcInsn(BeanMethod.GET.inferName(method));
+    mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, SIMPLE_BEAN_TYPE, "__getOrReify",
+        "(Ljava/lang/String;)Ljava/lang/Object;");
+    if (returnType.isPrimitive()) {
+      // Unset primitive properties have the default value
+      Label notNull = new Label();
+      mv.visitInsn(Opcodes.DUP);
+      mv.visitJumpInsn(Opcodes.IFNONNULL, notNull);
+      mv.visitInsn(Opcodes.POP);
+      pushDefaultValue(mv, returnType);
+      returnValue(mv, returnType);
+      mv.visitLabel(notNull);
+    }
+    convert(mv, Object.class, returnType);
+    returnValue(mv, returnType);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+  }
+
+  /**
+   * Creates a setter of a simple peer, which behaves as {@link BeanMethod#SET}
+   * or {@link BeanMethod#SET_BUILDER}.
+   */
+  private static void createSetter(ClassWriter cw, Method method) {
+    Class<?> param = method.getParameterTypes()[0];
+    Class<?> returnType = method.getReturnType();
+    MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, method.getName(),
+        Type.getMethodDescriptor(method), null, null);
+    mv.visitCode();
+    mv.visitVarInsn(Opcodes.ALOAD, 0);
+    mv.visitLdcInsn(BeanMethod.SET.inferName(method));
+    mv.visitVarInsn(Type.getType(param).getOpcode(Opcodes.ILOAD), 1);
+    GeneratedClassUtil.box(mv, param);
+    mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, SIMPLE_BEAN_TYPE, "__setProperty",
+        "(Ljava/lang/String;Ljava/lang/Object;)V");
+    if (!Void.TYPE.equals(returnType)) {
+      mv.visitVarInsn(Opcodes.ALOAD, 0);
+      mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, SIMPLE_BEAN_TYPE, "__as", "()Ljava/lang/Object;");
+      convert(mv, Object.class, returnType);
+    }
+    returnValue(mv, returnType);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+  }
+
+  /**
+   * Creates a shim method, which calls the wrapped object and treats the value
+   * it returns as {@link ShimHandler} does.
+   */
+  private static void createShimMethod(ClassWriter cw, Class<?> beanType, Method method,
+      Method interceptor) {
+    String owner = Type.getInternalName(beanType);
+    String desc = Type.getMethodDescriptor(method);
+    Class<?> returnType = method.getReturnType();
+    MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, method.getName(), desc, null, null);
+    mv.visitCode();
+    mv.visitVarInsn(Opcodes.ALOAD, 0);
+    mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, SHIM_TYPE, "__getWrapped", "()Ljava/lang/Object;");
+    mv.visitTypeInsn(Opcodes.CHECKCAST, owner);
+    int local = loadArguments(mv, method.getParameterTypes());
+    mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, owner, method.getName(), desc);
+
+    boolean wrap =
+        !returnType.isPrimitive() && !Object.class.equals(returnType)
+            && !TypeUtils.isValueType(returnType);
+    if (wrap || interceptor != null) {
+      if (Void.TYPE.equals(returnType)) {
+        mv.visitInsn(Opcodes.ACONST_NULL);
+      } else {
+        GeneratedClassUtil.box(mv, returnType);
+      }
+      if (wrap) {
+        mv.visitVarInsn(Opcodes.ASTORE, local);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitLdcInsn(Type.getType(returnType));
+        mv.visitVarInsn(Opcodes.ALOAD, local);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, SHIM_TYPE, "__wrap",
+            "(Ljava/lang/Class;Ljava/lang/Object;)Ljava/lang/Object;");
+      }
+      Class<?> valueType = Object.class;
+      if (interceptor != null) {
+        mv.visitVarInsn(Opcodes.ASTORE, local);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, SHIM_TYPE, "__getBean", "()L" + BEAN_TYPE + ";");
+        mv.visitVarInsn(Opcodes.ALOAD, local);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC,
+            Type.getInternalName(interceptor.getDeclaringClass()), interceptor.getName(),
+            Type.getMethodDescriptor(interceptor));
+        valueType = interceptor.getReturnType();
+      }
+      convert(mv, valueType, returnType);
+    }
+    returnValue(mv, returnType);
+    mv.visitMaxs(0, 0);
+    mv.visitEnd();
+  }
+
+  /**
+   * Defines a generated class and returns an instance of it that is not bound
+   * to any AutoBean, or <code>null</code> if it cannot be defined.
+   *
+   * @param referenced the classes that the generated class refers to and must
+   *          see as they are seen here
+   */
+  private static Object define(Class<?> beanType, String name, byte[] bytes,
+      List<Class<?>> referenced) {
+    ClassLoader loader = beanType.getClassLoader();
+    try {
+      for (Class<?> clazz : referenced) {
+        if (Class.forName(clazz.getName(), false, loader) != clazz) {
+          return null;
+        }
+      }
+      Class<?> clazz = GeneratedClassUtil.defineClass(beanType, name, bytes);
+      if (clazz == null) {
+        return null;
+      }
+      return clazz.getConstructor(ProxyAutoBean.class).newInstance(new Object[] {null});
+    } catch (Exception e) {
+      // Unusual class loaders and security managers; use a Proxy instead.
+      return null;
+    } catch (LinkageError e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the methods of Object that a Proxy dispatches to its handler.
+   */
+  private static List<Method> findObjectMethods() {
+    try {
+      return Arrays.asList(Object.class.getMethod("equals", Object.class), Object.class
+          .getMethod("hashCode"), Object.class.getMethod("toString"));
+    } catch (NoSuchMethodException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Returns the methods that a Proxy for the interface would dispatch, one per
+   * signature, or <code>null</code> if no class can be generated for it.
+   */
+  private static Collection<Method> getMethods(Class<?> beanType) {
+    if (!isEnabled() || !beanType.isInterface()
+        || beanType.getClassLoader() == null) {
+      return null;
+    }
+    Map<String, Method> toReturn = new LinkedHashMap<String, Method>();
+    for (Method method : beanType.getMethods()) {
+      if (Modifier.isStatic(method.getModifiers())) {
+        continue;
+      }
+      if (!GeneratedClassUtil.isAccessible(beanType, method.getReturnType())) {
+        return null;
+      }
+      for (Class<?> param : method.getParameterTypes()) {
+        if (!GeneratedClassUtil.isAccessible(beanType, param)) {
+          return null;
+        }
+      }
+      String key = method.getName() + Type.getMethodDescriptor(method);
+      if (!toReturn.containsKey(key)) {
+        toReturn.put(key, method);
+      }
+    }
+    return toReturn.values();
+  }
+
+  /**
+   * Returns <code>true</code> if a class generated for <code>beanType</code>
+   * can call the static method <code>found</code> and convert the value it
+   * returns to <code>returnType</code>.
+   */
+  private static boolean isCallable(Class<?> beanType, Method found, Class<?> returnType) {
+    if (!Modifier.isStatic(found.getModifiers())
+        || !GeneratedClassUtil.isAccessible(beanType, found.getDeclaringClass())
+        || !GeneratedClassUtil.isAccessible(beanType, found.getReturnType())) {
+      return false;
+    }
+    return Void.TYPE.equals(returnType) || !Void.TYPE.equals(found.getReturnType());
+  }
+
+  /**
+   * Loads the arguments of a method and returns the first free local
+   * variable.
+   */
+  private static int loadArguments(MethodVisitor mv, Class<?>[] params) {
+    int local = 1;
+    for (Class<?> param : params) {
+      Type type = Type.getType(param);
+      mv.visitVarInsn(type.getOpcode(Opcodes.ILOAD), local);
+      local += type.getSize();
+    }
+    return local;
+  }
+
+  private static void pushDefaultValue(MethodVisitor mv, Class<?> type) {
+    if (long.class.equals(type)) {
+      mv.visitInsn(Opcodes.LCONST_0);
+    } else if (float.class.equals(type)) {
+      mv.visitInsn(Opcodes.FCONST_0);
+    } else if (double.class.equals(type)) {
+      mv.visitInsn(Opcodes.DCONST_0);
+    } else {
+      mv.visitInsn(Opcodes.ICONST_0);
+    }
+  }
+
+  private static void returnValue(MethodVisitor mv, Class<?> type) {
+    if (Void.TYPE.equals(type)) {
+      mv.visitInsn(Opcodes.RETURN);
+    } else {
+      mv.visitInsn(Type.getType(type).getOpcode(Opcodes.IRETURN));
+    }
+  }
+
+  private BeanClassGenerator() {
+  }
+}
@@ -17,6 +17,7 @@ package com.google.web.bindery.autobean.vm.impl;
 
 import com.google.web.bindery.autobean.shared.AutoBean;
 import com.google.web.bindery.autobean.shared.AutoBean.PropertyName;
+import com.google.web.bindery.autobean.vm.Configuration;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
@@ -174,13 +175,21 @@ public enum BeanMethod {
   private static final Object[] EMPTY_OBJECT = new Object[0];
 
   static Method findMethod(SimpleBeanHandler<?> handler, Method method) {
+    ProxyAutoBean<?> bean = handler.getBean();
+    return findMethod(bean.getType(), bean.getConfiguration(), method);
+  }
+
+  /**
+   * Finds the category method that implements <code>method</code> for
+   * AutoBeans of the given type.
+   */
+  static Method findMethod(Class<?> autoBeanType, Configuration configuration, Method method) {
     Class<?>[] declaredParams = method.getParameterTypes();
     Class<?>[] searchParams = new Class<?>[declaredParams.length + 1];
     searchParams[0] = AutoBean.class;
     System.arraycopy(declaredParams, 0, searchParams, 1, declaredParams.length);
-    Class<?> autoBeanType = handler.getBean().getType();
 
-    for (Class<?> clazz : handler.getBean().getConfiguration().getCategories()) {
+    for (Class<?> clazz : configuration.getCategories()) {
       try {
         Method found = clazz.getMethod(method.getName(), searchParams);
         if (!Modifier.isStatic(found.getModifiers())) {
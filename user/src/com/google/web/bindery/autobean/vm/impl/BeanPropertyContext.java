@@ -25,10 +25,10 @@ class BeanPropertyContext extends MethodPropertyContext {
   private final ProxyAutoBean<?> bean;
   private final String propertyName;
 
-  public BeanPropertyContext(ProxyAutoBean<?> bean, Method getter) {
+  public BeanPropertyContext(ProxyAutoBean<?> bean, Method getter, String propertyName) {
     super(getter);
     this.bean = bean;
-    propertyName = BeanMethod.GET.inferName(getter);
+    this.propertyName = propertyName;
   }
 
   @Override
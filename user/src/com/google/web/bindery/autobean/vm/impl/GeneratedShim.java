@@ -0,0 +1,75 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.autobean.vm.impl;
+
+/**
+ * For internal use only. The superclass of the shims that
+ * {@link BeanClassGenerator} generates to take the place of {@link ShimHandler}
+ * proxies. The methods used by generated code start with two underscores so
+ * that they cannot clash with the methods of the AutoBean interface.
+ */
+public abstract class GeneratedShim {
+  private final ProxyAutoBean<?> bean;
+
+  protected GeneratedShim(ProxyAutoBean<?> bean) {
+    this.bean = bean;
+  }
+
+  @Override
+  public boolean equals(Object couldBeShim) {
+    if (couldBeShim == null) {
+      return false;
+    }
+    // Handles the foo.equals(foo) case
+    if (couldBeShim == this) {
+      return true;
+    }
+    return bean.getWrapped().equals(couldBeShim);
+  }
+
+  @Override
+  public int hashCode() {
+    return bean.getWrapped().hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return bean.getWrapped().toString();
+  }
+
+  /**
+   * Calls the getter at the given index in the list of getters that
+   * {@link ProxyAutoBean} traverses and returns its value, boxed if need be.
+   */
+  public abstract Object __getProperty(int index);
+
+  /**
+   * Creates a shim of the same class for another AutoBean.
+   */
+  protected abstract GeneratedShim __create(ProxyAutoBean<?> bean);
+
+  protected final ProxyAutoBean<?> __getBean() {
+    return bean;
+  }
+
+  protected final Object __getWrapped() {
+    return bean.getWrapped();
+  }
+
+  protected final Object __wrap(Class<?> intf, Object toReturn) {
+    return ShimHandler.maybeWrap(bean, intf, toReturn);
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.autobean.vm.impl;
+
+/**
+ * For internal use only. The superclass of the simple peers that
+ * {@link BeanClassGenerator} generates to take the place of
+ * {@link SimpleBeanHandler} proxies. The methods used by generated code start
+ * with two underscores so that they cannot clash with the methods of the
+ * AutoBean interface.
+ */
+public abstract class GeneratedSimpleBean {
+  private final ProxyAutoBean<?> bean;
+
+  protected GeneratedSimpleBean(ProxyAutoBean<?> bean) {
+    this.bean = bean;
+  }
+
+  /**
+   * For debugging use only.
+   */
+  @Override
+  public String toString() {
+    return bean.getSplittable().getPayload();
+  }
+
+  protected final Object __as() {
+    return bean.as();
+  }
+
+  /**
+   * Creates a simple peer of the same class for another AutoBean.
+   */
+  protected abstract GeneratedSimpleBean __create(ProxyAutoBean<?> bean);
+
+  protected final ProxyAutoBean<?> __getBean() {
+    return bean;
+  }
+
+  protected final Object __getOrReify(String propertyName) {
+    return bean.<Object> getOrReify(propertyName);
+  }
+
+  protected final void __setProperty(String propertyName, Object value) {
+    bean.setProperty(propertyName, value);
+  }
+}
@@ -0,0 +1,644 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.autobean.vm.impl;
+
+import com.google.web.bindery.autobean.shared.Splittable;
+import com.google.web.bindery.autobean.shared.impl.HasSplittable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Slices request payloads without building a tree of org.json objects. Each
+ * keyed or indexed value only locates its children in the payload the first
+ * time one of them is asked for, and a value that has not been taken apart is
+ * written out by copying its slice of the payload rather than by encoding it
+ * again.
+ *
+ * @see #ENABLED_PROPERTY
+ */
+public class LazyJsonSplittable implements Splittable, HasSplittable {
+
+  /**
+   * A Java system property that, if set to <code>true</code>, makes
+   * AutoBeanCodex use this implementation instead of {@link JsonSplittable}
+   * in the JVM.
+   */
+  public static final String ENABLED_PROPERTY = "gwt.autobean.lazyJson";
+
+  private enum Kind {
+    BOOLEAN, INDEXED, KEYED, NULL, NUMBER, STRING
+  }
+
+  public static LazyJsonSplittable create() {
+    LazyJsonSplittable toReturn = new LazyJsonSplittable(Kind.KEYED, null, 0, 0);
+    toReturn.properties = new LinkedHashMap<String, LazyJsonSplittable>();
+    return toReturn;
+  }
+
+  public static Splittable create(String payload) {
+    int start = skipWhitespace(payload, 0);
+    int end = payload.length();
+    while (end > start && Character.isWhitespace(payload.charAt(end - 1))) {
+      end--;
+    }
+    if (start == end) {
+      throw new RuntimeException("Could not parse empty payload");
+    }
+    LazyJsonSplittable toReturn = newValue(payload, start, end);
+    if (toReturn == null) {
+      return null;
+    }
+    // Fail now, as JsonSplittable would, rather than on first use
+    if (toReturn.kind == Kind.NUMBER) {
+      toReturn.asNumber();
+    } else if (toReturn.kind == Kind.STRING && skipValue(payload, start, end) != end) {
+      throw parseError(payload, start);
+    }
+    return toReturn;
+  }
+
+  public static Splittable createIndexed() {
+    LazyJsonSplittable toReturn = new LazyJsonSplittable(Kind.INDEXED, null, 0, 0);
+    toReturn.elements = new ArrayList<LazyJsonSplittable>();
+    return toReturn;
+  }
+
+  public static Splittable createNull() {
+    return new LazyJsonSplittable(Kind.NULL, null, 0, 0);
+  }
+
+  /**
+   * Appends a quoted JSON string, escaped the same way as
+   * org.json.JSONObject.quote.
+   */
+  static void appendQuoted(StringBuilder sb, String raw) {
+    sb.append('"');
+    char c = 0;
+    for (int i = 0, j = raw.length(); i < j; i++) {
+      char b = c;
+      c = raw.charAt(i);
+      switch (c) {
+        case '\\':
+        case '"':
+          sb.append('\\').append(c);
+          break;
+        case '/':
+          if (b == '<') {
+            sb.append('\\');
+          }
+          sb.append(c);
+          break;
+        case '\b':
+          sb.append("\\b");
+          break;
+        case '\t':
+          sb.append("\\t");
+          break;
+        case '\n':
+          sb.append("\\n");
+          break;
+        case '\f':
+          sb.append("\\f");
+          break;
+        case '\r':
+          sb.append("\\r");
+          break;
+        default:
+          if (c < ' ' || (c >= 0x80 && c < 0xa0) || (c >= 0x2000 && c < 0x2100)) {
+            String hex = Integer.toHexString(c);
+            sb.append("\\u");
+            for (int k = hex.length(); k < 4; k++) {
+              sb.append('0');
+            }
+            sb.append(hex);
+          } else {
+            sb.append(c);
+          }
+      }
+    }
+    sb.append('"');
+  }
+
+  /**
+   * Formats a number the same way as org.json.JSONObject.numberToString.
+   */
+  private static void appendNumber(StringBuilder sb, double number) {
+    String s = Double.toString(number);
+    if (s.indexOf('.') > 0 && s.indexOf('e') < 0 && s.indexOf('E') < 0) {
+      int end = s.length();
+      while (s.charAt(end - 1) == '0') {
+        end--;
+      }
+      if (s.charAt(end - 1) == '.') {
+        end--;
+      }
+      sb.append(s, 0, end);
+    } else {
+      sb.append(s);
+    }
+  }
+
+  private static RuntimeException parseError(String source, int pos) {
+    return new RuntimeException("Could not parse payload at position " + pos + ": "
+        + source.substring(Math.max(0, pos - 20), Math.min(source.length(), pos + 20)));
+  }
+
+  /**
+   * Decodes the quoted string that starts at <code>pos</code>.
+   */
+  private static String decodeString(String source, int pos, int end) {
+    StringBuilder sb = null;
+    int runStart = pos + 1;
+    for (int i = pos + 1; i < end; i++) {
+      char c = source.charAt(i);
+      if (c == '"') {
+        if (sb == null) {
+          return source.substring(runStart, i);
+        }
+        sb.append(source, runStart, i);
+        return sb.toString();
+      }
+      if (c == '\\') {
+        if (sb == null) {
+          sb = new StringBuilder();
+        }
+        sb.append(source, runStart, i);
+        if (++i >= end) {
+          break;
+        }
+        c = source.charAt(i);
+        switch (c) {
+          case 'b':
+            sb.append('\b');
+            break;
+          case 'f':
+            sb.append('\f');
+            break;
+          case 'n':
+            sb.append('\n');
+            break;
+          case 'r':
+            sb.append('\r');
+            break;
+          case 't':
+            sb.append('\t');
+            break;
+          case 'u':
+            if (i + 4 >= end) {
+              throw parseError(source, i);
+            }
+            try {
+              sb.append((char) Integer.parseInt(source.substring(i + 1, i + 5), 16));
+            } catch (NumberFormatException e) {
+              throw parseError(source, i);
+            }
+            i += 4;
+            break;
+          default:
+            sb.append(c);
+        }
+        runStart = i + 1;
+      }
+    }
+    throw parseError(source, pos);
+  }
+
+  /**
+   * Creates the value that occupies <code>[start, end)</code> of the source,
+   * or returns <code>null</code> for a JSON null.
+   */
+  private static LazyJsonSplittable newValue(String source, int start, int end) {
+    Kind kind;
+    switch (source.charAt(start)) {
+      case '{':
+        kind = Kind.KEYED;
+        break;
+      case '[':
+        kind = Kind.INDEXED;
+        break;
+      case '"':
+        kind = Kind.STRING;
+        break;
+      case 't':
+      case 'f':
+        kind = Kind.BOOLEAN;
+        break;
+      case 'n':
+        if (!source.regionMatches(start, "null", 0, end - start) || end - start != 4) {
+          throw parseError(source, start);
+        }
+        return null;
+      default:
+        kind = Kind.NUMBER;
+    }
+    LazyJsonSplittable toReturn = new LazyJsonSplittable(kind, source, start, end);
+    if (kind == Kind.BOOLEAN) {
+      if (source.regionMatches(start, "true", 0, 4) && end - start == 4) {
+        toReturn.bool = true;
+      } else if (!source.regionMatches(start, "false", 0, 5) || end - start != 5) {
+        throw parseError(source, start);
+      }
+    }
+    return toReturn;
+  }
+
+  private static int skipWhitespace(String source, int pos) {
+    while (pos < source.length() && Character.isWhitespace(source.charAt(pos))) {
+      pos++;
+    }
+    return pos;
+  }
+
+  /**
+   * Returns the position just past the value that starts at <code>pos</code>.
+   */
+  private static int skipValue(String source, int pos, int limit) {
+    char c = source.charAt(pos);
+    if (c == '"') {
+      for (int i = pos + 1; i < limit; i++) {
+        c = source.charAt(i);
+        if (c == '\\') {
+          i++;
+        } else if (c == '"') {
+          return i + 1;
+        }
+      }
+      throw parseError(source, pos);
+    }
+
+    if (c == '{' || c == '[') {
+      int depth = 0;
+      for (int i = pos; i < limit; i++) {
+        c = source.charAt(i);
+        if (c == '"') {
+          i = skipValue(source, i, limit) - 1;
+        } else if (c == '{' || c == '[') {
+          depth++;
+        } else if (c == '}' || c == ']') {
+          if (--depth == 0) {
+            return i + 1;
+          }
+        }
+      }
+      throw parseError(source, pos);
+    }
+
+    int i = pos;
+    while (i < limit) {
+      c = source.charAt(i);
+      if (c == ',' || c == ']' || c == '}' || c == ':' || Character.isWhitespace(c)) {
+        break;
+      }
+      i++;
+    }
+    if (i == pos) {
+      throw parseError(source, pos);
+    }
+    return i;
+  }
+
+  private boolean bool;
+  /**
+   * The values of an indexed value, once they have been located. JSON nulls
+   * are stored as <code>null</code>.
+   */
+  private List<LazyJsonSplittable> elements;
+  private final int end;
+  private final Kind kind;
+  private double number;
+  private boolean numberParsed;
+  /**
+   * The properties of a keyed value, once they have been located.
+   */
+  private Map<String, LazyJsonSplittable> properties;
+  private Map<String, Object> reified;
+  /**
+   * The payload this value was sliced from, or <code>null</code> if it was
+   * created empty.
+   */
+  private final String source;
+  private final int start;
+  private String string;
+
+  private LazyJsonSplittable(Kind kind, String source, int start, int end) {
+    this.kind = kind;
+    this.source = source;
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * Appends the payload of this value to a buffer, producing the same text as
+   * {@link #getPayload()}.
+   */
+  public void appendPayload(StringBuilder sb) {
+    switch (kind) {
+      case NULL:
+        sb.append("null");
+        break;
+      case NUMBER:
+        sb.append(asNumber());
+        break;
+      default:
+        write(sb);
+    }
+  }
+
+  public boolean asBoolean() {
+    return bool;
+  }
+
+  public synchronized double asNumber() {
+    if (kind != Kind.NUMBER) {
+      return 0;
+    }
+    if (!numberParsed) {
+      try {
+        number = Double.parseDouble(source.substring(start, end));
+      } catch (NumberFormatException e) {
+        throw parseError(source, start);
+      }
+      numberParsed = true;
+    }
+    return number;
+  }
+
+  public void assign(Splittable parent, int index) {
+    LazyJsonSplittable p = (LazyJsonSplittable) parent;
+    p.materialize();
+    while (p.elements.size() <= index) {
+      p.elements.add(null);
+    }
+    p.elements.set(index, kind == Kind.NULL ? null : this);
+  }
+
+  public void assign(Splittable parent, String propertyName) {
+    LazyJsonSplittable p = (LazyJsonSplittable) parent;
+    p.materialize();
+    // Assigning null removes the property, as it does with org.json
+    if (kind == Kind.NULL) {
+      p.properties.remove(propertyName);
+    } else {
+      p.properties.put(propertyName, this);
+    }
+  }
+
+  public synchronized String asString() {
+    if (kind == Kind.STRING && string == null) {
+      string = decodeString(source, start, end);
+    }
+    return string;
+  }
+
+  public Splittable deepCopy() {
+    return create(getPayload());
+  }
+
+  public Splittable get(int index) {
+    materialize();
+    return elements.get(index);
+  }
+
+  public Splittable get(String key) {
+    materialize();
+    if (!properties.containsKey(key)) {
+      throw new RuntimeException(key);
+    }
+    return properties.get(key);
+  }
+
+  public String getPayload() {
+    switch (kind) {
+      case NULL:
+        return "null";
+      case NUMBER:
+        return String.valueOf(asNumber());
+      case BOOLEAN:
+        return String.valueOf(bool);
+    }
+    synchronized (this) {
+      if (elements == null && properties == null) {
+        // Nothing has been taken apart, so the slice is still accurate
+        return start == 0 && end == source.length() ? source : source.substring(start, end);
+      }
+    }
+    StringBuilder sb = new StringBuilder();
+    write(sb);
+    return sb.toString();
+  }
+
+  public List<String> getPropertyKeys() {
+    materialize();
+    return Collections.unmodifiableList(new ArrayList<String>(properties.keySet()));
+  }
+
+  public Object getReified(String key) {
+    return reified == null ? null : reified.get(key);
+  }
+
+  public Splittable getSplittable() {
+    return this;
+  }
+
+  public boolean isBoolean() {
+    return kind == Kind.BOOLEAN;
+  }
+
+  public boolean isIndexed() {
+    return kind == Kind.INDEXED;
+  }
+
+  public boolean isKeyed() {
+    return kind == Kind.KEYED;
+  }
+
+  public boolean isNull(int index) {
+    materialize();
+    return index >= elements.size() || elements.get(index) == null;
+  }
+
+  public boolean isNull(String key) {
+    // Treat undefined and null as the same
+    materialize();
+    return properties.get(key) == null;
+  }
+
+  public boolean isNumber() {
+    return kind == Kind.NUMBER;
+  }
+
+  public boolean isReified(String key) {
+    return reified != null && reified.containsKey(key);
+  }
+
+  public boolean isString() {
+    return kind == Kind.STRING;
+  }
+
+  public boolean isUndefined(String key) {
+    materialize();
+    return !properties.containsKey(key);
+  }
+
+  public void setReified(String key, Object object) {
+    if (reified == null) {
+      reified = new HashMap<String, Object>();
+    }
+    reified.put(key, object);
+  }
+
+  public void setSize(int size) {
+    materialize();
+    while (elements.size() > size) {
+      elements.remove(elements.size() - 1);
+    }
+    while (elements.size() < size) {
+      elements.add(null);
+    }
+  }
+
+  public int size() {
+    materialize();
+    return elements.size();
+  }
+
+  /**
+   * Locates the children of a keyed or indexed value in the source.
+   */
+  private synchronized void materialize() {
+    if (elements != null || properties != null) {
+      return;
+    }
+    if (kind == Kind.INDEXED) {
+      elements = new ArrayList<LazyJsonSplittable>();
+    } else if (kind == Kind.KEYED) {
+      properties = new LinkedHashMap<String, LazyJsonSplittable>();
+    } else {
+      throw new IllegalStateException("Not a keyed or indexed value: " + getPayload());
+    }
+
+    char close = kind == Kind.INDEXED ? ']' : '}';
+    int limit = end - 1;
+    int pos = skipWhitespace(source, start + 1);
+    if (pos < end && source.charAt(pos) == close) {
+      return;
+    }
+    while (pos < limit) {
+      String key = null;
+      if (kind == Kind.KEYED) {
+        if (source.charAt(pos) != '"') {
+          throw parseError(source, pos);
+        }
+        int keyEnd = skipValue(source, pos, limit);
+        key = decodeString(source, pos, keyEnd);
+        pos = skipWhitespace(source, keyEnd);
+        if (pos >= limit || source.charAt(pos) != ':') {
+          throw parseError(source, pos);
+        }
+        pos = skipWhitespace(source, pos + 1);
+        if (pos >= limit) {
+          throw parseError(source, pos);
+        }
+      }
+
+      int valueEnd = skipValue(source, pos, limit);
+      LazyJsonSplittable value = newValue(source, pos, valueEnd);
+      if (key == null) {
+        elements.add(value);
+      } else {
+        properties.put(key, value);
+      }
+
+      pos = skipWhitespace(source, valueEnd);
+      if (pos == limit && source.charAt(limit) == close) {
+        return;
+      }
+      if (pos >= limit || source.charAt(pos) != ',') {
+        throw parseError(source, pos);
+      }
+      pos = skipWhitespace(source, pos + 1);
+    }
+    throw parseError(source, pos);
+  }
+
+  /**
+   * Writes this value as an element or property of another.
+   */
+  private void write(StringBuilder sb) {
+    switch (kind) {
+      case BOOLEAN:
+        sb.append(bool);
+        return;
+      case NULL:
+        sb.append("null");
+        return;
+      case NUMBER:
+        appendNumber(sb, asNumber());
+        return;
+    }
+
+    List<LazyJsonSplittable> elementsToWrite;
+    Map<String, LazyJsonSplittable> propertiesToWrite;
+    synchronized (this) {
+      elementsToWrite = elements;
+      propertiesToWrite = properties;
+      if (elementsToWrite == null && propertiesToWrite == null) {
+        sb.append(source, start, end);
+        return;
+      }
+    }
+
+    if (elementsToWrite != null) {
+      sb.append('[');
+      for (int i = 0, j = elementsToWrite.size(); i < j; i++) {
+        if (i > 0) {
+          sb.append(',');
+        }
+        LazyJsonSplittable element = elementsToWrite.get(i);
+        if (element == null) {
+          sb.append("null");
+        } else {
+          element.write(sb);
+        }
+      }
+      sb.append(']');
+    } else {
+      sb.append('{');
+      boolean first = true;
+      for (Map.Entry<String, LazyJsonSplittable> entry : propertiesToWrite.entrySet()) {
+        if (first) {
+          first = false;
+        } else {
+          sb.append(',');
+        }
+        appendQuoted(sb, entry.getKey());
+        sb.append(':');
+        LazyJsonSplittable value = entry.getValue();
+        if (value == null) {
+          sb.append("null");
+        } else {
+          value.write(sb);
+        }
+      }
+      sb.append('}');
+    }
+  }
+}
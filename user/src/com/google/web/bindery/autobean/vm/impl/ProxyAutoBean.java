@@ -30,10 +30,11 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * An implementation of an AutoBean that uses reflection.
@@ -45,6 +46,27 @@ public class ProxyAutoBean<T> extends AbstractAutoBean<T> {
     final List<Method> getters = new ArrayList<Method>();
     final List<String> getterNames = new ArrayList<String>();
     final List<PropertyType> propertyType = new ArrayList<PropertyType>();
+    /**
+     * Prototypes of the generated shims and simple peers, keyed by the
+     * categories they were generated for. They are read without locking, but
+     * only generated while holding the lock on this Data.
+     */
+    final ConcurrentMap<List<Class<?>>, Prototype<GeneratedShim>> shims =
+        new ConcurrentHashMap<List<Class<?>>, Prototype<GeneratedShim>>();
+    final ConcurrentMap<List<Class<?>>, Prototype<GeneratedSimpleBean>> simpleBeans =
+        new ConcurrentHashMap<List<Class<?>>, Prototype<GeneratedSimpleBean>>();
+  }
+
+  /**
+   * The outcome of generating a class; <code>value</code> is <code>null</code>
+   * if none could be generated.
+   */
+  private static class Prototype<P> {
+    final P value;
+
+    Prototype(P value) {
+      this.value = value;
+    }
   }
 
   private enum PropertyType {
@@ -235,7 +257,12 @@ public class ProxyAutoBean<T> extends AbstractAutoBean<T> {
   @Override
   protected T getWrapped() {
     if (wrapped == null && isUsingSimplePeer()) {
-      wrapped = (T) ProxyAutoBean.makeProxy(beanType, new SimpleBeanHandler<T>(this));
+      GeneratedSimpleBean prototype = getSimpleBeanPrototype();
+      if (prototype == null) {
+        wrapped = (T) ProxyAutoBean.makeProxy(beanType, new SimpleBeanHandler<T>(this));
+      } else {
+        wrapped = beanType.cast(prototype.__create(this));
+      }
     }
     return super.getWrapped();
   }
@@ -258,31 +285,33 @@ public class ProxyAutoBean<T> extends AbstractAutoBean<T> {
   protected void traverseProperties(AutoBeanVisitor visitor, OneShotContext ctx) {
     assert data.getters.size() == data.getterNames.size()
         && data.getters.size() == data.propertyType.size();
-    Iterator<Method> getterIt = data.getters.iterator();
-    Iterator<String> nameIt = data.getterNames.iterator();
-    Iterator<PropertyType> typeIt = data.propertyType.iterator();
-    while (getterIt.hasNext()) {
-      Method getter = getterIt.next();
-      String name = nameIt.next();
-      PropertyType propertyType = typeIt.next();
+    T shim = as();
+    for (int i = 0, j = data.getters.size(); i < j; i++) {
+      Method getter = data.getters.get(i);
+      String name = data.getterNames.get(i);
+      PropertyType propertyType = data.propertyType.get(i);
 
       // Use the shim to handle automatic wrapping
       Object value;
-      try {
-        getter.setAccessible(true);
-        value = getter.invoke(as());
-      } catch (IllegalArgumentException e) {
-        throw new RuntimeException(e);
-      } catch (IllegalAccessException e) {
-        throw new RuntimeException(e);
-      } catch (InvocationTargetException e) {
-        throw new RuntimeException(e.getCause());
+      if (shim instanceof GeneratedShim) {
+        value = ((GeneratedShim) shim).__getProperty(i);
+      } else {
+        try {
+          getter.setAccessible(true);
+          value = getter.invoke(shim);
+        } catch (IllegalArgumentException e) {
+          throw new RuntimeException(e);
+        } catch (IllegalAccessException e) {
+          throw new RuntimeException(e);
+        } catch (InvocationTargetException e) {
+          throw new RuntimeException(e.getCause());
+        }
       }
 
       // Create the context used for the property visitation
       MethodPropertyContext x =
-          isUsingSimplePeer() ? new BeanPropertyContext(this, getter) : new GetterPropertyContext(
-              this, getter);
+          isUsingSimplePeer() ? new BeanPropertyContext(this, getter, name)
+              : new GetterPropertyContext(this, getter);
 
       switch (propertyType) {
         case VALUE: {
@@ -338,8 +367,54 @@ public class ProxyAutoBean<T> extends AbstractAutoBean<T> {
   }
 
   private T createShim() {
-    T toReturn = ProxyAutoBean.makeProxy(beanType, new ShimHandler<T>(this, getWrapped()));
+    GeneratedShim prototype = getShimPrototype();
+    T toReturn;
+    if (prototype == null) {
+      toReturn = ProxyAutoBean.makeProxy(beanType, new ShimHandler<T>(this, getWrapped()));
+    } else {
+      // Fail as a Proxy would if the bean has been unwrapped
+      getWrapped();
+      toReturn = beanType.cast(prototype.__create(this));
+    }
     WeakMapping.setWeak(toReturn, AutoBean.class.getName(), this);
     return toReturn;
   }
+
+  private GeneratedShim getShimPrototype() {
+    if (!BeanClassGenerator.isEnabled()) {
+      return null;
+    }
+    List<Class<?>> categories = configuration.getCategories();
+    Prototype<GeneratedShim> prototype = data.shims.get(categories);
+    if (prototype == null) {
+      synchronized (data) {
+        prototype = data.shims.get(categories);
+        if (prototype == null) {
+          prototype = new Prototype<GeneratedShim>(BeanClassGenerator.generateShim(beanType,
+              data.getters, configuration));
+          data.shims.put(categories, prototype);
+        }
+      }
+    }
+    return prototype.value;
+  }
+
+  private GeneratedSimpleBean getSimpleBeanPrototype() {
+    if (!BeanClassGenerator.isEnabled()) {
+      return null;
+    }
+    List<Class<?>> categories = configuration.getCategories();
+    Prototype<GeneratedSimpleBean> prototype = data.simpleBeans.get(categories);
+    if (prototype == null) {
+      synchronized (data) {
+        prototype = data.simpleBeans.get(categories);
+        if (prototype == null) {
+          prototype = new Prototype<GeneratedSimpleBean>(BeanClassGenerator.generateSimpleBean(
+              beanType, configuration));
+          data.simpleBeans.put(categories, prototype);
+        }
+      }
+    }
+    return prototype.value;
+  }
 }
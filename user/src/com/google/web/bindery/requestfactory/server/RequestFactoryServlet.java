@@ -16,10 +16,16 @@
 package com.google.web.bindery.requestfactory.server;
 
 import com.google.gwt.user.server.rpc.RPCServletUtils;
+import com.google.gwt.user.server.rpc.impl.ServletAsyncSupport;
 import com.google.web.bindery.requestfactory.shared.RequestFactory;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -31,10 +37,42 @@ import javax.servlet.http.HttpServletResponse;
 
 /**
  * Handles GWT RequestFactory JSON requests.
+ * <p>
+ * If {@value #ASYNC_THREADS_PROPERTY} is set, and the servlet runs in a
+ * Servlet 3.0 container with async support enabled for it, each request is
+ * processed on a thread of the servlet's own, and the container's request
+ * thread is released in the meantime. Service objects still see the request
+ * through {@link #getThreadLocalRequest()} and the other thread-local
+ * accessors. A request that takes longer than
+ * {@value #ASYNC_TIMEOUT_PROPERTY} milliseconds fails with an internal server
+ * error.
+ * </p>
  */
 @SuppressWarnings("serial")
 public class RequestFactoryServlet extends HttpServlet {
 
+  /**
+   * A Java system property that sets how many threads each servlet uses to
+   * make invocations of methods annotated with {@link IndependentInvocation}
+   * concurrently. Defaults to 0, which makes every invocation on the request
+   * thread.
+   */
+  public static final String INVOCATION_THREADS_PROPERTY = "gwt.requestfactory.invocationThreads";
+
+  /**
+   * A Java system property that sets how many threads each servlet uses to
+   * process requests asynchronously. Defaults to 0, which processes every
+   * request on the container's request thread.
+   */
+  public static final String ASYNC_THREADS_PROPERTY = "gwt.requestfactory.asyncThreads";
+
+  /**
+   * A Java system property that sets how many milliseconds an asynchronously
+   * processed request may take. Defaults to 30000, the default timeout of a
+   * Servlet 3.0 asynchronous request.
+   */
+  public static final String ASYNC_TIMEOUT_PROPERTY = "gwt.requestfactory.asyncTimeoutMillis";
+
   private static final boolean DUMP_PAYLOAD = Boolean.getBoolean("gwt.rpc.dumpPayload");
   private static final String JSON_CHARSET = "UTF-8";
   private static final String JSON_CONTENT_TYPE = "application/json";
@@ -79,6 +117,9 @@ public class RequestFactoryServlet extends HttpServlet {
     return perThreadContext.get();
   }
 
+  private ExecutorService asyncExecutor;
+  private long asyncTimeoutMillis = 30000;
+  private ExecutorService invocationExecutor;
   private final SimpleRequestProcessor processor;
 
   /**
@@ -104,6 +145,43 @@ public class RequestFactoryServlet extends HttpServlet {
     processor.setExceptionHandler(exceptionHandler);
   }
 
+  @Override
+  public void destroy() {
+    if (asyncExecutor != null) {
+      asyncExecutor.shutdown();
+    }
+    if (invocationExecutor != null) {
+      invocationExecutor.shutdown();
+    }
+    super.destroy();
+  }
+
+  /**
+   * Overridden to load the {@value #INVOCATION_THREADS_PROPERTY},
+   * {@value #ASYNC_THREADS_PROPERTY} and {@value #ASYNC_TIMEOUT_PROPERTY}
+   * system properties.
+   */
+  @Override
+  public void init() throws ServletException {
+    super.init();
+    asyncTimeoutMillis = Long.getLong(ASYNC_TIMEOUT_PROPERTY, asyncTimeoutMillis);
+    int asyncThreads = Integer.getInteger(ASYNC_THREADS_PROPERTY, 0);
+    if (asyncThreads > 0 && asyncExecutor == null) {
+      asyncExecutor = Executors.newFixedThreadPool(asyncThreads,
+          makeThreadFactory("RequestFactory " + getServletName()));
+    }
+    int invocationThreads = Integer.getInteger(INVOCATION_THREADS_PROPERTY, 0);
+    if (invocationThreads > 0 && invocationExecutor == null) {
+      invocationExecutor = Executors.newFixedThreadPool(invocationThreads,
+          makeThreadFactory("RequestFactory invocation " + getServletName()));
+      processor.setInvocationExecutor(new Executor() {
+        public void execute(Runnable command) {
+          invocationExecutor.execute(withThreadLocals(command));
+        }
+      });
+    }
+  }
+
   /**
    * Processes a POST to the server.
    * 
@@ -129,17 +207,14 @@ public class RequestFactoryServlet extends HttpServlet {
         System.out.println(">>> " + jsonRequestString);
       }
 
+      Object asyncContext = startAsync(request);
+      if (asyncContext != null) {
+        processAsync(asyncContext, response, jsonRequestString);
+        return;
+      }
+
       try {
-        String payload = processor.process(jsonRequestString);
-        if (DUMP_PAYLOAD) {
-          System.out.println("<<< " + payload);
-        }
-        response.setStatus(HttpServletResponse.SC_OK);
-        response.setContentType(RequestFactory.JSON_CONTENT_TYPE_UTF8);
-        // The Writer must be obtained after setting the content type
-        PrintWriter writer = response.getWriter();
-        writer.print(payload);
-        writer.flush();
+        writeResponse(response, processor.process(jsonRequestString));
       } catch (RuntimeException e) {
         response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
         log.log(Level.SEVERE, "Unexpected error", e);
@@ -151,10 +226,141 @@ public class RequestFactoryServlet extends HttpServlet {
     }
   }
 
+  private static ThreadFactory makeThreadFactory(final String threadName) {
+    return new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, threadName);
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+  }
+
+  /**
+   * Wraps a task so that service objects see the current HTTP transaction
+   * when it runs on another thread.
+   */
+  private static Runnable withThreadLocals(final Runnable command) {
+    final ServletContext context = perThreadContext.get();
+    final HttpServletRequest request = perThreadRequest.get();
+    final HttpServletResponse response = perThreadResponse.get();
+    return new Runnable() {
+      public void run() {
+        perThreadContext.set(context);
+        perThreadRequest.set(request);
+        perThreadResponse.set(response);
+        try {
+          command.run();
+        } finally {
+          perThreadContext.set(null);
+          perThreadRequest.set(null);
+          perThreadResponse.set(null);
+        }
+      }
+    };
+  }
+
+  private void complete(Object asyncContext) {
+    try {
+      ServletAsyncSupport.complete(asyncContext);
+    } catch (ServletException e) {
+      log.log(Level.WARNING, "Unable to complete the request", e);
+    }
+  }
+
   private void ensureConfig() {
     String symbolMapsDirectory = getServletConfig().getInitParameter("symbolMapsDirectory");
     if (symbolMapsDirectory != null) {
       Logging.setSymbolMapsDirectory(symbolMapsDirectory);
     }
   }
+
+  /**
+   * Processes a request on one of the servlet's threads, and completes it
+   * unless it timed out first.
+   */
+  private void processAsync(final Object asyncContext, final HttpServletResponse response,
+      final String jsonRequestString) {
+    final AtomicBoolean ended = new AtomicBoolean();
+    try {
+      ServletAsyncSupport.addListener(asyncContext, new ServletAsyncSupport.Listener() {
+        public void onEnd() {
+          ended.set(true);
+        }
+
+        public void onTimeout() {
+          if (!ended.compareAndSet(false, true)) {
+            return;
+          }
+          try {
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+          } catch (IOException e) {
+            log.log(Level.WARNING, "Unable to report a timeout", e);
+          } finally {
+            complete(asyncContext);
+          }
+        }
+      });
+    } catch (ServletException e) {
+      log.log(Level.WARNING, "Unable to listen for the end of the request", e);
+    }
+
+    asyncExecutor.execute(withThreadLocals(new Runnable() {
+      public void run() {
+        String payload = null;
+        RuntimeException failure = null;
+        try {
+          payload = processor.process(jsonRequestString);
+        } catch (RuntimeException e) {
+          failure = e;
+        }
+        if (!ended.compareAndSet(false, true)) {
+          log.log(Level.WARNING, "Dropping the response to a request that has already ended",
+              failure);
+          return;
+        }
+        try {
+          if (failure == null) {
+            writeResponse(response, payload);
+          } else {
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            log.log(Level.SEVERE, "Unexpected error", failure);
+          }
+        } catch (IOException e) {
+          log.log(Level.SEVERE, "Unable to write the response", e);
+        } finally {
+          complete(asyncContext);
+        }
+      }
+    }));
+  }
+
+  /**
+   * Puts the request into asynchronous mode if {@value #ASYNC_THREADS_PROPERTY}
+   * is set, returning its <code>AsyncContext</code>, or <code>null</code> to
+   * process it on the request thread.
+   */
+  private Object startAsync(HttpServletRequest request) {
+    if (asyncExecutor == null) {
+      return null;
+    }
+    try {
+      return ServletAsyncSupport.startAsync(request, asyncTimeoutMillis);
+    } catch (ServletException e) {
+      log.log(Level.WARNING, "Unable to start asynchronous processing", e);
+      return null;
+    }
+  }
+
+  private void writeResponse(HttpServletResponse response, String payload) throws IOException {
+    if (DUMP_PAYLOAD) {
+      System.out.println("<<< " + payload);
+    }
+    response.setStatus(HttpServletResponse.SC_OK);
+    response.setContentType(RequestFactory.JSON_CONTENT_TYPE_UTF8);
+    // The Writer must be obtained after setting the content type
+    PrintWriter writer = response.getWriter();
+    writer.print(payload);
+    writer.flush();
+  }
 }
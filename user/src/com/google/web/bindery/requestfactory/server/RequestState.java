@@ -35,9 +35,11 @@ import com.google.web.bindery.requestfactory.shared.messages.IdMessage.Strength;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Encapsulates all state relating to the processing of a single request so that
@@ -227,6 +229,7 @@ class RequestState implements EntityCodex.EntitySource {
     List<Class<?>> domainClasses = new ArrayList<Class<?>>(ids.size());
     List<Object> domainIds = new ArrayList<Object>(ids.size());
     List<SimpleProxyId<?>> idsToLoad = new ArrayList<SimpleProxyId<?>>();
+    Set<SimpleProxyId<?>> queued = new HashSet<SimpleProxyId<?>>();
 
     /*
      * Create proxies for ephemeral or synthetic ids that we haven't seen. Queue
@@ -234,8 +237,8 @@ class RequestState implements EntityCodex.EntitySource {
      */
     for (SimpleProxyId<?> id : ids) {
       Class<?> domainClass = service.resolveDomainClass(id.getProxyClass());
-      if (beans.containsKey(id)) {
-        // Already have a proxy for this id, no-op
+      if (beans.containsKey(id) || queued.contains(id)) {
+        // Already have, or are about to load, a proxy for this id, no-op
       } else if (id.isEphemeral() || id.isSynthetic()) {
         // Create a new domain object for the short-lived id
         Object domain = service.createDomainObject(domainClass);
@@ -261,6 +264,7 @@ class RequestState implements EntityCodex.EntitySource {
         domainClasses.add(service.resolveDomainClass(id.getProxyClass()));
         domainIds.add(domainParam);
         idsToLoad.add(id);
+        queued.add(id);
       }
     }
 
@@ -62,6 +62,10 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.validation.ConstraintViolation;
 
@@ -86,6 +90,24 @@ public class SimpleRequestProcessor {
   static class IdToEntityMap extends HashMap<SimpleProxyId<?>, AutoBean<? extends BaseProxy>> {
   }
 
+  /**
+   * A domain method call waiting to be made, and its outcome.
+   */
+  private class Invocation implements Runnable {
+    Object[] args;
+    Method domainMethod;
+    ReportableException failure;
+    Object result;
+
+    public void run() {
+      try {
+        result = service.invoke(domainMethod, args);
+      } catch (ReportableException e) {
+        failure = e;
+      }
+    }
+  }
+
   /**
    * Allows the creation of properly-configured AutoBeans without having to
    * create an AutoBeanFactory with the desired annotations.
@@ -116,6 +138,7 @@ public class SimpleRequestProcessor {
   }
 
   private ExceptionHandler exceptionHandler = new DefaultExceptionHandler();
+  private Executor invocationExecutor;
   private final ServiceLayer service;
 
   public SimpleRequestProcessor(ServiceLayer serviceLayer) {
@@ -146,6 +169,19 @@ public class SimpleRequestProcessor {
     this.exceptionHandler = exceptionHandler;
   }
 
+  /**
+   * Sets the executor on which consecutive invocations of methods annotated
+   * with {@link IndependentInvocation} run concurrently. Their results are
+   * still returned in the order the client made the invocations. Setting one
+   * also loads the entities that all of a request's invocation arguments refer
+   * to together, before any invocation is made, rather than as each
+   * invocation's arguments are decoded. Defaults to <code>null</code>, which
+   * makes every invocation on the calling thread.
+   */
+  public void setInvocationExecutor(Executor invocationExecutor) {
+    this.invocationExecutor = invocationExecutor;
+  }
+
   /**
    * Encode a list of objects into a self-contained message that can be used for
    * out-of-band communication.
@@ -249,6 +285,28 @@ public class SimpleRequestProcessor {
     }
   }
 
+  /**
+   * Collects the ids of the entities that a wire-format value refers to, so
+   * that they can be loaded together.
+   */
+  private void collectEntityIds(RequestState state, Class<?> type, Class<?> elementType,
+      Splittable split, List<IdMessage> ids) {
+    if (split == null || split == Splittable.NULL) {
+      return;
+    }
+    if (elementType != null) {
+      if (isEntityReference(state, elementType)) {
+        for (int i = 0, j = split.size(); i < j; i++) {
+          if (!split.isNull(i)) {
+            ids.add(decodeId(split.get(i)));
+          }
+        }
+      }
+    } else if (isEntityReference(state, type)) {
+      ids.add(decodeId(split));
+    }
+  }
+
   private AutoBean<ServerFailureMessage> createFailureMessage(ReportableException e) {
     ServerFailure failure =
         exceptionHandler.createServerFailure(e.getCause() == null ? e : e.getCause());
@@ -363,30 +421,19 @@ public class SimpleRequestProcessor {
     }
   }
 
+  private IdMessage decodeId(Splittable split) {
+    return AutoBeanCodex.decode(FACTORY, IdMessage.class, split).as();
+  }
+
   /**
    * Decode the arguments to pass into the domain method. If the domain method
    * is not static, the instance object will be in the 0th position.
    */
   private List<Object> decodeInvocationArguments(RequestState source, InvocationMessage invocation,
       Method contextMethod) {
-    boolean isStatic = Request.class.isAssignableFrom(contextMethod.getReturnType());
-    int baseLength = contextMethod.getParameterTypes().length;
-    int length = baseLength + (isStatic ? 0 : 1);
-    int offset = isStatic ? 0 : 1;
-    Class<?>[] contextArgs = new Class<?>[length];
-    Type[] genericArgs = new Type[length];
-
-    if (!isStatic) {
-      genericArgs[0] =
-          TypeUtils.getSingleParameterization(InstanceRequest.class, contextMethod
-              .getGenericReturnType());
-      contextArgs[0] = TypeUtils.ensureBaseType(genericArgs[0]);
-    }
-    System.arraycopy(contextMethod.getParameterTypes(), 0, contextArgs, offset, baseLength);
-    System.arraycopy(contextMethod.getGenericParameterTypes(), 0, genericArgs, offset, baseLength);
-
     List<Object> args =
-        decodeInvocationArguments(source, invocation.getParameters(), contextArgs, genericArgs);
+        decodeInvocationArguments(source, invocation.getParameters(),
+            getContextArgs(contextMethod), getGenericContextArgs(contextMethod));
     return args;
   }
 
@@ -404,16 +451,8 @@ public class SimpleRequestProcessor {
     List<Object> args = new ArrayList<Object>(contextArgs.length);
     for (int i = 0, j = contextArgs.length; i < j; i++) {
       Class<?> type = contextArgs[i];
-      Class<?> elementType = null;
-      Splittable split;
-      if (Collection.class.isAssignableFrom(type)) {
-        elementType =
-            TypeUtils.ensureBaseType(TypeUtils.getSingleParameterization(Collection.class,
-                genericArgs[i]));
-        split = parameters.get(i);
-      } else {
-        split = parameters.get(i);
-      }
+      Class<?> elementType = getElementType(type, genericArgs[i]);
+      Splittable split = parameters.get(i);
       Object arg = EntityCodex.decode(source, type, elementType, split);
       arg =
           source.getResolver().resolveDomainValue(arg, !EntityProxyId.class.equals(contextArgs[i]));
@@ -423,6 +462,182 @@ public class SimpleRequestProcessor {
     return args;
   }
 
+  /**
+   * Returns the types of the arguments to pass into the domain method, with
+   * the instance object of a non-static domain method in the 0th position.
+   */
+  private Class<?>[] getContextArgs(Method contextMethod) {
+    boolean isStatic = Request.class.isAssignableFrom(contextMethod.getReturnType());
+    Class<?>[] parameterTypes = contextMethod.getParameterTypes();
+    if (isStatic) {
+      return parameterTypes;
+    }
+    Class<?>[] contextArgs = new Class<?>[parameterTypes.length + 1];
+    contextArgs[0] = TypeUtils.ensureBaseType(getInstanceType(contextMethod));
+    System.arraycopy(parameterTypes, 0, contextArgs, 1, parameterTypes.length);
+    return contextArgs;
+  }
+
+  /**
+   * Returns the element type of a collection argument, or <code>null</code>
+   * if the argument is not a collection.
+   */
+  private Class<?> getElementType(Class<?> type, Type genericType) {
+    if (!Collection.class.isAssignableFrom(type)) {
+      return null;
+    }
+    return TypeUtils.ensureBaseType(TypeUtils.getSingleParameterization(Collection.class,
+        genericType));
+  }
+
+  /**
+   * The parameterized counterpart of {@link #getContextArgs(Method)}.
+   */
+  private Type[] getGenericContextArgs(Method contextMethod) {
+    boolean isStatic = Request.class.isAssignableFrom(contextMethod.getReturnType());
+    Type[] parameterTypes = contextMethod.getGenericParameterTypes();
+    if (isStatic) {
+      return parameterTypes;
+    }
+    Type[] genericArgs = new Type[parameterTypes.length + 1];
+    genericArgs[0] = getInstanceType(contextMethod);
+    System.arraycopy(parameterTypes, 0, genericArgs, 1, parameterTypes.length);
+    return genericArgs;
+  }
+
+  private Type getInstanceType(Method contextMethod) {
+    return TypeUtils.getSingleParameterization(InstanceRequest.class, contextMethod
+        .getGenericReturnType());
+  }
+
+  /**
+   * Makes the pending invocations, concurrently if there are several of them,
+   * and waits for them to finish.
+   */
+  private void invokeIndependent(List<Invocation> pending) {
+    if (pending.isEmpty()) {
+      return;
+    }
+    List<FutureTask<Void>> tasks = new ArrayList<FutureTask<Void>>(pending.size() - 1);
+    for (int i = 1, j = pending.size(); i < j; i++) {
+      FutureTask<Void> task = new FutureTask<Void>(pending.get(i), null);
+      try {
+        invocationExecutor.execute(task);
+      } catch (RejectedExecutionException e) {
+        task.run();
+      }
+      tasks.add(task);
+    }
+    // Make the first invocation on this thread while the others run
+    pending.get(0).run();
+    pending.clear();
+
+    // Wait for every invocation before reporting any unexpected failure
+    Throwable thrown = null;
+    boolean interrupted = false;
+    for (FutureTask<Void> task : tasks) {
+      while (true) {
+        try {
+          task.get();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        } catch (ExecutionException e) {
+          if (thrown == null) {
+            thrown = e.getCause();
+          }
+          break;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (thrown instanceof RuntimeException) {
+      throw (RuntimeException) thrown;
+    } else if (thrown instanceof Error) {
+      throw (Error) thrown;
+    } else if (thrown != null) {
+      throw new UnexpectedException(thrown);
+    }
+  }
+
+  /**
+   * Returns <code>true</code> if decoding a value of the given type loads an
+   * entity.
+   */
+  private boolean isEntityReference(RequestState state, Class<?> type) {
+    return state.isEntityType(type) || EntityProxyId.class.equals(type);
+  }
+
+  /**
+   * Loads the entities that the invocations' arguments refer to with a single
+   * call to {@link ServiceLayer#loadDomainObjects(List, List)}, instead of
+   * one call per argument.
+   */
+  private void loadInvocationReferences(RequestState state, List<InvocationMessage> invocations) {
+    try {
+      List<IdMessage> ids = new ArrayList<IdMessage>();
+      for (InvocationMessage invocation : invocations) {
+        List<Splittable> parameters = invocation.getParameters();
+        Method contextMethod = service.resolveRequestContextMethod(invocation.getOperation());
+        if (parameters == null || contextMethod == null) {
+          continue;
+        }
+        Class<?>[] contextArgs = getContextArgs(contextMethod);
+        Type[] genericArgs = getGenericContextArgs(contextMethod);
+        if (parameters.size() != contextArgs.length) {
+          continue;
+        }
+        for (int i = 0, j = contextArgs.length; i < j; i++) {
+          collectEntityIds(state, contextArgs[i], getElementType(contextArgs[i], genericArgs[i]),
+              parameters.get(i), ids);
+        }
+      }
+      if (!ids.isEmpty()) {
+        state.getBeansForPayload(ids);
+      }
+    } catch (ReportableException e) {
+      /*
+       * Leave it to processInvocationMessages to try again and report the
+       * failure against the invocations that caused it.
+       */
+    }
+  }
+
+  /**
+   * Loads the entities that the property updates in the operations refer to
+   * with a single call to {@link ServiceLayer#loadDomainObjects(List, List)}.
+   */
+  private void loadOperationReferences(final RequestState state,
+      List<AutoBean<? extends BaseProxy>> beans, List<OperationMessage> operations) {
+    final List<IdMessage> ids = new ArrayList<IdMessage>();
+    Iterator<OperationMessage> itOp = operations.iterator();
+    for (AutoBean<? extends BaseProxy> bean : beans) {
+      final Map<String, Splittable> flatValueMap = itOp.next().getPropertyMap();
+      if (flatValueMap == null || bean.getTag(Constants.DOMAIN_OBJECT) == null) {
+        continue;
+      }
+      bean.accept(new AutoBeanVisitor() {
+        @Override
+        public boolean visitReferenceProperty(String propertyName, AutoBean<?> value,
+            PropertyContext ctx) {
+          if (flatValueMap.containsKey(propertyName)) {
+            Class<?> elementType =
+                ctx instanceof CollectionPropertyContext ? ((CollectionPropertyContext) ctx)
+                    .getElementType() : null;
+            collectEntityIds(state, ctx.getType(), elementType, flatValueMap.get(propertyName),
+                ids);
+          }
+          return false;
+        }
+      });
+    }
+    if (!ids.isEmpty()) {
+      state.getBeansForPayload(ids);
+    }
+  }
+
   private void processInvocationMessages(RequestState state, RequestMessage req,
       List<Splittable> results, List<Boolean> success, RequestState returnState) {
     List<InvocationMessage> invocations = req.getInvocations();
@@ -430,12 +645,20 @@ public class SimpleRequestProcessor {
       // No method invocations which can happen via RequestContext.fire()
       return;
     }
+    if (invocationExecutor != null) {
+      /*
+       * Only when opted in, since an entity loaded up front won't see changes
+       * that earlier invocations make to it.
+       */
+      loadInvocationReferences(state, invocations);
+    }
+
     List<Method> contextMethods = new ArrayList<Method>(invocations.size());
-    List<Object> invocationResults = new ArrayList<Object>(invocations.size());
-    Map<Object, SortedSet<String>> allPropertyRefs = new HashMap<Object, SortedSet<String>>();
+    List<Invocation> calls = new ArrayList<Invocation>(invocations.size());
+    List<Invocation> independent = new ArrayList<Invocation>();
     for (InvocationMessage invocation : invocations) {
-      Object domainReturnValue;
-      boolean ok;
+      Invocation call = new Invocation();
+      calls.add(call);
       try {
         // Find the Method
         String operation = invocation.getOperation();
@@ -459,8 +682,31 @@ public class SimpleRequestProcessor {
           Object serviceInstance = service.createServiceInstance(requestContext);
           args.add(0, serviceInstance);
         }
-        // Invoke it
-        domainReturnValue = service.invoke(domainMethod, args.toArray());
+        call.domainMethod = domainMethod;
+        call.args = args.toArray();
+      } catch (ReportableException e) {
+        call.failure = e;
+        continue;
+      }
+
+      // Invoke it, or queue it up with the other independent invocations
+      if (invocationExecutor != null
+          && call.domainMethod.isAnnotationPresent(IndependentInvocation.class)) {
+        independent.add(call);
+      } else {
+        invokeIndependent(independent);
+        call.run();
+      }
+    }
+    invokeIndependent(independent);
+
+    List<Object> invocationResults = new ArrayList<Object>(invocations.size());
+    Map<Object, SortedSet<String>> allPropertyRefs = new HashMap<Object, SortedSet<String>>();
+    Iterator<Invocation> callIt = calls.iterator();
+    for (InvocationMessage invocation : invocations) {
+      Invocation call = callIt.next();
+      if (call.failure == null) {
+        Object domainReturnValue = call.result;
         if (invocation.getPropertyRefs() != null) {
           SortedSet<String> paths = allPropertyRefs.get(domainReturnValue);
           if (paths == null) {
@@ -469,13 +715,12 @@ public class SimpleRequestProcessor {
           }
           paths.addAll(invocation.getPropertyRefs());
         }
-        ok = true;
-      } catch (ReportableException e) {
-        domainReturnValue = AutoBeanCodex.encode(createFailureMessage(e));
-        ok = false;
+        invocationResults.add(domainReturnValue);
+        success.add(true);
+      } else {
+        invocationResults.add(AutoBeanCodex.encode(createFailureMessage(call.failure)));
+        success.add(false);
       }
-      invocationResults.add(domainReturnValue);
-      success.add(ok);
     }
     Iterator<Method> contextMethodIt = contextMethods.iterator();
     Iterator<Object> objects = invocationResults.iterator();
@@ -508,6 +753,7 @@ public class SimpleRequestProcessor {
 
     List<AutoBean<? extends BaseProxy>> beans = state.getBeansForPayload(operations);
     assert operations.size() == beans.size();
+    loadOperationReferences(state, beans, operations);
 
     Iterator<OperationMessage> itOp = operations.iterator();
     for (AutoBean<? extends BaseProxy> bean : beans) {
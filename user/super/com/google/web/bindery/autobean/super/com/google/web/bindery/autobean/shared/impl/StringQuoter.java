@@ -31,6 +31,10 @@ import java.util.Date;
  */
 @GwtScriptOnly
 public class StringQuoter {
+  public static void appendPayload(StringBuilder sb, Splittable value) {
+    sb.append(value.getPayload());
+  }
+
   public static Splittable create(boolean value) {
     return JsoSplittable.create(value);
   }
@@ -26,10 +26,12 @@ import com.google.gwt.core.ext.linker.EmittedArtifact;
 import com.google.gwt.core.ext.linker.SelectionProperty;
 import com.google.gwt.core.ext.linker.Shardable;
 import com.google.gwt.core.ext.linker.StatementRanges;
+import com.google.gwt.core.ext.linker.SymbolData;
 import com.google.gwt.dev.Permutation;
 import com.google.gwt.dev.cfg.BindingProperty;
 import com.google.gwt.dev.cfg.StaticPropertyOracle;
 import com.google.gwt.dev.jjs.PermutationResult;
+import com.google.gwt.dev.util.DiskCacheToken;
 
 import junit.framework.TestCase;
 
@@ -98,8 +100,8 @@ public class SelectionScriptLinkerUnitTest extends TestCase {
           new com.google.gwt.dev.cfg.ConfigurationProperty[0]));
     }
 
-    public byte[] getSerializedSymbolMap() {
-      return getBytes("symbol map");
+    public DiskCacheToken getSerializedSymbolMap() {
+      return SerializedSymbolMap.write(new SymbolData[0]);
     }
 
     public StatementRanges[] getStatementRanges() {
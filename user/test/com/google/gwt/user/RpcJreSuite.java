@@ -17,6 +17,7 @@ package com.google.gwt.user;
 
 import com.google.gwt.dev.BootStrapPlatform;
 import com.google.gwt.user.client.rpc.impl.ClientSerializationStreamReaderTest;
+import com.google.gwt.user.client.rpc.impl.RpcBatchFormatTest;
 import com.google.gwt.user.rebind.rpc.BlacklistTypeFilterTest;
 import com.google.gwt.user.rebind.rpc.SerializationUtilsTest;
 import com.google.gwt.user.rebind.rpc.SerializableTypeOracleBuilderTest;
@@ -30,8 +31,12 @@ import com.google.gwt.user.server.rpc.RPCTest;
 import com.google.gwt.user.server.rpc.RPCTypeCheckTest;
 import com.google.gwt.user.server.rpc.RemoteServiceServletTest;
 import com.google.gwt.user.server.rpc.SerializationPolicyLoaderTest;
+import com.google.gwt.user.server.rpc.impl.FieldAccessorTest;
 import com.google.gwt.user.server.rpc.impl.LegacySerializationPolicyTest;
+import com.google.gwt.user.server.rpc.impl.SerializationPolicyCacheTest;
+import com.google.gwt.user.server.rpc.impl.ServerSerializationStreamReaderTest;
 import com.google.gwt.user.server.rpc.impl.ServerSerializationStreamWriterTest;
+import com.google.gwt.user.server.rpc.impl.ServiceMethodTableTest;
 import com.google.gwt.user.server.rpc.impl.StandardSerializationPolicyTest;
 
 import junit.framework.Test;
@@ -69,7 +74,12 @@ public class RpcJreSuite {
     suite.addTestSuite(UtilTest.class);
     suite.addTestSuite(AbstractXsrfProtectedServiceServletTest.class);
     suite.addTestSuite(ClientSerializationStreamReaderTest.class);
+    suite.addTestSuite(RpcBatchFormatTest.class);
     suite.addTestSuite(ServerSerializationStreamWriterTest.class);
+    suite.addTestSuite(ServerSerializationStreamReaderTest.class);
+    suite.addTestSuite(FieldAccessorTest.class);
+    suite.addTestSuite(SerializationPolicyCacheTest.class);
+    suite.addTestSuite(ServiceMethodTableTest.class);
     return suite;
   }
 }
@@ -126,6 +126,72 @@ public class RemoteServiceServletTest extends RpcTestBase {
     });
   }
 
+  /**
+   * Verify that calls made in the same event loop turn by a batching proxy
+   * each get their own result.
+   */
+  public void testBatchedCalls() {
+    RemoteServiceServletTestServiceAsync service = getAsyncService();
+    ((HasRpcBatching) service).setRpcBatchingEnabled(true);
+    assertTrue(((HasRpcBatching) service).isRpcBatchingEnabled());
+
+    delayTestFinishForRpc();
+
+    final int[] remaining = {3};
+    req = service.test(new AsyncCallback<Void>() {
+      public void onFailure(Throwable caught) {
+        TestSetValidator.rethrowException(caught);
+      }
+
+      public void onSuccess(Void result) {
+        assertTrue(!req.isPending());
+        if (--remaining[0] == 0) {
+          finishTest();
+        }
+      }
+    });
+    assertTrue(req.isPending());
+
+    service.throwDeclaredRuntimeException(new AsyncCallback<Void>() {
+      public void onFailure(Throwable caught) {
+        assertTrue(caught instanceof NullPointerException);
+        assertEquals("expected", caught.getMessage());
+        if (--remaining[0] == 0) {
+          finishTest();
+        }
+      }
+
+      public void onSuccess(Void result) {
+        fail();
+      }
+    });
+
+    service.throwUnknownRuntimeException(new AsyncCallback<Void>() {
+      public void onFailure(Throwable caught) {
+        assertTrue(caught instanceof StatusCodeException);
+        assertEquals(500, ((StatusCodeException) caught).getStatusCode());
+        if (--remaining[0] == 0) {
+          finishTest();
+        }
+      }
+
+      public void onSuccess(Void result) {
+        fail();
+      }
+    });
+
+    // Canceled calls are never sent
+    service.test(new AsyncCallback<Void>() {
+      public void onFailure(Throwable caught) {
+        fail();
+      }
+
+      public void onSuccess(Void result) {
+        fail();
+      }
+    }).cancel();
+  }
+
   /**
    * Verify behavior when the RPC method throws a RuntimeException declared on
    * the RemoteService interface.
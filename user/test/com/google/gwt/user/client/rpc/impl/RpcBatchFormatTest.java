@@ -0,0 +1,47 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.client.rpc.impl;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Tests {@link RpcBatchFormat}.
+ */
+public class RpcBatchFormatTest extends TestCase {
+
+  public void testMalformed() {
+    assertNull(RpcBatchFormat.splitEntries(":"));
+    assertNull(RpcBatchFormat.splitEntries("x:"));
+    assertNull(RpcBatchFormat.splitEntries("3:ab"));
+    assertNull(RpcBatchFormat.splitEntries("1:a2"));
+    assertNull(RpcBatchFormat.splitEntries("-1:a"));
+    assertNull(RpcBatchFormat.splitEntries("99999999999:a"));
+  }
+
+  public void testRoundTrip() {
+    StringBuilder sb = new StringBuilder();
+    RpcBatchFormat.appendEntry(sb, "7|0|4|a|b|");
+    RpcBatchFormat.appendEntry(sb, "");
+    RpcBatchFormat.appendEntry(sb, "12:34\u00e9");
+    assertEquals("10:7|0|4|a|b|0:6:12:34\u00e9", sb.toString());
+    assertEquals(Arrays.asList("7|0|4|a|b|", "", "12:34\u00e9"),
+        RpcBatchFormat.splitEntries(sb.toString()));
+    assertEquals(Collections.emptyList(), RpcBatchFormat.splitEntries(""));
+  }
+}
@@ -21,13 +21,18 @@ import com.google.gwt.user.client.rpc.UnicodeEscapingTest;
 import junit.framework.TestCase;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
 
 import javax.servlet.ServletException;
 import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 /**
  * Tests some of the methods in {@link RPCServletUtils}.
@@ -213,6 +218,56 @@ public class RPCServletUtilsTest extends TestCase {
     RPCServletUtils.readContent(m, null, null);
   }
 
+  /**
+   * Large responses should be streamed with gzip compression if allowed.
+   */
+  public void testOpenResponseWriterLargeGzip() throws IOException {
+    String content = UnicodeEscapingTest.getStringContainingCharacterRange(0, 5000);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    writeInPieces(RPCServletUtils.openResponseWriter(null, response, true), content);
+
+    assertEquals("gzip", response.getHeader("Content-Encoding"));
+    assertEquals(-1, response.getContentLength());
+    GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(response.getContent()));
+    ByteArrayOutputStream uncompressed = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1024];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      uncompressed.write(buffer, 0, read);
+    }
+    assertEquals(content, new String(uncompressed.toByteArray(), RPCServletUtils.CHARSET_UTF8));
+  }
+
+  /**
+   * Large responses should be streamed unchanged if gzip is not allowed.
+   */
+  public void testOpenResponseWriterLargeUncompressed() throws IOException {
+    String content = UnicodeEscapingTest.getStringContainingCharacterRange(0, 5000);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    writeInPieces(RPCServletUtils.openResponseWriter(null, response, false), content);
+
+    assertNull(response.getHeader("Content-Encoding"));
+    assertEquals("application/json; charset=utf-8", response.getContentType());
+    assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+    assertEquals(content, new String(response.getContent(), RPCServletUtils.CHARSET_UTF8));
+  }
+
+  /**
+   * Small responses should be sent exactly as writeResponse sends them.
+   */
+  public void testOpenResponseWriterSmall() throws IOException {
+    String content = "//OK[1,[\"\u00e9\"],0,7]";
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    writeInPieces(RPCServletUtils.openResponseWriter(null, response, true), content);
+
+    MockHttpServletResponse expected = new MockHttpServletResponse();
+    RPCServletUtils.writeResponse(null, expected, content, false);
+    assertNull(response.getHeader("Content-Encoding"));
+    assertEquals(expected.getContentLength(), response.getContentLength());
+    assertEquals(expected.getContentType(), response.getContentType());
+    assertTrue(Arrays.equals(expected.getContent(), response.getContent()));
+  }
+
   /**
    * A non UTF-8 character encoding should be rejected.
    */
@@ -326,4 +381,11 @@ public class RPCServletUtilsTest extends TestCase {
     // ignore Content-Type, read as UTF-8
     return RPCServletUtils.readContent(m, null, null);
   }
+
+  private void writeInPieces(Writer out, String content) throws IOException {
+    int half = content.length() / 2;
+    out.write(content.substring(0, half));
+    out.write(content.toCharArray(), half, content.length() - half);
+    out.close();
+  }
 }
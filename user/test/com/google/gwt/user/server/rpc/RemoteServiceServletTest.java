@@ -15,18 +15,27 @@
  */
 package com.google.gwt.user.server.rpc;
 
+import static com.google.gwt.user.client.rpc.impl.AbstractSerializationStream.RPC_SEPARATOR_CHAR;
+
+import com.google.gwt.user.client.rpc.AsyncCallback;
 import com.google.gwt.user.client.rpc.IsSerializable;
+import com.google.gwt.user.client.rpc.RemoteService;
 import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.client.rpc.impl.AbstractSerializationStream;
+import com.google.gwt.user.client.rpc.impl.RpcBatchFormat;
 
 import junit.framework.TestCase;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Set;
 
 import javax.servlet.RequestDispatcher;
@@ -34,6 +43,9 @@ import javax.servlet.Servlet;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 /**
  * Test some of the failure modes associated with
@@ -43,6 +55,63 @@ import javax.servlet.ServletException;
  */
 public class RemoteServiceServletTest extends TestCase {
 
+  /**
+   * A service whose implementation answers {@link #echo(int)} with a callback.
+   */
+  interface AsyncEchoService extends RemoteService {
+    int echo(int value);
+
+    int twice(int value);
+  }
+
+  /**
+   * Answers {@link #echo(int, AsyncCallback)} from another thread, twice,
+   * fails negative values, and never answers zero.
+   */
+  private static class AsyncEchoServlet extends RemoteServiceServlet implements
+      AsyncEchoService {
+    volatile HttpServletResponse failedResponse;
+
+    public int echo(int value) {
+      throw new AssertionError("The callback-style variant should be used");
+    }
+
+    public void echo(final int value, final AsyncCallback<Integer> callback) {
+      new Thread() {
+        @Override
+        public void run() {
+          if (value < 0) {
+            callback.onFailure(new IllegalArgumentException());
+          } else if (value > 0) {
+            callback.onSuccess(value);
+            // Answering again must not change the response
+            callback.onSuccess(value + 1);
+          }
+        }
+      }.start();
+    }
+
+    public int twice(int value) {
+      return value * 2;
+    }
+
+    @Override
+    protected void checkPermutationStrongName() {
+    }
+
+    @Override
+    protected SerializationPolicy doGetSerializationPolicy(HttpServletRequest request,
+        String moduleBaseURL, String strongName) {
+      return RPC.getDefaultSerializationPolicy();
+    }
+
+    @Override
+    protected void doUnexpectedFailure(Throwable e) {
+      failedResponse = getThreadLocalResponse();
+      super.doUnexpectedFailure(e);
+    }
+  }
+
   private static class Bar implements Serializable {
   }
 
@@ -62,6 +131,60 @@ public class RemoteServiceServletTest extends TestCase {
     }
   }
 
+  /**
+   * A request whose body is a GWT RPC call.
+   */
+  private static class MockRpcRequest extends MockHttpServletRequest {
+    private String batchSize;
+    private final ByteArrayInputStream content;
+
+    MockRpcRequest(String payload) throws UnsupportedEncodingException {
+      content = new ByteArrayInputStream(payload.getBytes("UTF-8"));
+    }
+
+    /**
+     * Creates a batch request.
+     */
+    MockRpcRequest(String... payloads) throws UnsupportedEncodingException {
+      StringBuilder sb = new StringBuilder();
+      for (String payload : payloads) {
+        RpcBatchFormat.appendEntry(sb, payload);
+      }
+      content = new ByteArrayInputStream(sb.toString().getBytes("UTF-8"));
+      batchSize = String.valueOf(payloads.length);
+    }
+
+    @Override
+    public String getCharacterEncoding() {
+      return "utf-8";
+    }
+
+    @Override
+    public int getContentLength() {
+      return -1;
+    }
+
+    @Override
+    public String getContentType() {
+      return "text/x-gwt-rpc; charset=utf-8";
+    }
+
+    @Override
+    public String getHeader(String name) {
+      return RpcBatchFormat.BATCH_HEADER.equals(name) ? batchSize : null;
+    }
+
+    @Override
+    public ServletInputStream getInputStream() {
+      return new ServletInputStream() {
+        @Override
+        public int read() {
+          return content.read();
+        }
+      };
+    }
+  }
+
   private static class MockServletConfig implements ServletConfig {
     private ServletContext context;
 
@@ -192,6 +315,99 @@ public class RemoteServiceServletTest extends TestCase {
     }
   }
 
+  private static String encodeIntCall(String methodName, int value) {
+    return "" + AbstractSerializationStream.SERIALIZATION_STREAM_VERSION + RPC_SEPARATOR_CHAR
+        + "0" + RPC_SEPARATOR_CHAR // flags
+        + "5" + RPC_SEPARATOR_CHAR // string table entry count
+        + AsyncEchoService.class.getName() + RPC_SEPARATOR_CHAR
+        + methodName + RPC_SEPARATOR_CHAR
+        + "http://www.google.com/MyModule/" + RPC_SEPARATOR_CHAR
+        + "12345" + RPC_SEPARATOR_CHAR
+        + "I" + RPC_SEPARATOR_CHAR
+        + "3" + RPC_SEPARATOR_CHAR // module base URL
+        + "4" + RPC_SEPARATOR_CHAR // strong name
+        + "1" + RPC_SEPARATOR_CHAR // interface name
+        + "2" + RPC_SEPARATOR_CHAR // method name
+        + "1" + RPC_SEPARATOR_CHAR // param count
+        + "5" + RPC_SEPARATOR_CHAR // param type
+        + value + RPC_SEPARATOR_CHAR;
+  }
+
+  public void testProcessPost_AsyncMethod() throws IOException, ServletException,
+      SerializationException {
+    AsyncEchoServlet servlet = new AsyncEchoServlet();
+    servlet.init(new MockServletConfig(new MockServletContext()));
+
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    servlet.processPost(new MockRpcRequest(encodeIntCall("echo", 42)), response);
+    assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+    assertEquals("//OK[42,[],0,7]", new String(response.getContent(), "UTF-8"));
+  }
+
+  public void testProcessPost_AsyncMethodFailure() throws IOException,
+      ServletException, SerializationException {
+    MockServletContext context = new MockServletContext();
+    AsyncEchoServlet servlet = new AsyncEchoServlet();
+    servlet.init(new MockServletConfig(context));
+
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    servlet.processPost(new MockRpcRequest(encodeIntCall("echo", -1)), response);
+    assertEquals(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, response.getStatus());
+    assertEquals("The call failed on the server; see server log for details",
+        new String(response.getContent(), "UTF-8"));
+    assertNotNull(context.messageLogged);
+    assertSame(response, servlet.failedResponse);
+  }
+
+  public void testProcessPost_AsyncMethodTimeout() throws IOException,
+      ServletException, SerializationException {
+    AsyncEchoServlet servlet = new AsyncEchoServlet();
+    System.setProperty(RemoteServiceServlet.ASYNC_TIMEOUT_PROPERTY, "100");
+    try {
+      servlet.init(new MockServletConfig(new MockServletContext()));
+    } finally {
+      System.clearProperty(RemoteServiceServlet.ASYNC_TIMEOUT_PROPERTY);
+    }
+
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    servlet.processPost(new MockRpcRequest(encodeIntCall("echo", 0)), response);
+    assertEquals(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, response.getStatus());
+    assertSame(response, servlet.failedResponse);
+  }
+
+  public void testProcessPost_Batch() throws IOException, ServletException,
+      SerializationException {
+    AsyncEchoServlet servlet = new AsyncEchoServlet();
+    servlet.init(new MockServletConfig(new MockServletContext()));
+    assertBatchProcessed(servlet);
+  }
+
+  public void testProcessPost_BatchInParallel() throws IOException, ServletException,
+      SerializationException {
+    AsyncEchoServlet servlet = new AsyncEchoServlet();
+    System.setProperty(RemoteServiceServlet.BATCH_THREADS_PROPERTY, "2");
+    try {
+      servlet.init(new MockServletConfig(new MockServletContext()));
+    } finally {
+      System.clearProperty(RemoteServiceServlet.BATCH_THREADS_PROPERTY);
+    }
+    try {
+      assertBatchProcessed(servlet);
+    } finally {
+      servlet.destroy();
+    }
+  }
+
+  public void testProcessPost_SyncMethod() throws IOException, ServletException,
+      SerializationException {
+    AsyncEchoServlet servlet = new AsyncEchoServlet();
+    servlet.init(new MockServletConfig(new MockServletContext()));
+
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    servlet.processPost(new MockRpcRequest(encodeIntCall("twice", 21)), response);
+    assertEquals("//OK[42,[],0,7]", new String(response.getContent(), "UTF-8"));
+  }
+
   public void testDoGetSerializationPolicy_FailToOpenMD5Resource()
       throws ServletException {
     MockServletContext mockContext = new MockServletContext() {
@@ -289,6 +505,18 @@ public class RemoteServiceServletTest extends TestCase {
     assertNotValidDeserialize(serializationPolicy, Baz.class);
   }
 
+  private void assertBatchProcessed(RemoteServiceServlet servlet) throws IOException,
+      ServletException, SerializationException {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    servlet.processPost(new MockRpcRequest(encodeIntCall("echo", 42),
+        encodeIntCall("twice", 21), encodeIntCall("echo", -1)), response);
+    assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+
+    List<String> entries = RpcBatchFormat.splitEntries(new String(response.getContent(), "UTF-8"));
+    assertEquals(Arrays.asList("200", "//OK[42,[],0,7]", "200", "//OK[42,[],0,7]", "500",
+        "The call failed on the server; see server log for details"), entries);
+  }
+
   private void assertDeserializeFields(SerializationPolicy policy,
       Class<?> clazz) {
     assertTrue(policy.shouldDeserializeFields(clazz));
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc.impl;
+
+import junit.framework.TestCase;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests {@link FieldAccessor} and {@link FieldAccessorGenerator}.
+ */
+public class FieldAccessorTest extends TestCase {
+
+  static class AllTypes implements Serializable {
+    boolean aBoolean = true;
+    byte aByte = 1;
+    char aChar = 'c';
+    double aDouble = 2.5;
+    float aFloat = 3.5f;
+    int anInt = 4;
+    int[] anIntArray = {5};
+    long aLong = 6L;
+    List<String> aList = Arrays.asList("seven");
+    short aShort = 8;
+    String aString = "nine";
+    protected String protectedString = "ten";
+    private String privateString = "eleven";
+    PrivateType privateType = new PrivateType();
+  }
+
+  static class OnlyPrivateFields implements Serializable {
+    private int a = 1;
+    private String b = "two";
+  }
+
+  private static class PrivateType implements Serializable {
+  }
+
+  /**
+   * A class can only be generated once, so it is shared by all tests.
+   */
+  private static FieldAccessor allTypesAccessor;
+
+  private static synchronized FieldAccessor getGeneratedAccessor() {
+    if (allTypesAccessor == null) {
+      allTypesAccessor = FieldAccessorGenerator.create(AllTypes.class,
+          SerializabilityUtil.applyFieldSerializationPolicy(AllTypes.class));
+      assertNotNull(allTypesAccessor);
+    }
+    return allTypesAccessor;
+  }
+
+  public void testDefaultIsReflection() {
+    if (Boolean.getBoolean(FieldAccessorGenerator.GENERATE_PROPERTY)) {
+      return;
+    }
+    FieldAccessor accessor = SerializabilityUtil.getFieldAccessor(AllTypes.class);
+    assertSame(FieldAccessor.class, accessor.getClass());
+  }
+
+  public void testGeneratedAccessorGetsFields() throws IllegalAccessException {
+    FieldAccessor accessor = getGeneratedAccessor();
+    assertNotSame(FieldAccessor.class, accessor.getClass());
+
+    AllTypes instance = new AllTypes();
+    Field[] fields = SerializabilityUtil.applyFieldSerializationPolicy(AllTypes.class);
+    for (int i = 0; i < fields.length; i++) {
+      assertEquals(fields[i].getName(), fields[i].get(instance), accessor.get(instance, i));
+    }
+  }
+
+  public void testGeneratedAccessorSetsFields() throws IllegalAccessException {
+    FieldAccessor accessor = getGeneratedAccessor();
+    AllTypes source = new AllTypes();
+    source.aBoolean = false;
+    source.aByte = -1;
+    source.aChar = 'C';
+    source.aDouble = -2.5;
+    source.aFloat = -3.5f;
+    source.anInt = -4;
+    source.anIntArray = new int[] {-5};
+    source.aLong = -6L;
+    source.aList = null;
+    source.aShort = -8;
+    source.aString = "NINE";
+    source.protectedString = "TEN";
+    source.privateString = "ELEVEN";
+    source.privateType = null;
+
+    AllTypes target = new AllTypes();
+    Field[] fields = SerializabilityUtil.applyFieldSerializationPolicy(AllTypes.class);
+    for (int i = 0; i < fields.length; i++) {
+      accessor.set(target, i, fields[i].get(source));
+    }
+    for (Field field : fields) {
+      assertEquals(field.getName(), field.get(source), field.get(target));
+    }
+  }
+
+  public void testGeneratedAccessorRejectsLikeReflection() throws IllegalAccessException {
+    FieldAccessor accessor = getGeneratedAccessor();
+    Field[] fields = SerializabilityUtil.applyFieldSerializationPolicy(AllTypes.class);
+    AllTypes instance = new AllTypes();
+    for (int i = 0; i < fields.length; i++) {
+      if (fields[i].getType() == int.class) {
+        // Widening is allowed, as by Field.set
+        accessor.set(instance, i, Short.valueOf((short) 12));
+        assertEquals(12, instance.anInt);
+        try {
+          accessor.set(instance, i, null);
+          fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+      } else if (fields[i].getType() == String.class) {
+        try {
+          accessor.set(instance, i, Integer.valueOf(13));
+          fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+      }
+    }
+  }
+
+  public void testReflectionForPrivateFields() throws IllegalAccessException {
+    FieldAccessor accessor = FieldAccessorGenerator.create(OnlyPrivateFields.class,
+        SerializabilityUtil.applyFieldSerializationPolicy(OnlyPrivateFields.class));
+    assertNull(accessor);
+    accessor = SerializabilityUtil.getFieldAccessor(OnlyPrivateFields.class);
+    assertSame(FieldAccessor.class, accessor.getClass());
+
+    OnlyPrivateFields instance = new OnlyPrivateFields();
+    accessor.set(instance, 0, 3);
+    accessor.set(instance, 1, "four");
+    assertEquals(3, accessor.get(instance, 0));
+    assertEquals("four", accessor.get(instance, 1));
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc.impl;
+
+import com.google.gwt.user.server.rpc.SerializationPolicy;
+
+import junit.framework.TestCase;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Tests {@link SerializationPolicyCache}.
+ */
+public class SerializationPolicyCacheTest extends TestCase {
+
+  /**
+   * A cache whose clock only moves when told to.
+   */
+  private static class ManualClockCache extends SerializationPolicyCache {
+    long now = 1000;
+
+    ManualClockCache(int maxSize, long maxAgeMillis, long missingPolicyTtlMillis) {
+      super(maxSize, maxAgeMillis, missingPolicyTtlMillis);
+    }
+
+    void advanceMillis(long millis) {
+      now += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Override
+    long nanoTime() {
+      return now;
+    }
+  }
+
+  private static final SerializationPolicy POLICY = LegacySerializationPolicy.getInstance();
+
+  public void testEvictsLeastRecentlyUsed() {
+    ManualClockCache cache = new ManualClockCache(2, 0, 0);
+    cache.put("http://a/", "1", POLICY, false, 0);
+    cache.advanceMillis(1);
+    cache.put("http://a/", "2", POLICY, false, 0);
+    cache.advanceMillis(1);
+    assertSame(POLICY, cache.get("http://a/", "1"));
+    cache.advanceMillis(1);
+    cache.put("http://a/", "3", POLICY, false, 0);
+
+    assertEquals(2, cache.getSize());
+    assertEquals(1, cache.getEvictionCount());
+    assertSame(POLICY, cache.get("http://a/", "1"));
+    assertNull(cache.get("http://a/", "2"));
+    assertSame(POLICY, cache.get("http://a/", "3"));
+  }
+
+  public void testHitsAndMisses() {
+    ManualClockCache cache = new ManualClockCache(10, 0, 0);
+    assertNull(cache.get("http://a/", "1"));
+    cache.put("http://a/", "1", POLICY, false, TimeUnit.MILLISECONDS.toNanos(5));
+    assertSame(POLICY, cache.get("http://a/", "1"));
+    assertSame(POLICY, cache.get("http://a/", "1"));
+    assertNull(cache.get("http://b/", "1"));
+
+    assertEquals(2, cache.getHitCount());
+    assertEquals(2, cache.getMissCount());
+    assertEquals(1, cache.getLoadCount());
+    assertEquals(5, cache.getTotalLoadTimeMillis());
+
+    // Policies without a maximum age never expire
+    cache.advanceMillis(TimeUnit.DAYS.toMillis(1000));
+    assertSame(POLICY, cache.get("http://a/", "1"));
+  }
+
+  public void testMaxAge() {
+    ManualClockCache cache = new ManualClockCache(10, 1000, 0);
+    cache.put("http://a/", "1", POLICY, false, 0);
+    cache.advanceMillis(999);
+    assertSame(POLICY, cache.get("http://a/", "1"));
+    cache.advanceMillis(1);
+    assertNull(cache.get("http://a/", "1"));
+    assertEquals(0, cache.getSize());
+  }
+
+  public void testMissingPolicies() {
+    ManualClockCache cache = new ManualClockCache(10, 0, 100);
+    cache.put("http://a/", "1", POLICY, true, 0);
+    assertSame(POLICY, cache.get("http://a/", "1"));
+    cache.advanceMillis(100);
+    assertNull(cache.get("http://a/", "1"));
+    assertEquals(1, cache.getMissingPolicyCount());
+
+    // A zero TTL disables caching of missing policies
+    cache = new ManualClockCache(10, 0, 0);
+    cache.put("http://a/", "1", POLICY, true, 0);
+    assertNull(cache.get("http://a/", "1"));
+    assertEquals(1, cache.getLoadCount());
+  }
+
+  public void testRegisterMBean() throws JMException {
+    SerializationPolicyCache cache = new SerializationPolicyCache();
+    cache.put("http://a/", "1", POLICY, false, 0);
+    cache.registerMBean("/app", "greetServlet");
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName("com.google.gwt.user.server.rpc:"
+          + "type=SerializationPolicyCache,context=\"/app\",servlet=\"greetServlet\"");
+      assertEquals(1, server.getAttribute(name, "Size"));
+    } finally {
+      cache.unregisterMBean();
+    }
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc.impl;
+
+import com.google.gwt.user.client.rpc.IncompatibleRemoteServiceException;
+import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.server.Base64Utils;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link ServerSerializationStreamReader}.
+ */
+public class ServerSerializationStreamReaderTest extends TestCase {
+
+  /**
+   * The header of a version 7 request: flags, a string table with the module
+   * base URL and strong name, and references to both.
+   */
+  private static final String HEADER = "7|0|2|http://example.com/|ABC|1|2|";
+
+  public void testBooleans() throws SerializationException {
+    ServerSerializationStreamReader reader = prepare("0|1|00|");
+    assertFalse(reader.readBoolean());
+    assertTrue(reader.readBoolean());
+    assertTrue(reader.readBoolean());
+  }
+
+  public void testDoubles() throws SerializationException {
+    ServerSerializationStreamReader reader =
+        prepare("42|-3|1.5|-0|12345678901234567890|NaN|1e3|");
+    assertEquals(42.0, reader.readDouble());
+    assertEquals(-3.0, reader.readDouble());
+    assertEquals(1.5, reader.readDouble());
+    assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(reader.readDouble()));
+    assertEquals(12345678901234567890.0, reader.readDouble());
+    assertTrue(Double.isNaN(reader.readDouble()));
+    assertEquals(1000f, reader.readFloat());
+  }
+
+  public void testInts() throws SerializationException {
+    ServerSerializationStreamReader reader =
+        prepare("42|-7|007|2147483647|-2147483648|127|-32768|");
+    assertEquals(42, reader.readInt());
+    assertEquals(-7, reader.readInt());
+    assertEquals(7, reader.readInt());
+    assertEquals(Integer.MAX_VALUE, reader.readInt());
+    assertEquals(Integer.MIN_VALUE, reader.readInt());
+    assertEquals(Byte.MAX_VALUE, reader.readByte());
+    assertEquals(Short.MIN_VALUE, reader.readShort());
+  }
+
+  public void testInvalidNumbers() throws SerializationException {
+    ServerSerializationStreamReader reader = prepare("2147483648|1.5|x|128|-|");
+    assertIntFormatException(reader, "an out-of-range value: 2147483648");
+    assertIntFormatException(reader, "a fractional value: 1.5");
+    assertIntFormatException(reader, "a non-numerical value: x");
+    try {
+      reader.readByte();
+      fail("Expected NumberFormatException");
+    } catch (NumberFormatException expected) {
+      assertTrue(expected.getMessage().endsWith("an out-of-range value: 128"));
+    }
+    assertIntFormatException(reader, "a non-numerical value: -");
+  }
+
+  public void testLongs() throws SerializationException {
+    long value = 0x123456789abcdefL;
+    ServerSerializationStreamReader reader =
+        prepare(Base64Utils.toBase64(value) + "|A|");
+    assertEquals(value, reader.readLong());
+    assertEquals(0L, reader.readLong());
+  }
+
+  public void testNoSeparators() {
+    try {
+      new ServerSerializationStreamReader(null, null).prepareToRead("5 0 1");
+      fail("Expected IncompatibleRemoteServiceException");
+    } catch (IncompatibleRemoteServiceException expected) {
+      assertTrue(expected.getMessage().endsWith("got 5. )"));
+    } catch (SerializationException e) {
+      fail(e.toString());
+    }
+  }
+
+  public void testStringsAndTokenCount() throws SerializationException {
+    ServerSerializationStreamReader reader = new ServerSerializationStreamReader(null, null);
+    reader.prepareToRead("7|0|3|http://example.com/|ABC|a\\!b\\\\c\\u0041|1|2|3|");
+    assertEquals(9, reader.getNumberOfTokens());
+    assertEquals("a|b\\cA", reader.readString());
+  }
+
+  public void testTooFewTokens() throws SerializationException {
+    ServerSerializationStreamReader reader = prepare("1|2");
+    assertEquals(1, reader.readInt());
+    try {
+      reader.readInt();
+      fail("Expected SerializationException");
+    } catch (SerializationException expected) {
+      assertEquals("Too few tokens in RPC request", expected.getMessage());
+    }
+  }
+
+  private void assertIntFormatException(ServerSerializationStreamReader reader, String suffix)
+      throws SerializationException {
+    try {
+      reader.readInt();
+      fail("Expected NumberFormatException");
+    } catch (NumberFormatException expected) {
+      assertEquals("Expected type 'int' but received " + suffix,
+          expected.getMessage());
+    }
+  }
+
+  private ServerSerializationStreamReader prepare(String body) throws SerializationException {
+    ServerSerializationStreamReader reader = new ServerSerializationStreamReader(null, null);
+    reader.prepareToRead(HEADER + body);
+    return reader;
+  }
+}
@@ -16,8 +16,14 @@
 
 package com.google.gwt.user.server.rpc.impl;
 
+import com.google.gwt.user.server.rpc.RPC;
+import com.google.gwt.user.server.rpc.impl.ServerSerializationStreamWriter.LengthConstrainedArray;
+
 import junit.framework.TestCase;
 
+import java.io.IOException;
+import java.io.StringWriter;
+
 /**
  * Tests {@link ServerSerializationStreamWriter}.
  */
@@ -114,4 +120,73 @@ public class ServerSerializationStreamWriterTest extends TestCase {
         escaped);
   }
 
+  public void testWriteToLongPayload() throws IOException {
+    int numInts = LengthConstrainedArray.MAXIMUM_ARRAY_LENGTH * 2 + 10;
+    ServerSerializationStreamWriter writer = createWriter();
+    writer.writeString("a");
+    for (int i = 0; i < numInts; i++) {
+      writer.writeInt(i);
+    }
+    writer.writeString("b\n");
+
+    LengthConstrainedArray expected = new LengthConstrainedArray();
+    expected.addToken(2);
+    for (int i = numInts - 1; i >= 0; i--) {
+      expected.addToken(i);
+    }
+    expected.addToken(1);
+    LengthConstrainedArray table = new LengthConstrainedArray();
+    table.addToken(ServerSerializationStreamWriter.escapeStringSplitNodes("a"));
+    table.addToken(ServerSerializationStreamWriter.escapeStringSplitNodes("b\n"));
+    expected.addToken(table.toString());
+    expected.addToken(writer.getFlags());
+    expected.addToken(writer.getVersion());
+
+    assertWrites(expected.toString(), writer);
+  }
+
+  public void testWriteToLongStringTable() throws IOException {
+    int numStrings = LengthConstrainedArray.MAXIMUM_ARRAY_LENGTH + 1;
+    ServerSerializationStreamWriter writer = createWriter();
+    for (int i = 0; i < numStrings; i++) {
+      writer.writeString("s" + i);
+    }
+
+    LengthConstrainedArray expected = new LengthConstrainedArray();
+    LengthConstrainedArray table = new LengthConstrainedArray();
+    for (int i = numStrings; i > 0; i--) {
+      expected.addToken(i);
+      table.addToken("\"s" + (numStrings - i) + "\"");
+    }
+    expected.addToken(table.toString());
+    expected.addToken(writer.getFlags());
+    expected.addToken(writer.getVersion());
+
+    assertWrites(expected.toString(), writer);
+  }
+
+  public void testWriteToShortPayload() throws IOException {
+    ServerSerializationStreamWriter writer = createWriter();
+    writer.writeInt(42);
+    writer.writeString(null);
+    assertWrites("[0,42,[]," + writer.getFlags() + "," + writer.getVersion() + "]", writer);
+
+    assertWrites("[[]," + createWriter().getFlags() + "," + createWriter().getVersion() + "]",
+        createWriter());
+  }
+
+  private void assertWrites(String expected, ServerSerializationStreamWriter writer)
+      throws IOException {
+    assertEquals(expected, writer.toString());
+    StringWriter out = new StringWriter();
+    writer.writeTo(out);
+    assertEquals(expected, out.toString());
+  }
+
+  private ServerSerializationStreamWriter createWriter() {
+    ServerSerializationStreamWriter writer =
+        new ServerSerializationStreamWriter(RPC.getDefaultSerializationPolicy());
+    writer.prepareToWrite();
+    return writer;
+  }
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.gwt.user.server.rpc.impl;
+
+import com.google.gwt.user.client.rpc.RemoteService;
+import com.google.gwt.user.server.rpc.impl.ServiceMethodTable.ServiceMethod;
+
+import junit.framework.TestCase;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * Tests {@link ServiceMethodTable}.
+ */
+public class ServiceMethodTableTest extends TestCase {
+
+  interface BaseService extends RemoteService {
+    void inherited(long value);
+  }
+
+  interface Service extends BaseService {
+    <T> T generic(List<T> values);
+
+    void overloaded(int value);
+
+    void overloaded(String value);
+
+    void overloaded(String[] values, boolean flag);
+  }
+
+  public void testFind() throws NoSuchMethodException {
+    ServiceMethodTable table = ServiceMethodTable.get(Service.class);
+    assertSame(table, ServiceMethodTable.get(Service.class));
+
+    assertMethod(Service.class.getMethod("overloaded", int.class),
+        table.find("overloaded", new String[] {"I"}));
+    assertMethod(Service.class.getMethod("overloaded", String.class),
+        table.find("overloaded", new String[] {"java.lang.String"}));
+    assertMethod(Service.class.getMethod("overloaded", String[].class, boolean.class),
+        table.find("overloaded", new String[] {"[Ljava.lang.String;", "Z"}));
+    assertMethod(BaseService.class.getMethod("inherited", long.class),
+        table.find("inherited", new String[] {"J"}));
+
+    ServiceMethod generic = table.find("generic", new String[] {"java.util.List"});
+    assertEquals(1, generic.getTypeParameters().length);
+    assertEquals(Service.class.getMethod("generic", List.class).getGenericParameterTypes()[0],
+        generic.getGenericParameterTypes()[0]);
+  }
+
+  public void testNotFound() {
+    ServiceMethodTable table = ServiceMethodTable.get(Service.class);
+    assertNull(table.find("overloaded", new String[] {"J"}));
+    assertNull(table.find("overloaded", new String[0]));
+    assertNull(table.find("missing", new String[] {"I"}));
+    assertNull(table.find("hashCode", new String[0]));
+
+    // Separators in forged names must not match a different arity
+    assertNull(table.find("overloaded", new String[] {"[Ljava.lang.String;,Z"}));
+  }
+
+  private void assertMethod(Method expected, ServiceMethod actual) {
+    assertNotNull(actual);
+    assertEquals(expected, actual.getMethod());
+    assertEquals(expected.getParameterTypes().length, actual.getParameterTypes().length);
+  }
+}
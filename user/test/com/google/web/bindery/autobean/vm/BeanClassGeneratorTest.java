@@ -0,0 +1,217 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.autobean.vm;
+
+import com.google.web.bindery.autobean.shared.AutoBean;
+import com.google.web.bindery.autobean.shared.AutoBeanCodex;
+import com.google.web.bindery.autobean.shared.AutoBeanFactory;
+import com.google.web.bindery.autobean.shared.AutoBeanUtils;
+import com.google.web.bindery.autobean.shared.AutoBeanVisitor;
+import com.google.web.bindery.autobean.vm.impl.BeanClassGenerator;
+import com.google.web.bindery.autobean.vm.impl.GeneratedShim;
+
+import junit.framework.TestCase;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests the generated shims and simple peers that take the place of
+ * {@link Proxy} instances on JVMs that allow classes to be defined.
+ */
+public class BeanClassGeneratorTest extends TestCase {
+
+  /**
+   * A simple bean.
+   */
+  public interface Bean {
+    int getCount();
+
+    String getName();
+
+    Bean getOther();
+
+    boolean isFlag();
+
+    void setCount(int count);
+
+    void setFlag(boolean flag);
+
+    Bean setName(String name);
+
+    void setOther(Bean other);
+  }
+
+  /**
+   * A wrapped implementation.
+   */
+  public static class BeanImpl implements Bean {
+    private int count;
+    private boolean flag;
+    private String name;
+    private Bean other;
+
+    public int getCount() {
+      return count;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public Bean getOther() {
+      return other;
+    }
+
+    public boolean isFlag() {
+      return flag;
+    }
+
+    public void setCount(int count) {
+      this.count = count;
+    }
+
+    public void setFlag(boolean flag) {
+      this.flag = flag;
+    }
+
+    public Bean setName(String name) {
+      this.name = name;
+      return this;
+    }
+
+    public void setOther(Bean other) {
+      this.other = other;
+    }
+  }
+
+  interface Factory extends AutoBeanFactory {
+    AutoBean<Bean> bean();
+
+    AutoBean<Bean> bean(Bean toWrap);
+
+    AutoBean<PlainBean> plainBean();
+  }
+
+  /**
+   * A bean that is only used without {@link BeanClassGenerator#GENERATE_PROPERTY}.
+   */
+  public interface PlainBean {
+    String getName();
+
+    void setName(String name);
+  }
+
+  private Factory factory;
+
+  public void testProxyByDefault() {
+    System.clearProperty(BeanClassGenerator.GENERATE_PROPERTY);
+    PlainBean plain = factory.plainBean().as();
+    assertTrue(Proxy.isProxyClass(plain.getClass()));
+    plain.setName("name");
+    assertEquals("name", plain.getName());
+
+    // Nothing was remembered for the type while generation was off.
+    System.setProperty(BeanClassGenerator.GENERATE_PROPERTY, "true");
+    assertGenerated(GeneratedShim.class, factory.plainBean().as());
+  }
+
+  public void testShim() {
+    BeanImpl impl = new BeanImpl();
+    impl.setName("wrapped");
+    impl.setOther(new BeanImpl());
+    AutoBean<Bean> bean = factory.bean(impl);
+    Bean shim = bean.as();
+    assertGenerated(GeneratedShim.class, shim);
+
+    assertEquals("wrapped", shim.getName());
+    assertEquals(shim, impl);
+    assertEquals(impl.hashCode(), shim.hashCode());
+    assertSame(shim, shim.setName("changed"));
+    assertEquals("changed", impl.getName());
+    shim.setCount(3);
+    assertEquals(3, impl.getCount());
+
+    // Returned beans are wrapped too
+    Bean other = shim.getOther();
+    assertNotSame(impl.getOther(), other);
+    assertSame(impl.getOther(), AutoBeanUtils.getAutoBean(other).unwrap());
+
+    final List<String> visited = new ArrayList<String>();
+    bean.accept(new AutoBeanVisitor() {
+      @Override
+      public boolean visitValueProperty(String propertyName, Object value, PropertyContext ctx) {
+        visited.add(propertyName + "=" + value);
+        return false;
+      }
+    });
+    assertTrue(visited.toString(), visited.contains("count=3"));
+    assertTrue(visited.toString(), visited.contains("name=changed"));
+    assertTrue(visited.toString(), visited.contains("flag=false"));
+  }
+
+  public void testSimpleBean() {
+    AutoBean<Bean> bean = factory.bean();
+    Bean simple = bean.as();
+    assertGenerated(GeneratedShim.class, simple);
+
+    // Unset primitives have default values
+    assertEquals(0, simple.getCount());
+    assertFalse(simple.isFlag());
+    assertNull(simple.getName());
+
+    simple.setCount(42);
+    simple.setFlag(true);
+    assertSame(simple, simple.setName("name"));
+    assertEquals(42, simple.getCount());
+    assertTrue(simple.isFlag());
+    assertEquals("name", simple.getName());
+    // The shim passes toString() through to the simple peer
+    assertEquals(AutoBeanCodex.encode(bean).getPayload(), simple.toString());
+
+    Bean other = factory.bean().as();
+    simple.setOther(other);
+    assertSame(other, simple.getOther());
+
+    AutoBean<Bean> clone = AutoBeanCodex.decode(factory, Bean.class,
+        AutoBeanCodex.encode(bean));
+    assertTrue(AutoBeanUtils.deepEquals(bean, clone));
+    assertEquals(42, clone.as().getCount());
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    System.setProperty(BeanClassGenerator.GENERATE_PROPERTY, "true");
+    factory = AutoBeanFactorySource.create(Factory.class);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    System.clearProperty(BeanClassGenerator.GENERATE_PROPERTY);
+  }
+
+  /**
+   * Checks that a bean that is not a Proxy comes from a generated class. The
+   * JVM may not allow classes to be defined, in which case there is nothing to
+   * check.
+   */
+  private void assertGenerated(Class<?> generatedType, Object instance) {
+    if (!Proxy.isProxyClass(instance.getClass())) {
+      assertTrue(instance.getClass().getName(), generatedType.isInstance(instance));
+    }
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.autobean.vm;
+
+import com.google.web.bindery.autobean.shared.Splittable;
+import com.google.web.bindery.autobean.vm.impl.JsonSplittable;
+import com.google.web.bindery.autobean.vm.impl.LazyJsonSplittable;
+
+import junit.framework.TestCase;
+
+import org.json.JSONObject;
+
+import java.util.Arrays;
+
+/**
+ * Tests {@link LazyJsonSplittable} against the behavior of
+ * {@link JsonSplittable}.
+ */
+public class LazyJsonSplittableTest extends TestCase {
+
+  public void testAssign() {
+    Splittable data = LazyJsonSplittable.create("{\"a\":1,\"b\":[true]}");
+    LazyJsonSplittable.create("\"x\"").assign(data, "c");
+    LazyJsonSplittable.createNull().assign(data, "a");
+    assertEquals(Arrays.asList("b", "c"), data.getPropertyKeys());
+    assertTrue(data.isUndefined("a"));
+
+    Splittable array = data.get("b");
+    LazyJsonSplittable.create("42").assign(array, 2);
+    assertEquals(3, array.size());
+    assertTrue(array.isNull(1));
+    assertTrue(array.isNull(5));
+    assertEquals("{\"b\":[true,null,42],\"c\":\"x\"}", data.getPayload());
+
+    array.setSize(1);
+    assertEquals("{\"b\":[true],\"c\":\"x\"}", data.getPayload());
+  }
+
+  public void testCreate() {
+    Splittable data = LazyJsonSplittable.create();
+    assertTrue(data.isKeyed());
+    assertEquals("{}", data.getPayload());
+    LazyJsonSplittable.createIndexed().assign(data, "list");
+    assertEquals("{\"list\":[]}", data.getPayload());
+  }
+
+  public void testNested() {
+    Splittable data =
+        LazyJsonSplittable.create(" {\"a\" : {\"b\": [1, \"two\", null, false]}, \"c\":null} ");
+    assertTrue(data.isKeyed());
+    assertEquals(Arrays.asList("a", "c"), data.getPropertyKeys());
+    assertTrue(data.isNull("c"));
+    assertFalse(data.isUndefined("c"));
+    assertTrue(data.isUndefined("d"));
+
+    Splittable b = data.get("a").get("b");
+    assertSame(b, data.get("a").get("b"));
+    assertTrue(b.isIndexed());
+    assertEquals(4, b.size());
+    assertEquals(1.0, b.get(0).asNumber());
+    assertEquals("two", b.get(1).asString());
+    assertTrue(b.isNull(2));
+    assertFalse(b.get(3).asBoolean());
+  }
+
+  public void testParseErrors() {
+    String[] bad = {"", "{", "[1,]", "{\"a\"}", "{\"a\":1 \"b\":2}", "nul", "tru", "1x", "\"abc"};
+    for (String payload : bad) {
+      try {
+        Splittable data = LazyJsonSplittable.create(payload);
+        if (data != null && (data.isKeyed() || data.isIndexed())) {
+          data.getPropertyKeys();
+          data.size();
+        }
+        fail("Should have failed: " + payload);
+      } catch (RuntimeException expected) {
+      }
+    }
+  }
+
+  public void testPayload() {
+    // A value that has not been taken apart is copied as it was received
+    String raw = "{\"a\" : [1.50, \"\\u0041\"]}";
+    Splittable data = LazyJsonSplittable.create(raw);
+    assertSame(raw, data.getPayload());
+    assertEquals("[1.50, \"\\u0041\"]", data.get("a").getPayload());
+    assertEquals("A", data.get("a").get(1).asString());
+
+    // Once taken apart, numbers are written the same way as by org.json
+    String ints = "[0,3.1415920,42.0,null]";
+    Splittable copy = LazyJsonSplittable.create(ints).deepCopy();
+    assertEquals(ints, copy.getPayload());
+    copy.size();
+    assertEquals(JsonSplittable.create(ints).getPayload(), copy.getPayload());
+    assertEquals("[0,3.141592,42,null]", copy.getPayload());
+
+    assertEquals("42.0", LazyJsonSplittable.create("42").getPayload());
+    assertEquals("true", LazyJsonSplittable.create("true").getPayload());
+    assertNull(LazyJsonSplittable.create("null"));
+
+    StringBuilder sb = new StringBuilder("x");
+    ((LazyJsonSplittable) copy).appendPayload(sb);
+    assertEquals("x[0,3.141592,42,null]", sb.toString());
+  }
+
+  public void testStrings() {
+    String value = "quote\" slash\\ </tag> \n\t\u2028 \u0001";
+
+    Splittable data = LazyJsonSplittable.create();
+    LazyJsonSplittable.create(JSONObject.quote(value)).assign(data, value);
+    assertEquals(value, data.get(value).asString());
+    assertEquals(value, data.getPropertyKeys().get(0));
+
+    String payload = data.getPayload();
+    assertEquals(value, JsonSplittable.create(payload).get(value).asString());
+    assertEquals(value, LazyJsonSplittable.create(payload).get(value).asString());
+  }
+}
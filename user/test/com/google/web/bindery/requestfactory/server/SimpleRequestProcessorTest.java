@@ -0,0 +1,269 @@
+/*
+ * Copyright 2013 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.web.bindery.requestfactory.server;
+
+import com.google.web.bindery.autobean.shared.AutoBean;
+import com.google.web.bindery.autobean.shared.AutoBeanCodex;
+import com.google.web.bindery.event.shared.SimpleEventBus;
+import com.google.web.bindery.requestfactory.server.testing.InProcessRequestTransport;
+import com.google.web.bindery.requestfactory.shared.EntityProxy;
+import com.google.web.bindery.requestfactory.shared.ProxyFor;
+import com.google.web.bindery.requestfactory.shared.Receiver;
+import com.google.web.bindery.requestfactory.shared.Request;
+import com.google.web.bindery.requestfactory.shared.RequestContext;
+import com.google.web.bindery.requestfactory.shared.RequestFactory;
+import com.google.web.bindery.requestfactory.shared.Service;
+import com.google.web.bindery.requestfactory.shared.messages.OperationMessage;
+import com.google.web.bindery.requestfactory.shared.messages.RequestMessage;
+import com.google.web.bindery.requestfactory.vm.RequestFactorySource;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests how {@link SimpleRequestProcessor} loads entities and makes
+ * invocations.
+ */
+public class SimpleRequestProcessorTest extends TestCase {
+
+  /**
+   * Counts the calls made to load entities.
+   */
+  static class CountingServiceLayer extends ServiceLayerDecorator {
+    int loads;
+
+    @Override
+    public List<Object> loadDomainObjects(List<Class<?>> classes, List<Object> domainIds) {
+      loads++;
+      return super.loadDomainObjects(classes, domainIds);
+    }
+  }
+
+  /**
+   * Leaves out the operations that the client sends for the proxies it only
+   * refers to, as clients other than the RequestFactory one may, so that the
+   * server has to load them on its own.
+   */
+  static class ReferencesOnlyTransport extends InProcessRequestTransport {
+    ReferencesOnlyTransport(SimpleRequestProcessor processor) {
+      super(processor);
+    }
+
+    @Override
+    public void send(String payload, TransportReceiver receiver) {
+      AutoBean<RequestMessage> bean =
+          AutoBeanCodex.decode(SimpleRequestProcessor.FACTORY, RequestMessage.class, payload);
+      List<OperationMessage> operations = bean.as().getOperations();
+      if (operations != null) {
+        List<OperationMessage> edits = new ArrayList<OperationMessage>();
+        for (OperationMessage operation : operations) {
+          if (operation.getPropertyMap() != null) {
+            edits.add(operation);
+          }
+        }
+        bean.as().setOperations(edits.isEmpty() ? null : edits);
+      }
+      super.send(AutoBeanCodex.encode(bean).getPayload(), receiver);
+    }
+  }
+
+  @Service(Thing.class)
+  interface Context extends RequestContext {
+    Request<String> getName(ThingProxy thing);
+
+    Request<List<ThingProxy>> getThings();
+
+    Request<String> rendezvous(String value);
+  }
+
+  interface Factory extends RequestFactory {
+    Context context();
+  }
+
+  /**
+   * The domain type.
+   */
+  static class Thing {
+    static final Map<String, Thing> THINGS = new HashMap<String, Thing>();
+    static final CyclicBarrier BARRIER = new CyclicBarrier(2);
+
+    public static Thing findThing(String id) {
+      return THINGS.get(id);
+    }
+
+    public static String getName(Thing thing) {
+      return "Thing " + thing.id;
+    }
+
+    public static List<Thing> getThings() {
+      List<Thing> toReturn = new ArrayList<Thing>();
+      for (int i = 0; i < THINGS.size(); i++) {
+        toReturn.add(THINGS.get(String.valueOf(i)));
+      }
+      return toReturn;
+    }
+
+    /**
+     * Only returns if another invocation runs at the same time.
+     */
+    @IndependentInvocation
+    public static String rendezvous(String value) throws Exception {
+      BARRIER.await(5, TimeUnit.SECONDS);
+      return value;
+    }
+
+    private final String id;
+    private Thing parent;
+
+    Thing(String id) {
+      this.id = id;
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    public Thing getParent() {
+      return parent;
+    }
+
+    public Integer getVersion() {
+      return 1;
+    }
+
+    public void setParent(Thing parent) {
+      this.parent = parent;
+    }
+  }
+
+  @ProxyFor(Thing.class)
+  interface ThingProxy extends EntityProxy {
+    ThingProxy getParent();
+
+    void setParent(ThingProxy parent);
+  }
+
+  private ExecutorService executor;
+  private Factory factory;
+  private CountingServiceLayer serviceLayer;
+  private List<ThingProxy> things;
+
+  public void testIndependentInvocations() {
+    final List<String> results = new ArrayList<String>();
+    Context context = factory.context();
+    context.rendezvous("a").to(new Receiver<String>() {
+      @Override
+      public void onSuccess(String response) {
+        results.add(response);
+      }
+    });
+    context.rendezvous("b").to(new Receiver<String>() {
+      @Override
+      public void onSuccess(String response) {
+        results.add(response);
+      }
+    });
+    context.fire();
+    assertEquals(2, results.size());
+    assertEquals("a", results.get(0));
+    assertEquals("b", results.get(1));
+  }
+
+  public void testInvocationReferencesLoadedTogether() {
+    final List<String> results = new ArrayList<String>();
+    Context context = factory.context();
+    for (ThingProxy thing : things) {
+      context.getName(thing).to(new Receiver<String>() {
+        @Override
+        public void onSuccess(String response) {
+          results.add(response);
+        }
+      });
+    }
+    context.fire();
+    assertEquals(1, serviceLayer.loads);
+    assertEquals(4, results.size());
+    for (int i = 0; i < results.size(); i++) {
+      assertEquals("Thing " + i, results.get(i));
+    }
+  }
+
+  public void testInvocationReferencesLoadedSeparatelyByDefault() {
+    initialize(null);
+    Context context = factory.context();
+    for (ThingProxy thing : things) {
+      context.getName(thing);
+    }
+    context.fire();
+    assertEquals(things.size(), serviceLayer.loads);
+  }
+
+  public void testPropertyReferencesLoadedTogether() {
+    Context context = factory.context();
+    context.edit(things.get(0)).setParent(things.get(2));
+    context.edit(things.get(1)).setParent(things.get(3));
+    context.fire();
+
+    // One call for the edited entities, one for the entities they refer to
+    assertEquals(2, serviceLayer.loads);
+    assertSame(Thing.THINGS.get("2"), Thing.THINGS.get("0").getParent());
+    assertSame(Thing.THINGS.get("3"), Thing.THINGS.get("1").getParent());
+  }
+
+  @Override
+  protected void setUp() {
+    Thing.THINGS.clear();
+    for (int i = 0; i < 4; i++) {
+      Thing.THINGS.put(String.valueOf(i), new Thing(String.valueOf(i)));
+    }
+    Thing.BARRIER.reset();
+
+    executor = Executors.newCachedThreadPool();
+    initialize(executor);
+  }
+
+  @Override
+  protected void tearDown() {
+    executor.shutdown();
+  }
+
+  private void initialize(Executor invocationExecutor) {
+    serviceLayer = new CountingServiceLayer();
+    SimpleRequestProcessor processor =
+        new SimpleRequestProcessor(ServiceLayer.create(serviceLayer));
+    processor.setInvocationExecutor(invocationExecutor);
+
+    factory = RequestFactorySource.create(Factory.class);
+    factory.initialize(new SimpleEventBus(), new ReferencesOnlyTransport(processor));
+
+    factory.context().getThings().fire(new Receiver<List<ThingProxy>>() {
+      @Override
+      public void onSuccess(List<ThingProxy> response) {
+        things = response;
+      }
+    });
+    serviceLayer.loads = 0;
+  }
+}
@@ -30,6 +30,7 @@ import com.google.web.bindery.requestfactory.server.RequestFactoryUnicodeEscapin
 import com.google.web.bindery.requestfactory.server.RequestPayloadJreTest;
 import com.google.web.bindery.requestfactory.server.ServiceInheritanceJreTest;
 import com.google.web.bindery.requestfactory.server.ServiceLocatorTest;
+import com.google.web.bindery.requestfactory.server.SimpleRequestProcessorTest;
 import com.google.web.bindery.requestfactory.shared.impl.SimpleEntityProxyIdTest;
 
 import junit.framework.Test;
@@ -59,6 +60,7 @@ public class RequestFactoryJreSuite {
     suite.addTestSuite(RequestPayloadJreTest.class);
     suite.addTestSuite(ServiceInheritanceJreTest.class);
     suite.addTestSuite(ServiceLocatorTest.class);
+    suite.addTestSuite(SimpleRequestProcessorTest.class);
     suite.addTestSuite(SimpleEntityProxyIdTest.class);
 
     return suite;